@@ -0,0 +1,560 @@
+/**
+ * Copyright © 2018-2019 Jesse Gallagher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openntf.nsfodp.commons.dxl;
+
+import static org.openntf.nsfodp.commons.dxl.ODSConstants.BLOBPART_SIZE_CAP;
+import static org.openntf.nsfodp.commons.dxl.ODSConstants.FILE_SEGMENT_SIZE_CAP;
+import static org.openntf.nsfodp.commons.dxl.ODSConstants.IMAGE_SEGMENT_SIZE_CAP;
+import static org.openntf.nsfodp.commons.h.Ods.ACTION_TYPE_JAVASCRIPT;
+import static org.openntf.nsfodp.commons.h.Ods.CDGRAPHIC_VERSION3;
+import static org.openntf.nsfodp.commons.h.Ods.HTML_EVENT_LIBRARY;
+import static org.openntf.nsfodp.commons.h.Ods.SIG_CDBLOBPART;
+import static org.openntf.nsfodp.commons.h.Ods.SIG_CDEVENT;
+import static org.openntf.nsfodp.commons.h.Ods.SIG_CDFILEHEADER;
+import static org.openntf.nsfodp.commons.h.Ods.SIG_CDFILESEGMENT;
+import static org.openntf.nsfodp.commons.h.Ods.SIG_CDGRAPHIC;
+import static org.openntf.nsfodp.commons.h.Ods.SIG_CDIMAGEHEADER;
+import static org.openntf.nsfodp.commons.h.Ods.SIG_CDIMAGESEGMENT;
+import static org.openntf.nsfodp.commons.h.Ods.SIZE_CDBLOBPART;
+import static org.openntf.nsfodp.commons.h.Ods.SIZE_CDEVENT;
+import static org.openntf.nsfodp.commons.h.Ods.SIZE_CDFILEHEADER;
+import static org.openntf.nsfodp.commons.h.Ods.SIZE_CDFILESEGMENT;
+import static org.openntf.nsfodp.commons.h.Ods.SIZE_CDGRAPHIC;
+import static org.openntf.nsfodp.commons.h.Ods.SIZE_CDIMAGEHEADER;
+import static org.openntf.nsfodp.commons.h.Ods.SIZE_CDIMAGESEGMENT;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.text.MessageFormat;
+import java.util.Arrays;
+
+/**
+ * Writes design element data as a sequence of CD records, one segment at a time.
+ *
+ * <p>Each record is assembled in a per-thread buffer that is reused across calls, and
+ * segment data is read directly from its {@link DataSource} into that buffer, so the
+ * memory used is independent of the size of the data.</p>
+ *
+ * @author Jesse Gallagher
+ * @since 2.1.0
+ */
+public class CDRecordWriter {
+	/**
+	 * A sequential source of the data to be split into segments.
+	 */
+	public interface DataSource extends Closeable {
+		/**
+		 * @return the total number of bytes available from this source
+		 */
+		int getLength();
+
+		/**
+		 * Reads exactly {@code length} bytes of the data, following on from the previous read.
+		 *
+		 * @throws EOFException if fewer bytes are available than requested
+		 */
+		void read(byte[] dest, int offset, int length) throws IOException;
+
+		@Override
+		default void close() throws IOException {
+			// NOP by default
+		}
+	}
+
+	/** Files at least this large are memory-mapped rather than read into the buffer */
+	private static final long MAP_THRESHOLD = 4 * 1024 * 1024;
+	/**
+	 * Windows keeps a mapped file locked until the mapping is garbage-collected, which
+	 * would prevent the cleanup of temporary ODP directories.
+	 */
+	private static final boolean CAN_MAP = File.separatorChar == '/';
+
+	private static final int MAX_RECORD_SIZE = Math.max(SIZE_CDFILESEGMENT + FILE_SEGMENT_SIZE_CAP + 1,
+		Math.max(SIZE_CDIMAGESEGMENT + IMAGE_SEGMENT_SIZE_CAP + 1,
+		Math.max(SIZE_CDBLOBPART + BLOBPART_SIZE_CAP + 1,
+		SIZE_CDGRAPHIC + SIZE_CDIMAGEHEADER)));
+	private static final ThreadLocal<ByteBuffer> BUFFERS = ThreadLocal.withInitial(() -> ByteBuffer.allocate(MAX_RECORD_SIZE).order(ByteOrder.LITTLE_ENDIAN));
+
+	private final OutputStream os;
+
+	/**
+	 * @param os the stream to write CD records to
+	 */
+	public CDRecordWriter(OutputStream os) {
+		this.os = os;
+	}
+
+	// *******************************************************************************
+	// * Data sources
+	// *******************************************************************************
+
+	/**
+	 * Opens a source that reads the provided file via a {@link FileChannel}, mapping it into
+	 * memory if it is large.
+	 */
+	public static DataSource open(Path file) throws IOException {
+		FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+		try {
+			long size = channel.size();
+			if(size > Integer.MAX_VALUE) {
+				throw new IOException(MessageFormat.format(Messages.getString("CDRecordWriter.fileTooLarge"), file, size)); //$NON-NLS-1$
+			}
+			if(CAN_MAP && size >= MAP_THRESHOLD) {
+				MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+				channel.close();
+				return new MappedSource(mapped);
+			} else {
+				return new ChannelSource(channel, (int)size);
+			}
+		} catch(IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Creates a source that reads {@code length} bytes from the provided stream. The stream is
+	 * not closed when the source is closed.
+	 */
+	public static DataSource of(InputStream is, int length) {
+		return new DataSource() {
+			@Override
+			public int getLength() {
+				return length;
+			}
+
+			@Override
+			public void read(byte[] dest, int offset, int len) throws IOException {
+				int read = 0;
+				while(read < len) {
+					int count = is.read(dest, offset + read, len - read);
+					if(count < 0) {
+						throw unexpectedEnd(len, read);
+					}
+					read += count;
+				}
+			}
+		};
+	}
+
+	public static DataSource of(byte[] data) {
+		return new DataSource() {
+			private int pos;
+
+			@Override
+			public int getLength() {
+				return data.length;
+			}
+
+			@Override
+			public void read(byte[] dest, int offset, int length) throws IOException {
+				if(pos + length > data.length) {
+					throw unexpectedEnd(length, data.length - pos);
+				}
+				System.arraycopy(data, pos, dest, offset, length);
+				pos += length;
+			}
+		};
+	}
+
+	/**
+	 * Opens a source that reads the provided text file and re-encodes it with the provided
+	 * charset as it is read. The file is read twice: once to determine the encoded length,
+	 * and again as the data is consumed.
+	 *
+	 * @param file the text file to read
+	 * @param fileCharset the charset of the file; malformed input is replaced
+	 * @param charset the charset to provide the data in
+	 */
+	public static DataSource encode(Path file, Charset fileCharset, Charset charset) throws IOException {
+		long length;
+		try(EncodingSource counter = new EncodingSource(file, fileCharset, charset, 0)) {
+			length = counter.count();
+		}
+		if(length > Integer.MAX_VALUE) {
+			throw new IOException(MessageFormat.format(Messages.getString("CDRecordWriter.fileTooLarge"), file, length)); //$NON-NLS-1$
+		}
+		return new EncodingSource(file, fileCharset, charset, (int)length);
+	}
+
+	// *******************************************************************************
+	// * Record sizes
+	// *******************************************************************************
+
+	/**
+	 * @param fileLength the size of the file content
+	 * @return the size of the records written by {@link #writeFileResource(DataSource)}
+	 */
+	public static int getFileResourceSize(int fileLength) {
+		return SIZE_CDFILEHEADER + (SIZE_CDFILESEGMENT * segmentCount(fileLength, FILE_SEGMENT_SIZE_CAP)) + fileLength + (fileLength % 2);
+	}
+
+	/**
+	 * @param imageLength the size of the image content
+	 * @return the size of the records written by {@link #writeImageResource(DataSource, short)}
+	 */
+	public static int getImageResourceSize(int imageLength) {
+		return SIZE_CDGRAPHIC + SIZE_CDIMAGEHEADER + (SIZE_CDIMAGESEGMENT * segmentCount(imageLength, IMAGE_SEGMENT_SIZE_CAP)) + imageLength + (imageLength % 2);
+	}
+
+	/**
+	 * @param scriptLength the size of the LMBCS-encoded script, excluding any terminator
+	 * @return the size of the records written by {@link #writeJavaScriptLibrary(DataSource)}
+	 */
+	public static int getJavaScriptLibrarySize(int scriptLength) {
+		int paddedLength = scriptLength + 1;
+		return SIZE_CDEVENT + (SIZE_CDBLOBPART * segmentCount(paddedLength, BLOBPART_SIZE_CAP)) + paddedLength + (paddedLength % 2);
+	}
+
+	// *******************************************************************************
+	// * Record writers
+	// *******************************************************************************
+
+	/**
+	 * Writes the provided data as a CDFILEHEADER record followed by CDFILESEGMENT records.
+	 */
+	public void writeFileResource(DataSource data) throws IOException {
+		int fileLength = data.getLength();
+		int segCount = segmentCount(fileLength, FILE_SEGMENT_SIZE_CAP);
+
+		ByteBuffer buf = BUFFERS.get();
+		buf.clear();
+		// CDFILEHEADER
+		{
+			buf.putShort(SIG_CDFILEHEADER);// Header.Signature
+			buf.putInt(SIZE_CDFILEHEADER); // Header.Length
+			buf.putShort((short)0);        // FileExtLen
+			buf.putInt(fileLength);        // FileDataSize
+			buf.putInt(segCount);          // SegCount
+			buf.putInt(0);                 // Flags
+			buf.putInt(0);                 // Reserved
+			flush(buf);
+		}
+		for(int i = 0; i < segCount; i++) {
+			// Figure out our data and segment sizes
+			int dataOffset = FILE_SEGMENT_SIZE_CAP * i;
+			short dataSize = (short)Math.min((fileLength - dataOffset), FILE_SEGMENT_SIZE_CAP);
+			short segSize = (short)(dataSize + (dataSize % 2));
+
+			// CDFILESEGMENT
+			{
+				buf.putShort(SIG_CDFILESEGMENT);          // Header.Signature
+				buf.putInt(segSize + SIZE_CDFILESEGMENT); // Header.Length
+				buf.putShort((short)dataSize);            // DataSize
+				buf.putShort((short)segSize);             // SegSize
+				buf.putInt(0);                            // Flags
+				buf.putInt(0);                            // Reserved
+				putData(buf, data, dataSize, segSize);
+				flush(buf);
+			}
+		}
+	}
+
+	/**
+	 * Writes the provided image as a CDGRAPHIC record and a CDIMAGEHEADER record, followed by
+	 * CDIMAGESEGMENT records.
+	 *
+	 * @param data the image content
+	 * @param imageType the CDIMAGETYPE value for the image
+	 */
+	public void writeImageResource(DataSource data, short imageType) throws IOException {
+		int fileLength = data.getLength();
+		int segCount = segmentCount(fileLength, IMAGE_SEGMENT_SIZE_CAP);
+		int height = 0; // true value not actually stored
+		int width = 0; // true value not actually stored
+
+		ByteBuffer buf = BUFFERS.get();
+		buf.clear();
+		// CDGRAPHIC
+		{
+			buf.putShort(SIG_CDGRAPHIC); // Header.Signature
+			buf.putInt(SIZE_CDGRAPHIC);  // Header.Length
+			buf.putShort((short)0);      // DestSize.width
+			buf.putShort((short)0);      // DestSize.height
+			buf.putShort((short)0);      // CropSize.height
+			buf.putShort((short)0);      // CropSize.width
+			buf.putShort((short)0);      // CropOffset.left
+			buf.putShort((short)0);      // CropOffset.top
+			buf.putShort((short)0);      // CropOffset.right
+			buf.putShort((short)0);      // CropOffset.bottom
+			buf.putShort((short)0);      // fResize
+			buf.put(CDGRAPHIC_VERSION3); // Version
+			buf.put((byte)0);            // bFlags;
+			buf.putShort((short)0);      // wReserved
+		}
+		// CDIMAGEHEADER
+		{
+			buf.putShort(SIG_CDIMAGEHEADER);// Header.Signature
+			buf.putInt(SIZE_CDIMAGEHEADER); // Header.Length
+			buf.putShort(imageType);        // ImageType
+			buf.putShort((short)width);     // Width
+			buf.putShort((short)height);    // Height
+			buf.putInt(fileLength);         // ImageDataSize
+			buf.putInt(segCount);           // SegCount
+			buf.putInt(0);                  // Flags
+			buf.putInt(0);                  // Reserved
+			flush(buf);
+		}
+		for(int i = 0; i < segCount; i++) {
+			// Figure out our data and segment sizes
+			int dataOffset = IMAGE_SEGMENT_SIZE_CAP * i;
+			short dataSize = (short)Math.min((fileLength - dataOffset), IMAGE_SEGMENT_SIZE_CAP);
+			short segSize = (short)(dataSize + (dataSize % 2));
+
+			// CDIMAGESEGMENT
+			{
+				buf.putShort(SIG_CDIMAGESEGMENT);          // Header.Signature - SIG_CDIMAGESEGMENT
+				buf.putInt(segSize + SIZE_CDIMAGESEGMENT); // Header.Length
+				buf.putShort((short)dataSize);             // DataSize
+				buf.putShort((short)segSize);              // SegSize
+				putData(buf, data, dataSize, segSize);
+				flush(buf);
+			}
+		}
+	}
+
+	/**
+	 * Writes the provided LMBCS-encoded script as a CDEVENT record followed by CDBLOBPART
+	 * records, adding a terminating null byte.
+	 *
+	 * @param data the LMBCS-encoded script, without a terminator
+	 */
+	public void writeJavaScriptLibrary(DataSource data) throws IOException {
+		int scriptLength = data.getLength();
+		int paddedLength = scriptLength + 1; // Make sure there's at least one \0 at the end
+		int segCount = segmentCount(paddedLength, BLOBPART_SIZE_CAP);
+
+		ByteBuffer buf = BUFFERS.get();
+		buf.clear();
+		// CDEVENT
+		{
+			buf.putShort(SIG_CDEVENT);                     // Header.Signature
+			buf.putShort(SIZE_CDEVENT);                    // Header.Length
+			buf.putInt(0);                                 // Flags
+			buf.putShort(HTML_EVENT_LIBRARY);              // EventType
+			buf.putShort(ACTION_TYPE_JAVASCRIPT);          // ActionType
+			buf.putInt(paddedLength + (paddedLength % 2)); // ActionLength
+			buf.putShort((short)0);                        // SignatureLength
+			buf.put(new byte[14]);                         // Reserved
+			flush(buf);
+		}
+		for(int i = 0; i < segCount; i++) {
+			// Figure out our data and segment sizes
+			int dataOffset = BLOBPART_SIZE_CAP * i;
+			short dataSize = (short)Math.min((paddedLength - dataOffset), BLOBPART_SIZE_CAP);
+			short segSize = (short)(dataSize + (dataSize % 2));
+
+			// CDBLOBPART
+			{
+				buf.putShort(SIG_CDBLOBPART);                     // Header.Signature
+				buf.putShort((short)(segSize + SIZE_CDBLOBPART)); // Header.Length
+				buf.putShort(SIG_CDEVENT);                        // OwnerSig
+				buf.putShort((short)segSize);                     // Length
+				buf.putShort((short)BLOBPART_SIZE_CAP);           // BlobMax
+				buf.put(new byte[8]);                             // Reserved
+				// Only the script's own bytes come from the source - the rest is the terminator
+				int available = Math.max(0, Math.min(dataSize, scriptLength - dataOffset));
+				putData(buf, data, available, segSize);
+				flush(buf);
+			}
+		}
+	}
+
+	// *******************************************************************************
+	// * Internal utility methods
+	// *******************************************************************************
+
+	private static int segmentCount(int length, int cap) {
+		int segCount = length / cap;
+		if (length % cap > 0) {
+			segCount++;
+		}
+		return segCount;
+	}
+
+	/**
+	 * Reads {@code dataSize} bytes from the source into the buffer, followed by zeros up to
+	 * {@code segSize} bytes.
+	 */
+	private static void putData(ByteBuffer buf, DataSource data, int dataSize, int segSize) throws IOException {
+		int pos = buf.position();
+		data.read(buf.array(), buf.arrayOffset() + pos, dataSize);
+		Arrays.fill(buf.array(), buf.arrayOffset() + pos + dataSize, buf.arrayOffset() + pos + segSize, (byte)0);
+		buf.position(pos + segSize);
+	}
+
+	private void flush(ByteBuffer buf) throws IOException {
+		os.write(buf.array(), buf.arrayOffset(), buf.position());
+		buf.clear();
+	}
+
+	private static EOFException unexpectedEnd(int expected, int read) {
+		return new EOFException(MessageFormat.format(Messages.getString("CDRecordWriter.unexpectedEndOfFile"), expected, read)); //$NON-NLS-1$
+	}
+
+	private static class ChannelSource implements DataSource {
+		private final FileChannel channel;
+		private final int length;
+
+		ChannelSource(FileChannel channel, int length) {
+			this.channel = channel;
+			this.length = length;
+		}
+
+		@Override
+		public int getLength() {
+			return length;
+		}
+
+		@Override
+		public void read(byte[] dest, int offset, int len) throws IOException {
+			ByteBuffer target = ByteBuffer.wrap(dest, offset, len);
+			while(target.hasRemaining()) {
+				if(channel.read(target) < 0) {
+					throw unexpectedEnd(len, len - target.remaining());
+				}
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			channel.close();
+		}
+	}
+
+	private static class EncodingSource implements DataSource {
+		private static final int CHAR_BUFFER_SIZE = 4096;
+
+		private final Reader reader;
+		private final CharsetEncoder encoder;
+		private final int length;
+		private final CharBuffer chars = CharBuffer.allocate(CHAR_BUFFER_SIZE);
+		private final ByteBuffer bytes;
+		private boolean endOfInput;
+		private boolean flushed;
+
+		EncodingSource(Path file, Charset fileCharset, Charset charset, int length) throws IOException {
+			this.reader = new InputStreamReader(Files.newInputStream(file), fileCharset);
+			this.encoder = charset.newEncoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+			this.length = length;
+			this.bytes = ByteBuffer.allocate((int)Math.ceil(CHAR_BUFFER_SIZE * encoder.maxBytesPerChar()));
+			chars.flip();
+			bytes.flip();
+		}
+
+		@Override
+		public int getLength() {
+			return length;
+		}
+
+		@Override
+		public void read(byte[] dest, int offset, int len) throws IOException {
+			int read = 0;
+			while(read < len) {
+				if(!bytes.hasRemaining() && !fill()) {
+					throw unexpectedEnd(len, read);
+				}
+				int count = Math.min(bytes.remaining(), len - read);
+				bytes.get(dest, offset + read, count);
+				read += count;
+			}
+		}
+
+		/**
+		 * Consumes the rest of the input, returning the number of encoded bytes.
+		 */
+		long count() throws IOException {
+			long total = 0;
+			while(fill()) {
+				total += bytes.remaining();
+				bytes.position(bytes.limit());
+			}
+			return total;
+		}
+
+		@Override
+		public void close() throws IOException {
+			reader.close();
+		}
+
+		/**
+		 * Encodes the next chunk of the input, once the previous chunk has been consumed.
+		 *
+		 * @return {@code false} if the input is exhausted
+		 */
+		private boolean fill() throws IOException {
+			bytes.clear();
+			while(bytes.position() == 0 && !flushed) {
+				if(!endOfInput) {
+					chars.compact();
+					endOfInput = reader.read(chars) < 0;
+					chars.flip();
+				}
+				CoderResult result = encoder.encode(chars, bytes, endOfInput);
+				if(result.isError()) {
+					result.throwException();
+				}
+				if(endOfInput && result.isUnderflow()) {
+					encoder.flush(bytes);
+					flushed = true;
+				}
+			}
+			bytes.flip();
+			return bytes.hasRemaining();
+		}
+	}
+
+	private static class MappedSource implements DataSource {
+		private final MappedByteBuffer buffer;
+
+		MappedSource(MappedByteBuffer buffer) {
+			this.buffer = buffer;
+		}
+
+		@Override
+		public int getLength() {
+			return buffer.capacity();
+		}
+
+		@Override
+		public void read(byte[] dest, int offset, int len) throws IOException {
+			if(buffer.remaining() < len) {
+				throw unexpectedEnd(len, buffer.remaining());
+			}
+			buffer.get(dest, offset, len);
+		}
+	}
+}
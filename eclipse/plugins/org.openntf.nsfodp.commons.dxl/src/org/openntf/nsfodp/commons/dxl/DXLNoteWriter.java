@@ -0,0 +1,265 @@
+/**
+ * Copyright © 2018-2019 Jesse Gallagher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openntf.nsfodp.commons.dxl;
+
+import static org.openntf.nsfodp.commons.dxl.ODSConstants.PER_FILE_ITEM_DATA_CAP;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.sql.Date;
+import java.time.Instant;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+import org.openntf.nsfodp.commons.h.Ods;
+
+/**
+ * Writes the DXL for a single note directly to a stream, for notes generated from
+ * scratch. Unlike the {@link DXLUtil} methods, this does not build a DOM tree or
+ * evaluate XPath expressions, and file data is encoded as it is read.
+ *
+ * <p>Items are written in the order the methods are called, and no check is made for
+ * duplicate item names.</p>
+ *
+ * @author Jesse Gallagher
+ * @since 2.1.0
+ */
+public class DXLNoteWriter implements AutoCloseable {
+	public static final String NS_DXL = "http://www.lotus.com/dxl"; //$NON-NLS-1$
+
+	private static final XMLOutputFactory OUTPUT_FACTORY = XMLOutputFactory.newFactory();
+
+	private final XMLStreamWriter xml;
+
+	/**
+	 * Creates a writer that writes DXL characters to the provided {@link Writer}.
+	 */
+	public DXLNoteWriter(Writer w) throws IOException {
+		try {
+			this.xml = OUTPUT_FACTORY.createXMLStreamWriter(w);
+		} catch(XMLStreamException e) {
+			throw new IOException(e);
+		}
+	}
+
+	/**
+	 * Creates a writer that writes UTF-8-encoded DXL to the provided {@link OutputStream}.
+	 */
+	public DXLNoteWriter(OutputStream os) throws IOException {
+		try {
+			this.xml = OUTPUT_FACTORY.createXMLStreamWriter(os, "UTF-8"); //$NON-NLS-1$
+		} catch(XMLStreamException e) {
+			throw new IOException(e);
+		}
+	}
+
+	/**
+	 * Writes the XML declaration and the opening {@code <note>} element.
+	 *
+	 * @param noteClass the value of the note's {@code class} attribute, e.g. "form"
+	 */
+	public void startNote(String noteClass) throws IOException {
+		try {
+			xml.writeStartDocument("UTF-8", "1.0"); //$NON-NLS-1$ //$NON-NLS-2$
+			xml.writeStartElement("note"); //$NON-NLS-1$
+			xml.writeAttribute("class", noteClass); //$NON-NLS-1$
+			xml.writeDefaultNamespace(NS_DXL);
+		} catch(XMLStreamException e) {
+			throw new IOException(e);
+		}
+	}
+
+	/**
+	 * Writes the closing {@code </note>} element and flushes the underlying stream.
+	 */
+	public void endNote() throws IOException {
+		try {
+			xml.writeEndElement();
+			xml.writeEndDocument();
+			xml.flush();
+		} catch(XMLStreamException e) {
+			throw new IOException(e);
+		}
+	}
+
+	/**
+	 * Writes a text item, as a textlist if more than one value is provided. Nothing is
+	 * written if {@code value} is {@code null}.
+	 */
+	public void writeItemString(String itemName, CharSequence... value) throws IOException {
+		if(value == null) {
+			return;
+		}
+		try {
+			startItem(itemName);
+			if(value.length > 1) {
+				xml.writeStartElement("textlist"); //$NON-NLS-1$
+			}
+			for(CharSequence val : value) {
+				writeElement("text", val.toString()); //$NON-NLS-1$
+			}
+			if(value.length > 1) {
+				xml.writeEndElement();
+			}
+			xml.writeEndElement();
+		} catch(XMLStreamException e) {
+			throw new IOException(e);
+		}
+	}
+
+	/**
+	 * Writes a number item, as a numberlist if more than one value is provided. Nothing
+	 * is written if {@code value} is {@code null}.
+	 */
+	public void writeItemNumber(String itemName, Number... value) throws IOException {
+		if(value == null) {
+			return;
+		}
+		try {
+			startItem(itemName);
+			if(value.length > 1) {
+				xml.writeStartElement("numberlist"); //$NON-NLS-1$
+			}
+			for(Number val : value) {
+				writeElement("number", val.toString()); //$NON-NLS-1$
+			}
+			if(value.length > 1) {
+				xml.writeEndElement();
+			}
+			xml.writeEndElement();
+		} catch(XMLStreamException e) {
+			throw new IOException(e);
+		}
+	}
+
+	/**
+	 * Writes a date/time item. Nothing is written if {@code value} is {@code null}.
+	 */
+	public void writeItemDateTime(String itemName, Instant value) throws IOException {
+		if(value == null) {
+			return;
+		}
+		try {
+			startItem(itemName);
+			writeElement("datetime", DXLUtil.DXL_DATETIME_FORMAT.get().format(Date.from(value))); //$NON-NLS-1$
+			xml.writeEndElement();
+		} catch(XMLStreamException e) {
+			throw new IOException(e);
+		}
+	}
+
+	public void writeItemDataRaw(String itemName, byte[] data, int itemCap, int headerSize) throws IOException {
+		try(OutputStream os = openItemDataRaw(itemName, itemCap, headerSize)) {
+			os.write(data);
+		}
+	}
+
+	/**
+	 * Opens a stream that writes CD record data as a series of {@code rawitemdata} items.
+	 * The stream must be closed before any other item is written.
+	 *
+	 * @param itemName the name of the items to create
+	 * @param itemCap the maximum number of bytes to store in each item
+	 * @param headerSize the size of the leading record header, which is stored in the first item
+	 *        in addition to {@code itemCap} bytes
+	 * @return an {@link OutputStream} to write the record data to
+	 * @see DXLUtil#openItemDataRaw
+	 */
+	public OutputStream openItemDataRaw(String itemName, int itemCap, int headerSize) {
+		return new RawItemDataOutputStream(itemCap, headerSize, new RawItemDataOutputStream.ItemHandler() {
+			@Override
+			public void startItem() throws IOException {
+				try {
+					DXLNoteWriter.this.startItem(itemName);
+					xml.writeStartElement("rawitemdata"); //$NON-NLS-1$
+					xml.writeAttribute("type", "1"); //$NON-NLS-1$ //$NON-NLS-2$
+				} catch(XMLStreamException e) {
+					throw new IOException(e);
+				}
+			}
+
+			@Override
+			public void characters(char[] chars, int offset, int length) throws IOException {
+				try {
+					xml.writeCharacters(chars, offset, length);
+				} catch(XMLStreamException e) {
+					throw new IOException(e);
+				}
+			}
+
+			@Override
+			public void endItem() throws IOException {
+				try {
+					xml.writeEndElement();
+					xml.writeEndElement();
+				} catch(XMLStreamException e) {
+					throw new IOException(e);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Writes the provided file content as file resource data items, reading no more than a
+	 * segment of the file into memory at a time.
+	 *
+	 * @see CDRecordWriter#writeFileResource(CDRecordWriter.DataSource)
+	 */
+	public void writeItemFileData(String itemName, InputStream is, int fileLength) throws IOException {
+		writeItemFileData(itemName, CDRecordWriter.of(is, fileLength));
+	}
+
+	public void writeItemFileData(String itemName, byte[] itemData) throws IOException {
+		writeItemFileData(itemName, CDRecordWriter.of(itemData));
+	}
+
+	public void writeItemFileData(String itemName, CDRecordWriter.DataSource data) throws IOException {
+		try(OutputStream os = openItemDataRaw(itemName, PER_FILE_ITEM_DATA_CAP, Ods.SIZE_CDFILEHEADER)) {
+			new CDRecordWriter(os).writeFileResource(data);
+		}
+	}
+
+	/**
+	 * Closes the XML writer. This does not close the underlying stream.
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			xml.close();
+		} catch(XMLStreamException e) {
+			throw new IOException(e);
+		}
+	}
+
+	// *******************************************************************************
+	// * Internal utility methods
+	// *******************************************************************************
+
+	private void startItem(String itemName) throws XMLStreamException {
+		xml.writeStartElement("item"); //$NON-NLS-1$
+		xml.writeAttribute("name", itemName); //$NON-NLS-1$
+	}
+
+	private void writeElement(String name, String text) throws XMLStreamException {
+		xml.writeStartElement(name);
+		xml.writeCharacters(text);
+		xml.writeEndElement();
+	}
+}
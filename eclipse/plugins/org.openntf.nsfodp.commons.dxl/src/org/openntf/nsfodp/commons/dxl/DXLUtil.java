@@ -15,27 +15,14 @@
  */
 package org.openntf.nsfodp.commons.dxl;
 
-import static org.openntf.nsfodp.commons.dxl.ODSConstants.FILE_SEGMENT_SIZE_CAP;
-import static org.openntf.nsfodp.commons.dxl.ODSConstants.IMAGE_SEGMENT_SIZE_CAP;
 import static org.openntf.nsfodp.commons.dxl.ODSConstants.PER_FILE_ITEM_DATA_CAP;
-import static org.openntf.nsfodp.commons.h.Ods.CDGRAPHIC_VERSION3;
-import static org.openntf.nsfodp.commons.h.Ods.SIG_CDFILEHEADER;
-import static org.openntf.nsfodp.commons.h.Ods.SIG_CDFILESEGMENT;
-import static org.openntf.nsfodp.commons.h.Ods.SIG_CDGRAPHIC;
-import static org.openntf.nsfodp.commons.h.Ods.SIG_CDIMAGEHEADER;
-import static org.openntf.nsfodp.commons.h.Ods.SIG_CDIMAGESEGMENT;
-import static org.openntf.nsfodp.commons.h.Ods.SIZE_CDFILEHEADER;
-import static org.openntf.nsfodp.commons.h.Ods.SIZE_CDFILESEGMENT;
-import static org.openntf.nsfodp.commons.h.Ods.SIZE_CDGRAPHIC;
-import static org.openntf.nsfodp.commons.h.Ods.SIZE_CDIMAGEHEADER;
-import static org.openntf.nsfodp.commons.h.Ods.SIZE_CDIMAGESEGMENT;
 
-import java.io.ByteArrayInputStream;
-import java.io.File;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.sql.Date;
@@ -44,8 +31,6 @@ import java.text.MessageFormat;
 import java.text.SimpleDateFormat;
 import java.time.Instant;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Base64;
 import java.util.List;
 
 import javax.activation.MimetypesFileTypeMap;
@@ -62,6 +47,9 @@ import com.ibm.commons.xml.XMLException;
 public enum DXLUtil {
 	;
 	
+	/** Loading the MIME type map reads several files, so it is shared */
+	private static final MimetypesFileTypeMap MIME_TYPES = new MimetypesFileTypeMap();
+	
 	public static final ThreadLocal<DateFormat> DXL_DATETIME_FORMAT = ThreadLocal.withInitial(() -> new SimpleDateFormat("yyyyMMdd'T'HHmmss,00X")); //$NON-NLS-1$
 
 	public static String escapeXPathValue(final String input) {
@@ -125,98 +113,128 @@ public enum DXLUtil {
 	}
 
 	public static void writeItemDataRaw(Document dxlDoc, String itemName, byte[] data, int itemCap, int headerSize) throws XMLException {
+		try(OutputStream os = openItemDataRaw(dxlDoc, itemName, itemCap, headerSize)) {
+			os.write(data);
+		} catch(IOException e) {
+			// Not expected, since the items are written to the DOM
+			throw new UncheckedIOException(e);
+		}
+	}
+	
+	/**
+	 * Opens a stream that writes CD record data to the provided note as a series of
+	 * {@code rawitemdata} items, replacing any existing items of the same name. The items
+	 * are complete once the stream is closed.
+	 * 
+	 * @param dxlDoc the note to write to
+	 * @param itemName the name of the items to create
+	 * @param itemCap the maximum number of bytes to store in each item
+	 * @param headerSize the size of the leading record header, which is stored in the first item
+	 *        in addition to {@code itemCap} bytes
+	 * @return an {@link OutputStream} to write the record data to
+	 * @since 2.1.0
+	 */
+	public static OutputStream openItemDataRaw(Document dxlDoc, String itemName, int itemCap, int headerSize) throws XMLException {
 		deleteItems(dxlDoc, itemName);
 		
 		Element note = (Element)DOMUtil.evaluateXPath(dxlDoc, "/note").getSingleNode(); //$NON-NLS-1$
-		
-		int dxlChunks = data.length / itemCap;
-		if(data.length % itemCap > 0) {
-			dxlChunks++;
-		}
-		int offset = 0;
-		Base64.Encoder base64 = Base64.getEncoder();
-		for (int i = 0; i < dxlChunks; i++) {
-			int chunkSize = Math.min(data.length-offset, itemCap + (i==0 ? headerSize : 0));
-			String chunkData = base64.encodeToString(Arrays.copyOfRange(data, offset, offset + chunkSize));
-	
-			Element itemNode = DOMUtil.createElement(dxlDoc, note, "item"); //$NON-NLS-1$
-			itemNode.setAttribute("name", itemName); //$NON-NLS-1$
-			Element fileDataNode = DOMUtil.createElement(dxlDoc, itemNode, "rawitemdata"); //$NON-NLS-1$
-			fileDataNode.setAttribute("type", "1"); //$NON-NLS-1$ //$NON-NLS-2$
-			// Write out the value with 72-column wrapping
-			StringBuilder wrapped = new StringBuilder("\n"); //$NON-NLS-1$
-			for(int stringIndex = 0; stringIndex < chunkData.length(); stringIndex += 72) {
-				wrapped.append(chunkData.substring(stringIndex, Math.min(stringIndex+72, chunkData.length())));
-				wrapped.append('\n');
+		// Base64 expands by a third, plus a line break every 72 characters
+		int itemChars = (itemCap + headerSize) / 3 * 4 + (itemCap + headerSize) / 54 + 8;
+		return new RawItemDataOutputStream(itemCap, headerSize, new RawItemDataOutputStream.ItemHandler() {
+			private StringBuilder text;
+			
+			@Override
+			public void startItem() {
+				text = new StringBuilder(itemChars);
 			}
-			fileDataNode.setTextContent(wrapped.toString());
-	
-			offset += chunkSize;
-		}
+			
+			@Override
+			public void characters(char[] chars, int offset, int length) {
+				text.append(chars, offset, length);
+			}
+			
+			@Override
+			public void endItem() {
+				Element itemNode = DOMUtil.createElement(dxlDoc, note, "item"); //$NON-NLS-1$
+				itemNode.setAttribute("name", itemName); //$NON-NLS-1$
+				Element fileDataNode = DOMUtil.createElement(dxlDoc, itemNode, "rawitemdata"); //$NON-NLS-1$
+				fileDataNode.setAttribute("type", "1"); //$NON-NLS-1$ //$NON-NLS-2$
+				fileDataNode.setTextContent(text.toString());
+				text = null;
+			}
+		});
 	}
 
 	public static void writeItemFileData(Document dxlDoc, String itemName, InputStream is, int fileLength) throws XMLException, IOException {
-		byte[] data = getFileResourceData(is, fileLength);
-		writeItemDataRaw(dxlDoc, itemName, data, PER_FILE_ITEM_DATA_CAP, Ods.SIZE_CDFILEHEADER);
+		writeItemFileData(dxlDoc, itemName, CDRecordWriter.of(is, fileLength));
+	}
+	
+	/**
+	 * Writes the provided data as file resource data items, reading no more than a segment of
+	 * the data into memory at a time.
+	 * 
+	 * @since 2.1.0
+	 */
+	public static void writeItemFileData(Document dxlDoc, String itemName, CDRecordWriter.DataSource data) throws XMLException, IOException {
+		try(OutputStream os = openItemDataRaw(dxlDoc, itemName, PER_FILE_ITEM_DATA_CAP, Ods.SIZE_CDFILEHEADER)) {
+			new CDRecordWriter(os).writeFileResource(data);
+		}
 	}
 
 	public static byte[] getFileResourceData(InputStream is, int fileLength) throws IOException {
-		// Spec out the structure
-		int segCount = fileLength / FILE_SEGMENT_SIZE_CAP;
-		if (fileLength % FILE_SEGMENT_SIZE_CAP > 0) {
-			segCount++;
-		}
-		
-		int totalSize = SIZE_CDFILEHEADER + (SIZE_CDFILESEGMENT * segCount) + fileLength + (fileLength % 2);
-		
-		// Now create a CD record for the file data
-		// TODO this could be a little more efficient by writing to a Base64 wrapper and
-		//   cutting off and making a new item node at size intervals
-		ByteBuffer buf = ByteBuffer.allocate(totalSize).order(ByteOrder.LITTLE_ENDIAN) ;
-		// CDFILEHEADER
-		{
-			buf.putShort(SIG_CDFILEHEADER);// Header.Signature
-			buf.putInt(SIZE_CDFILEHEADER); // Header.Length
-			buf.putShort((short)0);        // FileExtLen
-			buf.putInt(fileLength);        // FileDataSize
-			buf.putInt(segCount);          // SegCount
-			buf.putInt(0);                 // Flags
-			buf.putInt(0);                 // Reserved
-		}
-		for(int i = 0; i < segCount; i++) {
-			// Each chunk begins with a CDFILESEGMENT
+		ByteArrayOutputStream baos = new ByteArrayOutputStream(getFileResourceDataSize(fileLength));
+		writeFileResourceData(is, fileLength, baos);
+		return baos.toByteArray();
+	}
 	
-			// Figure out our data and segment sizes
-			int dataOffset = FILE_SEGMENT_SIZE_CAP * i;
-			short dataSize = (short)Math.min((fileLength - dataOffset), FILE_SEGMENT_SIZE_CAP);
-			short segSize = (short)(dataSize + (dataSize % 2));
+	/**
+	 * @param fileLength the size of the file content
+	 * @return the size of the CD record data written by
+	 *         {@link #writeFileResourceData(InputStream, int, OutputStream)}
+	 * @since 2.1.0
+	 */
+	public static int getFileResourceDataSize(int fileLength) {
+		return CDRecordWriter.getFileResourceSize(fileLength);
+	}
 	
-			// CDFILESEGMENT
-			{
-				buf.putShort(SIG_CDFILESEGMENT);          // Header.Signature
-				buf.putInt(segSize + SIZE_CDFILESEGMENT); // Header.Length
-				buf.putShort((short)dataSize);            // DataSize
-				buf.putShort((short)segSize);             // SegSize
-				buf.putInt(0);                            // Flags
-				buf.putInt(0);                            // Reserved
-				
-				byte[] segData = new byte[dataSize];
-				is.read(segData);
-				buf.put(segData);
-				if(segSize > dataSize) {
-					buf.put((byte)0);
-				}
-			}
-		}
-		return buf.array();
+	/**
+	 * Writes the provided file content as a CDFILEHEADER record followed by CDFILESEGMENT
+	 * records, reading no more than a segment of the file into memory at a time.
+	 * 
+	 * @param is the file content
+	 * @param fileLength the size of the file content
+	 * @param os the stream to write the CD record data to
+	 * @throws IOException if there is a problem reading the file or writing the records
+	 * @since 2.1.0
+	 */
+	public static void writeFileResourceData(InputStream is, int fileLength, OutputStream os) throws IOException {
+		new CDRecordWriter(os).writeFileResource(CDRecordWriter.of(is, fileLength));
 	}
 
 	public static byte[] getImageResourceData(Path file, Document dxlDoc) throws IOException, XMLException {
-		int fileLength = (int)Files.size(file);
-		// Load image info
-		File imageFile = file.toFile();
-		int height = 0; // true value not actually stored
-		int width = 0; // true value not actually stored
+		ByteArrayOutputStream baos = new ByteArrayOutputStream(CDRecordWriter.getImageResourceSize((int)Files.size(file)));
+		writeImageResourceData(file, dxlDoc, baos);
+		return baos.toByteArray();
+	}
+	
+	/**
+	 * Writes the provided image file as CDGRAPHIC, CDIMAGEHEADER, and CDIMAGESEGMENT records,
+	 * reading no more than a segment of the file into memory at a time.
+	 * 
+	 * @param file the image file
+	 * @param dxlDoc the image resource's DXL, used to determine the image type
+	 * @param os the stream to write the CD record data to
+	 * @throws IOException if there is a problem reading the file or writing the records
+	 * @since 2.1.0
+	 */
+	public static void writeImageResourceData(Path file, Document dxlDoc, OutputStream os) throws IOException, XMLException {
+		short imageType = getImageType(file, dxlDoc);
+		try(CDRecordWriter.DataSource data = CDRecordWriter.open(file)) {
+			new CDRecordWriter(os).writeImageResource(data, imageType);
+		}
+	}
+	
+	private static short getImageType(Path file, Document dxlDoc) throws XMLException {
 		String mimeType;
 		// First, check the DXL file
 		mimeType = DOMUtil.evaluateXPath(dxlDoc, "/*[name()='note']/*[name()='item'][@name='$MimeType']/*[name()='text']/text()").getStringValue(); //$NON-NLS-1$
@@ -235,110 +253,62 @@ public enum DXLUtil {
 		}
 		// Finally, try to guess it
 		if(StringUtil.isEmpty(mimeType)) {
-			mimeType = new MimetypesFileTypeMap().getContentType(imageFile);
+			mimeType = MIME_TYPES.getContentType(file.toFile());
 		}
 		if(mimeType == null) {
 			throw new RuntimeException(MessageFormat.format(Messages.getString("DXLUtil.noMimeType"), file)); //$NON-NLS-1$
 		}
-		short imageType = 0;
 		switch(mimeType) {
 		case "image/gif": //$NON-NLS-1$
-			imageType = 1; // CDIMAGETYPE_GIF
-			break;
+			return 1; // CDIMAGETYPE_GIF
 		case "image/jpeg": //$NON-NLS-1$
 		case "image/png": // for some reason //$NON-NLS-1$
-			imageType = 2; // CDIMAGETYPE_JPEG
-			break;
+			return 2; // CDIMAGETYPE_JPEG
 		case "image/bmp": //$NON-NLS-1$
-			imageType = 3; // CDIMAGETYPE_BMP
-			break;
+			return 3; // CDIMAGETYPE_BMP
 		default:
 			// Everything else is 0
-			break;
+			return 0;
 		}
-		
-		// Spec out the structure
-		int segCount = fileLength / IMAGE_SEGMENT_SIZE_CAP;
-		if (fileLength % IMAGE_SEGMENT_SIZE_CAP > 0) {
-			segCount++;
-		}
-		
-		int totalSize = SIZE_CDGRAPHIC + SIZE_CDIMAGEHEADER + (SIZE_CDIMAGESEGMENT * segCount) + fileLength + (fileLength % 2);
-		
-		// Now create a CD record for the file data
-		// TODO this could be a little more efficient by writing to a Base64 wrapper and
-		//   cutting off and making a new item node at size intervals
-		ByteBuffer buf = ByteBuffer.allocate(totalSize).order(ByteOrder.LITTLE_ENDIAN) ;
-		// CDGRAPHIC
-		{
-			buf.putShort(SIG_CDGRAPHIC); // Header.Signature
-			buf.putInt(SIZE_CDGRAPHIC);  // Header.Length
-			buf.putShort((short)0);      // DestSize.width
-			buf.putShort((short)0);      // DestSize.height
-			buf.putShort((short)0);      // CropSize.height
-			buf.putShort((short)0);      // CropSize.width
-			buf.putShort((short)0);      // CropOffset.left
-			buf.putShort((short)0);      // CropOffset.top
-			buf.putShort((short)0);      // CropOffset.right
-			buf.putShort((short)0);      // CropOffset.bottom
-			buf.putShort((short)0);      // fResize
-			buf.put(CDGRAPHIC_VERSION3); // Version
-			buf.put((byte)0);            // bFlags;
-			buf.putShort((short)0);      // wReserved
-		}
-		// CDIMAGEHEADER
-		{
-			buf.putShort(SIG_CDIMAGEHEADER);// Header.Signature
-			buf.putInt(SIZE_CDIMAGEHEADER); // Header.Length
-			buf.putShort(imageType);        // ImageType
-			buf.putShort((short)width);     // Width
-			buf.putShort((short)height);    // Height
-			buf.putInt(fileLength);         // ImageDataSize
-			buf.putInt(segCount);           // SegCount
-			buf.putInt(0);                  // Flags
-			buf.putInt(0);                  // Reserved
-		}
-		try(InputStream is = Files.newInputStream(file)) {
-			for(int i = 0; i < segCount; i++) {
-				// Each chunk begins with a CDIMAGESEGMENT
-	
-				// Figure out our data and segment sizes
-				int dataOffset = IMAGE_SEGMENT_SIZE_CAP * i;
-				short dataSize = (short)Math.min((fileLength - dataOffset), IMAGE_SEGMENT_SIZE_CAP);
-				short segSize = (short)(dataSize + (dataSize % 2));
+	}
+
+	/**
+	 * @param file the JavaScript file, encoded as UTF-8
+	 * @return the file as LMBCS-encoded CDEVENT and CDBLOBPART records
+	 * @since 2.1.0
+	 */
+	public static byte[] getJavaScriptLibraryData(Path file) throws IOException {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		writeJavaScriptLibraryData(file, baos);
+		return baos.toByteArray();
+	}
 	
-				// CDIMAGESEGMENT
-				{
-					buf.putShort(SIG_CDIMAGESEGMENT);          // Header.Signature - SIG_CDIMAGESEGMENT
-					buf.putInt(segSize + SIZE_CDIMAGESEGMENT); // Header.Length
-					buf.putShort((short)dataSize);             // DataSize
-					buf.putShort((short)segSize);              // SegSize
-					
-					byte[] segData = new byte[dataSize];
-					is.read(segData);
-					buf.put(segData);
-					if(segSize > dataSize) {
-						buf.put((byte)0);
-					}
-				}
-			}
+	/**
+	 * Writes the provided JavaScript file as LMBCS-encoded CDEVENT and CDBLOBPART records,
+	 * encoding no more than a segment of the file into memory at a time.
+	 * 
+	 * @param file the JavaScript file, encoded as UTF-8
+	 * @param os the stream to write the CD record data to
+	 * @throws IOException if there is a problem reading the file or writing the records
+	 * @since 2.1.0
+	 */
+	public static void writeJavaScriptLibraryData(Path file, OutputStream os) throws IOException {
+		try(CDRecordWriter.DataSource data = CDRecordWriter.encode(file, StandardCharsets.UTF_8, LMBCSCharset.INSTANCE)) {
+			new CDRecordWriter(os).writeJavaScriptLibrary(data);
 		}
-		return buf.array();
 	}
 
 	public static void writeItemFileData(Document dxlDoc, String itemName, Path file) throws XMLException, IOException {
 		if(!Files.isRegularFile(file)) {
 			throw new IllegalArgumentException(MessageFormat.format(Messages.getString("DXLUtil.cannotReadFile"), file)); //$NON-NLS-1$
 		}
-		try(InputStream is = Files.newInputStream(file)) {
-			writeItemFileData(dxlDoc, itemName, is, (int)Files.size(file));
+		try(CDRecordWriter.DataSource data = CDRecordWriter.open(file)) {
+			writeItemFileData(dxlDoc, itemName, data);
 		}
 	}
 
 	public static void writeItemFileData(Document dxlDoc, String itemName, byte[] itemData) throws XMLException, IOException {
-		try(InputStream is = new ByteArrayInputStream(itemData)) {
-			writeItemFileData(dxlDoc, itemName, is, itemData.length);
-		}
+		writeItemFileData(dxlDoc, itemName, CDRecordWriter.of(itemData));
 	}
 	
 	public static Element writeItemDateTime(Document dxlDoc, String itemName, boolean removeExisting, Instant value) throws XMLException {
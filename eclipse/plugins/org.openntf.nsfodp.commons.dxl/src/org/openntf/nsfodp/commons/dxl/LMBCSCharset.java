@@ -0,0 +1,207 @@
+/**
+ * Copyright © 2018-2019 Jesse Gallagher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openntf.nsfodp.commons.dxl;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+
+/**
+ * A pure-Java implementation of the Lotus Multi-Byte Character Set, as used by Notes with
+ * Latin-1 as its optimization group.
+ *
+ * <p>The encoder emits ASCII as single bytes, characters from code page 850 (LMBCS group 1)
+ * as single high bytes, C0 and C1 controls via the control group, and all other characters
+ * via the Unicode group. This is the subset needed to store design element source; the
+ * regional groups, which Notes may use for some scripts, are not emitted but are equivalent
+ * when read back.</p>
+ *
+ * <p>The decoder understands the same groups, and reports characters in other groups as
+ * unmappable.</p>
+ *
+ * @author Jesse Gallagher
+ * @since 2.1.0
+ */
+public class LMBCSCharset extends Charset {
+	public static final LMBCSCharset INSTANCE = new LMBCSCharset();
+
+	private static final byte GROUP_LATIN1 = 0x01;
+	private static final byte GROUP_CONTROL = 0x0F;
+	private static final byte GROUP_UNICODE = 0x14;
+	/** Stands in for a zero low byte in the Unicode group, which makes U+F600-U+F6FF ambiguous as in other LMBCS implementations */
+	private static final byte UNICODE_COMPAT_ZERO = (byte)0xF6;
+	/** Offset added to C0 controls in the control group */
+	private static final int CONTROL_OFFSET = 0x20;
+	/** Group bytes at or above this value introduce double-byte characters */
+	private static final int DOUBLE_BYTE_GROUP_START = 0x10;
+	/** The Lotus 1-2-3 system range byte, which is stored as-is */
+	private static final char SYSTEM_RANGE = 0x19;
+
+	/** Code page 850 characters for the bytes 0x80-0xFF */
+	private static final String CP850_HIGH =
+		  "ÇüéâäàåçêëèïîìÄÅ" //$NON-NLS-1$
+		+ "ÉæÆôöòûùÿÖÜø£Ø×ƒ" //$NON-NLS-1$
+		+ "áíóúñÑªº¿®¬½¼¡«»" //$NON-NLS-1$
+		+ "░▒▓│┤ÁÂÀ©╣║╗╝¢¥┐" //$NON-NLS-1$
+		+ "└┴┬├─┼ãÃ╚╔╩╦╠═╬¤" //$NON-NLS-1$
+		+ "ðÐÊËÈıÍÎÏ┘┌█▄¦Ì▀" //$NON-NLS-1$
+		+ "ÓßÔÒõÕµþÞÚÛÙýÝ¯´" //$NON-NLS-1$
+		+ "\u00AD±‗¾¶§÷¸°¨·¹³²■\u00A0"; //$NON-NLS-1$
+	/** Maps characters to their code page 850 bytes, or 0 if they are not in the upper half */
+	private static final byte[] CP850_LOOKUP = new byte[0x2600];
+	static {
+		for(int i = 0; i < CP850_HIGH.length(); i++) {
+			CP850_LOOKUP[CP850_HIGH.charAt(i)] = (byte)(0x80 + i);
+		}
+	}
+
+	private LMBCSCharset() {
+		super("x-LMBCS", new String[] { "LMBCS", "LMBCS-1" }); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+	}
+
+	@Override
+	public boolean contains(Charset cs) {
+		// Every UTF-16 code unit can be represented in the Unicode group
+		return true;
+	}
+
+	@Override
+	public CharsetEncoder newEncoder() {
+		return new Encoder(this);
+	}
+
+	@Override
+	public CharsetDecoder newDecoder() {
+		return new Decoder(this);
+	}
+
+	// *******************************************************************************
+	// * Internal utility methods
+	// *******************************************************************************
+
+	private static int encodedLength(char c) {
+		if(isSingleByte(c)) {
+			return 1;
+		} else if(isControl(c)) {
+			return 2;
+		} else if(c < CP850_LOOKUP.length && CP850_LOOKUP[c] != 0) {
+			return 1;
+		} else {
+			return 3;
+		}
+	}
+
+	private static boolean isSingleByte(char c) {
+		return (c >= 0x20 && c < 0x80) || c == 0 || c == '\t' || c == '\n' || c == '\r' || c == SYSTEM_RANGE;
+	}
+
+	private static boolean isControl(char c) {
+		return c < 0x20 || (c >= 0x80 && c < 0xA0);
+	}
+
+	private static class Encoder extends CharsetEncoder {
+		Encoder(Charset cs) {
+			super(cs, 1.1f, 3f, new byte[] { '?' });
+		}
+
+		@Override
+		protected CoderResult encodeLoop(CharBuffer in, ByteBuffer out) {
+			while(in.hasRemaining()) {
+				char c = in.get();
+				int length = encodedLength(c);
+				if(out.remaining() < length) {
+					in.position(in.position() - 1);
+					return CoderResult.OVERFLOW;
+				}
+				if(length == 1) {
+					out.put(isSingleByte(c) ? (byte)c : CP850_LOOKUP[c]);
+				} else if(length == 2) {
+					out.put(GROUP_CONTROL);
+					out.put((byte)(c < 0x20 ? c + CONTROL_OFFSET : c));
+				} else {
+					byte high = (byte)(c >>> 8);
+					byte low = (byte)c;
+					out.put(GROUP_UNICODE);
+					if(low == 0) {
+						out.put(UNICODE_COMPAT_ZERO);
+						out.put(high);
+					} else {
+						out.put(high);
+						out.put(low);
+					}
+				}
+			}
+			return CoderResult.UNDERFLOW;
+		}
+
+		@Override
+		public boolean canEncode(char c) {
+			return true;
+		}
+	}
+
+	private static class Decoder extends CharsetDecoder {
+		Decoder(Charset cs) {
+			super(cs, 1f, 1f);
+		}
+
+		@Override
+		protected CoderResult decodeLoop(ByteBuffer in, CharBuffer out) {
+			while(in.hasRemaining()) {
+				int start = in.position();
+				int b = in.get() & 0xFF;
+				if(!out.hasRemaining()) {
+					in.position(start);
+					return CoderResult.OVERFLOW;
+				}
+				if(b >= 0x80) {
+					out.put(CP850_HIGH.charAt(b - 0x80));
+				} else if(isSingleByte((char)b)) {
+					out.put((char)b);
+				} else {
+					// A group byte, which needs one or two following bytes
+					int needed = b >= DOUBLE_BYTE_GROUP_START ? 2 : 1;
+					if(in.remaining() < needed) {
+						in.position(start);
+						return CoderResult.UNDERFLOW;
+					}
+					int b1 = in.get() & 0xFF;
+					if(b == GROUP_LATIN1 && b1 >= 0x80) {
+						out.put(CP850_HIGH.charAt(b1 - 0x80));
+					} else if(b == GROUP_CONTROL && b1 >= CONTROL_OFFSET && b1 < 0x40) {
+						out.put((char)(b1 - CONTROL_OFFSET));
+					} else if(b == GROUP_CONTROL && b1 >= 0x80 && b1 < 0xA0) {
+						out.put((char)b1);
+					} else if(b == GROUP_UNICODE) {
+						int b2 = in.get() & 0xFF;
+						if(b1 == (UNICODE_COMPAT_ZERO & 0xFF)) {
+							out.put((char)(b2 << 8));
+						} else {
+							out.put((char)((b1 << 8) | b2));
+						}
+					} else {
+						in.position(start);
+						return CoderResult.unmappableForLength(1 + needed);
+					}
+				}
+			}
+			return CoderResult.UNDERFLOW;
+		}
+	}
+}
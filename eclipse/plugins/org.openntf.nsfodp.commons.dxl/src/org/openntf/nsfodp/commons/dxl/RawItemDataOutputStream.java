@@ -0,0 +1,169 @@
+/**
+ * Copyright © 2018-2019 Jesse Gallagher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openntf.nsfodp.commons.dxl;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Encodes CD record data written to it as the Base64 content of a series of DXL
+ * {@code rawitemdata} items, wrapped at 72 columns.
+ *
+ * <p>A new item is started each time the current one reaches the item cap, with the
+ * first item additionally holding the leading record header. Encoded characters are
+ * passed to the {@link ItemHandler} a line at a time, so no more than a single line
+ * is buffered regardless of the size of the data.</p>
+ *
+ * @author Jesse Gallagher
+ * @since 2.1.0
+ */
+public class RawItemDataOutputStream extends OutputStream {
+	/**
+	 * Receives the encoded content of each item.
+	 */
+	public interface ItemHandler {
+		/**
+		 * Called before the content of each item.
+		 */
+		void startItem() throws IOException;
+
+		/**
+		 * Called with encoded content for the current item, including line breaks.
+		 */
+		void characters(char[] chars, int offset, int length) throws IOException;
+
+		/**
+		 * Called after the content of each item.
+		 */
+		void endItem() throws IOException;
+	}
+
+	private static final char[] ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toCharArray(); //$NON-NLS-1$
+	private static final char[] NEWLINE = { '\n' };
+	private static final int LINE_LENGTH = 72;
+
+	private final int itemCap;
+	private final int headerSize;
+	private final ItemHandler handler;
+
+	private final byte[] group = new byte[3];
+	private int groupLength;
+	private final char[] line = new char[LINE_LENGTH + 1];
+	private int lineLength;
+
+	private boolean firstItem = true;
+	private boolean inItem;
+	private int itemBytes;
+	private int itemLimit;
+	private boolean closed;
+
+	/**
+	 * @param itemCap the maximum number of bytes to store in each item
+	 * @param headerSize the size of the record header, which is stored in the first item in
+	 *        addition to {@code itemCap} bytes
+	 * @param handler the handler to receive the encoded items
+	 */
+	public RawItemDataOutputStream(int itemCap, int headerSize, ItemHandler handler) {
+		if(itemCap < 1) {
+			throw new IllegalArgumentException("itemCap must be positive"); //$NON-NLS-1$
+		}
+		this.itemCap = itemCap;
+		this.headerSize = headerSize;
+		this.handler = handler;
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		if(closed) {
+			throw new IOException("Stream is closed"); //$NON-NLS-1$
+		}
+		if(!inItem) {
+			startItem();
+		}
+		group[groupLength++] = (byte)b;
+		if(groupLength == group.length) {
+			encodeGroup();
+		}
+		if(++itemBytes == itemLimit) {
+			endItem();
+		}
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		for(int i = off; i < off + len; i++) {
+			write(b[i]);
+		}
+	}
+
+	/**
+	 * Completes the current item, if any. This does not close the handler.
+	 */
+	@Override
+	public void close() throws IOException {
+		if(!closed) {
+			if(inItem) {
+				endItem();
+			}
+			closed = true;
+		}
+	}
+
+	// *******************************************************************************
+	// * Internal utility methods
+	// *******************************************************************************
+
+	private void startItem() throws IOException {
+		handler.startItem();
+		handler.characters(NEWLINE, 0, 1);
+		itemLimit = itemCap + (firstItem ? headerSize : 0);
+		firstItem = false;
+		itemBytes = 0;
+		inItem = true;
+	}
+
+	private void endItem() throws IOException {
+		if(groupLength > 0) {
+			encodeGroup();
+		}
+		if(lineLength > 0) {
+			flushLine();
+		}
+		handler.endItem();
+		inItem = false;
+	}
+
+	private void encodeGroup() throws IOException {
+		int b0 = group[0] & 0xFF;
+		int b1 = groupLength > 1 ? group[1] & 0xFF : 0;
+		int b2 = groupLength > 2 ? group[2] & 0xFF : 0;
+		line[lineLength++] = ALPHABET[b0 >>> 2];
+		line[lineLength++] = ALPHABET[((b0 << 4) | (b1 >>> 4)) & 0x3F];
+		line[lineLength++] = groupLength > 1 ? ALPHABET[((b1 << 2) | (b2 >>> 6)) & 0x3F] : '=';
+		line[lineLength++] = groupLength > 2 ? ALPHABET[b2 & 0x3F] : '=';
+		groupLength = 0;
+		// Lines are a multiple of four characters, so groups never straddle them
+		if(lineLength == LINE_LENGTH) {
+			flushLine();
+		}
+	}
+
+	private void flushLine() throws IOException {
+		line[lineLength++] = '\n';
+		handler.characters(line, 0, lineLength);
+		lineLength = 0;
+	}
+}
@@ -15,14 +15,23 @@
  */
 package org.openntf.nsfodp.commons.odp;
 
-import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.text.MessageFormat;
 import java.util.Objects;
 
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+
+import org.openntf.nsfodp.commons.dxl.CDRecordWriter;
+import org.openntf.nsfodp.commons.dxl.DXLNoteWriter;
 import org.openntf.nsfodp.commons.dxl.DXLUtil;
 import org.openntf.nsfodp.commons.dxl.ODSConstants;
 import org.openntf.nsfodp.commons.h.Ods;
@@ -30,6 +39,7 @@ import org.openntf.nsfodp.commons.odp.util.ODPUtil;
 import org.w3c.dom.Document;
 
 import com.ibm.commons.util.StringUtil;
+import com.ibm.commons.xml.DOMUtil;
 import com.ibm.commons.xml.XMLException;
 
 /**
@@ -74,36 +84,107 @@ public class AbstractSplitDesignElement {
 		}
 	}
 	
+	/**
+	 * @return the DXL of the element, serialized as a string
+	 * @since 2.1.0
+	 */
+	public String getDxlString() throws XMLException, IOException {
+		return DOMUtil.getXMLString(getDxl());
+	}
+	
+	/**
+	 * Writes the DXL of the element to the provided stream as UTF-8, without holding
+	 * the serialized form in memory.
+	 * 
+	 * @param os the stream to write to, which is not closed
+	 * @since 2.1.0
+	 */
+	public void writeDxl(OutputStream os) throws XMLException, IOException {
+		Document dxlDoc = getDxl();
+		try {
+			Transformer transformer = TransformerFactory.newInstance().newTransformer();
+			transformer.setOutputProperty(OutputKeys.ENCODING, "UTF-8"); //$NON-NLS-1$
+			transformer.transform(new DOMSource(dxlDoc), new StreamResult(os));
+		} catch(TransformerException e) {
+			throw new IOException(e);
+		}
+	}
+	
 	public void setOverrideData(byte[] overrideData) {
 		this.overrideData = overrideData;
 	}
 	
+	/**
+	 * @return the data to use in place of the data file's content, or {@code null}
+	 *         if the file is used as-is
+	 * @since 2.1.0
+	 */
+	public byte[] getOverrideData() {
+		return overrideData;
+	}
+	
 	protected Document attachFileData(Document dxlDoc) throws IOException, XMLException {
-		byte[] data = getCompositeData();
 		String itemName = getFileDataItem();
 		String sizeItemName = getFileSizeItem();
 		
-		DXLUtil.writeItemDataRaw(dxlDoc, itemName, data, ODSConstants.PER_FILE_ITEM_DATA_CAP, Ods.SIZE_CDFILEHEADER);
+		// Stream the file into the items, rather than building the whole CD record in memory
+		int fileLength;
+		try(CDRecordWriter.DataSource data = openFileData(); OutputStream os = DXLUtil.openItemDataRaw(dxlDoc, itemName, ODSConstants.PER_FILE_ITEM_DATA_CAP, Ods.SIZE_CDFILEHEADER)) {
+			fileLength = data.getLength();
+			new CDRecordWriter(os).writeFileResource(data);
+		}
 		if(StringUtil.isNotEmpty(sizeItemName)) {
-			DXLUtil.writeItemNumber(dxlDoc, sizeItemName, data.length);
+			DXLUtil.writeItemNumber(dxlDoc, sizeItemName, DXLUtil.getFileResourceDataSize(fileLength));
 		}
 		
 		return dxlDoc;
 	}
 	
+	/**
+	 * Writes the file data and size items for the element directly to the provided note,
+	 * as {@link #attachFileData(Document)} does for a DOM note.
+	 * 
+	 * @since 2.1.0
+	 */
+	protected void writeFileData(DXLNoteWriter writer) throws IOException {
+		String sizeItemName = getFileSizeItem();
+		
+		int fileLength;
+		try(CDRecordWriter.DataSource data = openFileData()) {
+			fileLength = data.getLength();
+			writer.writeItemFileData(getFileDataItem(), data);
+		}
+		if(StringUtil.isNotEmpty(sizeItemName)) {
+			writer.writeItemNumber(sizeItemName, DXLUtil.getFileResourceDataSize(fileLength));
+		}
+	}
+	
 	public byte[] getCompositeData() throws IOException, XMLException {
+		try(CDRecordWriter.DataSource data = openFileData()) {
+			ByteArrayOutputStream baos = new ByteArrayOutputStream(CDRecordWriter.getFileResourceSize(data.getLength()));
+			new CDRecordWriter(baos).writeFileResource(data);
+			return baos.toByteArray();
+		}
+	}
+	
+	private CDRecordWriter.DataSource openFileData() throws IOException {
 		if(this.overrideData != null) {
-			try(InputStream is = new ByteArrayInputStream(this.overrideData)) {
-				return DXLUtil.getFileResourceData(is, this.overrideData.length);
-			}
+			return CDRecordWriter.of(this.overrideData);
 		} else {
-			Path file = getDataFile();
-			if(!Files.isRegularFile(file)) {
-				throw new IllegalArgumentException(MessageFormat.format(Messages.AbstractSplitDesignElement_cannotReadFile, file));
-			}
-			try(InputStream is = Files.newInputStream(file)) {
-				return DXLUtil.getFileResourceData(is, (int)Files.size(file));
-			}
+			return CDRecordWriter.open(getReadableDataFile());
+		}
+	}
+	
+	/**
+	 * @return the data file, after checking that it exists
+	 * @throws IllegalArgumentException if the data file is not a readable file
+	 * @since 2.1.0
+	 */
+	protected Path getReadableDataFile() {
+		Path file = getDataFile();
+		if(!Files.isRegularFile(file)) {
+			throw new IllegalArgumentException(MessageFormat.format(Messages.AbstractSplitDesignElement_cannotReadFile, file));
 		}
+		return file;
 	}
 }
@@ -15,15 +15,19 @@
  */
 package org.openntf.nsfodp.commons.odp;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.text.MessageFormat;
 import java.util.function.Function;
 
-import org.openntf.nsfodp.commons.dxl.DXLUtil;
+import org.openntf.nsfodp.commons.dxl.DXLNoteWriter;
 import org.w3c.dom.Document;
-import org.w3c.dom.Element;
 
 import com.ibm.commons.util.StringUtil;
 import com.ibm.commons.xml.DOMUtil;
@@ -74,34 +78,68 @@ public class FileResource extends AbstractSplitDesignElement {
 		if(Files.isRegularFile(getDxlFile())) {
 			return super.getDxl();
 		} else {
-			if(nameProvider == null) {
-				throw new IllegalStateException(MessageFormat.format(Messages.FileResource_noNameProvider, getDataFile()));
+			byte[] dxl = getDxlString().getBytes(StandardCharsets.UTF_8);
+			try(InputStream is = new ByteArrayInputStream(dxl)) {
+				return DOMUtil.createDocument(is);
 			}
-			
-			Document dxlDoc = DOMUtil.createDocument();
-			Element note = DOMUtil.createElement(dxlDoc, "note"); //$NON-NLS-1$
-			note.setAttribute("class", "form"); //$NON-NLS-1$ //$NON-NLS-2$
-			note.setAttribute("xmlns", "http://www.lotus.com/dxl"); //$NON-NLS-1$ //$NON-NLS-2$
-			if(StringUtil.isNotEmpty(flags)) {
-				DXLUtil.writeItemString(dxlDoc, "$Flags", false, flags); //$NON-NLS-1$
-			}
-			if(StringUtil.isNotEmpty(flagsExt)) {
-				DXLUtil.writeItemString(dxlDoc, "$FlagsExt", false, flagsExt); //$NON-NLS-1$
-			}
-			String title = nameProvider.apply(getDataFile());
-			if(StringUtil.isNotEmpty(title)) {
-				DXLUtil.writeItemString(dxlDoc, "$TITLE", false, title); //$NON-NLS-1$
+		}
+	}
+	
+	@Override
+	public String getDxlString() throws XMLException, IOException {
+		if(Files.isRegularFile(getDxlFile())) {
+			return super.getDxlString();
+		} else {
+			// Generated notes are written directly, skipping the DOM
+			StringWriter w = new StringWriter();
+			try(DXLNoteWriter writer = new DXLNoteWriter(w)) {
+				writeGeneratedNote(writer);
 			}
-			String path = pathProvider.apply(getDataFile());
-			if(StringUtil.isNotEmpty(path)) {
-				DXLUtil.writeItemString(dxlDoc, "$FileNames", false, path); //$NON-NLS-1$
+			return w.toString();
+		}
+	}
+	
+	@Override
+	public void writeDxl(OutputStream os) throws XMLException, IOException {
+		if(Files.isRegularFile(getDxlFile())) {
+			super.writeDxl(os);
+		} else {
+			try(DXLNoteWriter writer = new DXLNoteWriter(os)) {
+				writeGeneratedNote(writer);
 			}
-			
-			return attachFileData(dxlDoc);
-		}		
+		}
 	}
 	
 	public boolean isCopyToClasses() {
 		return copyToClasses;
 	}
+	
+	// *******************************************************************************
+	// * Internal utility methods
+	// *******************************************************************************
+	
+	private void writeGeneratedNote(DXLNoteWriter writer) throws IOException {
+		if(nameProvider == null) {
+			throw new IllegalStateException(MessageFormat.format(Messages.FileResource_noNameProvider, getDataFile()));
+		}
+		
+		writer.startNote("form"); //$NON-NLS-1$
+		if(StringUtil.isNotEmpty(flags)) {
+			writer.writeItemString("$Flags", flags); //$NON-NLS-1$
+		}
+		if(StringUtil.isNotEmpty(flagsExt)) {
+			writer.writeItemString("$FlagsExt", flagsExt); //$NON-NLS-1$
+		}
+		String title = nameProvider.apply(getDataFile());
+		if(StringUtil.isNotEmpty(title)) {
+			writer.writeItemString("$TITLE", title); //$NON-NLS-1$
+		}
+		String path = pathProvider.apply(getDataFile());
+		if(StringUtil.isNotEmpty(path)) {
+			writer.writeItemString("$FileNames", path); //$NON-NLS-1$
+		}
+		
+		writeFileData(writer);
+		writer.endNote();
+	}
 }
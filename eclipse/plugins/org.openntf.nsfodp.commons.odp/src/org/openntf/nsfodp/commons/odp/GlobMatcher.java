@@ -32,6 +32,7 @@ class GlobMatcher {
 	/** Platform-specific PathMatcher separator, escaped in the case of Windows */
 	public static final String MATCH_SEP = File.separatorChar == '\\' ? "\\\\" : File.separator; //$NON-NLS-1$
 	
+	private final String glob;
 	private final PathMatcher matcher;
 	private final Function<Path, ? extends AbstractSplitDesignElement> elementProvider;
 
@@ -40,10 +41,19 @@ class GlobMatcher {
 	 * @param elementProvider a function that provides an element object for a given path
 	 */
 	public GlobMatcher(String glob, Function<Path, ? extends AbstractSplitDesignElement> elementProvider) {
+		this.glob = glob;
 		this.matcher = glob(glob);
 		this.elementProvider = elementProvider;
 	}
 
+	/**
+	 * @return the Unix-format glob this matcher was created with
+	 * @since 2.1.0
+	 */
+	public String getGlob() {
+		return glob;
+	}
+
 	public PathMatcher getMatcher() {
 		return matcher;
 	}
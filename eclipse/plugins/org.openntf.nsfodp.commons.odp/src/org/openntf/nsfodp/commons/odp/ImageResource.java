@@ -16,10 +16,8 @@
 package org.openntf.nsfodp.commons.odp;
 
 import java.io.IOException;
-import java.io.InputStream;
-import java.nio.file.Files;
+import java.io.OutputStream;
 import java.nio.file.Path;
-import java.text.MessageFormat;
 
 import org.openntf.nsfodp.commons.dxl.DXLUtil;
 import org.openntf.nsfodp.commons.dxl.ODSConstants;
@@ -53,23 +51,19 @@ public class ImageResource extends FileResource {
 	
 	@Override
 	protected Document attachFileData(Document dxlDoc) throws IOException, XMLException {
-		byte[] data = getCompositeData();
 		String itemName = getFileDataItem();
 		
-		DXLUtil.writeItemDataRaw(dxlDoc, itemName, data, ODSConstants.PER_IMAGE_ITEM_DATA_CAP, Ods.SIZE_CDIMAGEHEADER + Ods.SIZE_CDGRAPHIC);
+		try(OutputStream os = DXLUtil.openItemDataRaw(dxlDoc, itemName, ODSConstants.PER_IMAGE_ITEM_DATA_CAP, Ods.SIZE_CDIMAGEHEADER + Ods.SIZE_CDGRAPHIC)) {
+			DXLUtil.writeImageResourceData(getReadableDataFile(), dxlDoc, os);
+		}
 		
 		return dxlDoc;
 	}
 
 	@Override
 	public byte[] getCompositeData() throws IOException, XMLException {
-		Path file = getDataFile();
-		if(!Files.isRegularFile(file)) {
-			throw new IllegalArgumentException(MessageFormat.format(Messages.AbstractSplitDesignElement_cannotReadFile, file));
-		}
+		Path file = getReadableDataFile();
 		Document dxlDoc = ODPUtil.readXml(getDxlFile());
-		try(InputStream is = Files.newInputStream(file)) {
-			return DXLUtil.getImageResourceData(file, dxlDoc);
-		}
+		return DXLUtil.getImageResourceData(file, dxlDoc);
 	}
 }
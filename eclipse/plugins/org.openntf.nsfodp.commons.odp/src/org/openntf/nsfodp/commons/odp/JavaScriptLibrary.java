@@ -16,12 +16,12 @@
 package org.openntf.nsfodp.commons.odp;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.file.Path;
 
 import org.openntf.nsfodp.commons.dxl.DXLUtil;
 import org.openntf.nsfodp.commons.dxl.ODSConstants;
 import org.openntf.nsfodp.commons.h.Ods;
-import org.openntf.nsfodp.commons.odp.util.DXLNativeUtil;
 import org.w3c.dom.Document;
 
 import com.ibm.commons.xml.XMLException;
@@ -44,15 +44,16 @@ public class JavaScriptLibrary extends AbstractSourceDesignElement {
 	
 	@Override
 	public byte[] getCompositeData() throws IOException {
-		return DXLNativeUtil.getJavaScriptLibraryData(getDataFile());
+		return DXLUtil.getJavaScriptLibraryData(getDataFile());
 	}
 	
 	@Override
 	protected Document attachFileData(Document dxlDoc) throws IOException, XMLException {
-		byte[] data = getCompositeData();
 		String itemName = getFileDataItem();
 		
-		DXLUtil.writeItemDataRaw(dxlDoc, itemName, data, ODSConstants.PER_BLOB_ITEM_DATA_CAP, Ods.SIZE_CDEVENT);
+		try(OutputStream os = DXLUtil.openItemDataRaw(dxlDoc, itemName, ODSConstants.PER_BLOB_ITEM_DATA_CAP, Ods.SIZE_CDEVENT)) {
+			DXLUtil.writeJavaScriptLibraryData(getDataFile(), os);
+		}
 		
 		return dxlDoc;
 	}
@@ -17,7 +17,6 @@ package org.openntf.nsfodp.commons.odp;
 
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.PathMatcher;
@@ -25,21 +24,16 @@ import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
-import java.util.function.Function;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
+import org.openntf.nsfodp.commons.NoteType;
 import org.openntf.nsfodp.commons.odp.util.ODPUtil;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
 
-import com.ibm.commons.xml.DOMUtil;
 import com.ibm.commons.xml.XMLException;
-import com.ibm.commons.xml.XResult;
 
 /**
  * Represents an On-Disk Project version of an NSF.
@@ -48,33 +42,44 @@ import com.ibm.commons.xml.XResult;
  * @since 2.0.0
  */
 public class OnDiskProject {
-	public static final List<PathMatcher> DIRECT_DXL_FILES = Stream.of(
-		"AppProperties/$DBIcon", //$NON-NLS-1$
-		"Code/dbscript.lsdb", //$NON-NLS-1$
-		"Code/actions/Shared Actions", //$NON-NLS-1$
-		"Code/Agents/*.ja", //$NON-NLS-1$
-		"Code/Agents/*.fa", //$NON-NLS-1$
-		"Code/Agents/*.ija", //$NON-NLS-1$
-		"Code/Agents/*.lsa", //$NON-NLS-1$
-		"Code/Agents/*.aa", //$NON-NLS-1$
-		"Code/ScriptLibraries/*.javalib", //$NON-NLS-1$
-		"Forms/*", //$NON-NLS-1$
-		"Framesets/*", //$NON-NLS-1$
-		"Pages/*", //$NON-NLS-1$
-		"Resources/AboutDocument", //$NON-NLS-1$
-		"Resources/UsingDocument", //$NON-NLS-1$
-		"SharedElements/Fields/*", //$NON-NLS-1$
-		"SharedElements/Outlines/*", //$NON-NLS-1$
-		"SharedElements/Subforms/*", //$NON-NLS-1$
-		"Views/*" //$NON-NLS-1$
-	).map(GlobMatcher::glob).collect(Collectors.toList());
+	/**
+	 * Note types whose ODP files are stored as importable DXL, in import order. Their globs
+	 * come from {@link NoteType#getGlob()}, so that the ODP and metadata rules share one source.
+	 */
+	static final List<NoteType> DIRECT_DXL_TYPES = Arrays.asList(
+		NoteType.DBIcon,
+		NoteType.DBScript,
+		NoteType.SharedActions,
+		NoteType.JavaAgent,
+		NoteType.FormulaAgent,
+		NoteType.ImportedJavaAgent,
+		NoteType.LotusScriptAgent,
+		NoteType.SimpleActionAgent,
+		NoteType.JavaLibrary,
+		NoteType.Form,
+		NoteType.Frameset,
+		NoteType.Page,
+		NoteType.AboutDocument,
+		NoteType.UsingDocument,
+		NoteType.SharedField,
+		NoteType.Outline,
+		NoteType.Subform,
+		NoteType.View
+	);
+	/** Unix-style globs for elements that are stored as importable DXL */
+	static final List<String> DIRECT_DXL_GLOBS = DIRECT_DXL_TYPES.stream().map(NoteType::getGlob).collect(Collectors.toList());
+	public static final List<PathMatcher> DIRECT_DXL_FILES = DIRECT_DXL_GLOBS.stream().map(GlobMatcher::glob).collect(Collectors.toList());
 	
-	public static final List<PathMatcher> IGNORED_FILES = Stream.of(
+	/** Unix-style globs for files that should never be treated as design elements */
+	static final List<String> IGNORED_GLOBS = Arrays.asList(
 		"**/.DS_Store", //$NON-NLS-1$
 		"**/Thumbs.db" //$NON-NLS-1$
-	).map(GlobMatcher::glob).collect(Collectors.toList());
+	);
+	public static final List<PathMatcher> IGNORED_FILES = IGNORED_GLOBS.stream().map(GlobMatcher::glob).collect(Collectors.toList());
 
 	private final Path baseDir;
+	private volatile ProjectIndex index;
+	private volatile ProjectDescriptor descriptor;
 	
 	public final List<GlobMatcher> FILE_RESOURCES;
 	
@@ -125,20 +130,7 @@ public class OnDiskProject {
 	 * @throws XMLException 
 	 */
 	public Collection<Path> getJars() throws IOException, XMLException {
-		List<Path> result = new ArrayList<>();
-		
-		Path jars = baseDir.resolve("Code").resolve("Jars"); //$NON-NLS-1$ //$NON-NLS-2$
-		if(Files.exists(jars) && Files.isDirectory(jars)) {
-			Files.find(jars, Integer.MAX_VALUE,
-					(path, attr) -> attr.isRegularFile() && path.getFileName().toString().endsWith(".jar") //$NON-NLS-1$
-				).forEach(result::add);
-		}
-		Path lib = baseDir.resolve("WebContent").resolve("WEB-INF").resolve("lib"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
-		if(Files.exists(lib) && Files.isDirectory(lib)) {
-			Files.find(lib, Integer.MAX_VALUE,
-					(path, attr) -> attr.isRegularFile() && path.getFileName().toString().endsWith(".jar") //$NON-NLS-1$
-				).forEach(result::add);
-		}
+		List<Path> result = new ArrayList<>(getIndex().getJars());
 		result.addAll(this.findManualJars());
 		return result;
 	}
@@ -183,15 +175,30 @@ public class OnDiskProject {
 		return result;
 	}
 	
-	public List<String> getRequiredBundles() throws XMLException {
+	public List<String> getRequiredBundles() throws XMLException, IOException {
 		// TODO adapt to FP10 MANIFEST.MF style?
-		Document pluginXml = ODPUtil.readXml(getPluginFile());
-		return Arrays.stream(DOMUtil.evaluateXPath(pluginXml, "/plugin/requires/import").getNodes()) //$NON-NLS-1$
-			.map(Element.class::cast)
-			.map(el -> el.getAttribute("plugin")) //$NON-NLS-1$
+		getPluginFile();
+		return getDescriptor().getRequiredBundles().stream()
+			.map(ProjectDescriptor.RequiredBundle::getId)
 			.collect(Collectors.toList());
 	}
 	
+	/**
+	 * Retrieves the parsed model of the ".classpath" and "plugin.xml" files for this
+	 * project, re-reading them only when they have changed on disk.
+	 * 
+	 * @return the current {@link ProjectDescriptor} for this project
+	 * @throws IOException if there is a problem reading the configuration files
+	 * @throws XMLException if there is a problem parsing the configuration files
+	 * @since 2.1.0
+	 */
+	public ProjectDescriptor getDescriptor() throws IOException, XMLException {
+		getClasspathFile();
+		ProjectDescriptor result = ProjectDescriptor.get(baseDir, descriptor);
+		this.descriptor = result;
+		return result;
+	}
+	
 	/**
 	 * Generates a map of source folders to the Java source files they contain.
 	 * 
@@ -201,35 +208,44 @@ public class OnDiskProject {
 	 * @throws FileNotFoundException if one of the configured class paths doesn't exist
 	 */
 	public Map<Path, List<JavaSource>> getJavaSourceFiles() throws FileNotFoundException, XMLException, IOException {
-		return findSourceFolders().stream()
-				.collect(Collectors.toMap(
-					Function.identity(),
-					ODPUtil::listJavaFiles
-				));
+		List<Path> javaFiles = getIndex().getJavaSourceFiles();
+		Map<Path, List<JavaSource>> result = new LinkedHashMap<>();
+		for(Path sourceFolder : findSourceFolders()) {
+			if(sourceFolder.startsWith(baseDir)) {
+				result.put(sourceFolder, javaFiles.stream()
+					.filter(path -> path.startsWith(sourceFolder))
+					.map(JavaSource::new)
+					.collect(Collectors.toList())
+				);
+			} else {
+				// Folders outside the project aren't part of the index
+				result.put(sourceFolder, ODPUtil.listJavaFiles(sourceFolder));
+			}
+		}
+		return result;
 	}
 	
 	public List<CustomControl> getCustomControls() throws IOException {
-		Path dir = baseDir.resolve("CustomControls"); //$NON-NLS-1$
-		if(Files.exists(dir) && Files.isDirectory(dir)) {
-			return Files.find(dir, 1,
-					(path, attr) -> path.toString().endsWith(".xsp") && attr.isRegularFile()) //$NON-NLS-1$
-					.map(path -> new CustomControl(path))
-					.collect(Collectors.toList());
-		} else {
-			return Collections.emptyList();
-		}
+		return getIndex().getCustomControls().stream()
+			.map(CustomControl::new)
+			.collect(Collectors.toList());
 	}
 	
 	public List<XPage> getXPages() throws IOException {
-		Path dir = baseDir.resolve("XPages"); //$NON-NLS-1$
-		if(Files.exists(dir) && Files.isDirectory(dir)) {
-			return Files.find(dir, 1,
-					(path, attr) -> path.toString().endsWith(".xsp") && attr.isRegularFile()) //$NON-NLS-1$
-					.map(path -> new XPage(path))
-					.collect(Collectors.toList());
-		} else {
-			return Collections.emptyList();
-		}
+		return getIndex().getXPages().stream()
+			.map(XPage::new)
+			.collect(Collectors.toList());
+	}
+	
+	/**
+	 * Returns the files containing DXL that does not need any additional processing
+	 * or contextual information to import, without reading their contents.
+	 * 
+	 * @return a {@link List} of file {@link Path}s
+	 * @since 2.1.0
+	 */
+	public List<Path> getDirectDXLFiles() {
+		return getIndexUnchecked().getDirectDxlFiles();
 	}
 	
 	/**
@@ -239,46 +255,24 @@ public class OnDiskProject {
 	 * @return a {@link Map} of file {@link Path}s to {@link String}s containing DXL
 	 */
 	public Map<Path, String> getDirectDXLElements() {
-		return DIRECT_DXL_FILES.stream()
-			.map(glob -> {
-				try {
-					return Files.find(baseDir, Integer.MAX_VALUE, (path, attr) -> glob.matches(baseDir.relativize(path)));
-				} catch (IOException e) {
-					throw new RuntimeException(e);
-				}
-			})
-			.flatMap(Function.identity())
-			.collect(Collectors.toMap(Function.identity(), ODPUtil::readFile));
+		Map<Path, String> result = new LinkedHashMap<>();
+		for(Path path : getIndexUnchecked().getDirectDxlFiles()) {
+			result.put(path, ODPUtil.readFile(path));
+		}
+		return result;
 	}
 	
 	public List<AbstractSplitDesignElement> getFileResources() {
-		return FILE_RESOURCES.stream()
-			.map(matcher -> {
-				try {
-					return Files.find(baseDir, Integer.MAX_VALUE,
-						(path, attr) -> {
-							for(PathMatcher ignoreMatcher : IGNORED_FILES) {
-								if(ignoreMatcher.matches(path)) {
-									return false;
-								}
-							}
-							return attr.isRegularFile() && matcher.getMatcher().matches(baseDir.relativize(path)) && !path.getFileName().toString().endsWith(".metadata"); //$NON-NLS-1$
-						}
-					).map(matcher::getElement);
-				} catch (IOException e) {
-					throw new RuntimeException(e);
-				}
-			})
-			.flatMap(Function.identity())
+		return getIndexUnchecked().getFileResources().stream()
+			.map(entry -> entry.getValue().getElement(entry.getKey()))
 			.filter(Objects::nonNull)
 			.map(AbstractSplitDesignElement.class::cast)
 			.collect(Collectors.toList());
 	}
 	
 	public List<LotusScriptLibrary> getLotusScriptLibraries() throws IOException {
-		PathMatcher glob = GlobMatcher.glob("Code/ScriptLibraries/*.lss"); //$NON-NLS-1$
-		return Files.find(baseDir, Integer.MAX_VALUE, (path, attr) -> attr.isRegularFile() && glob.matches(baseDir.relativize(path)))
-			.map(path -> new LotusScriptLibrary(path))
+		return getIndex().getLotusScriptLibraries().stream()
+			.map(LotusScriptLibrary::new)
 			.collect(Collectors.toList());
 	}
 	
@@ -291,70 +285,60 @@ public class OnDiskProject {
 	 * @throws XMLException 
 	 */
 	public boolean hasXPagesElements() throws IOException, XMLException {
-		Path xpages = baseDir.resolve("XPages"); //$NON-NLS-1$
-		if(Files.exists(xpages) && Files.list(xpages).count() > 0) {
-			return true;
-		}
-		Path ccs = baseDir.resolve("CustomControls"); //$NON-NLS-1$
-		if(Files.exists(ccs) && Files.list(ccs).count() > 0) {
-			return true;
-		}
-		boolean hasJava = findSourceFolders().stream()
-				.map(t -> {
-					try {
-						return Files.list(t);
-					} catch (IOException e) {
-						throw new RuntimeException(e);
-					}
-				})
-				.map(Stream::count)
-				.anyMatch(i -> i > 0);
-		if(hasJava) {
+		ProjectIndex index = getIndex();
+		if(!index.getXPages().isEmpty() || !index.getCustomControls().isEmpty()) {
 			return true;
 		}
-		return false;
+		return getJavaSourceFiles().values().stream().anyMatch(sources -> !sources.isEmpty());
+	}
+	
+	/**
+	 * Discards the current file index, causing the project directory to be walked
+	 * again on the next request for design elements.
+	 */
+	public void refreshIndex() {
+		this.index = null;
 	}
 	
 	// *******************************************************************************
 	// * Internal utility methods
 	// *******************************************************************************
 	
-	private List<Path> findSourceFolders() throws FileNotFoundException, IOException, XMLException {
-		Path classpath = getClasspathFile();
-		if(!Files.exists(classpath)) {
-			return Collections.emptyList();
+	/**
+	 * Retrieves the classified file index for this project, walking the project
+	 * directory on first access.
+	 */
+	private ProjectIndex getIndex() throws IOException {
+		ProjectIndex result = this.index;
+		if(result == null) {
+			synchronized(this) {
+				result = this.index;
+				if(result == null) {
+					result = ProjectIndex.build(this);
+					this.index = result;
+				}
+			}
 		}
-		
-		Document domDoc;
-		try(InputStream is = Files.newInputStream(classpath)) {
-			domDoc = DOMUtil.createDocument(is);
+		return result;
+	}
+	
+	private ProjectIndex getIndexUnchecked() {
+		try {
+			return getIndex();
+		} catch (IOException e) {
+			throw new RuntimeException(e);
 		}
-		XResult xresult = DOMUtil.evaluateXPath(domDoc, "/classpath/classpathentry[kind=src]"); //$NON-NLS-1$
-		List<String> paths = Arrays.stream(xresult.getNodes())
-			.map(node -> Element.class.cast(node))
-			.map(el -> el.getAttribute("path")) //$NON-NLS-1$
-			.filter(path -> !"Local".equals(path)) //$NON-NLS-1$
-			.collect(Collectors.toList());
-		paths.add("Code/Java"); //$NON-NLS-1$
-		return paths.stream()
+	}
+	
+	private List<Path> findSourceFolders() throws FileNotFoundException, IOException, XMLException {
+		return getDescriptor().getSourceFolders().stream()
 			.map(path -> getBaseDirectory().resolve(path))
 			.filter(Files::exists)
 			.filter(Files::isDirectory)
 			.collect(Collectors.toList());
 	}
 	private List<Path> findManualJars() throws IOException, XMLException {
-		Path classpath = getClasspathFile();
-		if(!Files.exists(classpath)) {
-			return Collections.emptyList();
-		}
-		Document domDoc;
-		try(InputStream is = Files.newInputStream(classpath)) {
-			domDoc = DOMUtil.createDocument(is);
-		}
-		XResult xresult = DOMUtil.evaluateXPath(domDoc, "/classpath/classpathentry[kind=lib]"); //$NON-NLS-1$
-		return Arrays.stream(xresult.getNodes())
-			.map(node -> Element.class.cast(node))
-			.map(el -> el.getAttribute("path")) //$NON-NLS-1$
+		return getDescriptor().getLibraries().stream()
 			.map(path -> getBaseDirectory().resolve(path))
 			.filter(Files::exists)
 			.filter(Files::isRegularFile)
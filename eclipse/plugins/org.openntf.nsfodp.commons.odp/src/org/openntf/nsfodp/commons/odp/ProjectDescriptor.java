@@ -0,0 +1,244 @@
+/**
+ * Copyright © 2018-2019 Jesse Gallagher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openntf.nsfodp.commons.odp;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import com.ibm.commons.xml.DOMUtil;
+import com.ibm.commons.xml.XMLException;
+
+/**
+ * An immutable model of the Eclipse configuration files of an on-disk project,
+ * namely the source folders and libraries from ".classpath" and the required
+ * bundles from "plugin.xml".
+ *
+ * <p>Callers that hold on to a project, such as {@link OnDiskProject}, can pass their
+ * previous descriptor to {@link #get(Path, ProjectDescriptor)} so that the files are
+ * re-read only when the modification time or size of either file changes. Nothing is
+ * cached globally, so descriptors are released along with their projects.</p>
+ *
+ * <p>This class does not depend on OSGi or Notes classes, so that it can be
+ * used from the Maven plugin as well.</p>
+ *
+ * @author Jesse Gallagher
+ * @since 2.1.0
+ */
+public final class ProjectDescriptor {
+	/**
+	 * The source folder that is included for any project with a ".classpath" file, whether
+	 * or not it is declared
+	 */
+	public static final String DEFAULT_SOURCE_FOLDER = "Code/Java"; //$NON-NLS-1$
+
+	/**
+	 * Represents a dependency declared in "plugin.xml".
+	 */
+	public static final class RequiredBundle {
+		private final String id;
+		private final boolean optional;
+
+		public RequiredBundle(String id, boolean optional) {
+			this.id = id;
+			this.optional = optional;
+		}
+
+		public String getId() {
+			return id;
+		}
+
+		public boolean isOptional() {
+			return optional;
+		}
+
+		@Override
+		public String toString() {
+			return "RequiredBundle [id=" + id + ", optional=" + optional + "]"; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		}
+	}
+
+	private final FileStamp classpathStamp;
+	private final FileStamp pluginStamp;
+	private final List<String> sourceFolders;
+	private final List<String> libraries;
+	private final List<RequiredBundle> requiredBundles;
+
+	private ProjectDescriptor(FileStamp classpathStamp, FileStamp pluginStamp, Collection<String> sourceFolders, List<String> libraries, List<RequiredBundle> requiredBundles) {
+		this.classpathStamp = classpathStamp;
+		this.pluginStamp = pluginStamp;
+		this.sourceFolders = Collections.unmodifiableList(new ArrayList<>(sourceFolders));
+		this.libraries = Collections.unmodifiableList(libraries);
+		this.requiredBundles = Collections.unmodifiableList(requiredBundles);
+	}
+
+	/**
+	 * Reads the descriptor for the project in the provided directory.
+	 *
+	 * @param baseDir the base directory of the ODP
+	 * @return a {@link ProjectDescriptor} reflecting the current configuration files
+	 * @throws IOException if there is a problem reading the configuration files
+	 * @throws XMLException if there is a problem parsing the configuration files
+	 */
+	public static ProjectDescriptor get(Path baseDir) throws IOException, XMLException {
+		return get(baseDir, null);
+	}
+
+	/**
+	 * Retrieves the descriptor for the project in the provided directory, parsing the
+	 * configuration files only if they have changed since {@code previous} was read.
+	 *
+	 * @param baseDir the base directory of the ODP
+	 * @param previous the descriptor previously read for the same directory, or {@code null}
+	 * @return {@code previous} if the configuration files are unchanged, or otherwise a new
+	 *         {@link ProjectDescriptor} reflecting the current configuration files
+	 * @throws IOException if there is a problem reading the configuration files
+	 * @throws XMLException if there is a problem parsing the configuration files
+	 */
+	public static ProjectDescriptor get(Path baseDir, ProjectDescriptor previous) throws IOException, XMLException {
+		Path classpath = baseDir.resolve(".classpath"); //$NON-NLS-1$
+		Path pluginXml = baseDir.resolve("plugin.xml"); //$NON-NLS-1$
+		FileStamp classpathStamp = FileStamp.of(classpath);
+		FileStamp pluginStamp = FileStamp.of(pluginXml);
+
+		if(previous != null && previous.classpathStamp.equals(classpathStamp) && previous.pluginStamp.equals(pluginStamp)) {
+			return previous;
+		}
+
+		Collection<String> sourceFolders = new LinkedHashSet<>();
+		List<String> libraries = new ArrayList<>();
+		if(classpathStamp.exists) {
+			Document classpathXml = readXml(classpath);
+			for(Object node : DOMUtil.evaluateXPath(classpathXml, "/classpath/classpathentry[kind=src]").getNodes()) { //$NON-NLS-1$
+				String path = ((Element)node).getAttribute("path"); //$NON-NLS-1$
+				if(!"Local".equals(path)) { //$NON-NLS-1$
+					sourceFolders.add(path);
+				}
+			}
+			for(Object node : DOMUtil.evaluateXPath(classpathXml, "/classpath/classpathentry[kind=lib]").getNodes()) { //$NON-NLS-1$
+				libraries.add(((Element)node).getAttribute("path")); //$NON-NLS-1$
+			}
+			sourceFolders.add(DEFAULT_SOURCE_FOLDER);
+		}
+
+		List<RequiredBundle> requiredBundles = new ArrayList<>();
+		if(pluginStamp.exists) {
+			Document pluginDoc = readXml(pluginXml);
+			for(Object node : DOMUtil.evaluateXPath(pluginDoc, "/plugin/requires/import").getNodes()) { //$NON-NLS-1$
+				Element el = (Element)node;
+				requiredBundles.add(new RequiredBundle(el.getAttribute("plugin"), "true".equals(el.getAttribute("optional")))); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+			}
+		}
+
+		return new ProjectDescriptor(classpathStamp, pluginStamp, sourceFolders, libraries, requiredBundles);
+	}
+
+	/**
+	 * @return whether the project has a ".classpath" file
+	 */
+	public boolean hasClasspath() {
+		return classpathStamp.exists;
+	}
+
+	/**
+	 * @return whether the project has a "plugin.xml" file
+	 */
+	public boolean hasPluginXml() {
+		return pluginStamp.exists;
+	}
+
+	/**
+	 * @return the project-relative source folder paths declared in ".classpath", excluding
+	 *         "Local" and followed by {@link #DEFAULT_SOURCE_FOLDER} if not declared, or an
+	 *         empty list if the project has no ".classpath" file
+	 */
+	public List<String> getSourceFolders() {
+		return sourceFolders;
+	}
+
+	/**
+	 * @return the project-relative jar paths declared in ".classpath"
+	 */
+	public List<String> getLibraries() {
+		return libraries;
+	}
+
+	/**
+	 * @return the bundle dependencies declared in "plugin.xml"
+	 */
+	public List<RequiredBundle> getRequiredBundles() {
+		return requiredBundles;
+	}
+
+	// *******************************************************************************
+	// * Internal utility methods
+	// *******************************************************************************
+
+	private static Document readXml(Path file) throws IOException, XMLException {
+		try(InputStream is = Files.newInputStream(file)) {
+			return DOMUtil.createDocument(is);
+		}
+	}
+
+	private static final class FileStamp {
+		private final boolean exists;
+		private final long modified;
+		private final long size;
+
+		private FileStamp(boolean exists, long modified, long size) {
+			this.exists = exists;
+			this.modified = modified;
+			this.size = size;
+		}
+
+		static FileStamp of(Path file) throws IOException {
+			try {
+				BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+				if(!attrs.isRegularFile()) {
+					return new FileStamp(false, 0, 0);
+				}
+				return new FileStamp(true, attrs.lastModifiedTime().toMillis(), attrs.size());
+			} catch(NoSuchFileException e) {
+				return new FileStamp(false, 0, 0);
+			}
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if(!(obj instanceof FileStamp)) {
+				return false;
+			}
+			FileStamp other = (FileStamp)obj;
+			return exists == other.exists && modified == other.modified && size == other.size;
+		}
+
+		@Override
+		public int hashCode() {
+			return Long.hashCode(modified) * 31 + Long.hashCode(size);
+		}
+	}
+}
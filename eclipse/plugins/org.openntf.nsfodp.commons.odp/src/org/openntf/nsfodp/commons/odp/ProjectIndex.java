@@ -0,0 +1,248 @@
+/**
+ * Copyright © 2018-2019 Jesse Gallagher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openntf.nsfodp.commons.odp;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+
+import javax.tools.JavaFileObject;
+
+import org.openntf.nsfodp.commons.PathClassifier;
+
+/**
+ * An immutable snapshot of the files in an on-disk project, classified in a
+ * single walk of the directory tree.
+ *
+ * <p>The design-element rules of the owning {@link OnDiskProject} are compiled into
+ * a single {@link PathClassifier}, so each regular file is classified in one pass over
+ * its path segments and the cost of building the index scales with the number of files
+ * in the project rather than the number of files times the number of globs.</p>
+ *
+ * @author Jesse Gallagher
+ * @since 2.1.0
+ */
+final class ProjectIndex {
+	private static final String EXT_JAR = ".jar"; //$NON-NLS-1$
+
+	private final List<Map.Entry<Path, GlobMatcher>> fileResources;
+	private final List<Path> directDxlFiles;
+	private final List<Path> xpages;
+	private final List<Path> customControls;
+	private final List<Path> lotusScriptLibraries;
+	private final List<Path> javaSourceFiles;
+	private final List<Path> jars;
+
+	private ProjectIndex(List<Map.Entry<Path, GlobMatcher>> fileResources, List<Path> directDxlFiles, List<Path> xpages,
+			List<Path> customControls, List<Path> lotusScriptLibraries, List<Path> javaSourceFiles, List<Path> jars) {
+		this.fileResources = Collections.unmodifiableList(fileResources);
+		this.directDxlFiles = Collections.unmodifiableList(directDxlFiles);
+		this.xpages = Collections.unmodifiableList(xpages);
+		this.customControls = Collections.unmodifiableList(customControls);
+		this.lotusScriptLibraries = Collections.unmodifiableList(lotusScriptLibraries);
+		this.javaSourceFiles = Collections.unmodifiableList(javaSourceFiles);
+		this.jars = Collections.unmodifiableList(jars);
+	}
+
+	/**
+	 * Walks the provided project's base directory once and classifies each file found.
+	 *
+	 * @param odp the project to index
+	 * @return a new {@link ProjectIndex} for the current state of the project
+	 * @throws IOException if there is a problem reading the filesystem
+	 */
+	public static ProjectIndex build(OnDiskProject odp) throws IOException {
+		Path baseDir = odp.getBaseDirectory();
+		List<GlobMatcher> fileResourceMatchers = odp.FILE_RESOURCES;
+		PathClassifier<Rule> classifier = createClassifier(odp);
+
+		// Bucket by rule so that the overall order matches the rule order, as before
+		List<List<Map.Entry<Path, GlobMatcher>>> fileResourceBuckets = new ArrayList<>(fileResourceMatchers.size());
+		for(int i = 0; i < fileResourceMatchers.size(); i++) {
+			fileResourceBuckets.add(new ArrayList<>());
+		}
+		List<List<Path>> directDxlBuckets = new ArrayList<>(OnDiskProject.DIRECT_DXL_GLOBS.size());
+		for(int i = 0; i < OnDiskProject.DIRECT_DXL_GLOBS.size(); i++) {
+			directDxlBuckets.add(new ArrayList<>());
+		}
+		List<Path> xpages = new ArrayList<>();
+		List<Path> customControls = new ArrayList<>();
+		List<Path> lotusScriptLibraries = new ArrayList<>();
+		List<Path> javaSourceFiles = new ArrayList<>();
+		List<Path> jars = new ArrayList<>();
+
+		if(Files.isDirectory(baseDir)) {
+			Files.walkFileTree(baseDir, new SimpleFileVisitor<Path>() {
+				@Override
+				public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+					if(!attrs.isRegularFile()) {
+						return FileVisitResult.CONTINUE;
+					}
+					List<Rule> rules = classifier.classifyAll(baseDir.relativize(file));
+					if(rules.isEmpty() || rules.get(0).kind == Kind.IGNORED) {
+						return FileVisitResult.CONTINUE;
+					}
+					boolean isMetadata = file.getFileName().toString().endsWith(AbstractSplitDesignElement.EXT_METADATA);
+
+					EnumSet<Kind> seen = EnumSet.noneOf(Kind.class);
+					for(Rule rule : rules) {
+						if(!seen.add(rule.kind)) {
+							// Only the first rule of each kind applies
+							continue;
+						}
+						switch(rule.kind) {
+						case FILE_RESOURCE:
+							if(!isMetadata) {
+								fileResourceBuckets.get(rule.index).add(new AbstractMap.SimpleImmutableEntry<>(file, fileResourceMatchers.get(rule.index)));
+							}
+							break;
+						case DIRECT_DXL:
+							directDxlBuckets.get(rule.index).add(file);
+							break;
+						case XPAGE:
+							xpages.add(file);
+							break;
+						case CUSTOM_CONTROL:
+							customControls.add(file);
+							break;
+						case JAVA_SOURCE:
+							javaSourceFiles.add(file);
+							break;
+						case JAR:
+							jars.add(file);
+							break;
+						case LOTUSSCRIPT_LIBRARY:
+							lotusScriptLibraries.add(file);
+							break;
+						case IGNORED:
+						default:
+							break;
+						}
+					}
+
+					return FileVisitResult.CONTINUE;
+				}
+			});
+		}
+
+		List<Map.Entry<Path, GlobMatcher>> fileResources = new ArrayList<>();
+		fileResourceBuckets.forEach(fileResources::addAll);
+		List<Path> directDxlFiles = new ArrayList<>();
+		directDxlBuckets.forEach(directDxlFiles::addAll);
+
+		return new ProjectIndex(fileResources, directDxlFiles, xpages, customControls, lotusScriptLibraries, javaSourceFiles, jars);
+	}
+
+	/**
+	 * Compiles the design-element rules of the provided project into a single classifier.
+	 * Ignore rules are added first, so that they take precedence over all others. Names
+	 * are matched with the case sensitivity of the project's filesystem.
+	 */
+	private static PathClassifier<Rule> createClassifier(OnDiskProject odp) {
+		PathClassifier<Rule> classifier = PathClassifier.forFileSystem(odp.getBaseDirectory().getFileSystem());
+		for(String glob : OnDiskProject.IGNORED_GLOBS) {
+			classifier.add(glob, new Rule(Kind.IGNORED, -1));
+		}
+		List<GlobMatcher> fileResourceMatchers = odp.FILE_RESOURCES;
+		for(int i = 0; i < fileResourceMatchers.size(); i++) {
+			classifier.add(fileResourceMatchers.get(i).getGlob(), new Rule(Kind.FILE_RESOURCE, i));
+		}
+		for(int i = 0; i < OnDiskProject.DIRECT_DXL_GLOBS.size(); i++) {
+			classifier.add(OnDiskProject.DIRECT_DXL_GLOBS.get(i), new Rule(Kind.DIRECT_DXL, i));
+		}
+		classifier.add("XPages/*" + XPage.EXT_XSP, new Rule(Kind.XPAGE, -1)); //$NON-NLS-1$
+		classifier.add("CustomControls/*" + XPage.EXT_XSP, new Rule(Kind.CUSTOM_CONTROL, -1)); //$NON-NLS-1$
+		classifier.add("**/*" + JavaFileObject.Kind.SOURCE.extension, new Rule(Kind.JAVA_SOURCE, -1)); //$NON-NLS-1$
+		classifier.add("Code/Jars/**/*" + EXT_JAR, new Rule(Kind.JAR, -1)); //$NON-NLS-1$
+		classifier.add("WebContent/WEB-INF/lib/**/*" + EXT_JAR, new Rule(Kind.JAR, -1)); //$NON-NLS-1$
+		classifier.add("Code/ScriptLibraries/*.lss", new Rule(Kind.LOTUSSCRIPT_LIBRARY, -1)); //$NON-NLS-1$
+		return classifier;
+	}
+
+	/**
+	 * @return file-resource-type paths paired with the rule that matched them, in rule order
+	 */
+	public List<Map.Entry<Path, GlobMatcher>> getFileResources() {
+		return fileResources;
+	}
+
+	/**
+	 * @return paths of DXL files that can be imported directly, in rule order
+	 */
+	public List<Path> getDirectDxlFiles() {
+		return directDxlFiles;
+	}
+
+	/**
+	 * @return paths of XSP files directly within the "XPages" directory
+	 */
+	public List<Path> getXPages() {
+		return xpages;
+	}
+
+	/**
+	 * @return paths of XSP files directly within the "CustomControls" directory
+	 */
+	public List<Path> getCustomControls() {
+		return customControls;
+	}
+
+	/**
+	 * @return paths of LotusScript library source files
+	 */
+	public List<Path> getLotusScriptLibraries() {
+		return lotusScriptLibraries;
+	}
+
+	/**
+	 * @return paths of all Java source files anywhere in the project, to be filtered
+	 *         by source folder
+	 */
+	public List<Path> getJavaSourceFiles() {
+		return javaSourceFiles;
+	}
+
+	/**
+	 * @return paths of jar files within "Code/Jars" and "WebContent/WEB-INF/lib"
+	 */
+	public List<Path> getJars() {
+		return jars;
+	}
+
+	private enum Kind {
+		IGNORED, FILE_RESOURCE, DIRECT_DXL, XPAGE, CUSTOM_CONTROL, JAVA_SOURCE, JAR, LOTUSSCRIPT_LIBRARY
+	}
+
+	private static class Rule {
+		private final Kind kind;
+		/** The index of the rule within its source list, where applicable */
+		private final int index;
+
+		Rule(Kind kind, int index) {
+			this.kind = kind;
+			this.index = index;
+		}
+	}
+}
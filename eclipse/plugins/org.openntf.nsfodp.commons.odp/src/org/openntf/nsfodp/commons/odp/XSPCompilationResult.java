@@ -15,6 +15,9 @@
  */
 package org.openntf.nsfodp.commons.odp;
 
+import java.util.Collections;
+import java.util.Map;
+
 /**
  * Represents the translated Java source and compiled Java code
  * from an XPage or Custom Control compilation.
@@ -25,10 +28,23 @@ package org.openntf.nsfodp.commons.odp;
 public class XSPCompilationResult {
 	private final String javaSource;
 	private final Class<?> compiledClass;
+	private final Map<String, byte[]> classData;
 
 	public XSPCompilationResult(String javaSource, Class<?> compiledClass) {
+		this(javaSource, compiledClass, null);
+	}
+	
+	/**
+	 * @param javaSource the translated Java source of the element
+	 * @param compiledClass the loaded page class, or {@code null} if it was not loaded
+	 * @param classData the bytecode of the page class and its inner classes, keyed by
+	 *        class name, or {@code null} if not known
+	 * @since 2.1.0
+	 */
+	public XSPCompilationResult(String javaSource, Class<?> compiledClass, Map<String, byte[]> classData) {
 		this.javaSource = javaSource;
 		this.compiledClass = compiledClass;
+		this.classData = classData == null ? Collections.emptyMap() : Collections.unmodifiableMap(classData);
 	}
 
 	public String getJavaSource() {
@@ -39,5 +55,11 @@ public class XSPCompilationResult {
 		return compiledClass;
 	}
 	
-	
+	/**
+	 * @return the bytecode of the page class and its inner classes, keyed by class name
+	 * @since 2.1.0
+	 */
+	public Map<String, byte[]> getClassData() {
+		return classData;
+	}
 }
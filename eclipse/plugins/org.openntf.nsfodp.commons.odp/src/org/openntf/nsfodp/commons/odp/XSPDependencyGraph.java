@@ -0,0 +1,671 @@
+/**
+ * Copyright © 2018-2019 Jesse Gallagher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openntf.nsfodp.commons.odp;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.tools.JavaFileObject;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+import com.ibm.commons.xml.XMLException;
+
+/**
+ * A queryable graph of the references between the XSP-related elements of an on-disk
+ * project: the XPages and Custom Controls that use each Custom Control, the server-side
+ * JavaScript libraries they include, and the project Java classes they name in
+ * bindings, property types, and script code.
+ *
+ * <p>Each source file is parsed only once and re-parsed only when its modification
+ * time or size changes, so calling {@link #refresh()} after edits costs a directory
+ * walk plus the parsing of the changed files. References are stored in their raw form
+ * (tag names, script paths, and dotted identifiers) and resolved against the current
+ * set of elements when the graph is queried, so that adding, removing, or renaming an
+ * element does not require re-parsing the files that refer to it.</p>
+ *
+ * <p>This class does not depend on OSGi or Notes classes, so that it can be
+ * used from the Maven plugin as well.</p>
+ *
+ * @author Jesse Gallagher
+ * @since 2.1.0
+ */
+public class XSPDependencyGraph {
+	/** The namespace used for Custom Controls that do not specify one in their xsp-config */
+	public static final String NS_XC = "http://www.ibm.com/xsp/custom"; //$NON-NLS-1$
+	/** The namespace of the core XPages components */
+	public static final String NS_XP = "http://www.ibm.com/xsp/core"; //$NON-NLS-1$
+
+	/** Matches dotted Java-style identifiers, such as "com.example.Foo" or "Packages.com.example.Foo.bar" */
+	private static final Pattern QUALIFIED_NAME = Pattern.compile("(?<![\\w$.])[A-Za-z_$][\\w$]*(?:\\.[A-Za-z_$][\\w$]*)+"); //$NON-NLS-1$
+	/** Matches Rhino package imports, such as "importPackage(com.example)" */
+	private static final Pattern IMPORT_PACKAGE = Pattern.compile("importPackage\\s*\\(\\s*(?:Packages\\.)?([\\w$.]+)\\s*\\)"); //$NON-NLS-1$
+	private static final String PREFIX_PACKAGES = "Packages."; //$NON-NLS-1$
+	private static final String EXT_JS = ".js"; //$NON-NLS-1$
+	private static final String EXT_JSS = ".jss"; //$NON-NLS-1$
+
+	/**
+	 * The kinds of elements tracked in the graph.
+	 */
+	public enum ElementType {
+		XPAGE, CUSTOM_CONTROL, SCRIPT_LIBRARY, JAVA_CLASS
+	}
+
+	private final OnDiskProject odp;
+	private final SAXParserFactory parserFactory;
+	private final Map<Path, Entry> entries = new LinkedHashMap<>();
+	/** Fully-qualified Java class names to their source files */
+	private final Map<String, Path> javaClasses = new HashMap<>();
+	/** Whether the first refresh has happened, which can use the project's existing file index */
+	private boolean initialized;
+
+	// Resolved edges, rebuilt lazily after any change
+	private Map<Path, Set<Path>> dependencies;
+	private Map<Path, Set<Path>> dependents;
+
+	public XSPDependencyGraph(OnDiskProject odp) {
+		this.odp = odp;
+		this.parserFactory = SAXParserFactory.newInstance();
+		this.parserFactory.setNamespaceAware(true);
+		this.parserFactory.setValidating(false);
+	}
+
+	/**
+	 * Brings the graph up to date with the current state of the project, re-parsing only
+	 * the XSP, xsp-config, and script library files that were added or changed since the
+	 * last refresh.
+	 *
+	 * @return this graph
+	 * @throws IOException if there is a problem reading the project files
+	 * @throws XMLException if there is a problem reading the project's class path configuration
+	 */
+	public synchronized XSPDependencyGraph refresh() throws IOException, XMLException {
+		if(initialized) {
+			odp.refreshIndex();
+		}
+		initialized = true;
+
+		Set<Path> seen = new HashSet<>();
+		for(XPage xpage : odp.getXPages()) {
+			Path file = key(xpage.getDataFile());
+			seen.add(file);
+			update(file, ElementType.XPAGE);
+		}
+		for(CustomControl cc : odp.getCustomControls()) {
+			Path file = key(cc.getDataFile());
+			seen.add(file);
+			update(file, ElementType.CUSTOM_CONTROL);
+		}
+		for(AbstractSplitDesignElement res : odp.getFileResources()) {
+			if(res instanceof JavaScriptLibrary) {
+				Path file = key(res.getDataFile());
+				seen.add(file);
+				update(file, ElementType.SCRIPT_LIBRARY);
+			}
+		}
+		boolean changed = entries.keySet().retainAll(seen);
+
+		Map<String, Path> classes = new HashMap<>();
+		for(Map.Entry<Path, List<JavaSource>> sourceFolder : odp.getJavaSourceFiles().entrySet()) {
+			for(JavaSource source : sourceFolder.getValue()) {
+				classes.putIfAbsent(toClassName(sourceFolder.getKey().relativize(source.getDataFile())), key(source.getDataFile()));
+			}
+		}
+		if(!classes.equals(javaClasses)) {
+			javaClasses.clear();
+			javaClasses.putAll(classes);
+			changed = true;
+		}
+
+		if(changed) {
+			invalidate();
+		}
+		return this;
+	}
+
+	/**
+	 * Re-indexes a single file after it has been changed, created, or deleted, without
+	 * walking the project. Paths that do not correspond to a tracked XSP element or
+	 * script library are ignored; call {@link #refresh()} to pick up new Java classes.
+	 *
+	 * @param file the changed file, which may be an xsp-config file
+	 * @throws IOException if there is a problem reading the file
+	 */
+	public synchronized void update(Path file) throws IOException {
+		Path path = toElementPath(key(file));
+		Entry entry = entries.get(path);
+		ElementType type = entry == null ? null : entry.type;
+		if(type == null) {
+			Path relative = key(odp.getBaseDirectory()).relativize(path);
+			String name = path.getFileName().toString();
+			String dir = relative.getNameCount() == 2 ? relative.getName(0).toString() : null;
+			if("XPages".equals(dir) && name.endsWith(XPage.EXT_XSP)) { //$NON-NLS-1$
+				type = ElementType.XPAGE;
+			} else if("CustomControls".equals(dir) && name.endsWith(XPage.EXT_XSP)) { //$NON-NLS-1$
+				type = ElementType.CUSTOM_CONTROL;
+			} else if(relative.getNameCount() == 3 && relative.startsWith("Code/ScriptLibraries") && (name.endsWith(EXT_JS) || name.endsWith(EXT_JSS))) { //$NON-NLS-1$
+				type = ElementType.SCRIPT_LIBRARY;
+			}
+		}
+		if(type == null) {
+			return;
+		}
+		if(Files.isRegularFile(path)) {
+			update(path, type);
+		} else if(entries.remove(path) != null) {
+			invalidate();
+		}
+	}
+
+	/**
+	 * @param file the file of an XPage, Custom Control, script library, or Java class
+	 * @return the type of the element, or {@code null} if the file is not tracked
+	 */
+	public synchronized ElementType getType(Path file) {
+		Path path = toElementPath(key(file));
+		Entry entry = entries.get(path);
+		if(entry != null) {
+			return entry.type;
+		}
+		return javaClasses.containsValue(path) ? ElementType.JAVA_CLASS : null;
+	}
+
+	/**
+	 * Finds the elements directly referenced by the provided element.
+	 *
+	 * @param file the file of an XPage, Custom Control, or script library; xsp-config
+	 *        files are treated as their Custom Control
+	 * @return the files of the Custom Controls, script libraries, and Java classes the
+	 *         element references
+	 */
+	public synchronized Set<Path> getDependencies(Path file) {
+		return Collections.unmodifiableSet(getDependencyMap().getOrDefault(toElementPath(key(file)), Collections.emptySet()));
+	}
+
+	/**
+	 * Finds the elements that directly reference the provided element.
+	 *
+	 * @param file the file of a Custom Control, script library, or Java class; xsp-config
+	 *        files are treated as their Custom Control
+	 * @return the files of the XPages, Custom Controls, and script libraries that reference
+	 *         the element
+	 */
+	public synchronized Set<Path> getDependents(Path file) {
+		return Collections.unmodifiableSet(getDependentMap().getOrDefault(toElementPath(key(file)), Collections.emptySet()));
+	}
+
+	/**
+	 * Finds all elements affected by a change to the provided element, i.e. its direct
+	 * dependents, their dependents, and so forth. This is the set of XSP elements to
+	 * retranslate when, for example, a Custom Control's xsp-config file changes.
+	 *
+	 * @param file the changed file; xsp-config files are treated as their Custom Control
+	 * @return the files of all elements that directly or indirectly reference the element,
+	 *         not including the element itself
+	 */
+	public synchronized Set<Path> getTransitiveDependents(Path file) {
+		return walk(getDependentMap(), toElementPath(key(file)));
+	}
+
+	/**
+	 * Finds all elements that the provided element directly or indirectly references.
+	 *
+	 * @param file the file of an XPage, Custom Control, or script library
+	 * @return the files of all referenced elements, not including the element itself
+	 */
+	public synchronized Set<Path> getTransitiveDependencies(Path file) {
+		return walk(getDependencyMap(), toElementPath(key(file)));
+	}
+
+	/**
+	 * Determines whether the references found for the provided element can be trusted for
+	 * cache keys. This is not the case when the element or any element it directly or
+	 * indirectly references could not be parsed, since references after the error would
+	 * be missing. It is also never the case while any Custom Control's xsp-config file is
+	 * malformed, since that control's tag, and so the elements that use it, are unknown.
+	 *
+	 * @param file the file of an XPage, Custom Control, or script library
+	 * @return {@code true} if the element's dependencies are fully known; {@code false} otherwise
+	 */
+	public synchronized boolean isCacheable(Path file) {
+		for(Entry entry : entries.values()) {
+			if(entry.definitionUnparseable) {
+				return false;
+			}
+		}
+		Path path = toElementPath(key(file));
+		Entry entry = entries.get(path);
+		if(entry != null && entry.unparseable) {
+			return false;
+		}
+		for(Path dependency : walk(getDependencyMap(), path)) {
+			Entry dependencyEntry = entries.get(dependency);
+			if(dependencyEntry != null && dependencyEntry.unparseable) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Collects the namespace URIs of the elements and attributes used by the XPages and
+	 * Custom Controls of the project, which identify the XSP libraries the project needs.
+	 *
+	 * @return the namespace URIs in use, always including the core XPages namespace
+	 */
+	public synchronized Set<String> getNamespaces() {
+		Set<String> result = new HashSet<>();
+		result.add(NS_XP);
+		for(Entry entry : entries.values()) {
+			result.addAll(entry.namespaces);
+		}
+		return result;
+	}
+
+	// *******************************************************************************
+	// * Indexing methods
+	// *******************************************************************************
+
+	private void update(Path file, ElementType type) throws IOException {
+		Path xspConfig = type == ElementType.CUSTOM_CONTROL ? new CustomControl(file).getXspConfigFile() : null;
+		FileStamp stamp = FileStamp.of(file, xspConfig);
+		Entry existing = entries.get(file);
+		if(existing != null && existing.type == type && existing.stamp.equals(stamp)) {
+			return;
+		}
+
+		Entry entry = new Entry(type, stamp);
+		switch(type) {
+		case XPAGE:
+			parseXsp(file, entry);
+			break;
+		case CUSTOM_CONTROL:
+			parseXsp(file, entry);
+			parseXspConfig(xspConfig, entry);
+			if(entry.namespace == null) {
+				entry.namespace = NS_XC;
+			}
+			if(entry.tagName == null) {
+				entry.tagName = new CustomControl(file).getControlName();
+			}
+			break;
+		case SCRIPT_LIBRARY:
+			scanScript(new String(Files.readAllBytes(file), StandardCharsets.UTF_8), entry);
+			break;
+		case JAVA_CLASS:
+		default:
+			break;
+		}
+		entries.put(file, entry);
+		invalidate();
+	}
+
+	private void parseXsp(Path file, Entry entry) throws IOException {
+		entry.unparseable = !parse(file, new DefaultHandler() {
+			private final StringBuilder text = new StringBuilder();
+
+			@Override
+			public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException {
+				flushText();
+				if(!NS_XP.equals(uri) && !uri.isEmpty()) {
+					entry.tags.add(tagKey(uri, localName));
+					entry.namespaces.add(uri);
+				}
+				if(NS_XP.equals(uri) && "script".equals(localName)) { //$NON-NLS-1$
+					String src = attributes.getValue("src"); //$NON-NLS-1$
+					if(src != null && !src.isEmpty()) {
+						entry.scripts.add(toLibraryName(src));
+					}
+				}
+				for(int i = 0; i < attributes.getLength(); i++) {
+					String attrUri = attributes.getURI(i);
+					if(!NS_XP.equals(attrUri) && !attrUri.isEmpty()) {
+						entry.namespaces.add(attrUri);
+					}
+					scanScript(attributes.getValue(i), entry);
+				}
+			}
+
+			@Override
+			public void endElement(String uri, String localName, String qName) throws SAXException {
+				flushText();
+			}
+
+			@Override
+			public void characters(char[] ch, int start, int length) throws SAXException {
+				text.append(ch, start, length);
+			}
+
+			private void flushText() {
+				if(text.length() > 0) {
+					scanScript(text, entry);
+					text.setLength(0);
+				}
+			}
+		});
+	}
+
+	private void parseXspConfig(Path file, Entry entry) throws IOException {
+		if(!Files.isRegularFile(file)) {
+			return;
+		}
+		entry.definitionUnparseable = !parse(file, new DefaultHandler() {
+			private final Deque<String> path = new ArrayDeque<>();
+			private final StringBuilder text = new StringBuilder();
+
+			@Override
+			public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException {
+				path.push(localName);
+				text.setLength(0);
+			}
+
+			@Override
+			public void endElement(String uri, String localName, String qName) throws SAXException {
+				path.pop();
+				String value = text.toString().trim();
+				text.setLength(0);
+				String parent = path.peek();
+				if("namespace-uri".equals(localName) && "faces-config-extension".equals(parent)) { //$NON-NLS-1$ //$NON-NLS-2$
+					entry.namespace = value;
+				} else if("composite-name".equals(localName) && "composite-component".equals(parent)) { //$NON-NLS-1$ //$NON-NLS-2$
+					entry.tagName = value;
+				} else if(!value.isEmpty()) {
+					// e.g. property-class
+					scanScript(value, entry);
+				}
+			}
+
+			@Override
+			public void characters(char[] ch, int start, int length) throws SAXException {
+				text.append(ch, start, length);
+			}
+		});
+	}
+
+	/**
+	 * Parses the provided file. Malformed content is not an error here, since such files
+	 * will fail during translation anyway, but the references found before the error are
+	 * incomplete, so the caller must mark its entry as such.
+	 *
+	 * @return {@code true} if the whole file was parsed; {@code false} if it is malformed
+	 */
+	private boolean parse(Path file, DefaultHandler handler) throws IOException {
+		SAXParser parser;
+		try {
+			parser = parserFactory.newSAXParser();
+		} catch(ParserConfigurationException | SAXException e) {
+			throw new IOException(e);
+		}
+		try(InputStream is = Files.newInputStream(file)) {
+			parser.parse(is, handler);
+			return true;
+		} catch(SAXException e) {
+			return false;
+		}
+	}
+
+	private static void scanScript(CharSequence value, Entry entry) {
+		Matcher matcher = QUALIFIED_NAME.matcher(value);
+		while(matcher.find()) {
+			String name = matcher.group();
+			if(name.startsWith(PREFIX_PACKAGES)) {
+				name = name.substring(PREFIX_PACKAGES.length());
+			}
+			entry.names.add(name);
+		}
+		matcher = IMPORT_PACKAGE.matcher(value);
+		while(matcher.find()) {
+			entry.packages.add(matcher.group(1));
+		}
+	}
+
+	// *******************************************************************************
+	// * Resolution methods
+	// *******************************************************************************
+
+	private void invalidate() {
+		this.dependencies = null;
+		this.dependents = null;
+	}
+
+	private Map<Path, Set<Path>> getDependencyMap() {
+		if(dependencies == null) {
+			resolve();
+		}
+		return dependencies;
+	}
+
+	private Map<Path, Set<Path>> getDependentMap() {
+		if(dependents == null) {
+			resolve();
+		}
+		return dependents;
+	}
+
+	private void resolve() {
+		Map<String, Path> tags = new HashMap<>();
+		Map<String, Path> libraries = new HashMap<>();
+		for(Map.Entry<Path, Entry> e : entries.entrySet()) {
+			Entry entry = e.getValue();
+			if(entry.type == ElementType.CUSTOM_CONTROL) {
+				tags.putIfAbsent(tagKey(entry.namespace, entry.tagName), e.getKey());
+			} else if(entry.type == ElementType.SCRIPT_LIBRARY) {
+				libraries.putIfAbsent(e.getKey().getFileName().toString().toLowerCase(Locale.ENGLISH), e.getKey());
+			}
+		}
+		Map<String, Set<Path>> packages = new HashMap<>();
+		for(Map.Entry<String, Path> e : javaClasses.entrySet()) {
+			int dotIndex = e.getKey().lastIndexOf('.');
+			String pkg = dotIndex < 0 ? "" : e.getKey().substring(0, dotIndex); //$NON-NLS-1$
+			packages.computeIfAbsent(pkg, key -> new LinkedHashSet<>()).add(e.getValue());
+		}
+
+		Map<Path, Set<Path>> forward = new HashMap<>();
+		Map<Path, Set<Path>> reverse = new HashMap<>();
+		for(Map.Entry<Path, Entry> e : entries.entrySet()) {
+			Path source = e.getKey();
+			Entry entry = e.getValue();
+			Set<Path> targets = new LinkedHashSet<>();
+			for(String tag : entry.tags) {
+				Path cc = tags.get(tag);
+				if(cc != null) {
+					targets.add(cc);
+				}
+			}
+			for(String script : entry.scripts) {
+				Path lib = libraries.get(script);
+				if(lib != null) {
+					targets.add(lib);
+				}
+			}
+			for(String name : entry.names) {
+				Path javaFile = findClass(name);
+				if(javaFile != null) {
+					targets.add(javaFile);
+				}
+			}
+			for(String pkg : entry.packages) {
+				targets.addAll(packages.getOrDefault(pkg, Collections.emptySet()));
+			}
+			targets.remove(source);
+			forward.put(source, targets);
+			for(Path target : targets) {
+				reverse.computeIfAbsent(target, key -> new LinkedHashSet<>()).add(source);
+			}
+		}
+		this.dependencies = forward;
+		this.dependents = reverse;
+	}
+
+	/**
+	 * Finds the project class named by the longest class-like prefix of the provided
+	 * identifier, which may have trailing member or nested-class names.
+	 */
+	private Path findClass(String name) {
+		String candidate = name;
+		while(true) {
+			Path javaFile = javaClasses.get(candidate);
+			if(javaFile != null) {
+				return javaFile;
+			}
+			int dotIndex = candidate.lastIndexOf('.');
+			if(dotIndex < 0) {
+				return null;
+			}
+			candidate = candidate.substring(0, dotIndex);
+		}
+	}
+
+	private static Set<Path> walk(Map<Path, Set<Path>> edges, Path start) {
+		Set<Path> result = new LinkedHashSet<>();
+		Deque<Path> queue = new ArrayDeque<>();
+		queue.add(start);
+		while(!queue.isEmpty()) {
+			for(Path next : edges.getOrDefault(queue.poll(), Collections.emptySet())) {
+				if(!next.equals(start) && result.add(next)) {
+					queue.add(next);
+				}
+			}
+		}
+		return result;
+	}
+
+	// *******************************************************************************
+	// * Internal utility methods
+	// *******************************************************************************
+
+	private static Path key(Path file) {
+		return file.toAbsolutePath().normalize();
+	}
+
+	/**
+	 * Maps an xsp-config file to the XSP file of its Custom Control.
+	 */
+	private static Path toElementPath(Path file) {
+		String name = file.getFileName().toString();
+		if(name.endsWith(CustomControl.EXT_XSPCONFIG)) {
+			return file.resolveSibling(name.substring(0, name.length()-CustomControl.EXT_XSPCONFIG.length()) + XPage.EXT_XSP);
+		}
+		return file;
+	}
+
+	private static String toClassName(Path relativePath) {
+		String name = relativePath.toString().replace(relativePath.getFileSystem().getSeparator(), "."); //$NON-NLS-1$
+		return name.substring(0, name.length()-JavaFileObject.Kind.SOURCE.extension.length());
+	}
+
+	/**
+	 * Converts a script resource path such as "/foo.jss" to the name of its library.
+	 */
+	private static String toLibraryName(String src) {
+		String name = src;
+		int queryIndex = name.indexOf('?');
+		if(queryIndex > -1) {
+			name = name.substring(0, queryIndex);
+		}
+		name = name.substring(name.lastIndexOf('/')+1);
+		return name.toLowerCase(Locale.ENGLISH);
+	}
+
+	private static String tagKey(String namespace, String tagName) {
+		return namespace + ' ' + tagName;
+	}
+
+	/**
+	 * The raw references found in a single element, prior to resolution.
+	 */
+	private static class Entry {
+		private final ElementType type;
+		private final FileStamp stamp;
+		private final Set<String> tags = new HashSet<>();
+		private final Set<String> scripts = new HashSet<>();
+		private final Set<String> names = new HashSet<>();
+		private final Set<String> packages = new HashSet<>();
+		/** Namespaces of the elements and attributes used, other than the core namespace */
+		private final Set<String> namespaces = new HashSet<>();
+		// Custom Control definition
+		private String namespace;
+		private String tagName;
+		/** Whether the element's XSP file is malformed, and so its references may be incomplete */
+		private boolean unparseable;
+		/** Whether the Custom Control's xsp-config file is malformed, and so its tag may be wrong */
+		private boolean definitionUnparseable;
+
+		Entry(ElementType type, FileStamp stamp) {
+			this.type = type;
+			this.stamp = stamp;
+		}
+	}
+
+	private static final class FileStamp {
+		private final long[] values;
+
+		private FileStamp(long[] values) {
+			this.values = values;
+		}
+
+		static FileStamp of(Path... files) throws IOException {
+			long[] values = new long[files.length * 2];
+			for(int i = 0; i < files.length; i++) {
+				if(files[i] == null) {
+					continue;
+				}
+				try {
+					BasicFileAttributes attrs = Files.readAttributes(files[i], BasicFileAttributes.class);
+					values[i*2] = attrs.lastModifiedTime().toMillis();
+					values[i*2+1] = attrs.size();
+				} catch(NoSuchFileException e) {
+					values[i*2] = -1;
+				}
+			}
+			return new FileStamp(values);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof FileStamp && Arrays.equals(values, ((FileStamp)obj).values);
+		}
+
+		@Override
+		public int hashCode() {
+			return Arrays.hashCode(values);
+		}
+	}
+}
@@ -29,6 +29,7 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 import javax.tools.JavaFileObject;
@@ -124,8 +125,22 @@ public enum ODPUtil {
 	 */
 	public static Collection<String> expandRequiredBundles(BundleContext bundleContext, List<String> bundleIds) {
 		Objects.requireNonNull(bundleContext);
+		return expandRequiredBundles(id -> ODPUtil.findBundle(bundleContext, id, false), bundleIds);
+	}
+	
+	/**
+	 * Gathers a full dependency hierarchy for the bundles described in {@code bundleIds}, using
+	 * the provided function to look up bundles by symbolic name.
+	 * 
+	 * @param bundleFinder a function that finds a resolved bundle by its symbolic name
+	 * @param bundleIds the base bundle IDs
+	 * @return a list of bundle IDs for the provided bundles and all re-exported dependencies
+	 * @since 2.1.0
+	 */
+	public static Collection<String> expandRequiredBundles(Function<String, Optional<Bundle>> bundleFinder, List<String> bundleIds) {
+		Objects.requireNonNull(bundleFinder);
 		return Objects.requireNonNull(bundleIds).stream()
-			.map(id -> ODPUtil.findBundle(bundleContext, id, false))
+			.map(bundleFinder)
 			.filter(Optional::isPresent)
 			.map(Optional::get)
 			.map(bundle -> {
@@ -133,7 +148,7 @@ public enum ODPUtil {
 					throw new IllegalStateException(MessageFormat.format(Messages.ODPUtil_bundleInInstalledState, bundle.getSymbolicName()));
 				}
 				
-				List<Bundle> deps = new ArrayList<>(resolveRequiredBundles(bundleContext, bundle));
+				List<Bundle> deps = new ArrayList<>(resolveRequiredBundles(bundleFinder, bundle));
 				deps.add(bundle);
 				return deps;
 			})
@@ -143,14 +158,14 @@ public enum ODPUtil {
 			.collect(Collectors.toSet());
 	}
 	
-	private static List<Bundle> resolveRequiredBundles(BundleContext bundleContext, Bundle bundle) {
+	private static List<Bundle> resolveRequiredBundles(Function<String, Optional<Bundle>> bundleFinder, Bundle bundle) {
 		String requiredBundles = bundle.getHeaders().get("Require-Bundle"); //$NON-NLS-1$
 		if(StringUtil.isNotEmpty(requiredBundles)) {
 			String[] requires = StringUtil.splitString(requiredBundles, ',', true);
 			return Arrays.stream(requires)
 				.filter(req -> req.contains("visibility:=reexport")) //$NON-NLS-1$
 				.map(req -> req.substring(0, req.indexOf(';')))
-				.map(id -> ODPUtil.findBundle(bundleContext, id, false))
+				.map(bundleFinder)
 				.filter(Optional::isPresent)
 				.map(Optional::get)
 				.map(dependency -> {
@@ -158,7 +173,7 @@ public enum ODPUtil {
 						throw new IllegalStateException(MessageFormat.format(Messages.ODPUtil_bundleInInstalledState, dependency.getSymbolicName()));
 					}
 					
-					List<Bundle> deps = new ArrayList<>(resolveRequiredBundles(bundleContext, dependency));
+					List<Bundle> deps = new ArrayList<>(resolveRequiredBundles(bundleFinder, dependency));
 					deps.add(dependency);
 					return deps;
 				})
@@ -47,6 +47,8 @@ public enum NSFODPConstants {
 	public static final String HEADER_TEMPLATE_NAME = "X-TemplateName"; //$NON-NLS-1$
 	public static final String HEADER_TEMPLATE_VERSION = "X-TemplateVersion"; //$NON-NLS-1$
 	public static final String HEADER_SET_PRODUCTION_XSP = "X-SetProductionXSPOptions"; //$NON-NLS-1$
+	/** @since 2.1.0 */
+	public static final String HEADER_BATCH_XSP_COMPILATION = "X-BatchXSPCompilation"; //$NON-NLS-1$
 	
 	/**
 	 * The system property used to specify the path to the ODP directory to compile using the local
@@ -63,6 +65,75 @@ public enum NSFODPConstants {
 	public static final String PROP_TEMPLATENAME = "org.openntf.nsfodp.compiler.templateName"; //$NON-NLS-1$
 	public static final String PROP_TEMPLATEVERSION = "org.openntf.nsfodp.compiler.templateVersion"; //$NON-NLS-1$
 	public static final String PROP_SETPRODUCTIONXSPOPTIONS = "org.openntf.nsfodp.compiler.setProductionXSPOptions"; //$NON-NLS-1$
+	/**
+	 * The system property used to specify a directory to hold generated DXL and compiled XSP
+	 * classes between compilations. When unset, no cache is used.
+	 */
+	public static final String PROP_CACHEDIRECTORY = "org.openntf.nsfodp.compiler.cacheDirectory"; //$NON-NLS-1$
+	/**
+	 * The system property used to specify whether XPages and Custom Controls should be compiled
+	 * in a single batch rather than one at a time.
+	 */
+	public static final String PROP_BATCHXSPCOMPILATION = "org.openntf.nsfodp.compiler.batchXspCompilation"; //$NON-NLS-1$
+	/**
+	 * The system property used to specify the number of threads used to translate XPages and
+	 * Custom Controls to Java. Values less than 1 use one thread per processor.
+	 */
+	public static final String PROP_XSPTRANSLATIONPARALLELISM = "org.openntf.nsfodp.compiler.xspTranslationParallelism"; //$NON-NLS-1$
+	/**
+	 * The system property used to specify the number of worker threads that prepare design
+	 * elements for DXL import. A value of 0, the default, prepares elements on the importing
+	 * thread.
+	 */
+	public static final String PROP_IMPORTPREPARATIONTHREADS = "org.openntf.nsfodp.compiler.importPreparationThreads"; //$NON-NLS-1$
+	/**
+	 * The system property used to specify the maximum number of design elements combined into
+	 * a single DXL import. A value of 1, the default, imports each element individually.
+	 */
+	public static final String PROP_DXLIMPORTBATCHSIZE = "org.openntf.nsfodp.compiler.dxlImportBatchSize"; //$NON-NLS-1$
+	/**
+	 * The system property used to specify whether classic design elements should be imported
+	 * into the NSF while Java and XSP elements are compiled.
+	 */
+	public static final String PROP_PIPELINEDIMPORT = "org.openntf.nsfodp.compiler.pipelinedImport"; //$NON-NLS-1$
+	/**
+	 * The system property used to specify the file size in bytes at which file resources are
+	 * imported from a temporary DXL file rather than from memory. A value of 0, the default,
+	 * imports from memory unless {@link #PROP_LOWMEMORYCOMPILATION} is set.
+	 */
+	public static final String PROP_DXLSTREAMIMPORTTHRESHOLD = "org.openntf.nsfodp.compiler.dxlStreamImportThreshold"; //$NON-NLS-1$
+	/**
+	 * The system property used to specify whether the compiler should bound its memory use
+	 * by translating XSP elements a few at a time and releasing intermediate results early.
+	 */
+	public static final String PROP_LOWMEMORYCOMPILATION = "org.openntf.nsfodp.compiler.lowMemoryCompilation"; //$NON-NLS-1$
+	/**
+	 * The system property used to specify whether the compiler should install only the update
+	 * site bundles needed by the project, rather than all of them.
+	 */
+	public static final String PROP_PRUNEUPDATESITEBUNDLES = "org.openntf.nsfodp.compiler.pruneUpdateSiteBundles"; //$NON-NLS-1$
+	/**
+	 * The system property used to specify the time in milliseconds to keep installed update
+	 * site bundles and their initialized XSP registry for reuse by later compilations. A value
+	 * of 0 disables reuse.
+	 */
+	public static final String PROP_WARMREGISTRYLIFETIME = "org.openntf.nsfodp.compiler.warmRegistryLifetime"; //$NON-NLS-1$
+	/**
+	 * The system property used to specify whether to initialize only the XSP libraries that
+	 * provide the namespaces used by the project, rather than all installed libraries.
+	 */
+	public static final String PROP_PRUNEXSPLIBRARIES = "org.openntf.nsfodp.compiler.pruneXspLibraries"; //$NON-NLS-1$
+	/**
+	 * The system property used to specify the number of compilations the compiler servlet runs
+	 * at the same time. Further requests wait for a running compilation to finish. Defaults to
+	 * the number of available processors.
+	 */
+	public static final String PROP_MAXCONCURRENTCOMPILATIONS = "org.openntf.nsfodp.compiler.maxConcurrentCompilations"; //$NON-NLS-1$
+	/**
+	 * The system property used to specify the number of empty databases to create ahead of
+	 * time for later compilations. A value of 0 disables the pool.
+	 */
+	public static final String PROP_BLANKDATABASEPOOLSIZE = "org.openntf.nsfodp.compiler.blankDatabasePoolSize"; //$NON-NLS-1$
 	
 	// *******************************************************************************
 	// * Exporter constants
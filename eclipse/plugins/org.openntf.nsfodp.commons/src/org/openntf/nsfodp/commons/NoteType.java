@@ -19,6 +19,7 @@ import static org.openntf.nsfodp.commons.h.StdNames.*;
 import static org.openntf.nsfodp.commons.NSFODPConstants.*;
 import static org.openntf.nsfodp.commons.NoteType.OutputFormat.*;
 
+import java.io.File;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.regex.Pattern;
@@ -188,4 +189,31 @@ public enum NoteType {
 	public OutputFormat getOutputFormat() {
 		return outputFormat;
 	}
+	
+	/**
+	 * A Unix-style glob, relative to the root of an ODP, matching files of this type. This
+	 * is the single source of the path rules used to classify ODP files by note type.
+	 * 
+	 * <p>Singleton types match their explicit path. Types stored as {@link OutputFormat#METADATA METADATA}
+	 * match any file with their extension below their directory, while others match only files
+	 * directly within it.</p>
+	 * 
+	 * @return the glob for this type, or <code>null</code> if the type is not stored in an ODP
+	 * @since 2.1.0
+	 */
+	public String getGlob() {
+		if(!inOdp) {
+			return null;
+		}
+		String dir = path.toString().replace(File.separatorChar, '/');
+		if(singleton) {
+			return dir;
+		} else if(extension == null || extension.isEmpty()) {
+			return dir + "/**"; //$NON-NLS-1$
+		} else if(outputFormat == METADATA) {
+			return dir + "/**/*." + extension; //$NON-NLS-1$
+		} else {
+			return dir + "/*." + extension; //$NON-NLS-1$
+		}
+	}
 }
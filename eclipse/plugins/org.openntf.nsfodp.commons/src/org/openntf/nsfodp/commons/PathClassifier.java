@@ -0,0 +1,289 @@
+/**
+ * Copyright © 2018-2019 Jesse Gallagher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openntf.nsfodp.commons;
+
+import java.nio.file.FileSystem;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Classifies relative paths against a set of Unix-style globs compiled into a single
+ * segment tree, so that a path is matched against all rules in one pass over its
+ * name elements rather than by testing each glob in turn.
+ *
+ * <p>Supported glob segments are:</p>
+ * <ul>
+ *   <li>literal names, e.g. <code>Resources</code></li>
+ *   <li>names with a single <code>*</code> wildcard, e.g. <code>*</code>, <code>*.js</code>
+ *     or <code>Thumbs*</code>, which match within a single name element</li>
+ *   <li><code>**</code>, which matches any number of name elements when followed by
+ *     further segments and one or more when it is the final segment</li>
+ * </ul>
+ *
+ * <p>When multiple rules match a path, they are ranked in the order in which they were
+ * added. Rules should be added before the classifier is shared between threads.</p>
+ *
+ * @param <T> the type of value associated with each rule
+ * @author Jesse Gallagher
+ * @since 2.1.0
+ */
+public class PathClassifier<T> {
+	private static final String ANY_DEPTH = "**"; //$NON-NLS-1$
+	private static final char WILDCARD = '*';
+
+	private final boolean ignoreCase;
+	private final Node<T> root = new Node<>(false);
+	private final List<T> values = new ArrayList<>();
+
+	/**
+	 * Creates a new case-sensitive classifier.
+	 */
+	public PathClassifier() {
+		this(false);
+	}
+
+	/**
+	 * @param ignoreCase whether path names should be matched without regard to case
+	 */
+	public PathClassifier(boolean ignoreCase) {
+		this.ignoreCase = ignoreCase;
+	}
+
+	/**
+	 * Creates a new classifier that matches names with the same case sensitivity as the
+	 * glob {@link PathMatcher}s of the provided filesystem, e.g. case-insensitively on Windows.
+	 *
+	 * @param fileSystem the filesystem containing the paths to classify
+	 * @return a new, empty classifier
+	 */
+	public static <T> PathClassifier<T> forFileSystem(FileSystem fileSystem) {
+		return new PathClassifier<>(isCaseInsensitive(fileSystem));
+	}
+
+	/**
+	 * @return whether this classifier matches path names without regard to case
+	 */
+	public boolean isIgnoreCase() {
+		return ignoreCase;
+	}
+
+	/**
+	 * Adds a rule to the classifier, ranked after all previously-added rules.
+	 *
+	 * @param unixGlob a glob in Unix format, e.g. "Resources/Images/*" or "WebContent/**"
+	 * @param value the value to return for paths matching the glob
+	 * @return this classifier
+	 * @throws IllegalArgumentException if {@code unixGlob} uses unsupported glob syntax
+	 */
+	public PathClassifier<T> add(String unixGlob, T value) {
+		if(unixGlob == null || unixGlob.isEmpty()) {
+			throw new IllegalArgumentException("Glob cannot be empty"); //$NON-NLS-1$
+		}
+		int rule = values.size();
+
+		Node<T> node = root;
+		for(String segment : unixGlob.split("/")) { //$NON-NLS-1$
+			if(segment.isEmpty()) {
+				continue;
+			}
+			node = node.child(normalize(segment), unixGlob);
+		}
+		if(node == root) {
+			throw new IllegalArgumentException("Glob must contain at least one path segment: " + unixGlob); //$NON-NLS-1$
+		}
+		if(node.rule < 0) {
+			node.rule = rule;
+		}
+		values.add(value);
+		return this;
+	}
+
+	/**
+	 * Determines the highest-ranked rule matching the provided path.
+	 *
+	 * @param relativePath the path to classify, relative to the root of the matched tree
+	 * @return the value for the first-added matching rule, or {@code null} if no rule matches
+	 */
+	public T classify(Path relativePath) {
+		List<Node<T>> states = match(relativePath);
+		int best = -1;
+		for(Node<T> state : states) {
+			if(state.rule >= 0 && (best < 0 || state.rule < best)) {
+				best = state.rule;
+			}
+		}
+		return best < 0 ? null : values.get(best);
+	}
+
+	/**
+	 * Determines all rules matching the provided path.
+	 *
+	 * @param relativePath the path to classify, relative to the root of the matched tree
+	 * @return the values of all matching rules, in the order they were added
+	 */
+	public List<T> classifyAll(Path relativePath) {
+		List<Node<T>> states = match(relativePath);
+		List<Integer> rules = new ArrayList<>();
+		for(Node<T> state : states) {
+			if(state.rule >= 0) {
+				rules.add(state.rule);
+			}
+		}
+		if(rules.isEmpty()) {
+			return Collections.emptyList();
+		}
+		Collections.sort(rules);
+		List<T> result = new ArrayList<>(rules.size());
+		for(int rule : rules) {
+			result.add(values.get(rule));
+		}
+		return result;
+	}
+
+	// *******************************************************************************
+	// * Internal implementation methods
+	// *******************************************************************************
+
+	/**
+	 * Walks the name elements of the path, tracking each tree node that the prefix
+	 * seen so far can reach.
+	 */
+	private List<Node<T>> match(Path relativePath) {
+		List<Node<T>> states = new ArrayList<>();
+		states.add(root);
+		List<Node<T>> next = new ArrayList<>();
+
+		int count = relativePath.getNameCount();
+		for(int i = 0; i < count && !states.isEmpty(); i++) {
+			String name = normalize(relativePath.getName(i).toString());
+			next.clear();
+			for(Node<T> state : states) {
+				step(state, name, next);
+				if(state.anyDepth != null) {
+					// "**" may match zero elements, so its children can apply immediately
+					step(state.anyDepth, name, next);
+				}
+			}
+			List<Node<T>> swap = states;
+			states = next;
+			next = swap;
+		}
+		return states;
+	}
+
+	private static <T> void step(Node<T> state, String name, List<Node<T>> next) {
+		if(state.isAnyDepth) {
+			addState(next, state);
+		}
+		Node<T> literal = state.literals.get(name);
+		if(literal != null) {
+			addState(next, literal);
+		}
+		for(Wildcard<T> wildcard : state.wildcards) {
+			if(wildcard.matches(name)) {
+				addState(next, wildcard.node);
+			}
+		}
+	}
+
+	private static <T> void addState(List<Node<T>> states, Node<T> node) {
+		for(Node<T> state : states) {
+			if(state == node) {
+				return;
+			}
+		}
+		states.add(node);
+	}
+
+	/**
+	 * Probes the filesystem's glob matching, which is what callers previously relied on,
+	 * rather than the case sensitivity of any particular directory.
+	 */
+	private static boolean isCaseInsensitive(FileSystem fileSystem) {
+		PathMatcher matcher = fileSystem.getPathMatcher("glob:A"); //$NON-NLS-1$
+		return matcher.matches(fileSystem.getPath("a")); //$NON-NLS-1$
+	}
+
+	private String normalize(String name) {
+		return ignoreCase ? name.toLowerCase(Locale.ENGLISH) : name;
+	}
+
+	private static class Node<T> {
+		private final boolean isAnyDepth;
+		private final Map<String, Node<T>> literals = new HashMap<>();
+		private final List<Wildcard<T>> wildcards = new ArrayList<>();
+		private Node<T> anyDepth;
+		private int rule = -1;
+
+		Node(boolean isAnyDepth) {
+			this.isAnyDepth = isAnyDepth;
+		}
+
+		Node<T> child(String segment, String glob) {
+			if(ANY_DEPTH.equals(segment)) {
+				if(anyDepth == null) {
+					anyDepth = new Node<>(true);
+				}
+				return anyDepth;
+			}
+
+			int star = segment.indexOf(WILDCARD);
+			if(star < 0) {
+				if(segment.indexOf('?') > -1 || segment.indexOf('[') > -1 || segment.indexOf('{') > -1) {
+					throw new IllegalArgumentException("Unsupported glob syntax: " + glob); //$NON-NLS-1$
+				}
+				return literals.computeIfAbsent(segment, key -> new Node<>(false));
+			}
+			if(segment.indexOf(WILDCARD, star+1) > -1) {
+				throw new IllegalArgumentException("Only one wildcard is supported per path segment: " + glob); //$NON-NLS-1$
+			}
+			String prefix = segment.substring(0, star);
+			String suffix = segment.substring(star+1);
+			for(Wildcard<T> wildcard : wildcards) {
+				if(wildcard.prefix.equals(prefix) && wildcard.suffix.equals(suffix)) {
+					return wildcard.node;
+				}
+			}
+			Wildcard<T> wildcard = new Wildcard<>(prefix, suffix, new Node<>(false));
+			wildcards.add(wildcard);
+			return wildcard.node;
+		}
+	}
+
+	private static class Wildcard<T> {
+		private final String prefix;
+		private final String suffix;
+		private final Node<T> node;
+
+		Wildcard(String prefix, String suffix, Node<T> node) {
+			this.prefix = prefix;
+			this.suffix = suffix;
+			this.node = node;
+		}
+
+		boolean matches(String name) {
+			return name.length() >= prefix.length() + suffix.length()
+				&& name.startsWith(prefix)
+				&& name.endsWith(suffix);
+		}
+	}
+}
@@ -74,6 +74,55 @@ public class CompilerApplication implements IApplication {
 			if("true".equals(setXspOptions)) { //$NON-NLS-1$
 				compiler.setSetProductionXspOptions(true);
 			}
+			Path cacheDirectory = toPath(System.getProperty(NSFODPConstants.PROP_CACHEDIRECTORY));
+			if(cacheDirectory != null) {
+				compiler.setCacheDirectory(cacheDirectory);
+			}
+			String batchXspCompilation = System.getProperty(NSFODPConstants.PROP_BATCHXSPCOMPILATION);
+			if("true".equals(batchXspCompilation)) { //$NON-NLS-1$
+				compiler.setBatchXspCompilation(true);
+			}
+			String translationParallelism = System.getProperty(NSFODPConstants.PROP_XSPTRANSLATIONPARALLELISM);
+			if(StringUtil.isNotEmpty(translationParallelism)) {
+				compiler.setXspTranslationParallelism(Integer.parseInt(translationParallelism));
+			}
+			String importThreads = System.getProperty(NSFODPConstants.PROP_IMPORTPREPARATIONTHREADS);
+			if(StringUtil.isNotEmpty(importThreads)) {
+				compiler.setImportPreparationThreads(Integer.parseInt(importThreads));
+			}
+			String importBatchSize = System.getProperty(NSFODPConstants.PROP_DXLIMPORTBATCHSIZE);
+			if(StringUtil.isNotEmpty(importBatchSize)) {
+				compiler.setDxlImportBatchSize(Integer.parseInt(importBatchSize));
+			}
+			String pipelinedImport = System.getProperty(NSFODPConstants.PROP_PIPELINEDIMPORT);
+			if("true".equals(pipelinedImport)) { //$NON-NLS-1$
+				compiler.setPipelinedImport(true);
+			}
+			String streamImportThreshold = System.getProperty(NSFODPConstants.PROP_DXLSTREAMIMPORTTHRESHOLD);
+			if(StringUtil.isNotEmpty(streamImportThreshold)) {
+				compiler.setDxlStreamImportThreshold(Long.parseLong(streamImportThreshold));
+			}
+			String lowMemoryCompilation = System.getProperty(NSFODPConstants.PROP_LOWMEMORYCOMPILATION);
+			if("true".equals(lowMemoryCompilation)) { //$NON-NLS-1$
+				compiler.setLowMemoryCompilation(true);
+			}
+			
+			String pruneUpdateSiteBundles = System.getProperty(NSFODPConstants.PROP_PRUNEUPDATESITEBUNDLES);
+			if("true".equals(pruneUpdateSiteBundles)) { //$NON-NLS-1$
+				compiler.setPruneUpdateSiteBundles(true);
+			}
+			String warmRegistryLifetime = System.getProperty(NSFODPConstants.PROP_WARMREGISTRYLIFETIME);
+			if(StringUtil.isNotEmpty(warmRegistryLifetime)) {
+				compiler.setWarmRegistryLifetime(Long.parseLong(warmRegistryLifetime));
+			}
+			String pruneXspLibraries = System.getProperty(NSFODPConstants.PROP_PRUNEXSPLIBRARIES);
+			if("true".equals(pruneXspLibraries)) { //$NON-NLS-1$
+				compiler.setPruneXspLibraries(true);
+			}
+			String blankDatabasePoolSize = System.getProperty(NSFODPConstants.PROP_BLANKDATABASEPOOLSIZE);
+			if(StringUtil.isNotEmpty(blankDatabasePoolSize)) {
+				compiler.setBlankDatabasePoolSize(Integer.parseInt(blankDatabasePoolSize));
+			}
 			
 			if(updateSite != null) {
 				UpdateSite updateSiteObj = new FilesystemUpdateSite(updateSite.toFile());
@@ -22,11 +22,13 @@ import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.security.Principal;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.Semaphore;
 import java.util.zip.GZIPOutputStream;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
@@ -56,6 +58,9 @@ public class ODPCompilerServlet extends HttpServlet {
 	private static final long serialVersionUID = 1L;
 	
 	public static boolean ALLOW_ANONYMOUS = "true".equals(System.getProperty("org.openntf.nsfodp.allowAnonymous")); //$NON-NLS-1$ //$NON-NLS-2$
+	
+	/** Limits the number of compilations running at the same time, defaulting to one per processor */
+	private static final Semaphore COMPILATION_PERMITS = new Semaphore(Math.max(1, Integer.getInteger(NSFODPConstants.PROP_MAXCONCURRENTCOMPILATIONS, Runtime.getRuntime().availableProcessors())), true);
 
 	@Override
 	protected void doPost(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
@@ -149,6 +154,56 @@ public class ODPCompilerServlet extends HttpServlet {
 			if("true".equals(setXspOptions)) { //$NON-NLS-1$
 				compiler.setSetProductionXspOptions(true);
 			}
+			String batchXspCompilation = req.getHeader(NSFODPConstants.HEADER_BATCH_XSP_COMPILATION);
+			if("true".equals(batchXspCompilation)) { //$NON-NLS-1$
+				compiler.setBatchXspCompilation(true);
+			}
+			// The cache location is server configuration, not a client option
+			String cacheDirectory = System.getProperty(NSFODPConstants.PROP_CACHEDIRECTORY);
+			if(StringUtil.isNotEmpty(cacheDirectory)) {
+				compiler.setCacheDirectory(Paths.get(cacheDirectory));
+			}
+			String translationParallelism = System.getProperty(NSFODPConstants.PROP_XSPTRANSLATIONPARALLELISM);
+			if(StringUtil.isNotEmpty(translationParallelism)) {
+				compiler.setXspTranslationParallelism(Integer.parseInt(translationParallelism));
+			}
+			String importThreads = System.getProperty(NSFODPConstants.PROP_IMPORTPREPARATIONTHREADS);
+			if(StringUtil.isNotEmpty(importThreads)) {
+				compiler.setImportPreparationThreads(Integer.parseInt(importThreads));
+			}
+			String importBatchSize = System.getProperty(NSFODPConstants.PROP_DXLIMPORTBATCHSIZE);
+			if(StringUtil.isNotEmpty(importBatchSize)) {
+				compiler.setDxlImportBatchSize(Integer.parseInt(importBatchSize));
+			}
+			String pipelinedImport = System.getProperty(NSFODPConstants.PROP_PIPELINEDIMPORT);
+			if("true".equals(pipelinedImport)) { //$NON-NLS-1$
+				compiler.setPipelinedImport(true);
+			}
+			String streamImportThreshold = System.getProperty(NSFODPConstants.PROP_DXLSTREAMIMPORTTHRESHOLD);
+			if(StringUtil.isNotEmpty(streamImportThreshold)) {
+				compiler.setDxlStreamImportThreshold(Long.parseLong(streamImportThreshold));
+			}
+			String lowMemoryCompilation = System.getProperty(NSFODPConstants.PROP_LOWMEMORYCOMPILATION);
+			if("true".equals(lowMemoryCompilation)) { //$NON-NLS-1$
+				compiler.setLowMemoryCompilation(true);
+			}
+			
+			String pruneUpdateSiteBundles = System.getProperty(NSFODPConstants.PROP_PRUNEUPDATESITEBUNDLES);
+			if("true".equals(pruneUpdateSiteBundles)) { //$NON-NLS-1$
+				compiler.setPruneUpdateSiteBundles(true);
+			}
+			String warmRegistryLifetime = System.getProperty(NSFODPConstants.PROP_WARMREGISTRYLIFETIME);
+			if(StringUtil.isNotEmpty(warmRegistryLifetime)) {
+				compiler.setWarmRegistryLifetime(Long.parseLong(warmRegistryLifetime));
+			}
+			String pruneXspLibraries = System.getProperty(NSFODPConstants.PROP_PRUNEXSPLIBRARIES);
+			if("true".equals(pruneXspLibraries)) { //$NON-NLS-1$
+				compiler.setPruneXspLibraries(true);
+			}
+			String blankDatabasePoolSize = System.getProperty(NSFODPConstants.PROP_BLANKDATABASEPOOLSIZE);
+			if(StringUtil.isNotEmpty(blankDatabasePoolSize)) {
+				compiler.setBlankDatabasePoolSize(Integer.parseInt(blankDatabasePoolSize));
+			}
 			
 			if(siteZip != null) {
 				Path siteFile = expandZip(siteZip, cleanup);
@@ -157,18 +212,26 @@ public class ODPCompilerServlet extends HttpServlet {
 			}
 			
 			Path[] nsf = new Path[1];
-			NotesThread notes = new NotesThread(() -> {
-				try {
-					nsf[0] = compiler.compile();
-					mon.done();
-				} catch(RuntimeException e) {
-					throw e;
-				} catch(Exception e) {
-					throw new RuntimeException(e);
-				}
-			});
-			notes.run();
-			notes.join();
+			if(!COMPILATION_PERMITS.tryAcquire()) {
+				mon.subTask(Messages.ODPCompilerServlet_waitingForCompilation);
+				COMPILATION_PERMITS.acquire();
+			}
+			try {
+				NotesThread notes = new NotesThread(() -> {
+					try {
+						nsf[0] = compiler.compile();
+						mon.done();
+					} catch(RuntimeException e) {
+						throw e;
+					} catch(Exception e) {
+						throw new RuntimeException(e);
+					}
+				});
+				notes.run();
+				notes.join();
+			} finally {
+				COMPILATION_PERMITS.release();
+			}
 			
 			
 			// Now stream the NSF
@@ -19,12 +19,16 @@ import org.eclipse.osgi.util.NLS;
 
 public class Messages extends NLS {
 	private static final String BUNDLE_NAME = "org.openntf.nsfodp.compiler.messages"; //$NON-NLS-1$
+	public static String NotesDxlImportTarget_unableToOpenFile;
 	public static String ODPCompiler_basicElementLabel;
+	public static String ODPCompiler_compilationDiagnostic;
+	public static String ODPCompiler_compiledJavaClasses;
 	public static String ODPCompiler_compilingCustomControls;
 	public static String ODPCompiler_compilingJava;
 	public static String ODPCompiler_compilingJavaClasses;
 	public static String ODPCompiler_compilingLotusScript;
 	public static String ODPCompiler_compilingXPages;
+	public static String ODPCompiler_compilingXSPClasses;
 	public static String ODPCompiler_couldNotIdentifyTitle;
 	public static String ODPCompiler_creatingNSF;
 	public static String ODPCompiler_customControlLabel;
@@ -42,12 +46,19 @@ public class Messages extends NLS {
 	public static String ODPCompiler_installingBundles;
 	public static String ODPCompiler_javaClassLabel;
 	public static String ODPCompiler_javaCompilationFailed;
+	public static String ODPCompiler_lotusScriptCircularUse;
+	public static String ODPCompiler_lotusScriptDependencyFailed;
 	public static String ODPCompiler_lotusScriptLabel;
+	public static String ODPCompiler_lotusScriptMissingUse;
+	public static String ODPCompiler_prunedBundles;
+	public static String ODPCompiler_prunedLibraries;
 	public static String ODPCompiler_unableToCompileLotusScript;
 	public static String ODPCompiler_uninstallingBundles;
 	public static String ODPCompiler_webServiceNotFound1;
 	public static String ODPCompiler_webServiceNotFound2;
 	public static String ODPCompiler_XPageLabel;
+	public static String ODPCompiler_xspCompilationFailed;
+	public static String SharedBundles_bundleChanged;
 	static {
 		// initialize resource bundle
 		NLS.initializeMessages(BUNDLE_NAME, Messages.class);
@@ -28,12 +28,10 @@ import java.net.URI;
 import java.net.URL;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
 import java.text.DateFormat;
 import java.text.MessageFormat;
 import java.text.SimpleDateFormat;
-import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
@@ -47,18 +45,25 @@ import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.NavigableSet;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Properties;
-import java.util.Queue;
 import java.util.Set;
-import java.util.function.Function;
-import java.util.jar.JarEntry;
-import java.util.jar.JarFile;
-import java.util.regex.Pattern;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+
 import org.eclipse.core.runtime.FileLocator;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.openntf.nsfodp.commons.NSFODPUtil;
@@ -71,14 +76,31 @@ import org.openntf.nsfodp.commons.odp.LotusScriptLibrary;
 import org.openntf.nsfodp.commons.odp.OnDiskProject;
 import org.openntf.nsfodp.commons.odp.XPage;
 import org.openntf.nsfodp.commons.odp.XSPCompilationResult;
+import org.openntf.nsfodp.commons.odp.XSPDependencyGraph;
 import org.openntf.nsfodp.commons.odp.util.DXLNativeUtil;
 import org.openntf.nsfodp.commons.odp.util.ODPUtil;
 import org.openntf.nsfodp.compiler.update.UpdateSite;
+import org.openntf.nsfodp.compiler.update.UpdateSiteBundleResolver;
+import org.openntf.nsfodp.compiler.util.BlankDatabasePool;
+import org.openntf.nsfodp.compiler.util.BundleIndex;
+import org.openntf.nsfodp.compiler.util.CompilationCache;
+import org.openntf.nsfodp.compiler.util.DxlImportBatch;
+import org.openntf.nsfodp.compiler.util.DxlImportTarget;
+import org.openntf.nsfodp.compiler.util.DxlStreamImport;
+import org.openntf.nsfodp.compiler.util.ImportPipeline;
+import org.openntf.nsfodp.compiler.util.IncrementalJavaCompiler;
 import org.openntf.nsfodp.compiler.util.LibraryWeightComparator;
+import org.openntf.nsfodp.compiler.util.LotusScriptDependencyGraph;
 import org.openntf.nsfodp.compiler.util.MultiPathResourceBundleSource;
+import org.openntf.nsfodp.compiler.util.NotesDxlImportTarget;
+import org.openntf.nsfodp.compiler.util.PrecompiledJavaSourceClassLoader;
+import org.openntf.nsfodp.compiler.util.SharedBundles;
+import org.openntf.nsfodp.compiler.util.XSPLibrarySelector;
+import org.openntf.nsfodp.compiler.util.XSPRegistryPool;
 import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.BundleException;
+import org.osgi.framework.FrameworkUtil;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 
@@ -90,6 +112,7 @@ import com.ibm.xsp.registry.CompositeComponentDefinitionImpl;
 import com.ibm.xsp.registry.FacesLibraryImpl;
 import com.ibm.xsp.registry.FacesProject;
 import com.ibm.xsp.registry.FacesProjectImpl;
+import com.ibm.xsp.registry.FacesSharableRegistry;
 import com.ibm.xsp.registry.LibraryFragmentImpl;
 import com.ibm.xsp.registry.SharableRegistryImpl;
 import com.ibm.xsp.registry.UpdatableLibrary;
@@ -106,6 +129,7 @@ import lotus.domino.DxlImporter;
 import lotus.domino.NoteCollection;
 import lotus.domino.NotesException;
 import lotus.domino.NotesFactory;
+import lotus.domino.NotesThread;
 
 import com.darwino.domino.napi.DominoAPI;
 import com.darwino.domino.napi.DominoException;
@@ -125,13 +149,17 @@ import com.ibm.domino.napi.c.xsp.XSPNative;
 import com.ibm.xsp.extlib.interpreter.DynamicFacesClassLoader;
 import com.ibm.xsp.extlib.interpreter.DynamicXPageBean;
 import com.ibm.xsp.extlib.javacompiler.JavaCompilerException;
-import com.ibm.xsp.extlib.javacompiler.JavaSourceClassLoader;
 
 /**
  * Represents an on-disk project compilation environment.
  * 
  * <p>This class is the primary entry point for ODP compilation.</p>
  * 
+ * <p>Each instance runs one compilation at a time, but separate instances may compile
+ * concurrently: each has its own XSP registry, class loader, and temporary database, and
+ * update site bundles used by more than one compilation are installed once and
+ * uninstalled when the last of them completes.</p>
+ * 
  * @author Jesse Gallagher
  * @since 1.0.0
  */
@@ -158,6 +186,23 @@ public class ODPCompiler {
 	private String templateName;
 	private String templateVersion;
 	private boolean setProductionXspOptions = false;
+	private CompilationCache cache;
+	private XSPDependencyGraph dependencyGraph;
+	private boolean batchXspCompilation = false;
+	private int xspTranslationParallelism = 1;
+	private int importPreparationThreads = 0;
+	private int dxlImportBatchSize = 1;
+	private boolean pipelinedImport = false;
+	private long dxlStreamImportThreshold = 0;
+	private boolean lowMemoryCompilation = false;
+	private boolean pruneUpdateSiteBundles = false;
+	private long warmRegistryLifetime = 0;
+	private boolean pruneXspLibraries = false;
+	private int blankDatabasePoolSize = 0;
+	private XSPRegistryPool.Lease registryLease;
+	private Collection<Bundle> installedBundles = Collections.emptySet();
+	/** The import running alongside compilation in pipelined mode, if any */
+	private Future<Path> pendingImport;
 	
 	private static final List<String> DEFAULT_COMPILER_OPTIONS = Arrays.asList(
 			"-g", //$NON-NLS-1$
@@ -314,6 +359,281 @@ public class ODPCompiler {
 		return setProductionXspOptions;
 	}
 	
+	/**
+	 * Sets a directory to use to store generated DXL and compiled XSP classes between
+	 * compilations, allowing unchanged elements to skip regeneration.
+	 * 
+	 * @param cacheDirectory the directory to use, or <code>null</code> to disable caching
+	 * @since 2.1.0
+	 */
+	public void setCacheDirectory(Path cacheDirectory) {
+		this.cache = cacheDirectory == null ? null : new CompilationCache(cacheDirectory);
+	}
+	
+	/**
+	 * @return the directory used to cache compilation products, or <code>null</code> if
+	 *         caching is disabled
+	 * @since 2.1.0
+	 */
+	public Path getCacheDirectory() {
+		return cache == null ? null : cache.getDirectory();
+	}
+	
+	/**
+	 * Sets whether XPages and Custom Controls should be translated up front and then
+	 * compiled together in a single Java compilation task, instead of invoking the compiler
+	 * once per element. This avoids repeating compiler setup for each element, which
+	 * dominates compilation time for projects with many XSP elements. Compilation errors
+	 * are still reported per element.
+	 * 
+	 * @param batchXspCompilation whether to compile all XSP elements in one batch
+	 * @since 2.1.0
+	 */
+	public void setBatchXspCompilation(boolean batchXspCompilation) {
+		this.batchXspCompilation = batchXspCompilation;
+	}
+	
+	/**
+	 * @return whether XSP elements are compiled in a single batch
+	 * @since 2.1.0
+	 */
+	public boolean isBatchXspCompilation() {
+		return batchXspCompilation;
+	}
+	
+	/**
+	 * Sets the number of threads used to translate XPages and Custom Controls to Java
+	 * source. Translation happens after all Custom Controls are registered and does not
+	 * modify the XSP registry, so elements can be translated independently; compilation
+	 * and import still process elements in a consistent order.
+	 * 
+	 * @param xspTranslationParallelism the number of translation threads, or a value less
+	 *        than 1 to use one per available processor
+	 * @since 2.1.0
+	 */
+	public void setXspTranslationParallelism(int xspTranslationParallelism) {
+		this.xspTranslationParallelism = xspTranslationParallelism < 1 ? Runtime.getRuntime().availableProcessors() : xspTranslationParallelism;
+	}
+	
+	/**
+	 * @return the number of threads used to translate XSP elements
+	 * @since 2.1.0
+	 */
+	public int getXspTranslationParallelism() {
+		return xspTranslationParallelism;
+	}
+	
+	/**
+	 * Sets the number of worker threads used to prepare design elements for import. Workers
+	 * read files and generate DXL ahead of the importing thread, which only performs the
+	 * import itself, so that the two overlap.
+	 * 
+	 * <p>This defaults to 0, so that elements are prepared on the importing thread unless
+	 * workers are requested.</p>
+	 * 
+	 * @param importPreparationThreads the number of worker threads, or 0 to prepare each
+	 *        element on the importing thread
+	 * @since 2.1.0
+	 */
+	public void setImportPreparationThreads(int importPreparationThreads) {
+		this.importPreparationThreads = Math.max(0, importPreparationThreads);
+	}
+	
+	/**
+	 * @return the number of worker threads used to prepare design elements for import
+	 * @since 2.1.0
+	 */
+	public int getImportPreparationThreads() {
+		return importPreparationThreads;
+	}
+	
+	/**
+	 * Sets the maximum number of design elements combined into a single DXL import. Combining
+	 * elements reduces the number of calls into the DXL importer, which each carry a fixed
+	 * overhead. If a combined import fails, its elements are retried in smaller groups so
+	 * that the failure is reported against the individual element.
+	 * 
+	 * <p>This defaults to 1, so that combining elements is opt-in. Elements are always
+	 * imported individually when {@value #INI_DEBUGDXL} is set.</p>
+	 * 
+	 * @param dxlImportBatchSize the maximum number of elements per import, or 1 to import
+	 *        each element individually
+	 * @since 2.1.0
+	 */
+	public void setDxlImportBatchSize(int dxlImportBatchSize) {
+		this.dxlImportBatchSize = Math.max(1, dxlImportBatchSize);
+	}
+	
+	/**
+	 * @return the maximum number of design elements combined into a single DXL import
+	 * @since 2.1.0
+	 */
+	public int getDxlImportBatchSize() {
+		return dxlImportBatchSize;
+	}
+	
+	/**
+	 * Sets whether the NSF should be created before compiling Java and XSP elements, so that
+	 * database properties, classic design elements, file resources, and LotusScript libraries
+	 * are imported on a separate thread while compilation runs. The compiled elements are
+	 * imported once compilation finishes.
+	 * 
+	 * @param pipelinedImport whether to import classic design elements during compilation
+	 * @since 2.1.0
+	 */
+	public void setPipelinedImport(boolean pipelinedImport) {
+		this.pipelinedImport = pipelinedImport;
+	}
+	
+	/**
+	 * @return whether classic design elements are imported during compilation
+	 * @since 2.1.0
+	 */
+	public boolean isPipelinedImport() {
+		return pipelinedImport;
+	}
+	
+	/**
+	 * Sets the file size at which file resources are imported from a temporary DXL file
+	 * rather than from an in-memory string. Large elements are written to disk as their DXL
+	 * is generated and read by the importer from there, so that the Base64 encoding of their
+	 * content is never held in the Java heap as a whole.
+	 * 
+	 * <p>This defaults to 0, so that importing from a file is opt-in. In
+	 * {@link #setLowMemoryCompilation(boolean) low-memory mode}, a value of 0 uses
+	 * {@value DxlStreamImport#LOW_MEMORY_THRESHOLD} bytes instead.</p>
+	 * 
+	 * @param dxlStreamImportThreshold the size in bytes of the file content at which to
+	 *        import from a file, or 0 to use the default
+	 * @since 2.1.0
+	 */
+	public void setDxlStreamImportThreshold(long dxlStreamImportThreshold) {
+		this.dxlStreamImportThreshold = Math.max(0, dxlStreamImportThreshold);
+	}
+	
+	/**
+	 * @return the file size at which file resources are imported from a temporary DXL file,
+	 *         or 0 if the default for the compilation mode is used
+	 * @since 2.1.0
+	 */
+	public long getDxlStreamImportThreshold() {
+		return dxlStreamImportThreshold;
+	}
+	
+	/**
+	 * Sets whether the compiler should bound the memory used by XSP elements and import
+	 * preparation, at some cost in speed. In this mode:
+	 * 
+	 * <ul>
+	 * 	<li>XPages and Custom Controls are translated and compiled a few at a time, rather
+	 * 		than translating all elements before compiling any</li>
+	 * 	<li>The translated Java source of each element is released once it is compiled</li>
+	 * 	<li>Each import preparation thread holds at most one prepared element</li>
+	 * 	<li>File resources of at least {@value DxlStreamImport#LOW_MEMORY_THRESHOLD} bytes
+	 * 		are imported from a temporary DXL file, unless a different
+	 * 		{@link #setDxlStreamImportThreshold(long) threshold} is set</li>
+	 * </ul>
+	 * 
+	 * @param lowMemoryCompilation whether to bound the memory used during compilation
+	 * @since 2.1.0
+	 */
+	public void setLowMemoryCompilation(boolean lowMemoryCompilation) {
+		this.lowMemoryCompilation = lowMemoryCompilation;
+	}
+	
+	/**
+	 * @return whether the compiler bounds the memory used during compilation
+	 * @since 2.1.0
+	 */
+	public boolean isLowMemoryCompilation() {
+		return lowMemoryCompilation;
+	}
+	
+	/**
+	 * Sets whether to install only the update site bundles needed by the project, as
+	 * determined from their manifests, rather than every bundle of every site. The needed
+	 * bundles are those required by the project and those that contribute XSP libraries,
+	 * along with their dependencies and fragments.
+	 * 
+	 * @param pruneUpdateSiteBundles whether to skip installing unneeded bundles
+	 * @since 2.1.0
+	 */
+	public void setPruneUpdateSiteBundles(boolean pruneUpdateSiteBundles) {
+		this.pruneUpdateSiteBundles = pruneUpdateSiteBundles;
+	}
+	
+	/**
+	 * @return whether only the update site bundles needed by the project are installed
+	 * @since 2.1.0
+	 */
+	public boolean isPruneUpdateSiteBundles() {
+		return pruneUpdateSiteBundles;
+	}
+	
+	/**
+	 * Sets how long to keep the installed update site bundles and the XSP registry initialized
+	 * from their libraries after a compilation, for reuse by later compilations with the same
+	 * update site contents. Reused registries are shared read-only, with each compilation's
+	 * Custom Controls defined in its own layer.
+	 * 
+	 * @param warmRegistryLifetime the time in milliseconds to keep an unused registry, or 0 to
+	 *        install and initialize everything anew for each compilation
+	 * @since 2.1.0
+	 */
+	public void setWarmRegistryLifetime(long warmRegistryLifetime) {
+		this.warmRegistryLifetime = Math.max(0, warmRegistryLifetime);
+	}
+	
+	/**
+	 * @return the time in milliseconds to keep an unused registry, or 0 if registries are
+	 *         not reused
+	 * @since 2.1.0
+	 */
+	public long getWarmRegistryLifetime() {
+		return warmRegistryLifetime;
+	}
+	
+	/**
+	 * Sets whether to initialize only the XSP libraries that provide the namespaces used
+	 * by the project's XPages and Custom Controls, along with the libraries they depend on
+	 * and any listed in the project's xsp.properties file.
+	 * 
+	 * @param pruneXspLibraries whether to skip initializing unused XSP libraries
+	 * @since 2.1.0
+	 */
+	public void setPruneXspLibraries(boolean pruneXspLibraries) {
+		this.pruneXspLibraries = pruneXspLibraries;
+	}
+	
+	/**
+	 * @return whether only the XSP libraries used by the project are initialized
+	 * @since 2.1.0
+	 */
+	public boolean isPruneXspLibraries() {
+		return pruneXspLibraries;
+	}
+	
+	/**
+	 * Sets the number of empty databases to create ahead of time in the background, so that
+	 * later compilations can use one instead of waiting for a new database to be created.
+	 * 
+	 * @param blankDatabasePoolSize the number of databases to keep available, or 0 to create
+	 *        each database during its compilation
+	 * @since 2.1.0
+	 */
+	public void setBlankDatabasePoolSize(int blankDatabasePoolSize) {
+		this.blankDatabasePoolSize = Math.max(0, blankDatabasePoolSize);
+	}
+	
+	/**
+	 * @return the number of empty databases to keep available, or 0 if databases are not
+	 *         created ahead of time
+	 * @since 2.1.0
+	 */
+	public int getBlankDatabasePoolSize() {
+		return blankDatabasePoolSize;
+	}
+	
 	/**
 	 * Runs the compilation process:
 	 * 
@@ -350,133 +670,65 @@ public class ODPCompiler {
 	 * @since 1.0.0
 	 */
 	public synchronized Path compile(ClassLoader cl) throws Exception {
-		Collection<Bundle> bundles = installBundles();
-		JavaSourceClassLoader classLoader = null;
+		Collection<Bundle> bundles = null;
+		releaseChangedBundles();
+		if(warmRegistryLifetime > 0) {
+			registryLease = XSPRegistryPool.INSTANCE.acquire(createUpdateSiteKey(), warmRegistryLifetime, this::installBundles, this::uninstallBundles);
+			installedBundles = registryLease.getBundles();
+		} else {
+			bundles = installBundles();
+			installedBundles = bundles;
+		}
 		Set<Path> cleanup = new HashSet<>();
+		CompletableFuture<CompiledElements> compiled = new CompletableFuture<>();
+		FutureTask<Path> importTask = null;
+		Throwable failure = null;
 		try {
-			boolean hasXPages = odp.hasXPagesElements();
-			if(hasXPages) {
-				initRegistry();
-	
-				// Build our classpath
-				Collection<String> dependencies = ODPUtil.expandRequiredBundles(bundleContext, odp.getRequiredBundles());
-				
-				// Special support for Notes.jar
-				Optional<Bundle> bundle = ODPUtil.findBundle(bundleContext, "com.ibm.notes.java.api.win32.linux", true); //$NON-NLS-1$
-				if(bundle.isPresent()) {
-					File f = FileLocator.getBundleFile(bundle.get());
-					if(!f.exists()) {
-						throw new IllegalStateException("Could not locate Notes.jar"); //$NON-NLS-1$
-					}
-					if(f.isFile()) {
-						try(JarFile jar = new JarFile(f)) {
-							JarEntry notesJar = jar.getJarEntry("Notes.jar"); //$NON-NLS-1$
-							Path tempFile = Files.createTempFile(NSFODPUtil.getTempDirectory(), "Notes", ".jar"); //$NON-NLS-1$ //$NON-NLS-2$
-							cleanup.add(tempFile);
-							try(InputStream is = jar.getInputStream(notesJar)) {
-								Files.copy(is, tempFile, StandardCopyOption.REPLACE_EXISTING);
-							}
-							dependencies.add("jar:" + tempFile.toUri().toString()); //$NON-NLS-1$
-						}
-					} else {
-						Path path = f.toPath().resolve("Notes.jar"); //$NON-NLS-1$
-						Path tempFile = Files.createTempFile("Notes", ".jar"); //$NON-NLS-1$ //$NON-NLS-2$
-						cleanup.add(tempFile);
-						Files.copy(path, tempFile, StandardCopyOption.REPLACE_EXISTING);
-						dependencies.add("jar:" + tempFile.toUri().toString()); //$NON-NLS-1$
-					}
-				}
-				
-				// Add any Jars from the ODP
-				for(Path jar : odp.getJars()) {
-					dependencies.add("jar:" + jar.toUri()); //$NON-NLS-1$
-				}
-				
-				String[] classPath = dependencies.toArray(new String[dependencies.size()]);
-				List<String> options = Stream.concat(
-						compilerOptions.stream(),
-						Stream.of("-source", compilerLevel, "-target", compilerLevel) //$NON-NLS-1$ //$NON-NLS-2$
-					).collect(Collectors.toList());
-				classLoader = new JavaSourceClassLoader(cl, options, classPath);
-
-				// Compile Java classes
-				compileJavaSources(classLoader);
-				compileCustomControls(classLoader);
-				compileXPages(classLoader);
+			if(pipelinedImport) {
+				// Classic design elements don't depend on compiled classes, so import them alongside compilation
+				importTask = new FutureTask<>(() -> importDatabase(compiled));
+				pendingImport = importTask;
+				new NotesThread(importTask, "NSF ODP Import").start(); //$NON-NLS-1$
 			}
 			
-			lotus.domino.Session lotusSession = NotesFactory.createSession();
 			try {
-				Path file = createDatabase(lotusSession);
-				Database database = lotusSession.getDatabase("", file.toAbsolutePath().toString()); //$NON-NLS-1$
-				DxlImporter importer = lotusSession.createDxlImporter();
-				importer.setDesignImportOption(DxlImporter.DXLIMPORTOPTION_CREATE);
-				importer.setAclImportOption(DxlImporter.DXLIMPORTOPTION_REPLACE_ELSE_IGNORE);
-				importer.setReplaceDbProperties(true);
-				importer.setReplicaRequiredForReplaceOrUpdate(false);
-				
-				importDbProperties(importer, database);
-				importBasicElements(importer, database);
-				importFileResources(importer, database);
-				importLotusScriptLibraries(importer, database);
-				
-				if(hasXPages) {
-					Set<String> compiledClassNames = new HashSet<>(classLoader.getCompiledClassNames());
-					importCustomControls(importer, database, classLoader, compiledClassNames);
-					importXPages(importer, database, classLoader, compiledClassNames);
-					importJavaElements(importer, database, classLoader, compiledClassNames);
-				}
-
-				// Append a timestamp if requested
-				if(this.isAppendTimestampToTitle()) {
-					database.setTitle(database.getTitle() + " - " + TIMESTAMP.get().format(new Date())); //$NON-NLS-1$
+				try {
+					compiled.complete(compileElements(cl, cleanup));
+				} catch(Throwable t) {
+					// Also stops the import thread at its next checkpoint
+					compiled.completeExceptionally(t);
+					throw t;
 				}
 				
-				// Set the template info if requested
-				String templateName = this.getTemplateName();
-				if(StringUtil.isNotEmpty(templateName)) {
-					NoteCollection notes = database.createNoteCollection(false);
-					notes.selectAllDesignElements(true);
-					notes.setSelectionFormula("$TITLE='$TemplateBuild'"); //$NON-NLS-1$
-					notes.buildCollection();
-					String noteId = notes.getFirstNoteID();
-
-					lotus.domino.Document doc;
-					if(StringUtil.isNotEmpty(noteId)) {
-						doc = database.getDocumentByID(noteId);
-					} else {
-						// Import an empty one
-						try(InputStream is = ODPCompiler.class.getResourceAsStream("/dxl/TemplateBuild.xml")) { //$NON-NLS-1$
-							String dxl = StreamUtil.readString(is);
-							List<String> ids = importDxl(importer, dxl, database, "$TemplateBuild blank field"); //$NON-NLS-1$
-							doc = database.getDocumentByID(ids.get(0));
-						}
-					}
-					String version = this.getTemplateVersion();
-					if(StringUtil.isNotEmpty(version)) {
-						doc.replaceItemValue("$TemplateBuild", version); //$NON-NLS-1$
-					}
-					doc.replaceItemValue("$TemplateBuildName", templateName); //$NON-NLS-1$
-					DateTime dt = database.getParent().createDateTime(Calendar.getInstance());
-					try {
-						doc.replaceItemValue("$TemplateBuildDate", dt); //$NON-NLS-1$
-					} finally {
-						dt.recycle();
-					}
-					doc.save();
+				if(importTask == null) {
+					return importDatabase(compiled);
+				} else {
+					return getResult(importTask);
 				}
-				
-				return file;
-			} finally {
-				lotusSession.recycle();
+			} catch(JavaCompilerException e) {
+				StringWriter o = new StringWriter();
+				PrintWriter errOut = new PrintWriter(o);
+				e.printExtraInformation(errOut);
+				throw new RuntimeException(MessageFormat.format(Messages.ODPCompiler_javaCompilationFailed, o), e);
 			}
-		} catch(JavaCompilerException e) {
-			StringWriter o = new StringWriter();
-			PrintWriter errOut = new PrintWriter(o);
-			e.printExtraInformation(errOut);
-			throw new RuntimeException(MessageFormat.format(Messages.ODPCompiler_javaCompilationFailed, o), e);
+		} catch(Throwable t) {
+			failure = t;
+			throw t;
 		} finally {
-			uninstallBundles(bundles);
+			if(importTask != null) {
+				// Let the import thread finish with the class loader and bundles before cleaning them up
+				awaitImport(importTask, failure);
+				pendingImport = null;
+			}
+			
+			if(registryLease != null) {
+				// The bundles stay installed until the pool evicts them
+				registryLease.close();
+				registryLease = null;
+			} else {
+				uninstallBundles(bundles);
+			}
+			installedBundles = Collections.emptySet();
 			
 			for(Path path : cleanup) {
 				if(Files.isDirectory(path)) {
@@ -488,8 +740,280 @@ public class ODPCompiler {
 				Files.deleteIfExists(path);
 			}
 			
-			if(classLoader != null) {
-				classLoader.close();
+			if(compiled.isDone() && !compiled.isCompletedExceptionally()) {
+				CompiledElements elements = compiled.get();
+				if(elements != null) {
+					elements.classLoader.close();
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Waits for a pipelined import to finish. Any failure of the import other than the
+	 * compilation's own failure is added to that failure as suppressed.
+	 * 
+	 * @param importTask the import running alongside compilation
+	 * @param failure the exception thrown by compilation, or {@code null} if it succeeded
+	 */
+	private static void awaitImport(Future<Path> importTask, Throwable failure) {
+		boolean interrupted = false;
+		while(true) {
+			try {
+				importTask.get();
+				break;
+			} catch(InterruptedException e) {
+				// Cleanup can't proceed while the import is still using the class loader
+				interrupted = true;
+				if(failure != null) {
+					failure.addSuppressed(e);
+				}
+			} catch(ExecutionException e) {
+				Throwable cause = e.getCause();
+				// The import stops with the compilation's failure, possibly wrapped above, when that occurs first
+				if(failure != null && cause != failure && cause != failure.getCause()) {
+					failure.addSuppressed(cause);
+				}
+				break;
+			}
+		}
+		if(interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+	
+	/**
+	 * Throws the failure of the pipelined import, if it has failed, so that compilation
+	 * stops early rather than producing elements that won't be imported.
+	 * 
+	 * @throws Exception the exception thrown by the import
+	 */
+	private void checkImport() throws Exception {
+		Future<Path> importTask = pendingImport;
+		if(importTask != null && importTask.isDone()) {
+			getResult(importTask);
+		}
+	}
+	
+	/**
+	 * Compiles the Java classes, Custom Controls, and XPages of the ODP.
+	 * 
+	 * @param cl the base {@link ClassLoader} to use during compilation
+	 * @param cleanup a collection to add temporary files to
+	 * @return the compiled elements, or {@code null} if the ODP has no XPages elements
+	 */
+	private CompiledElements compileElements(ClassLoader cl, Set<Path> cleanup) throws Exception {
+		if(!odp.hasXPagesElements()) {
+			return null;
+		}
+		
+		if(cache != null || pruneXspLibraries) {
+			if(dependencyGraph == null) {
+				dependencyGraph = new XSPDependencyGraph(odp);
+			}
+			// Re-parses only the XSP files changed since any previous compilation
+			dependencyGraph.refresh();
+		}
+		
+		initRegistry();
+		checkImport();
+		
+		// Build our classpath
+		BundleIndex bundleIndex = BundleIndex.get(bundleContext);
+		Collection<String> dependencies = bundleIndex.expandRequiredBundles(odp.getRequiredBundles());
+		
+		// Special support for Notes.jar, which is extracted once and reused until the bundle changes
+		Optional<Bundle> bundle = bundleIndex.findBundle("com.ibm.notes.java.api.win32.linux", true); //$NON-NLS-1$
+		if(bundle.isPresent()) {
+			File f = FileLocator.getBundleFile(bundle.get());
+			if(!f.exists()) {
+				throw new IllegalStateException("Could not locate Notes.jar"); //$NON-NLS-1$
+			}
+			Path notesJar = bundleIndex.getEmbeddedFile(f, bundle.get(), "Notes.jar"); //$NON-NLS-1$
+			dependencies.add("jar:" + notesJar.toUri().toString()); //$NON-NLS-1$
+		}
+		
+		// Add any Jars from the ODP
+		for(Path jar : odp.getJars()) {
+			dependencies.add("jar:" + jar.toUri()); //$NON-NLS-1$
+		}
+		
+		List<String> options = Stream.concat(
+				compilerOptions.stream(),
+				Stream.of("-source", compilerLevel, "-target", compilerLevel) //$NON-NLS-1$ //$NON-NLS-2$
+			).collect(Collectors.toList());
+		
+		// Compile Java classes, reusing unchanged classes from the cache when available
+		Map<String, CharSequence> javaSources = getJavaSources();
+		Map<String, byte[]> javaClasses = Collections.emptyMap();
+		if(cache != null && !javaSources.isEmpty()) {
+			subTask(Messages.ODPCompiler_compilingJava);
+			String[] javaClassPath = dependencies.toArray(new String[dependencies.size()]);
+			IncrementalJavaCompiler javaCompiler = new IncrementalJavaCompiler(cache, createJavaContextKey(),
+				(path, precompiled) -> new PrecompiledJavaSourceClassLoader(cl, options, path, precompiled));
+			javaClasses = javaCompiler.compile(javaSources, javaClassPath);
+			int compiledCount = javaCompiler.getCompiledCount();
+			subTask(MessageFormat.format(Messages.ODPCompiler_compiledJavaClasses, compiledCount, Math.max(0, javaSources.size() - compiledCount)));
+			
+			// XSP compilation sees the classes through a jar, as it would the source
+			Path jar = IncrementalJavaCompiler.createJar(javaClasses);
+			cleanup.add(jar);
+			dependencies.add("jar:" + jar.toUri()); //$NON-NLS-1$
+		}
+		
+		checkImport();
+		String[] classPath = dependencies.toArray(new String[dependencies.size()]);
+		PrecompiledJavaSourceClassLoader classLoader = new PrecompiledJavaSourceClassLoader(cl, options, classPath, javaClasses);
+		try {
+			Map<CustomControl, XSPCompilationResult> customControls;
+			Map<XPage, XSPCompilationResult> xpages;
+			String xspContextKey = null;
+			if(cache != null) {
+				xspContextKey = createXSPContextKey();
+			}
+			
+			if(javaClasses.isEmpty()) {
+				compileJavaSources(classLoader, javaSources);
+			}
+			List<CustomControl> ccs = defineCustomControls(classLoader);
+			checkImport();
+			if(batchXspCompilation) {
+				List<XPage> elements = new ArrayList<>(ccs);
+				elements.addAll(odp.getXPages());
+				customControls = new LinkedHashMap<>();
+				xpages = new LinkedHashMap<>();
+				subTask(Messages.ODPCompiler_compilingXPages);
+				for(Map.Entry<XPage, XSPCompilationResult> entry : compileXSP(elements, classLoader, xspContextKey, true).entrySet()) {
+					if(entry.getKey() instanceof CustomControl) {
+						customControls.put((CustomControl)entry.getKey(), entry.getValue());
+					} else {
+						xpages.put(entry.getKey(), entry.getValue());
+					}
+				}
+			} else {
+				customControls = compileCustomControls(ccs, classLoader, xspContextKey);
+				checkImport();
+				xpages = compileXPages(classLoader, xspContextKey);
+			}
+			return new CompiledElements(classLoader, customControls, xpages);
+		} catch(Throwable t) {
+			classLoader.close();
+			throw t;
+		}
+	}
+	
+	/**
+	 * Creates the NSF and imports all design elements. Classic design elements are imported
+	 * immediately, while XSP and Java elements are imported once the provided compilation
+	 * completes.
+	 * 
+	 * @param compiled the compilation of XSP and Java elements
+	 * @return a {@link Path} representing the created database
+	 */
+	private Path importDatabase(Future<CompiledElements> compiled) throws Exception {
+		lotus.domino.Session lotusSession = NotesFactory.createSession();
+		// Hold a couple of prepared elements per worker, so that the importer doesn't wait
+		int capacity = lowMemoryCompilation ? importPreparationThreads : importPreparationThreads * 2;
+		Path file = null;
+		boolean success = false;
+		// Stop early if compilation fails alongside the import, since the database would be discarded
+		ImportPipeline.Checkpoint checkpoint = () -> {
+			if(compiled.isDone()) {
+				getResult(compiled);
+			}
+		};
+		try(ImportPipeline pipeline = new ImportPipeline(importPreparationThreads, capacity, checkpoint)) {
+			file = createDatabase(lotusSession);
+			Database database = lotusSession.getDatabase("", file.toAbsolutePath().toString()); //$NON-NLS-1$
+			DxlImporter importer = lotusSession.createDxlImporter();
+			importer.setDesignImportOption(DxlImporter.DXLIMPORTOPTION_CREATE);
+			importer.setAclImportOption(DxlImporter.DXLIMPORTOPTION_REPLACE_ELSE_IGNORE);
+			importer.setReplaceDbProperties(true);
+			importer.setReplicaRequiredForReplaceOrUpdate(false);
+			DxlImportTarget target = new NotesDxlImportTarget(lotusSession, importer, database);
+			
+			importDbProperties(target);
+			
+			int batchSize = DEBUG_DXL ? 1 : dxlImportBatchSize;
+			if(batchSize > 1) {
+				// Batches are wrapped in an empty <database> element, which shouldn't clear the properties above
+				importer.setReplaceDbProperties(false);
+			}
+			DxlImportBatch batch = new DxlImportBatch(importer, database, batchSize, (dxl, name) -> {
+				try {
+					importDxl(target, dxl, name);
+				} catch(NotesException ne) {
+					throw new NotesException(ne.id, "Exception while importing " + name, ne); //$NON-NLS-1$
+				}
+			});
+			
+			importBasicElements(batch, pipeline);
+			pipeline.check();
+			importFileResources(batch, target, pipeline);
+			pipeline.check();
+			importLotusScriptLibraries(target, database, pipeline);
+			
+			CompiledElements elements = getResult(compiled);
+			if(elements != null) {
+				PrecompiledJavaSourceClassLoader classLoader = elements.classLoader;
+				// Classes of cached XSP results aren't in the class loader, so they must be imported from their data
+				Map<String, byte[]> xspClassData = collectXSPClassData(elements);
+				// Sorted, so that each class is followed by its inner classes
+				NavigableSet<String> sortedNames = new TreeSet<>(classLoader.getClassNames());
+				sortedNames.addAll(xspClassData.keySet());
+				NavigableSet<String> classIndex = Collections.unmodifiableNavigableSet(sortedNames);
+				Set<String> compiledClassNames = new LinkedHashSet<>(classIndex);
+				importCustomControls(batch, pipeline, classLoader, compiledClassNames, elements.customControls);
+				importXPages(batch, pipeline, classLoader, compiledClassNames, elements.xpages);
+				importJavaElements(batch, pipeline, classLoader, xspClassData, classIndex, compiledClassNames);
+			}
+
+			// Append a timestamp if requested
+			if(this.isAppendTimestampToTitle()) {
+				database.setTitle(database.getTitle() + " - " + TIMESTAMP.get().format(new Date())); //$NON-NLS-1$
+			}
+			
+			// Set the template info if requested
+			String templateName = this.getTemplateName();
+			if(StringUtil.isNotEmpty(templateName)) {
+				NoteCollection notes = database.createNoteCollection(false);
+				notes.selectAllDesignElements(true);
+				notes.setSelectionFormula("$TITLE='$TemplateBuild'"); //$NON-NLS-1$
+				notes.buildCollection();
+				String noteId = notes.getFirstNoteID();
+
+				lotus.domino.Document doc;
+				if(StringUtil.isNotEmpty(noteId)) {
+					doc = database.getDocumentByID(noteId);
+				} else {
+					// Import an empty one
+					try(InputStream is = ODPCompiler.class.getResourceAsStream("/dxl/TemplateBuild.xml")) { //$NON-NLS-1$
+						String dxl = StreamUtil.readString(is);
+						List<String> ids = importDxl(target, dxl, "$TemplateBuild blank field"); //$NON-NLS-1$
+						doc = database.getDocumentByID(ids.get(0));
+					}
+				}
+				String version = this.getTemplateVersion();
+				if(StringUtil.isNotEmpty(version)) {
+					doc.replaceItemValue("$TemplateBuild", version); //$NON-NLS-1$
+				}
+				doc.replaceItemValue("$TemplateBuildName", templateName); //$NON-NLS-1$
+				DateTime dt = database.getParent().createDateTime(Calendar.getInstance());
+				try {
+					doc.replaceItemValue("$TemplateBuildDate", dt); //$NON-NLS-1$
+				} finally {
+					dt.recycle();
+				}
+				doc.save();
+			}
+			
+			success = true;
+			return file;
+		} finally {
+			lotusSession.recycle();
+			if(!success && file != null) {
+				// Don't leave a partially-imported database behind
+				Files.deleteIfExists(file);
 			}
 		}
 	}
@@ -497,12 +1021,36 @@ public class ODPCompiler {
 	// *******************************************************************************
 	// * Bundle manipulation methods
 	// *******************************************************************************
-	private Collection<Bundle> installBundles() {
+	
+	/**
+	 * Evicts idle reusable environments if any holds an older build of one of the update
+	 * site bundles, so that the rebuilt bundle can be installed in its place.
+	 */
+	private void releaseChangedBundles() throws IOException, XMLException, BundleException {
+		for(UpdateSite updateSite : updateSites) {
+			for(URI uri : updateSite.getBundleURIs()) {
+				if(SharedBundles.INSTANCE.isChanged(uri)) {
+					XSPRegistryPool.INSTANCE.evictIdle();
+					return;
+				}
+			}
+		}
+	}
+	
+	private Collection<Bundle> installBundles() throws IOException, XMLException {
 		subTask(Messages.ODPCompiler_installingBundles);
 		
-		Collection<Bundle> result = updateSites.stream()
+		Collection<URI> bundleURIs = updateSites.stream()
 			.map(UpdateSite::getBundleURIs)
 			.flatMap(Collection::stream)
+			.collect(Collectors.toList());
+		if(pruneUpdateSiteBundles && !bundleURIs.isEmpty()) {
+			int available = bundleURIs.size();
+			bundleURIs = new UpdateSiteBundleResolver(bundleURIs).resolve(odp.getRequiredBundles(), odp.hasXPagesElements());
+			subTask(MessageFormat.format(Messages.ODPCompiler_prunedBundles, bundleURIs.size(), available));
+		}
+		
+		Collection<Bundle> result = bundleURIs.stream()
 			.map(this::installBundle)
 			.collect(Collectors.toList()).stream() // Force waiting until installation is complete
 			.filter(Objects::nonNull)
@@ -515,40 +1063,90 @@ public class ODPCompiler {
 	private void uninstallBundles(Collection<Bundle> bundles) {
 		subTask(Messages.ODPCompiler_uninstallingBundles);
 		
-		bundles.stream().forEach(t -> {
-			try {
-				t.uninstall();
-			} catch (BundleException e) {
-				throw new RuntimeException(e);
-			}
-		});
+		// Bundles also used by other compilations stay installed until they are done
+		try {
+			SharedBundles.INSTANCE.release(bundles);
+		} catch (BundleException e) {
+			throw new RuntimeException(e);
+		}
 	}
 	
 	/**
-	 * Initializes the internal Faces registry with the newly-added plugins.
+	 * Initializes the internal Faces registry with the newly-added plugins. When registries
+	 * are reused, the libraries are added to a shared base registry, which is only
+	 * initialized the first time a given set of libraries is seen.
 	 */
-	private void initRegistry() {
+	private void initRegistry() throws IOException {
 		subTask(Messages.ODPCompiler_initializingLibraries);
 
-		List<Object> libraries = ExtensionManager.findServices((List<Object>)null, LibraryServiceLoader.class, "com.ibm.xsp.Library"); //$NON-NLS-1$
-		libraries.stream()
+		List<XspLibrary> libraries = ExtensionManager.findServices((List<Object>)null, LibraryServiceLoader.class, "com.ibm.xsp.Library").stream() //$NON-NLS-1$
 			.filter(lib -> lib instanceof XspLibrary)
 			.map(XspLibrary.class::cast)
+			.filter(this::isLibraryAvailable)
 			.sorted(LibraryWeightComparator.INSTANCE)
-			.map(lib -> new LibraryWrapper(lib.getLibraryId(), lib))
-			.map(wrapper -> {
-				SimpleRegistryProvider provider = new SimpleRegistryProvider();
-				provider.init(wrapper);
-				return provider;
-			})
-			.map(XspRegistryProvider::getRegistry)
-			
-			.forEach(facesRegistry::addDepend);
+			.collect(Collectors.toList());
+		if(pruneXspLibraries) {
+			int available = libraries.size();
+			libraries = XSPLibrarySelector.select(libraries, dependencyGraph.getNamespaces(), getXspLibraryDepends());
+			subTask(MessageFormat.format(Messages.ODPCompiler_prunedLibraries, libraries.size(), available));
+		}
+		if(registryLease != null) {
+			String libraryKey = libraries.stream()
+				.map(XspLibrary::getLibraryId)
+				.collect(Collectors.joining(",")); //$NON-NLS-1$
+			facesRegistry.addDepend(registryLease.getRegistry(libraryKey, () -> {
+				SharableRegistryImpl baseRegistry = new SharableRegistryImpl(getClass().getPackage().getName() + ".base"); //$NON-NLS-1$
+				getLibraryRegistries(libraries).forEach(baseRegistry::addDepend);
+				baseRegistry.refreshReferences();
+				return baseRegistry;
+			}));
+		} else {
+			getLibraryRegistries(libraries).forEach(facesRegistry::addDepend);
+		}
 		facesRegistry.refreshReferences();
 	}
 	
 	/**
-	 * Installs the provided bundle.
+	 * Determines whether the library is part of the platform or comes from this compilation's
+	 * update sites, as opposed to those of another compilation running at the same time.
+	 */
+	private boolean isLibraryAvailable(XspLibrary lib) {
+		Bundle bundle = FrameworkUtil.getBundle(lib.getClass());
+		return bundle == null || installedBundles.contains(bundle) || !SharedBundles.INSTANCE.isShared(bundle);
+	}
+	
+	/**
+	 * Reads the IDs of the libraries listed in the project's xsp.properties file.
+	 */
+	private Collection<String> getXspLibraryDepends() throws IOException {
+		Path xspProperties = odp.getBaseDirectory().resolve("WebContent").resolve("WEB-INF").resolve("xsp.properties"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		if(!Files.isRegularFile(xspProperties)) {
+			return Collections.emptySet();
+		}
+		Properties props = new Properties();
+		try(InputStream is = Files.newInputStream(xspProperties)) {
+			props.load(is);
+		}
+		return Arrays.stream(props.getProperty("xsp.library.depends", "").split(",")) //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+			.map(String::trim)
+			.filter(StringUtil::isNotEmpty)
+			.collect(Collectors.toSet());
+	}
+	
+	private static Stream<FacesSharableRegistry> getLibraryRegistries(List<XspLibrary> libraries) {
+		return libraries.stream()
+			.map(lib -> new LibraryWrapper(lib.getLibraryId(), lib))
+			.map(wrapper -> {
+				SimpleRegistryProvider provider = new SimpleRegistryProvider();
+				provider.init(wrapper);
+				return provider;
+			})
+			.map(XspRegistryProvider::getRegistry);
+	}
+	
+	/**
+	 * Installs the provided bundle, sharing the installation with any other compilation
+	 * using the same bundle.
 	 * 
 	 * @param uri the platform-accessible URI to the bundle
 	 * @return the installed {@link Bundle} object
@@ -557,7 +1155,10 @@ public class ODPCompiler {
 		Bundle bundle = null;
 		try {
 			BundleContext bundleContext = ODPCompilerActivator.instance.getBundle().getBundleContext();
-			bundle = bundleContext.installBundle(uri.toString());
+			bundle = SharedBundles.INSTANCE.acquire(bundleContext, uri);
+		} catch(SharedBundles.ChangedBundleException e) {
+			// Using the installed copy would silently compile against stale classes
+			throw new IllegalStateException(e.getMessage(), e);
 		} catch(Exception e) {
 			// Ignore
 		}
@@ -583,14 +1184,25 @@ public class ODPCompiler {
 	// * Class compilation methods
 	// *******************************************************************************
 	
-	private Map<String, Class<?>> compileJavaSources(JavaSourceClassLoader classLoader) throws FileNotFoundException, XMLException, IOException, JavaCompilerException {
+	private Map<String, Class<?>> compileJavaSources(PrecompiledJavaSourceClassLoader classLoader, Map<String, CharSequence> sources) throws JavaCompilerException {
 		subTask(Messages.ODPCompiler_compilingJava);
 		
+		if(sources.isEmpty()) {
+			return Collections.emptyMap();
+		}
+		subTask(MessageFormat.format(Messages.ODPCompiler_compilingJavaClasses, sources.size()));
+		return classLoader.addClasses(sources);
+	}
+	
+	/**
+	 * @return the source of the ODP's Java classes, keyed by class name
+	 */
+	private Map<String, CharSequence> getJavaSources() throws FileNotFoundException, XMLException, IOException {
 		Map<Path, List<JavaSource>> javaSourceFiles = odp.getJavaSourceFiles();
 		if(javaSourceFiles.isEmpty()) {
 			return Collections.emptyMap();
 		}
-		Map<String, CharSequence> sources = javaSourceFiles.entrySet().stream()
+		return javaSourceFiles.entrySet().stream()
 			.map(entry ->
 				// Convert to a map of class name -> source
 				entry.getValue().stream()
@@ -602,23 +1214,24 @@ public class ODPCompiler {
 			.map(Map::entrySet)
 			.flatMap(Set::stream)
 			.collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
-		
-		subTask(MessageFormat.format(Messages.ODPCompiler_compilingJavaClasses, sources.size()));
-		return classLoader.addClasses(sources);
 	}
 	
 	// *******************************************************************************
 	// * XSP compilation methods
 	// *******************************************************************************
 	
-	private Map<CustomControl, XSPCompilationResult> compileCustomControls(JavaSourceClassLoader classLoader) throws Exception {
+	/**
+	 * Registers the definitions of the project's Custom Controls with the XSP registry,
+	 * so that they can be referenced during translation.
+	 * 
+	 * @return the registered Custom Controls
+	 */
+	private List<CustomControl> defineCustomControls(PrecompiledJavaSourceClassLoader classLoader) throws Exception {
 		subTask(Messages.ODPCompiler_compilingCustomControls);
 		
 		ConfigParser configParser = ConfigParserFactory.getParserInstance();
 		FacesClassLoader facesClassLoader = new DynamicFacesClassLoader(dynamicXPageBean, classLoader);
 		
-		Map<CustomControl, XSPCompilationResult> result = new LinkedHashMap<>();
-		
 		List<CustomControl> ccs = odp.getCustomControls();
 		for(CustomControl cc : ccs) {
 			Document xspConfig = cc.getXspConfig().get();
@@ -643,25 +1256,17 @@ public class ODPCompiler {
 			def.refreshReferences();
 		}
 		
+		return ccs;
+	}
+	
+	private Map<CustomControl, XSPCompilationResult> compileCustomControls(List<CustomControl> ccs, PrecompiledJavaSourceClassLoader classLoader, String xspContextKey) throws Exception {
 		// Now that they're all defined, try to compile them in a queue
-		for(CustomControl cc : ccs) {
-			XSPCompilationResult compilationResult = compileXSP(cc, classLoader);
-			result.put(cc, compilationResult);
-		}
-		
-		return result;
+		return compileXSP(ccs, classLoader, xspContextKey, false);
 	}
 	
-	private Map<XPage, XSPCompilationResult> compileXPages(JavaSourceClassLoader classLoader) throws Exception {
+	private Map<XPage, XSPCompilationResult> compileXPages(PrecompiledJavaSourceClassLoader classLoader, String xspContextKey) throws Exception {
 		subTask(Messages.ODPCompiler_compilingXPages);
-		Map<XPage, XSPCompilationResult> result = new LinkedHashMap<>();
-		
-		for(XPage xpage : odp.getXPages()) {
-			XSPCompilationResult compilationResult = compileXSP(xpage, classLoader);
-			result.put(xpage, compilationResult);
-		}
-		
-		return result;
+		return compileXSP(odp.getXPages(), classLoader, xspContextKey, false);
 	}
 	
 	// *******************************************************************************
@@ -670,14 +1275,36 @@ public class ODPCompiler {
 	
 	/**
 	 * Creates a new, non-replica copy of the stub blank database for population
-	 * in the local temp directory.
+	 * in the local temp directory, or leases one created ahead of time when a pool
+	 * size is set.
 	 * 
 	 * @return a {@link Path} representing the new NSF file
-	 * @throws Exception 
-	 * @throws DominoException if there is an API-level problem creating the copy
+	 * @throws Exception if there is a problem creating the database
 	 */
-	private Path createDatabase(lotus.domino.Session lotusSession) throws IOException, NotesException, DominoException {
+	private Path createDatabase(lotus.domino.Session lotusSession) throws Exception {
 		subTask(Messages.ODPCompiler_creatingNSF);
+		if(blankDatabasePoolSize > 0) {
+			return BlankDatabasePool.INSTANCE.lease(blankDatabasePoolSize, ODPCompiler::createBlankDatabase);
+		}
+		return createBlankDatabase(lotusSession);
+	}
+	
+	/**
+	 * Creates a new empty database using its own session, for use from any Notes thread.
+	 */
+	private static Path createBlankDatabase() throws IOException, NotesException, DominoException {
+		lotus.domino.Session lotusSession = NotesFactory.createSession();
+		try {
+			return createBlankDatabase(lotusSession);
+		} finally {
+			lotusSession.recycle();
+		}
+	}
+	
+	/**
+	 * @throws DominoException if there is an API-level problem creating the database
+	 */
+	private static Path createBlankDatabase(lotus.domino.Session lotusSession) throws IOException, NotesException, DominoException {
 		Path temp = Files.createTempFile(NSFODPUtil.getTempDirectory(), "odpcompilertemp", ".nsf"); //$NON-NLS-1$ //$NON-NLS-2$
 		temp.toFile().deleteOnExit();
 		String filePath = temp.toAbsolutePath().toString();
@@ -692,7 +1319,7 @@ public class ODPCompiler {
 		return temp;
 	}
 	
-	private void importDbProperties(DxlImporter importer, Database database) throws Exception {
+	private void importDbProperties(DxlImportTarget target) throws Exception {
 		// DB properties gets special handling
 		subTask(Messages.ODPCompiler_importingDbProperties);
 		Path properties = odp.getDbPropertiesFile();
@@ -705,26 +1332,30 @@ public class ODPCompiler {
 		}
 		
 		String dxl = DOMUtil.getXMLString(dxlDoc);
-		importDxl(importer, dxl, database, "database.properties"); //$NON-NLS-1$
+		importDxl(target, dxl, "database.properties"); //$NON-NLS-1$
 	}
 	
-	private void importBasicElements(DxlImporter importer, Database database) throws Exception {
+	private void importBasicElements(DxlImportBatch batch, ImportPipeline pipeline) throws Exception {
 		subTask(Messages.ODPCompiler_importingDesignElements);
-		for(Map.Entry<Path, String> entry : odp.getDirectDXLElements().entrySet()) {
-			if(StringUtil.isNotEmpty(entry.getValue())) {
-				try {
-					importDxl(importer, entry.getValue(), database, MessageFormat.format(Messages.ODPCompiler_basicElementLabel, odp.getBaseDirectory().relativize(entry.getKey())));
-				} catch(NotesException ne) {
-					throw new NotesException(ne.id, "Exception while importing element " + odp.getBaseDirectory().relativize(entry.getKey()), ne); //$NON-NLS-1$
-				}
-			}
+		List<ImportPipeline.Preparation> preparations = new ArrayList<>();
+		for(Path file : odp.getDirectDXLFiles()) {
+			preparations.add(() -> {
+				String dxl = ODPUtil.readFile(file);
+				return () -> {
+					if(StringUtil.isNotEmpty(dxl)) {
+						batch.add(dxl, MessageFormat.format(Messages.ODPCompiler_basicElementLabel, odp.getBaseDirectory().relativize(file)));
+					}
+				};
+			});
 		}
+		pipeline.run(preparations);
+		batch.flush();
 	}
 	
-	private void importFileResources(DxlImporter importer, Database database) throws Exception {
+	private void importFileResources(DxlImportBatch batch, DxlImportTarget target, ImportPipeline pipeline) throws Exception {
 		subTask(Messages.ODPCompiler_importingFileResources);
 		
-		Map<AbstractSplitDesignElement, Document> elements = odp.getFileResources().stream()
+		List<AbstractSplitDesignElement> elements = odp.getFileResources().stream()
 			.filter(res -> {
 				Path filePath = odp.getBaseDirectory().relativize(res.getDataFile());
 				String normalizedPath = filePath.toString().replace('\\', '/');
@@ -763,26 +1394,20 @@ public class ODPCompiler {
 				
 				return true;
 			})
-			.collect(Collectors.toMap(
-				Function.identity(),
-				res -> {
-					try {
-						return res.getDxl();
-					} catch (XMLException | IOException e) {
-						throw new RuntimeException(e);
-					}
-				}
-			));
+			.collect(Collectors.toList());
 		
-		for(Map.Entry<AbstractSplitDesignElement, Document> entry : elements.entrySet()) {
-			AbstractSplitDesignElement res = entry.getKey();
-			Document dxlDoc = entry.getValue();
-			Path filePath = odp.getBaseDirectory().relativize(res.getDataFile());
-			importDxl(importer, DOMUtil.getXMLString(dxlDoc), database, res.getClass().getSimpleName() + " " + filePath); //$NON-NLS-1$
-			
-			if(res instanceof FileResource) {
-				FileResource fileRes = (FileResource)res;
-				if(fileRes.isCopyToClasses()) {
+		DxlStreamImport streamImport = new DxlStreamImport(dxlStreamImportThreshold, lowMemoryCompilation);
+		List<ImportPipeline.Preparation> preparations = new ArrayList<>(elements.size());
+		for(AbstractSplitDesignElement res : elements) {
+			preparations.add(() -> {
+				Path filePath = odp.getBaseDirectory().relativize(res.getDataFile());
+				String name = res.getClass().getSimpleName() + " " + filePath; //$NON-NLS-1$
+				
+				if(res instanceof FileResource && ((FileResource)res).isCopyToClasses()) {
+					FileResource fileRes = (FileResource)res;
+					Document dxlDoc = res.getDxl();
+					String dxl = DOMUtil.getXMLString(dxlDoc);
+					
 					// Also create a copy beneath WEB-INF/classes
 					ByteArrayOutputStream baos = new ByteArrayOutputStream();
 					try(InputStream is = Files.newInputStream(fileRes.getDataFile())) {
@@ -793,43 +1418,112 @@ public class ODPCompiler {
 					if(StringUtil.isEmpty(title)) {
 						throw new IllegalStateException(MessageFormat.format(Messages.ODPCompiler_couldNotIdentifyTitle, filePath));
 					}
-					DXLNativeUtil.importFileResource(importer, baos.toByteArray(), database, "WEB-INF/classes/" + title, "~C4g", "w"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+					String classesName = "WEB-INF/classes/" + title; //$NON-NLS-1$
+					String classesDxl = DXLNativeUtil.createFileResourceDxl(baos.toByteArray(), classesName, "~C4g", "w"); //$NON-NLS-1$ //$NON-NLS-2$
+					return () -> {
+						batch.add(dxl, name);
+						batch.add(classesDxl, classesName);
+					};
+				} else if(streamImport.isStreamImport(res)) {
+					return prepareStreamImport(streamImport, batch, target, res, filePath, name);
+				} else if(cache != null) {
+					String key = createFileResourceKey(res, filePath);
+					String cached = cache.getDxl(key);
+					if(cached == null) {
+						cached = res.getDxlString();
+						cache.putDxl(key, cached);
+					}
+					String dxl = cached;
+					return () -> batch.add(dxl, name);
+				} else {
+					String dxl = res.getDxlString();
+					return () -> batch.add(dxl, name);
 				}
-			}
+			});
+		}
+		pipeline.run(preparations);
+		batch.flush();
+	}
+	
+	/**
+	 * Locates the DXL of the provided file resource in the cache, or writes it to a file,
+	 * returning a step that imports it from there.
+	 */
+	private ImportPipeline.ImportStep prepareStreamImport(DxlStreamImport streamImport, DxlImportBatch batch, DxlImportTarget target, AbstractSplitDesignElement res, Path filePath, String name) throws Exception {
+		String key = cache == null ? null : createFileResourceKey(res, filePath);
+		Path cached = key == null ? null : cache.getDxlFile(key);
+		if(cached != null) {
+			return () -> {
+				batch.flush();
+				importDxl(target, cached, name);
+			};
 		}
+		
+		return streamImport.prepare(res, cache, key, dxlFile -> {
+			// Keep the import order consistent with any queued elements
+			batch.flush();
+			importDxl(target, dxlFile, name);
+		});
 	}
 	
-	private void importCustomControls(DxlImporter importer, Database database, JavaSourceClassLoader classLoader, Set<String> compiledClassNames) throws Exception {
+	private void importCustomControls(DxlImportBatch batch, ImportPipeline pipeline, PrecompiledJavaSourceClassLoader classLoader, Set<String> compiledClassNames, Map<CustomControl, XSPCompilationResult> compilationResults) throws Exception {
 		subTask(Messages.ODPCompiler_importingCustomControls);
 		
-		List<CustomControl> ccs = odp.getCustomControls();
-		for(CustomControl cc : ccs) {
-			Document dxlDoc = importXSP(importer, database, classLoader, compiledClassNames, cc);
-			
-			String xspConfig = cc.getXspConfigSource();
-			byte[] xspConfigData = xspConfig.getBytes();
-			DXLUtil.writeItemFileData(dxlDoc, "$ConfigData", xspConfigData); //$NON-NLS-1$
-			DXLUtil.writeItemNumber(dxlDoc, "$ConfigSize", xspConfigData.length); //$NON-NLS-1$
-			
-			importDxl(importer, DOMUtil.getXMLString(dxlDoc), database, MessageFormat.format(Messages.ODPCompiler_customControlLabel, cc.getPageName()));
+		// Design element objects don't override equals, so iterate the results directly
+		List<ImportPipeline.Preparation> preparations = new ArrayList<>(compilationResults.size());
+		for(Map.Entry<CustomControl, XSPCompilationResult> entry : compilationResults.entrySet()) {
+			CustomControl cc = entry.getKey();
+			preparations.add(() -> {
+				Document dxlDoc = createXSPDxl(classLoader, cc, entry.getValue());
+				
+				String xspConfig = cc.getXspConfigSource();
+				byte[] xspConfigData = xspConfig.getBytes();
+				DXLUtil.writeItemFileData(dxlDoc, "$ConfigData", xspConfigData); //$NON-NLS-1$
+				DXLUtil.writeItemNumber(dxlDoc, "$ConfigSize", xspConfigData.length); //$NON-NLS-1$
+				
+				String dxl = DOMUtil.getXMLString(dxlDoc);
+				return () -> {
+					drainXSPClassNames(compiledClassNames, cc);
+					batch.add(dxl, MessageFormat.format(Messages.ODPCompiler_customControlLabel, cc.getPageName()));
+				};
+			});
 		}
+		pipeline.run(preparations);
+		batch.flush();
 	}
 	
-	private void importXPages(DxlImporter importer, Database database, JavaSourceClassLoader classLoader, Set<String> compiledClassNames) throws Exception {
+	private void importXPages(DxlImportBatch batch, ImportPipeline pipeline, PrecompiledJavaSourceClassLoader classLoader, Set<String> compiledClassNames, Map<XPage, XSPCompilationResult> compilationResults) throws Exception {
 		subTask(Messages.ODPCompiler_importingXPages);
 		
-		List<XPage> xpages = odp.getXPages();
-		for(XPage xpage : xpages) {
-			Document dxlDoc = importXSP(importer, database, classLoader, compiledClassNames, xpage);
-			importDxl(importer, DOMUtil.getXMLString(dxlDoc), database, MessageFormat.format(Messages.ODPCompiler_XPageLabel, xpage.getPageName()));
+		List<ImportPipeline.Preparation> preparations = new ArrayList<>(compilationResults.size());
+		for(Map.Entry<XPage, XSPCompilationResult> entry : compilationResults.entrySet()) {
+			XPage xpage = entry.getKey();
+			preparations.add(() -> {
+				String dxl = DOMUtil.getXMLString(createXSPDxl(classLoader, xpage, entry.getValue()));
+				return () -> {
+					drainXSPClassNames(compiledClassNames, xpage);
+					batch.add(dxl, MessageFormat.format(Messages.ODPCompiler_XPageLabel, xpage.getPageName()));
+				};
+			});
 		}
+		pipeline.run(preparations);
+		batch.flush();
 	}
 	
-	private Document importXSP(DxlImporter importer, Database database, JavaSourceClassLoader classLoader, Set<String> compiledClassNames, XPage xpage) throws XMLException, IOException {
+	/**
+	 * Removes the classes of the provided XSP element from the set of classes that still
+	 * need to be imported.
+	 */
+	private void drainXSPClassNames(Set<String> compiledClassNames, XPage xpage) {
+		compiledClassNames.remove(xpage.getJavaClassName());
+		compiledClassNames.remove(xpage.getJavaClassName() + '$' + xpage.getJavaClassSimpleName() + "Page"); //$NON-NLS-1$
+	}
+	
+	private Document createXSPDxl(PrecompiledJavaSourceClassLoader classLoader, XPage xpage, XSPCompilationResult compilationResult) throws XMLException, IOException {
 		String className = xpage.getJavaClassName();
-		byte[] byteCode = classLoader.getClassByteCode(className);
+		byte[] byteCode = getClassByteCode(classLoader, compilationResult, className);
 		String innerClassName = xpage.getJavaClassName() + '$' + xpage.getJavaClassSimpleName() + "Page"; //$NON-NLS-1$
-		byte[] innerByteCode = classLoader.getClassByteCode(innerClassName);
+		byte[] innerByteCode = getClassByteCode(classLoader, compilationResult, innerClassName);
 
 		String xspSource = xpage.getSource();
 		byte[] xspSourceData = xspSource.getBytes();
@@ -846,77 +1540,105 @@ public class ODPCompiler {
 		String[] classIndex = new String[] { "WEB-INF/classes/" + ODPUtil.toJavaPath(className), "WEB-INF/classes/" + ODPUtil.toJavaPath(innerClassName) }; //$NON-NLS-1$ //$NON-NLS-2$
 		DXLUtil.writeItemString(dxlDoc, "$ClassIndexItem", true, classIndex); //$NON-NLS-1$
 		
-		// Drain them from the later queue
-		compiledClassNames.remove(className);
-		compiledClassNames.remove(innerClassName);
-		
 		return dxlDoc;
 	}
 	
-	private void importJavaElements(DxlImporter importer, Database database, JavaSourceClassLoader classLoader, Set<String> compiledClassNames) throws Exception {
+	/**
+	 * Imports the ODP's Java classes along with their inner classes, and then any remaining
+	 * compiled classes as standalone class files.
+	 * 
+	 * @param xspClassData the bytecode of XSP classes, including those not in {@code classLoader}
+	 * @param classIndex the names of all compiled classes, in sorted order
+	 * @param compiledClassNames the names of compiled classes not yet imported
+	 */
+	private void importJavaElements(DxlImportBatch batch, ImportPipeline pipeline, PrecompiledJavaSourceClassLoader classLoader, Map<String, byte[]> xspClassData, NavigableSet<String> classIndex, Set<String> compiledClassNames) throws Exception {
 		subTask(Messages.ODPCompiler_importingJava);
 		
 		Map<Path, List<JavaSource>> javaSourceFiles = odp.getJavaSourceFiles();
+		List<ImportPipeline.Preparation> preparations = new ArrayList<>();
 		for(Map.Entry<Path, List<JavaSource>> entry : javaSourceFiles.entrySet()) {
 			for(JavaSource source : entry.getValue()) {
-				Path filePath = entry.getKey().relativize(source.getDataFile());
-				String className = ODPUtil.toJavaClassName(filePath);
-				compiledClassNames.remove(className);
-				byte[] byteCode = classLoader.getClassByteCode(className);
-				
-				Document dxlDoc = source.getDxl();
-				
-				DXLUtil.writeItemFileData(dxlDoc, "$ClassData0", byteCode); //$NON-NLS-1$
-				DXLUtil.writeItemNumber(dxlDoc, "$ClassSize0", byteCode.length); //$NON-NLS-1$
-				
-				List<String> classIndexItem = new ArrayList<>();
-				classIndexItem.add("WEB-INF/classes/" + ODPUtil.toJavaPath(className)); //$NON-NLS-1$
-				
-				// Also look for any inner classes that were compiled
-				List<String> innerClasses = classLoader.getCompiledClassNames().stream()
-						.filter(cname -> cname.matches("^" + Pattern.quote(className) + "[\\.\\$].+$")) //$NON-NLS-1$ //$NON-NLS-2$
-						.collect(Collectors.toList());
-				for(int i = 0; i < innerClasses.size(); i++) {
-					String innerClassName = innerClasses.get(i);
-					compiledClassNames.remove(innerClassName);
-					byte[] innerByteCode = classLoader.getClassByteCode(innerClassName);
-					DXLUtil.writeItemFileData(dxlDoc, "$ClassData" + (i+1), innerByteCode); //$NON-NLS-1$
-					DXLUtil.writeItemNumber(dxlDoc, "$ClassSize" + (i+1), innerByteCode.length); //$NON-NLS-1$
-					classIndexItem.add("WEB-INF/classes/" + ODPUtil.toJavaPath(innerClassName)); //$NON-NLS-1$
-				}
-				DXLUtil.writeItemString(dxlDoc, "$ClassIndexItem", true, classIndexItem.toArray(new CharSequence[classIndexItem.size()])); //$NON-NLS-1$
-				
-				importDxl(importer, DOMUtil.getXMLString(dxlDoc), database, MessageFormat.format(Messages.ODPCompiler_javaClassLabel, className));
+				preparations.add(() -> {
+					Path filePath = entry.getKey().relativize(source.getDataFile());
+					String className = ODPUtil.toJavaClassName(filePath);
+					byte[] byteCode = classLoader.getClassByteCode(className);
+					
+					Document dxlDoc = source.getDxl();
+					
+					DXLUtil.writeItemFileData(dxlDoc, "$ClassData0", byteCode); //$NON-NLS-1$
+					DXLUtil.writeItemNumber(dxlDoc, "$ClassSize0", byteCode.length); //$NON-NLS-1$
+					
+					List<String> classIndexItem = new ArrayList<>();
+					classIndexItem.add("WEB-INF/classes/" + ODPUtil.toJavaPath(className)); //$NON-NLS-1$
+					
+					// Also look for any inner classes that were compiled
+					List<String> innerClasses = getInnerClassNames(classIndex, className);
+					for(int i = 0; i < innerClasses.size(); i++) {
+						String innerClassName = innerClasses.get(i);
+						byte[] innerByteCode = classLoader.getClassByteCode(innerClassName);
+						DXLUtil.writeItemFileData(dxlDoc, "$ClassData" + (i+1), innerByteCode); //$NON-NLS-1$
+						DXLUtil.writeItemNumber(dxlDoc, "$ClassSize" + (i+1), innerByteCode.length); //$NON-NLS-1$
+						classIndexItem.add("WEB-INF/classes/" + ODPUtil.toJavaPath(innerClassName)); //$NON-NLS-1$
+					}
+					DXLUtil.writeItemString(dxlDoc, "$ClassIndexItem", true, classIndexItem.toArray(new CharSequence[classIndexItem.size()])); //$NON-NLS-1$
+					
+					String dxl = DOMUtil.getXMLString(dxlDoc);
+					return () -> {
+						// The set of remaining classes is only modified on the importing thread
+						compiledClassNames.remove(className);
+						compiledClassNames.removeAll(innerClasses);
+						batch.add(dxl, MessageFormat.format(Messages.ODPCompiler_javaClassLabel, className));
+					};
+				});
 			}
 		}
+		pipeline.run(preparations);
 		
 		// Create standalone class files for remaining classes
 		for(String leftoverClassName : compiledClassNames) {
 			String fileName = "WEB-INF/classes/" + ODPUtil.toJavaPath(leftoverClassName); //$NON-NLS-1$
-			byte[] leftoverByteCode = classLoader.getClassByteCode(leftoverClassName);
-			DXLNativeUtil.importFileResource(importer, leftoverByteCode, database, fileName, "~C4g", "w"); //$NON-NLS-1$ //$NON-NLS-2$
+			byte[] leftoverByteCode = xspClassData.get(leftoverClassName);
+			if(leftoverByteCode == null) {
+				leftoverByteCode = classLoader.getClassByteCode(leftoverClassName);
+			}
+			batch.add(DXLNativeUtil.createFileResourceDxl(leftoverByteCode, fileName, "~C4g", "w"), fileName); //$NON-NLS-1$ //$NON-NLS-2$
 		}
+		batch.flush();
 	}
 	
-	private void importLotusScriptLibraries(DxlImporter importer, Database database) throws Exception {
+	private void importLotusScriptLibraries(DxlImportTarget target, Database database, ImportPipeline pipeline) throws Exception {
 		subTask(Messages.ODPCompiler_importingLotusScript);
 		
-		List<String> noteIds = new ArrayList<>();
+		// Libraries are identified by note ID once imported
+		LotusScriptDependencyGraph<String> graph = new LotusScriptDependencyGraph<>();
+		Map<String, String> titles = new HashMap<>();
+		List<ImportPipeline.Preparation> preparations = new ArrayList<>();
 		for(LotusScriptLibrary lib : odp.getLotusScriptLibraries()) {
-			Document dxlDoc = lib.getDxl();
-			String script = lib.getSource();
-			int chunkSize = 60 * 1024;
-			for(int startIndex = 0; startIndex < script.length(); startIndex += chunkSize) {
-				int endIndex = Math.min(startIndex+chunkSize, script.length());
-				String scriptChunk = script.substring(startIndex, endIndex);
-				Element el = DXLUtil.writeItemString(dxlDoc, "$ScriptLib", false, scriptChunk); //$NON-NLS-1$
-				el.setAttribute("sign", "true"); //$NON-NLS-1$ //$NON-NLS-2$
-				el.setAttribute("summary", "false"); //$NON-NLS-1$ //$NON-NLS-2$
-			}
-			noteIds.addAll(importDxl(importer, DOMUtil.getXMLString(dxlDoc), database, MessageFormat.format(Messages.ODPCompiler_lotusScriptLabel, odp.getBaseDirectory().relativize(lib.getDataFile()))));
+			preparations.add(() -> {
+				Document dxlDoc = lib.getDxl();
+				List<String> names = getLibraryNames(dxlDoc.getDocumentElement(), lib);
+				String script = lib.getSource();
+				int chunkSize = 60 * 1024;
+				for(int startIndex = 0; startIndex < script.length(); startIndex += chunkSize) {
+					int endIndex = Math.min(startIndex+chunkSize, script.length());
+					String scriptChunk = script.substring(startIndex, endIndex);
+					Element el = DXLUtil.writeItemString(dxlDoc, "$ScriptLib", false, scriptChunk); //$NON-NLS-1$
+					el.setAttribute("sign", "true"); //$NON-NLS-1$ //$NON-NLS-2$
+					el.setAttribute("summary", "false"); //$NON-NLS-1$ //$NON-NLS-2$
+				}
+				String dxl = DOMUtil.getXMLString(dxlDoc);
+				return () -> {
+					List<String> ids = importDxl(target, dxl, MessageFormat.format(Messages.ODPCompiler_lotusScriptLabel, odp.getBaseDirectory().relativize(lib.getDataFile())));
+					for(String noteId : ids) {
+						graph.addLibrary(noteId, names, script);
+						titles.put(noteId, names.get(0));
+					}
+				};
+			});
 		}
+		pipeline.run(preparations);
 		
-		if(!noteIds.isEmpty()) {
+		if(!titles.isEmpty()) {
 			try {
 				Class.forName("lotus.domino.websvc.client.Stub"); //$NON-NLS-1$
 			} catch(ClassNotFoundException e) {
@@ -926,61 +1648,103 @@ public class ODPCompiler {
 			}
 			
 			subTask(Messages.ODPCompiler_compilingLotusScript);
-			// In lieu of a dependency graph, just keep bashing at the list until it's done
-			Queue<String> remaining = new ArrayDeque<>(noteIds);
-			Map<String, String> titles = new HashMap<>();
+			
+			// Report structural problems before compiling anything
+			List<String> problems = new ArrayList<>();
+			for(Map.Entry<String, List<String>> missing : graph.getMissingLibraries().entrySet()) {
+				problems.add(MessageFormat.format(Messages.ODPCompiler_lotusScriptMissingUse, titles.get(missing.getKey()), String.join(", ", missing.getValue()))); //$NON-NLS-1$
+			}
+			for(List<String> cycle : graph.getCycles()) {
+				problems.add(MessageFormat.format(Messages.ODPCompiler_lotusScriptCircularUse, cycle.stream().map(titles::get).collect(Collectors.joining(", ")))); //$NON-NLS-1$
+			}
+			if(!problems.isEmpty()) {
+				throw new RuntimeException(MessageFormat.format(Messages.ODPCompiler_unableToCompileLotusScript, String.join("\n", problems))); //$NON-NLS-1$
+			}
+			
+			// Compile each library once, after the libraries it uses
+			Map<String, String> errors = new LinkedHashMap<>();
 			NSFSession nsfSession = NSFSession.fromLotus(DominoAPI.get(), database.getParent(), false, true);
 			try {
 				NSFDatabase nsfDatabase = new NSFDatabase(nsfSession, XSPNative.getDBHandle(database), database.getServer(), false);
-				for(int i = 0; i < noteIds.size(); i++) {
-					Queue<String> nextPass = new ArrayDeque<>();
-					
-					String noteId;
-					while((noteId = remaining.poll()) != null) {
-						NSFNote note = nsfDatabase.getNoteByID(noteId);
-						String title = null;
-						try {
-							title = note.get("$TITLE", String.class); //$NON-NLS-1$
-							titles.put(noteId, title);
-							note.compileLotusScript();
-							note.sign();
-							note.save();
-						} catch(LotusScriptCompilationException err) {
-							nextPass.add(noteId);
-							titles.put(noteId, title + " - " + err); //$NON-NLS-1$
-						} catch(DominoException err) {
-							if(err.getStatus() == 12051) { // Same as above, but not encapsulated
-								titles.put(noteId, title + " - " + err); //$NON-NLS-1$
-								nextPass.add(noteId);
-							} else {
-								throw err;
-							}
-						} finally {
-							note.free();
-						}
+				for(String noteId : graph.getCompileOrder()) {
+					Optional<String> failedDependency = graph.getDependencies(noteId).stream()
+						.filter(errors::containsKey)
+						.findFirst();
+					if(failedDependency.isPresent()) {
+						errors.put(noteId, MessageFormat.format(Messages.ODPCompiler_lotusScriptDependencyFailed, titles.get(failedDependency.get())));
+						continue;
 					}
 					
-					remaining = nextPass;
-					if(nextPass.isEmpty()) {
-						break;
+					NSFNote note = nsfDatabase.getNoteByID(noteId);
+					try {
+						note.compileLotusScript();
+						note.sign();
+						note.save();
+					} catch(LotusScriptCompilationException err) {
+						errors.put(noteId, err.toString());
+					} catch(DominoException err) {
+						if(err.getStatus() == 12051) { // Same as above, but not encapsulated
+							errors.put(noteId, err.toString());
+						} else {
+							throw err;
+						}
+					} finally {
+						note.free();
 					}
 				}
 			} finally {
 				nsfSession.free();
 			}
-			if(!remaining.isEmpty()) {
-				String notes = remaining.stream()
-					.map(noteId -> "Note ID " + noteId + ": " + titles.get(noteId)) //$NON-NLS-1$ //$NON-NLS-2$
+			if(!errors.isEmpty()) {
+				String notes = errors.entrySet().stream()
+					.map(entry -> "Note ID " + entry.getKey() + ": " + titles.get(entry.getKey()) + " - " + entry.getValue()) //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
 					.collect(Collectors.joining("\n")); //$NON-NLS-1$
 				throw new RuntimeException(MessageFormat.format(Messages.ODPCompiler_unableToCompileLotusScript, notes));
 			}
 		}
 	}
 	
+	/**
+	 * Determines the names by which a LotusScript library can be referenced in {@code Use}
+	 * statements, namely its title and any aliases.
+	 */
+	private static List<String> getLibraryNames(Element scriptLibrary, LotusScriptLibrary lib) {
+		List<String> names = new ArrayList<>();
+		for(String attr : new String[] { "name", "alias" }) { //$NON-NLS-1$ //$NON-NLS-2$
+			for(String name : scriptLibrary.getAttribute(attr).split("\\|")) { //$NON-NLS-1$
+				if(StringUtil.isNotEmpty(name.trim())) {
+					names.add(name.trim());
+				}
+			}
+		}
+		if(names.isEmpty()) {
+			String fileName = lib.getDataFile().getFileName().toString();
+			names.add(fileName.substring(0, fileName.length() - ".lss".length())); //$NON-NLS-1$
+		}
+		return names;
+	}
+	
 	// *******************************************************************************
 	// * Internal utility methods
 	// *******************************************************************************
 	
+	/**
+	 * Waits for the provided task, rethrowing any exception it threw.
+	 */
+	private static <T> T getResult(Future<T> future) throws Exception {
+		try {
+			return future.get();
+		} catch(ExecutionException e) {
+			Throwable cause = e.getCause();
+			if(cause instanceof Exception) {
+				throw (Exception)cause;
+			} else if(cause instanceof Error) {
+				throw (Error)cause;
+			}
+			throw e;
+		}
+	}
+	
 	private void subTask(Object message, Object... params) {
 		if(mon != null) {
 			mon.subTask(StringUtil.format(StringUtil.toString(message), params));
@@ -1006,47 +1770,485 @@ public class ODPCompiler {
 		return library;
 	}
 	
-	private XSPCompilationResult compileXSP(XPage xpage, JavaSourceClassLoader classLoader) throws Exception {
+	/**
+	 * Finds the inner classes of the named class, i.e. those whose names continue it after
+	 * a '$' or '.' separator.
+	 * 
+	 * @param classIndex the names of all compiled classes, in sorted order
+	 */
+	private static List<String> getInnerClassNames(NavigableSet<String> classIndex, String className) {
+		List<String> result = new ArrayList<>();
+		for(char separator : new char[] { '$', '.' }) {
+			// All names with the prefix sort between it and the prefix with the next separator character
+			String prefix = className + separator;
+			String end = className + (char)(separator + 1);
+			result.addAll(classIndex.subSet(prefix, false, end, false));
+		}
+		return result;
+	}
+	
+	/**
+	 * Collects the class data held by the XSP compilation results, which for cached results
+	 * includes inner and anonymous classes that were never defined in the current class loader.
+	 */
+	private static Map<String, byte[]> collectXSPClassData(CompiledElements elements) {
+		Map<String, byte[]> result = new HashMap<>();
+		for(XSPCompilationResult compilationResult : elements.customControls.values()) {
+			result.putAll(compilationResult.getClassData());
+		}
+		for(XSPCompilationResult compilationResult : elements.xpages.values()) {
+			result.putAll(compilationResult.getClassData());
+		}
+		return result;
+	}
+	
+	/**
+	 * Retrieves the bytecode for the named class, preferring the data from a cached XSP
+	 * compilation result, if available.
+	 */
+	private byte[] getClassByteCode(PrecompiledJavaSourceClassLoader classLoader, XSPCompilationResult compilationResult, String className) {
+		if(compilationResult != null) {
+			byte[] byteCode = compilationResult.getClassData().get(className);
+			if(byteCode != null) {
+				return byteCode;
+			}
+		}
+		return classLoader.getClassByteCode(className);
+	}
+	
+	/**
+	 * Builds a digest of the compiler configuration and of the project-wide inputs that
+	 * can affect the translation and compilation of any XSP element: the update sites,
+	 * the required bundles, Java source, and jars. Custom Control definitions are
+	 * instead added per element by {@link #createXSPKey}, limited to the controls each
+	 * element uses.
+	 */
+	private String createXSPContextKey() throws IOException, XMLException {
+		CompilationCache.Key key = CompilationCache.key()
+			.update(ODPCompilerActivator.instance.getBundle().getVersion().toString())
+			.update(compilerLevel)
+			.update(String.join(" ", compilerOptions)); //$NON-NLS-1$
+		for(UpdateSite updateSite : updateSites) {
+			for(URI uri : updateSite.getBundleURIs()) {
+				key.updateTree(uri);
+			}
+		}
+		for(String bundle : odp.getRequiredBundles()) {
+			key.update(bundle);
+		}
+		for(List<JavaSource> sources : odp.getJavaSourceFiles().values()) {
+			for(JavaSource source : sources) {
+				key.update(odp.getBaseDirectory().relativize(source.getDataFile()).toString());
+				key.updateContent(source.getDataFile());
+			}
+		}
+		for(Path jar : odp.getJars()) {
+			key.update(odp.getBaseDirectory().relativize(jar).toString());
+			key.updateContent(jar);
+		}
+		return key.build();
+	}
+	
+	/**
+	 * Builds a digest of the compiler configuration and of the project-wide inputs other
+	 * than Java source that can affect the compilation of the ODP's Java classes. Java
+	 * source files are instead tracked individually by {@link IncrementalJavaCompiler}.
+	 * 
+	 * <p>The key depends only on content and project-relative paths, so that it is stable
+	 * across checkouts of the same project in different locations.</p>
+	 */
+	private String createJavaContextKey() throws IOException {
+		CompilationCache.Key key = CompilationCache.key()
+			.update(ODPCompilerActivator.instance.getBundle().getVersion().toString())
+			.update(compilerLevel)
+			.update(String.join(" ", compilerOptions)); //$NON-NLS-1$
+		for(UpdateSite updateSite : updateSites) {
+			for(URI uri : updateSite.getBundleURIs()) {
+				key.updateTree(uri);
+			}
+		}
+		for(String bundle : odp.getRequiredBundles()) {
+			key.update(bundle);
+		}
+		for(Path jar : odp.getJars()) {
+			key.update(odp.getBaseDirectory().relativize(jar).toString());
+			key.updateContent(jar);
+		}
+		return key.build();
+	}
+	
+	/**
+	 * Builds a digest of the update site contents that determine the bundles installed for
+	 * a compilation, for sharing installed bundles and registries between compilations.
+	 * Bundles are digested by content, so that a rebuilt site with the same file names and
+	 * sizes is not mistaken for the one already installed.
+	 */
+	private String createUpdateSiteKey() throws IOException, XMLException {
+		CompilationCache.Key key = CompilationCache.key()
+			.update(ODPCompilerActivator.instance.getBundle().getVersion().toString());
+		for(UpdateSite updateSite : updateSites) {
+			for(URI uri : updateSite.getBundleURIs()) {
+				key.updateTree(uri);
+			}
+		}
+		if(pruneUpdateSiteBundles) {
+			// The installed bundles then also depend on the project
+			key.update(String.join(",", odp.getRequiredBundles())); //$NON-NLS-1$
+			key.update(String.valueOf(odp.hasXPagesElements()));
+		}
+		return key.build();
+	}
+	
+	/**
+	 * Builds a digest of the inputs used to generate the DXL for a file-resource-type
+	 * element.
+	 */
+	private String createFileResourceKey(AbstractSplitDesignElement res, Path filePath) throws IOException {
+		CompilationCache.Key key = CompilationCache.key()
+			.update(ODPCompilerActivator.instance.getBundle().getVersion().toString())
+			.update(res.getClass().getName())
+			.update(filePath.toString().replace('\\', '/'));
+		byte[] overrideData = res.getOverrideData();
+		if(overrideData != null) {
+			key.update(overrideData);
+		} else {
+			key.updateContent(res.getDataFile());
+		}
+		key.updateContent(res.getDxlFile());
+		return key.build();
+	}
+	
+	/**
+	 * Builds a digest of the inputs used to translate and compile an XSP element, including
+	 * its own definition, for Custom Controls, and the definitions of the Custom Controls
+	 * it uses directly or indirectly.
+	 */
+	private String createXSPKey(XPage xpage, String xspSource, String xspContextKey) throws IOException {
+		CompilationCache.Key key = CompilationCache.key()
+			.update(xspContextKey)
+			.update(xpage.getClass().getName())
+			.update(xpage.getJavaClassName())
+			.update(xpage.getPageName())
+			.update(xspSource);
+		if(xpage instanceof CustomControl) {
+			key.updateContent(((CustomControl)xpage).getXspConfigFile());
+		}
+		for(Path dependency : dependencyGraph.getTransitiveDependencies(xpage.getDataFile())) {
+			if(dependencyGraph.getType(dependency) == XSPDependencyGraph.ElementType.CUSTOM_CONTROL) {
+				CustomControl cc = new CustomControl(dependency);
+				key.update(cc.getPageName());
+				key.updateContent(cc.getXspConfigFile());
+			}
+		}
+		return key.build();
+	}
+	
+	/**
+	 * Translates and compiles the provided XSP elements in three stages: elements with a
+	 * cached compilation result are set aside, the remainder are translated to Java (in
+	 * parallel, when configured), and the generated source is compiled, either element by
+	 * element or in a single batch. Compilation follows the order of {@code elements}
+	 * regardless of the order in which translations complete.
+	 * 
+	 * <p>In low-memory mode, the last two stages are run on a window of elements at a time,
+	 * and the results hold only the class data needed for import.</p>
+	 * 
+	 * @param batch whether to compile all generated source in a single compiler invocation,
+	 *        or one per window in low-memory mode
+	 * @return the compilation results, in the order of {@code elements}
+	 */
+	private <T extends XPage> Map<T, XSPCompilationResult> compileXSP(List<T> elements, PrecompiledJavaSourceClassLoader classLoader, String xspContextKey, boolean batch) throws Exception {
+		Map<T, XSPCompilationResult> result = new LinkedHashMap<>();
+		List<T> pending = new ArrayList<>();
+		List<String> xspSources = new ArrayList<>();
+		Map<T, String> keys = new HashMap<>();
+		for(T xpage : elements) {
+			try {
+				String xspSource = xpage.getSource();
+				// Elements whose references couldn't be fully parsed are compiled without the cache
+				if(cache != null && dependencyGraph.isCacheable(xpage.getDataFile())) {
+					String key = createXSPKey(xpage, xspSource, xspContextKey);
+					XSPCompilationResult cached = cache.getXSP(key);
+					if(cached != null) {
+						if(lowMemoryCompilation) {
+							// Keep only the class data, which isn't otherwise loaded
+							cached = new XSPCompilationResult(null, null, cached.getClassData());
+						}
+						result.put(xpage, cached);
+						continue;
+					}
+					keys.put(xpage, key);
+				}
+				pending.add(xpage);
+				xspSources.add(xspSource);
+				// Reserve the element's position in the result
+				result.put(xpage, null);
+			} catch(Throwable e) {
+				throw new RuntimeException(MessageFormat.format(Messages.ODPCompiler_errorConvertingXSP, odp.getBaseDirectory().relativize(xpage.getDataFile())), e);
+			}
+		}
+		if(pending.isEmpty()) {
+			return result;
+		}
+		
+		// Translated source is much larger than XSP, so limit how much is held in low-memory mode
+		int window = lowMemoryCompilation ? Math.max(1, xspTranslationParallelism) : pending.size();
+		for(int start = 0; start < pending.size(); start += window) {
+			int end = Math.min(start + window, pending.size());
+			checkImport();
+			List<T> windowElements = pending.subList(start, end);
+			List<String> javaSources = translateXSP(windowElements, xspSources.subList(start, end));
+			compileXSP(windowElements, javaSources, classLoader, keys, batch, result);
+		}
+		return result;
+	}
+	
+	/**
+	 * Compiles the translated source of the provided XSP elements, adding the results to
+	 * {@code result}.
+	 */
+	private <T extends XPage> void compileXSP(List<T> elements, List<String> javaSources, PrecompiledJavaSourceClassLoader classLoader, Map<T, String> keys, boolean batch, Map<T, XSPCompilationResult> result) {
+		if(batch) {
+			Map<String, CharSequence> sources = new LinkedHashMap<>();
+			for(int i = 0; i < elements.size(); i++) {
+				sources.put(elements.get(i).getJavaClassName(), javaSources.get(i));
+			}
+			subTask(MessageFormat.format(Messages.ODPCompiler_compilingXSPClasses, sources.size()));
+			Map<String, Class<?>> classes;
+			try {
+				classes = classLoader.addClasses(sources);
+			} catch(JavaCompilerException e) {
+				throw new RuntimeException(MessageFormat.format(Messages.ODPCompiler_xspCompilationFailed, describeCompilationErrors(elements, e)), e);
+			}
+			NavigableSet<String> classIndex = indexXSPClasses(classLoader, keys);
+			for(int i = 0; i < elements.size(); i++) {
+				T xpage = elements.get(i);
+				String className = xpage.getJavaClassName();
+				result.put(xpage, createXSPCompilationResult(classLoader, classIndex, className, javaSources.get(i), classes.get(className), keys.get(xpage)));
+			}
+		} else {
+			List<Class<?>> classes = new ArrayList<>(elements.size());
+			for(int i = 0; i < elements.size(); i++) {
+				T xpage = elements.get(i);
+				try {
+					classes.add(classLoader.addClass(xpage.getJavaClassName(), javaSources.get(i)));
+				} catch(Throwable e) {
+					throw new RuntimeException(MessageFormat.format(Messages.ODPCompiler_errorConvertingXSP, odp.getBaseDirectory().relativize(xpage.getDataFile())), e);
+				}
+			}
+			NavigableSet<String> classIndex = indexXSPClasses(classLoader, keys);
+			for(int i = 0; i < elements.size(); i++) {
+				T xpage = elements.get(i);
+				result.put(xpage, createXSPCompilationResult(classLoader, classIndex, xpage.getJavaClassName(), javaSources.get(i), classes.get(i), keys.get(xpage)));
+			}
+		}
+	}
+	
+	/**
+	 * Sorts the names of the compiled classes once, so that each XSP class's inner classes
+	 * can be found without scanning every name per element.
+	 * 
+	 * @return the sorted class names, or an empty set if no class data will be kept
+	 */
+	private NavigableSet<String> indexXSPClasses(PrecompiledJavaSourceClassLoader classLoader, Map<?, String> keys) {
+		if(lowMemoryCompilation && keys.isEmpty()) {
+			// Then only the class loader holds the bytecode
+			return Collections.emptyNavigableSet();
+		}
+		return new TreeSet<>(classLoader.getCompiledClassNames());
+	}
+	
+	/**
+	 * Translates the provided XSP elements to Java source. All Custom Controls must be
+	 * registered beforehand: from this point on, the faces registry is only read, which
+	 * allows elements to be translated concurrently when {@link #setXspTranslationParallelism(int)}
+	 * is greater than 1.
+	 * 
+	 * @param elements the elements to translate
+	 * @param xspSources the XSP source of each element
+	 * @return the Java source of each element, in the order of {@code elements}
+	 */
+	private List<String> translateXSP(List<? extends XPage> elements, List<String> xspSources) throws Exception {
+		int parallelism = Math.min(xspTranslationParallelism, elements.size());
+		if(parallelism <= 1) {
+			List<String> result = new ArrayList<>(elements.size());
+			for(int i = 0; i < elements.size(); i++) {
+				XPage xpage = elements.get(i);
+				try {
+					result.add(dynamicXPageBean.translate(xpage.getJavaClassName(), xpage.getPageName(), xspSources.get(i), facesRegistry));
+				} catch(Throwable e) {
+					throw new RuntimeException(MessageFormat.format(Messages.ODPCompiler_errorConvertingXSP, odp.getBaseDirectory().relativize(xpage.getDataFile())), e);
+				}
+			}
+			return result;
+		}
+		
+		// Workers need the same context ClassLoader as the compiling thread to resolve XSP libraries
+		ClassLoader contextClassLoader = Thread.currentThread().getContextClassLoader();
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
 		try {
-			String xspSource = xpage.getSource();
-			String javaSource = dynamicXPageBean.translate(xpage.getJavaClassName(), xpage.getPageName(), xspSource, facesRegistry);
-			Class<?> compiled = classLoader.addClass(xpage.getJavaClassName(), javaSource);
-			return new XSPCompilationResult(javaSource, compiled);
-		} catch(Throwable e) {
-			throw new RuntimeException(MessageFormat.format(Messages.ODPCompiler_errorConvertingXSP, odp.getBaseDirectory().relativize(xpage.getDataFile())), e);
+			List<ForkJoinTask<String>> tasks = new ArrayList<>(elements.size());
+			for(int i = 0; i < elements.size(); i++) {
+				XPage xpage = elements.get(i);
+				String xspSource = xspSources.get(i);
+				tasks.add(pool.submit(() -> {
+					Thread thread = Thread.currentThread();
+					ClassLoader previous = thread.getContextClassLoader();
+					thread.setContextClassLoader(contextClassLoader);
+					try {
+						return dynamicXPageBean.translate(xpage.getJavaClassName(), xpage.getPageName(), xspSource, facesRegistry);
+					} finally {
+						thread.setContextClassLoader(previous);
+					}
+				}));
+			}
+			
+			// Collect in submission order, so that the first failing element is reported consistently
+			List<String> result = new ArrayList<>(elements.size());
+			for(int i = 0; i < elements.size(); i++) {
+				try {
+					result.add(tasks.get(i).get());
+				} catch(ExecutionException e) {
+					throw new RuntimeException(MessageFormat.format(Messages.ODPCompiler_errorConvertingXSP, odp.getBaseDirectory().relativize(elements.get(i).getDataFile())), e.getCause());
+				}
+			}
+			return result;
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+	
+	private XSPCompilationResult createXSPCompilationResult(PrecompiledJavaSourceClassLoader classLoader, NavigableSet<String> classIndex, String className, String javaSource, Class<?> compiled, String key) {
+		if(lowMemoryCompilation && key == null) {
+			// The class loader already holds the bytecode, which is all that import needs
+			return new XSPCompilationResult(null, null);
+		}
+		XSPCompilationResult result = new XSPCompilationResult(javaSource, compiled, getXSPClassData(classLoader, classIndex, className));
+		if(key != null) {
+			cache.putXSP(key, result);
+			if(lowMemoryCompilation) {
+				return new XSPCompilationResult(null, null);
+			}
 		}
+		return result;
 	}
 	
 	/**
-	 * @param importer the importer to use during the process
+	 * Collects the bytecode of the provided XSP class and its inner classes.
+	 * 
+	 * @param classIndex the names of all compiled classes, in sorted order
+	 */
+	private Map<String, byte[]> getXSPClassData(PrecompiledJavaSourceClassLoader classLoader, NavigableSet<String> classIndex, String className) {
+		Map<String, byte[]> classData = new LinkedHashMap<>();
+		if(classIndex.contains(className)) {
+			classData.put(className, classLoader.getClassByteCode(className));
+		}
+		// All names with the prefix sort between it and the prefix with the next separator character
+		for(String innerClassName : classIndex.subSet(className + '$', false, className + '%', false)) {
+			classData.put(innerClassName, classLoader.getClassByteCode(innerClassName));
+		}
+		return classData;
+	}
+	
+	/**
+	 * Groups the errors reported for a batch compilation by the XSP element whose
+	 * generated source caused them.
+	 */
+	private String describeCompilationErrors(Collection<? extends XPage> elements, JavaCompilerException e) {
+		Map<String, XPage> elementsBySourcePath = new HashMap<>();
+		for(XPage xpage : elements) {
+			elementsBySourcePath.put('/' + xpage.getJavaClassName().replace('.', '/') + JavaFileObject.Kind.SOURCE.extension, xpage);
+		}
+		
+		Map<XPage, StringBuilder> errors = new LinkedHashMap<>();
+		StringBuilder other = new StringBuilder();
+		for(Diagnostic<? extends JavaFileObject> diagnostic : e.getDiagnostics().getDiagnostics()) {
+			if(diagnostic.getKind() != Diagnostic.Kind.ERROR) {
+				continue;
+			}
+			XPage owner = null;
+			if(diagnostic.getSource() != null) {
+				String sourcePath = diagnostic.getSource().toUri().getPath();
+				if(sourcePath != null) {
+					for(Map.Entry<String, XPage> entry : elementsBySourcePath.entrySet()) {
+						if(sourcePath.endsWith(entry.getKey())) {
+							owner = entry.getValue();
+							break;
+						}
+					}
+				}
+			}
+			StringBuilder target = owner == null ? other : errors.computeIfAbsent(owner, key -> new StringBuilder());
+			target.append(MessageFormat.format(Messages.ODPCompiler_compilationDiagnostic, String.valueOf(diagnostic.getLineNumber()), diagnostic.getMessage(null))).append('\n');
+		}
+		
+		StringBuilder result = new StringBuilder();
+		for(Map.Entry<XPage, StringBuilder> entry : errors.entrySet()) {
+			result.append(odp.getBaseDirectory().relativize(entry.getKey().getDataFile())).append(":\n").append(entry.getValue()).append('\n'); //$NON-NLS-1$
+		}
+		if(other.length() > 0 || result.length() == 0) {
+			StringWriter o = new StringWriter();
+			e.printExtraInformation(new PrintWriter(o));
+			result.append(other.length() > 0 ? other : o);
+		}
+		return result.toString();
+	}
+	
+	/**
+	 * @param target the target to import to
 	 * @param dxl an XML string to import
-	 * @param database the database to import to
 	 * @param name a human-readable name of the element, for logging
 	 * @return a {@link List} of imported note IDs
 	 */
-	private List<String> importDxl(DxlImporter importer, String dxl, Database database, String name) throws Exception {
-		try {
-			if(DEBUG_DXL) {
-				String tempFileName = NSFODPUtil.getTempDirectory() + File.separator + name.replace('/', '-').replace('\\', '-') + ".xml"; //$NON-NLS-1$
-				try(OutputStream os = Files.newOutputStream(Paths.get(tempFileName))) {
-					os.write(dxl.getBytes());
-				}
+	private List<String> importDxl(DxlImportTarget target, String dxl, String name) throws Exception {
+		if(DEBUG_DXL) {
+			try(OutputStream os = Files.newOutputStream(getDebugDxlFile(name))) {
+				os.write(dxl.getBytes());
 			}
-			
-			importer.importDxl(dxl, database);
-			
-			List<String> importedIds = new ArrayList<>();
-			String noteId = importer.getFirstImportedNoteID();
-			while(StringUtil.isNotEmpty(noteId)) {
-				importedIds.add(noteId);
-				noteId = importer.getNextImportedNoteID(noteId);
-			}
-			return importedIds;
+		}
+		return importDxl(target, name, () -> target.importDxl(dxl));
+	}
+	
+	/**
+	 * @param target the target to import to
+	 * @param dxlFile a UTF-8 XML file to import
+	 * @param name a human-readable name of the element, for logging
+	 * @return a {@link List} of imported note IDs
+	 */
+	private List<String> importDxl(DxlImportTarget target, Path dxlFile, String name) throws Exception {
+		if(DEBUG_DXL) {
+			Files.copy(dxlFile, getDebugDxlFile(name), StandardCopyOption.REPLACE_EXISTING);
+		}
+		return importDxl(target, name, () -> target.importDxl(dxlFile));
+	}
+	
+	private List<String> importDxl(DxlImportTarget target, String name, Callable<List<String>> importer) throws Exception {
+		try {
+			return importer.call();
 		} catch(NotesException ne) {
 			if(ne.text.contains("DXL importer operation failed")) { //$NON-NLS-1$
-				throw new RuntimeException(MessageFormat.format(Messages.ODPCompiler_dxlImportFailed, name, importer.getLog()), ne);
+				throw new RuntimeException(MessageFormat.format(Messages.ODPCompiler_dxlImportFailed, name, target.getLog()), ne);
 			}
 			throw ne;
 		}
 	}
+	
+	private static Path getDebugDxlFile(String name) {
+		return NSFODPUtil.getTempDirectory().resolve(name.replace('/', '-').replace('\\', '-') + ".xml"); //$NON-NLS-1$
+	}
+	
+	/**
+	 * The products of compiling the Java and XSP elements of an ODP.
+	 */
+	private static class CompiledElements {
+		private final PrecompiledJavaSourceClassLoader classLoader;
+		private final Map<CustomControl, XSPCompilationResult> customControls;
+		private final Map<XPage, XSPCompilationResult> xpages;
+		
+		CompiledElements(PrecompiledJavaSourceClassLoader classLoader, Map<CustomControl, XSPCompilationResult> customControls, Map<XPage, XSPCompilationResult> xpages) {
+			this.classLoader = classLoader;
+			this.customControls = customControls;
+			this.xpages = xpages;
+		}
+	}
 }
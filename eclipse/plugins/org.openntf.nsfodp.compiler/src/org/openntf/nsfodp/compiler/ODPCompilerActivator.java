@@ -16,6 +16,8 @@
 package org.openntf.nsfodp.compiler;
 
 import org.eclipse.core.runtime.Plugin;
+import org.openntf.nsfodp.compiler.util.BlankDatabasePool;
+import org.osgi.framework.BundleContext;
 
 /**
  * ODP Compiler plugin activator
@@ -29,4 +31,10 @@ public class ODPCompilerActivator extends Plugin {
 	public ODPCompilerActivator() {
 		instance = this;
 	}
+	
+	@Override
+	public void stop(BundleContext context) throws Exception {
+		BlankDatabasePool.INSTANCE.clear();
+		super.stop(context);
+	}
 }
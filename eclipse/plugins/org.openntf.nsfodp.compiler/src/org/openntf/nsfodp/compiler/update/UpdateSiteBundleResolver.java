@@ -0,0 +1,249 @@
+/**
+ * Copyright © 2018-2019 Jesse Gallagher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openntf.nsfodp.compiler.update;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+
+import com.ibm.commons.util.StringUtil;
+import com.ibm.commons.util.io.StreamUtil;
+
+/**
+ * Determines which bundles of a set of update sites are needed by a project, by reading
+ * their manifests without installing them.
+ *
+ * <p>Starting from the project's required bundles and any bundles that contribute XSP
+ * libraries, the resolver follows {@code Require-Bundle} and {@code Import-Package}
+ * headers to the bundles of the sites that satisfy them, and adds any fragments of the
+ * bundles it finds. Requirements that no site bundle satisfies are assumed to be met by
+ * the running platform. Source bundles are never needed.</p>
+ *
+ * <p>Bundles whose manifests can't be read are always considered needed.</p>
+ *
+ * @author Jesse Gallagher
+ * @since 2.1.0
+ */
+public class UpdateSiteBundleResolver {
+	/** The extension point type used to contribute XSP libraries in plugin.xml */
+	private static final String XSP_LIBRARY_SERVICE = "com.ibm.xsp.Library"; //$NON-NLS-1$
+
+	private final List<BundleInfo> bundles = new ArrayList<>();
+	private final Set<URI> unreadable = new LinkedHashSet<>();
+	private final Map<String, List<BundleInfo>> bundlesByName = new HashMap<>();
+	private final Map<String, List<BundleInfo>> bundlesByPackage = new HashMap<>();
+	private final Map<String, List<BundleInfo>> fragmentsByHost = new HashMap<>();
+
+	/**
+	 * @param bundleURIs the URIs of the update site bundles, as jar files or directories
+	 */
+	public UpdateSiteBundleResolver(Collection<URI> bundleURIs) {
+		for(URI uri : bundleURIs) {
+			BundleInfo info;
+			try {
+				info = BundleInfo.read(uri);
+			} catch(IOException | RuntimeException e) {
+				info = null;
+			}
+			if(info == null) {
+				unreadable.add(uri);
+				continue;
+			}
+			if(info.source) {
+				continue;
+			}
+			bundles.add(info);
+			bundlesByName.computeIfAbsent(info.symbolicName, key -> new ArrayList<>()).add(info);
+			for(String pkg : info.exportedPackages) {
+				bundlesByPackage.computeIfAbsent(pkg, key -> new ArrayList<>()).add(info);
+			}
+			if(info.fragmentHost != null) {
+				fragmentsByHost.computeIfAbsent(info.fragmentHost, key -> new ArrayList<>()).add(info);
+			}
+		}
+	}
+
+	/**
+	 * Computes the bundles needed by a project.
+	 *
+	 * @param requiredBundles the symbolic names of the bundles the project requires
+	 * @param xspLibraries whether to include bundles that contribute XSP libraries, and
+	 *        their dependencies
+	 * @return the URIs of the needed bundles, in their original order
+	 */
+	public Collection<URI> resolve(Collection<String> requiredBundles, boolean xspLibraries) {
+		Set<BundleInfo> needed = new LinkedHashSet<>();
+		Deque<BundleInfo> pending = new ArrayDeque<>();
+		for(String name : requiredBundles) {
+			pending.addAll(bundlesByName.getOrDefault(name, Collections.emptyList()));
+		}
+		if(xspLibraries) {
+			for(BundleInfo info : bundles) {
+				if(info.xspLibrary) {
+					pending.add(info);
+				}
+			}
+		}
+
+		while(!pending.isEmpty()) {
+			BundleInfo info = pending.pop();
+			if(!needed.add(info)) {
+				continue;
+			}
+			for(String name : info.requiredBundles) {
+				pending.addAll(bundlesByName.getOrDefault(name, Collections.emptyList()));
+			}
+			for(String pkg : info.importedPackages) {
+				pending.addAll(bundlesByPackage.getOrDefault(pkg, Collections.emptyList()));
+			}
+			if(info.fragmentHost != null) {
+				pending.addAll(bundlesByName.getOrDefault(info.fragmentHost, Collections.emptyList()));
+			}
+			pending.addAll(fragmentsByHost.getOrDefault(info.symbolicName, Collections.emptyList()));
+		}
+
+		List<URI> result = new ArrayList<>();
+		for(BundleInfo info : bundles) {
+			if(needed.contains(info)) {
+				result.add(info.uri);
+			}
+		}
+		result.addAll(unreadable);
+		return result;
+	}
+
+	// *******************************************************************************
+	// * Internal utility methods
+	// *******************************************************************************
+
+	/**
+	 * The dependency-related manifest headers of a bundle.
+	 */
+	private static class BundleInfo {
+		private final URI uri;
+		private String symbolicName;
+		private String fragmentHost;
+		private boolean source;
+		private boolean xspLibrary;
+		private final List<String> requiredBundles = new ArrayList<>();
+		private final List<String> importedPackages = new ArrayList<>();
+		private final List<String> exportedPackages = new ArrayList<>();
+
+		private BundleInfo(URI uri) {
+			this.uri = uri;
+		}
+
+		/**
+		 * @return the bundle's information, or {@code null} if it has no OSGi manifest
+		 */
+		static BundleInfo read(URI uri) throws IOException {
+			File file = new File(uri);
+			Manifest manifest;
+			String pluginXml;
+			if(file.isFile()) {
+				try(JarFile jar = new JarFile(file)) {
+					manifest = jar.getManifest();
+					ZipEntry pluginEntry = jar.getEntry("plugin.xml"); //$NON-NLS-1$
+					if(pluginEntry == null) {
+						pluginXml = null;
+					} else {
+						try(InputStream is = jar.getInputStream(pluginEntry)) {
+							pluginXml = StreamUtil.readString(is);
+						}
+					}
+				}
+			} else {
+				Path dir = file.toPath();
+				Path manifestFile = dir.resolve(JarFile.MANIFEST_NAME);
+				if(Files.isRegularFile(manifestFile)) {
+					try(InputStream is = Files.newInputStream(manifestFile)) {
+						manifest = new Manifest(is);
+					}
+				} else {
+					manifest = null;
+				}
+				Path pluginFile = dir.resolve("plugin.xml"); //$NON-NLS-1$
+				pluginXml = Files.isRegularFile(pluginFile) ? new String(Files.readAllBytes(pluginFile), StandardCharsets.UTF_8) : null;
+			}
+			if(manifest == null) {
+				return null;
+			}
+
+			Attributes attrs = manifest.getMainAttributes();
+			List<String> symbolicName = parseNames(attrs.getValue("Bundle-SymbolicName")); //$NON-NLS-1$
+			if(symbolicName.isEmpty()) {
+				return null;
+			}
+			BundleInfo info = new BundleInfo(uri);
+			info.symbolicName = symbolicName.get(0);
+			List<String> host = parseNames(attrs.getValue("Fragment-Host")); //$NON-NLS-1$
+			info.fragmentHost = host.isEmpty() ? null : host.get(0);
+			info.source = attrs.getValue("Eclipse-SourceBundle") != null; //$NON-NLS-1$
+			info.xspLibrary = pluginXml != null && pluginXml.contains(XSP_LIBRARY_SERVICE);
+			info.requiredBundles.addAll(parseNames(attrs.getValue("Require-Bundle"))); //$NON-NLS-1$
+			info.importedPackages.addAll(parseNames(attrs.getValue("Import-Package"))); //$NON-NLS-1$
+			info.exportedPackages.addAll(parseNames(attrs.getValue("Export-Package"))); //$NON-NLS-1$
+			return info;
+		}
+
+		/**
+		 * Reads the names from an OSGi manifest header, such as the package names of
+		 * {@code "a.b;c.d;version=1.0,e.f;resolution:=optional"}, ignoring attributes and
+		 * directives.
+		 */
+		private static List<String> parseNames(String header) {
+			if(StringUtil.isEmpty(header)) {
+				return Collections.emptyList();
+			}
+			List<String> result = new ArrayList<>();
+			StringBuilder part = new StringBuilder();
+			boolean quoted = false;
+			for(int i = 0; i <= header.length(); i++) {
+				char c = i < header.length() ? header.charAt(i) : ',';
+				if(c == '"') {
+					quoted = !quoted;
+				} else if(!quoted && (c == ',' || c == ';')) {
+					String name = part.toString().trim();
+					if(!name.isEmpty() && name.indexOf('=') < 0) {
+						result.add(name);
+					}
+					part.setLength(0);
+					continue;
+				}
+				part.append(c);
+			}
+			return result;
+		}
+	}
+}
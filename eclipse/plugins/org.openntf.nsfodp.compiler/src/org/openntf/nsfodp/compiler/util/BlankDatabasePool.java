@@ -0,0 +1,138 @@
+/**
+ * Copyright © 2018-2019 Jesse Gallagher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openntf.nsfodp.compiler.util;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import lotus.domino.NotesThread;
+
+/**
+ * Keeps a number of empty databases created ahead of time, so that compilations do not
+ * wait for a new database to be created.
+ *
+ * <p>Each leased database belongs to the caller, which is responsible for deleting it.
+ * When no database is available, one is created on demand in the calling thread. After
+ * each lease, the pool is refilled to its size in a background Notes thread.</p>
+ *
+ * @author Jesse Gallagher
+ * @since 2.1.0
+ */
+public class BlankDatabasePool {
+	public static final BlankDatabasePool INSTANCE = new BlankDatabasePool();
+
+	private final Deque<Path> available = new ArrayDeque<>();
+	private final ExecutorService creator = Executors.newSingleThreadExecutor(r -> {
+		Thread thread = new NotesThread(r, BlankDatabasePool.class.getSimpleName());
+		thread.setDaemon(true);
+		return thread;
+	});
+	private int size;
+	private boolean filling;
+
+	private BlankDatabasePool() {
+	}
+
+	/**
+	 * Leases an empty database, creating one if none is available.
+	 *
+	 * @param size the number of databases to keep available for later leases
+	 * @param factory creates a new empty database, and must be callable from any Notes thread
+	 * @return the path of the database, which is no longer tracked by the pool
+	 * @throws Exception if a database needed to be created and {@code factory} threw an
+	 *         exception
+	 */
+	public Path lease(int size, Callable<Path> factory) throws Exception {
+		Path result = null;
+		synchronized(this) {
+			this.size = Math.max(0, size);
+			while(result == null && !available.isEmpty()) {
+				Path candidate = available.poll();
+				// Skip any files removed by temp-directory cleanup
+				if(Files.isRegularFile(candidate)) {
+					result = candidate;
+				}
+			}
+			if(!filling && available.size() < this.size) {
+				filling = true;
+				creator.submit(() -> fill(factory));
+			}
+		}
+		return result == null ? factory.call() : result;
+	}
+
+	/**
+	 * Deletes the databases that have not been leased.
+	 */
+	public void clear() {
+		List<Path> files;
+		synchronized(this) {
+			files = new ArrayList<>(available);
+			available.clear();
+			size = 0;
+		}
+		for(Path file : files) {
+			try {
+				Files.deleteIfExists(file);
+			} catch(IOException e) {
+				// The file is also marked for deletion on exit
+			}
+		}
+	}
+
+	// *******************************************************************************
+	// * Internal utility methods
+	// *******************************************************************************
+
+	private void fill(Callable<Path> factory) {
+		try {
+			while(true) {
+				synchronized(this) {
+					if(available.size() >= size) {
+						return;
+					}
+				}
+				Path file = factory.call();
+				boolean keep;
+				synchronized(this) {
+					// The pool may have been cleared or shrunk during creation
+					keep = available.size() < size;
+					if(keep) {
+						available.add(file);
+					}
+				}
+				if(!keep) {
+					Files.deleteIfExists(file);
+				}
+			}
+		} catch(Exception e) {
+			// Leases will create their databases on demand until the next attempt
+			e.printStackTrace();
+		} finally {
+			synchronized(this) {
+				filling = false;
+			}
+		}
+	}
+}
@@ -0,0 +1,233 @@
+/**
+ * Copyright © 2018-2019 Jesse Gallagher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openntf.nsfodp.compiler.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+import org.openntf.nsfodp.commons.NSFODPUtil;
+import org.openntf.nsfodp.commons.odp.util.ODPUtil;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.BundleEvent;
+import org.osgi.framework.SynchronousBundleListener;
+
+/**
+ * Indexes the bundles of a {@link BundleContext} by symbolic name, memoizing the expansion
+ * of required bundles and the extraction of files embedded in bundles for use on the
+ * compilation class path.
+ *
+ * <p>The index is discarded whenever a bundle is installed, uninstalled, updated, or
+ * changes resolution state. Extracted files are discarded only when their own bundle is
+ * uninstalled or updated, and are otherwise kept for the life of the process.</p>
+ *
+ * @author Jesse Gallagher
+ * @since 2.1.0
+ */
+public class BundleIndex implements SynchronousBundleListener {
+	private static final Map<BundleContext, BundleIndex> INSTANCES = new ConcurrentHashMap<>();
+
+	/**
+	 * @return the shared index for the provided context, which is registered to listen for
+	 *         bundle changes on first use
+	 */
+	public static BundleIndex get(BundleContext bundleContext) {
+		return INSTANCES.computeIfAbsent(Objects.requireNonNull(bundleContext), ctx -> {
+			BundleIndex index = new BundleIndex(ctx);
+			ctx.addBundleListener(index);
+			return index;
+		});
+	}
+
+	private final BundleContext bundleContext;
+	private Map<String, List<Bundle>> bundles;
+	private final Map<List<String>, Collection<String>> requiredBundles = new HashMap<>();
+	private final Map<String, ExtractedFile> extractedFiles = new HashMap<>();
+
+	private BundleIndex(BundleContext bundleContext) {
+		this.bundleContext = bundleContext;
+	}
+
+	/**
+	 * Finds a bundle by symbolic name, as {@link ODPUtil#findBundle} does.
+	 *
+	 * @param bundleId the symbolic name of the bundle
+	 * @param resolveAny whether to return a bundle that is only in the installed state
+	 * @return the first matching bundle, or an empty {@link Optional} if there is none
+	 */
+	public synchronized Optional<Bundle> findBundle(String bundleId, boolean resolveAny) {
+		if(bundles == null) {
+			bundles = new HashMap<>();
+			for(Bundle bundle : bundleContext.getBundles()) {
+				if(bundle.getSymbolicName() != null) {
+					bundles.computeIfAbsent(bundle.getSymbolicName(), key -> new ArrayList<>(1)).add(bundle);
+				}
+			}
+		}
+		for(Bundle bundle : bundles.getOrDefault(bundleId, Collections.emptyList())) {
+			if(resolveAny || bundle.getState() != Bundle.INSTALLED) {
+				return Optional.of(bundle);
+			}
+		}
+		return Optional.empty();
+	}
+
+	/**
+	 * Gathers a full dependency hierarchy for the bundles described in {@code bundleIds}, as
+	 * {@link ODPUtil#expandRequiredBundles} does.
+	 *
+	 * @param bundleIds the base bundle IDs
+	 * @return a new modifiable collection of bundle IDs for the provided bundles and all
+	 *         re-exported dependencies
+	 */
+	public synchronized Collection<String> expandRequiredBundles(List<String> bundleIds) {
+		List<String> key = new ArrayList<>(bundleIds);
+		Collection<String> result = requiredBundles.get(key);
+		if(result == null) {
+			result = Collections.unmodifiableCollection(ODPUtil.expandRequiredBundles(id -> findBundle(id, false), key));
+			requiredBundles.put(key, result);
+		}
+		return new LinkedHashSet<>(result);
+	}
+
+	/**
+	 * Retrieves a copy of a file embedded in the provided bundle, extracting it on first use.
+	 * The copy should not be modified or deleted.
+	 *
+	 * @param bundleFile the bundle's jar file or directory
+	 * @param bundle the bundle
+	 * @param path the path of the file within the bundle
+	 * @return the path of the extracted file
+	 * @throws IOException if the file does not exist or cannot be extracted
+	 */
+	public synchronized Path getEmbeddedFile(File bundleFile, Bundle bundle, String path) throws IOException {
+		String key = bundle.getBundleId() + "/" + path; //$NON-NLS-1$
+		ExtractedFile extracted = extractedFiles.get(key);
+		if(extracted != null && extracted.matches(bundle) && Files.isRegularFile(extracted.file)) {
+			return extracted.file;
+		}
+		if(extracted != null) {
+			Files.deleteIfExists(extracted.file);
+		}
+
+		String fileName = path.substring(path.lastIndexOf('/') + 1);
+		int dotIndex = fileName.lastIndexOf('.');
+		Path tempFile = Files.createTempFile(NSFODPUtil.getTempDirectory(), dotIndex > 0 ? fileName.substring(0, dotIndex) : fileName,
+			dotIndex > 0 ? fileName.substring(dotIndex) : null);
+		try {
+			if(bundleFile.isFile()) {
+				try(JarFile jar = new JarFile(bundleFile)) {
+					JarEntry entry = jar.getJarEntry(path);
+					if(entry == null) {
+						throw new IOException("Could not locate " + path + " in " + bundleFile); //$NON-NLS-1$ //$NON-NLS-2$
+					}
+					try(InputStream is = jar.getInputStream(entry)) {
+						Files.copy(is, tempFile, StandardCopyOption.REPLACE_EXISTING);
+					}
+				}
+			} else {
+				Files.copy(bundleFile.toPath().resolve(path), tempFile, StandardCopyOption.REPLACE_EXISTING);
+			}
+		} catch(IOException | RuntimeException e) {
+			Files.deleteIfExists(tempFile);
+			throw e;
+		}
+		tempFile.toFile().deleteOnExit();
+		extractedFiles.put(key, new ExtractedFile(bundle, tempFile));
+		return tempFile;
+	}
+
+	@Override
+	public void bundleChanged(BundleEvent event) {
+		switch(event.getType()) {
+		case BundleEvent.INSTALLED:
+		case BundleEvent.RESOLVED:
+		case BundleEvent.UNRESOLVED:
+			invalidate(null);
+			break;
+		case BundleEvent.UNINSTALLED:
+		case BundleEvent.UPDATED:
+			invalidate(event.getBundle());
+			break;
+		default:
+			break;
+		}
+	}
+
+	// *******************************************************************************
+	// * Internal utility methods
+	// *******************************************************************************
+
+	/**
+	 * Discards the bundle index and memoized dependencies, along with any files extracted
+	 * from {@code changed}, if provided.
+	 */
+	private synchronized void invalidate(Bundle changed) {
+		bundles = null;
+		requiredBundles.clear();
+		if(changed != null) {
+			String prefix = changed.getBundleId() + "/"; //$NON-NLS-1$
+			for(Iterator<Map.Entry<String, ExtractedFile>> iter = extractedFiles.entrySet().iterator(); iter.hasNext(); ) {
+				Map.Entry<String, ExtractedFile> entry = iter.next();
+				if(entry.getKey().startsWith(prefix)) {
+					try {
+						Files.deleteIfExists(entry.getValue().file);
+					} catch(IOException e) {
+						// Will be deleted at exit instead
+					}
+					iter.remove();
+				}
+			}
+		}
+	}
+
+	private static class ExtractedFile {
+		private final String location;
+		private final String version;
+		private final long lastModified;
+		private final Path file;
+
+		ExtractedFile(Bundle bundle, Path file) {
+			this.location = bundle.getLocation();
+			this.version = String.valueOf(bundle.getVersion());
+			this.lastModified = bundle.getLastModified();
+			this.file = file;
+		}
+
+		boolean matches(Bundle bundle) {
+			return Objects.equals(location, bundle.getLocation())
+				&& version.equals(String.valueOf(bundle.getVersion()))
+				&& lastModified == bundle.getLastModified();
+		}
+	}
+}
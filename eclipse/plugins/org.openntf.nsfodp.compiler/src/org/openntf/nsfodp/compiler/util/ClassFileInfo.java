@@ -0,0 +1,362 @@
+/**
+ * Copyright © 2018-2019 Jesse Gallagher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openntf.nsfodp.compiler.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Reads the parts of a compiled class file needed to decide whether classes that
+ * depend on it must be recompiled: the classes it references, the signatures of its
+ * non-private members, and the values of its compile-time constants.
+ *
+ * @author Jesse Gallagher
+ * @since 2.1.0
+ */
+public class ClassFileInfo {
+	private static final int MAGIC = 0xCAFEBABE;
+
+	private static final int CONSTANT_UTF8 = 1;
+	private static final int CONSTANT_INTEGER = 3;
+	private static final int CONSTANT_FLOAT = 4;
+	private static final int CONSTANT_LONG = 5;
+	private static final int CONSTANT_DOUBLE = 6;
+	private static final int CONSTANT_CLASS = 7;
+	private static final int CONSTANT_STRING = 8;
+	private static final int CONSTANT_FIELDREF = 9;
+	private static final int CONSTANT_METHODREF = 10;
+	private static final int CONSTANT_INTERFACE_METHODREF = 11;
+	private static final int CONSTANT_NAME_AND_TYPE = 12;
+	private static final int CONSTANT_METHOD_HANDLE = 15;
+	private static final int CONSTANT_METHOD_TYPE = 16;
+	private static final int CONSTANT_DYNAMIC = 17;
+	private static final int CONSTANT_INVOKE_DYNAMIC = 18;
+	private static final int CONSTANT_MODULE = 19;
+	private static final int CONSTANT_PACKAGE = 20;
+
+	private static final int ACC_PRIVATE = 0x0002;
+	/** Set by compilers on all classes, and so not part of a class's API */
+	private static final int ACC_SUPER = 0x0020;
+	private static final int ACC_SYNTHETIC = 0x1000;
+
+	/** Matches class names within field, method, and generic signatures */
+	private static final Pattern DESCRIPTOR_CLASS = Pattern.compile("L([^;<>:]+)[;<]"); //$NON-NLS-1$
+
+	private final String className;
+	private final String superClassName;
+	private final List<String> interfaceNames;
+	private final String sourceFile;
+	private final boolean api;
+	private final Set<String> referencedClasses;
+	private final List<String> abi;
+	private final List<String> constants;
+
+	private ClassFileInfo(String className, String superClassName, List<String> interfaceNames, String sourceFile, boolean api,
+			Set<String> referencedClasses, List<String> abi, List<String> constants) {
+		this.className = className;
+		this.superClassName = superClassName;
+		this.interfaceNames = interfaceNames;
+		this.sourceFile = sourceFile;
+		this.api = api;
+		this.referencedClasses = referencedClasses;
+		this.abi = abi;
+		this.constants = constants;
+	}
+
+	/**
+	 * @return the binary name of the class, e.g. "com.example.Outer$Inner"
+	 */
+	public String getClassName() {
+		return className;
+	}
+
+	/**
+	 * @return the binary name of the superclass, or {@code null} for {@code java.lang.Object}
+	 */
+	public String getSuperClassName() {
+		return superClassName;
+	}
+
+	public List<String> getInterfaceNames() {
+		return interfaceNames;
+	}
+
+	/**
+	 * @return the name of the top-level class named after the source file that produced this
+	 *         class, e.g. "com.example.Outer" for "Outer.java", or {@code null} if the class
+	 *         file does not record its source file
+	 */
+	public String getSourceClassName() {
+		if(sourceFile == null) {
+			return null;
+		}
+		String baseName = sourceFile.endsWith(".java") ? sourceFile.substring(0, sourceFile.length() - ".java".length()) : sourceFile; //$NON-NLS-1$ //$NON-NLS-2$
+		int lastDot = className.lastIndexOf('.');
+		return lastDot < 0 ? baseName : className.substring(0, lastDot + 1) + baseName;
+	}
+
+	/**
+	 * @return whether other source files can refer to this class, i.e. it is not an anonymous,
+	 *         local, or private nested class
+	 */
+	public boolean isApi() {
+		return api;
+	}
+
+	/**
+	 * @return the binary names of all classes referenced by this class, excluding itself
+	 */
+	public Set<String> getReferencedClasses() {
+		return referencedClasses;
+	}
+
+	/**
+	 * Adds the parts of the class visible to other classes at compile time to the provided
+	 * key. Method bodies and private members are excluded.
+	 */
+	public void updateAbi(CompilationCache.Key key) {
+		key.update(className);
+		for(String part : abi) {
+			key.update(part);
+		}
+	}
+
+	/**
+	 * Adds the names and values of the class's non-private compile-time constants to the
+	 * provided key. These are copied into classes that use them, and so changes to them
+	 * are not visible through {@link #getReferencedClasses()}.
+	 */
+	public void updateConstants(CompilationCache.Key key) {
+		if(!constants.isEmpty()) {
+			key.update(className);
+		}
+		for(String constant : constants) {
+			key.update(constant);
+		}
+	}
+
+	/**
+	 * Reads the provided class file.
+	 *
+	 * @param classData the bytecode of the class
+	 * @return the information read from the class
+	 * @throws IOException if the data is not a valid class file
+	 */
+	public static ClassFileInfo read(byte[] classData) throws IOException {
+		try(DataInputStream in = new DataInputStream(new ByteArrayInputStream(classData))) {
+			if(in.readInt() != MAGIC) {
+				throw new IOException("Not a class file"); //$NON-NLS-1$
+			}
+			in.readUnsignedShort(); // minor version
+			in.readUnsignedShort(); // major version
+
+			// Constant pool
+			int poolSize = in.readUnsignedShort();
+			int[] tags = new int[poolSize];
+			Object[] values = new Object[poolSize];
+			for(int i = 1; i < poolSize; i++) {
+				int tag = in.readUnsignedByte();
+				tags[i] = tag;
+				switch(tag) {
+				case CONSTANT_UTF8:
+					values[i] = in.readUTF();
+					break;
+				case CONSTANT_INTEGER:
+					values[i] = in.readInt();
+					break;
+				case CONSTANT_FLOAT:
+					values[i] = in.readFloat();
+					break;
+				case CONSTANT_LONG:
+					values[i] = in.readLong();
+					i++;
+					break;
+				case CONSTANT_DOUBLE:
+					values[i] = in.readDouble();
+					i++;
+					break;
+				case CONSTANT_CLASS:
+				case CONSTANT_STRING:
+				case CONSTANT_METHOD_TYPE:
+				case CONSTANT_MODULE:
+				case CONSTANT_PACKAGE:
+					values[i] = in.readUnsignedShort();
+					break;
+				case CONSTANT_METHOD_HANDLE:
+					in.readUnsignedByte();
+					values[i] = in.readUnsignedShort();
+					break;
+				case CONSTANT_FIELDREF:
+				case CONSTANT_METHODREF:
+				case CONSTANT_INTERFACE_METHODREF:
+				case CONSTANT_NAME_AND_TYPE:
+				case CONSTANT_DYNAMIC:
+				case CONSTANT_INVOKE_DYNAMIC:
+					in.readUnsignedShort();
+					in.readUnsignedShort();
+					break;
+				default:
+					throw new IOException("Unknown constant pool tag " + tag); //$NON-NLS-1$
+				}
+			}
+
+			int access = in.readUnsignedShort() & ~ACC_SUPER;
+			String className = classNameAt(values, in.readUnsignedShort());
+			int superIndex = in.readUnsignedShort();
+			String superClassName = superIndex == 0 ? null : classNameAt(values, superIndex);
+			int interfaceCount = in.readUnsignedShort();
+			List<String> interfaceNames = new ArrayList<>(interfaceCount);
+			for(int i = 0; i < interfaceCount; i++) {
+				interfaceNames.add(classNameAt(values, in.readUnsignedShort()));
+			}
+
+			List<String> abi = new ArrayList<>();
+			List<String> constants = new ArrayList<>();
+			abi.add("class " + access + ' ' + superClassName + ' ' + new TreeSet<>(interfaceNames)); //$NON-NLS-1$
+			readMembers(in, values, tags, "field ", abi, constants); //$NON-NLS-1$
+			readMembers(in, values, tags, "method ", abi, null); //$NON-NLS-1$
+
+			String sourceFile = null;
+			boolean api = true;
+			int attributeCount = in.readUnsignedShort();
+			for(int i = 0; i < attributeCount; i++) {
+				String name = (String)values[in.readUnsignedShort()];
+				int length = in.readInt();
+				switch(name) {
+				case "SourceFile": //$NON-NLS-1$
+					sourceFile = (String)values[in.readUnsignedShort()];
+					break;
+				case "Signature": //$NON-NLS-1$
+					abi.add("signature " + values[in.readUnsignedShort()]); //$NON-NLS-1$
+					break;
+				case "InnerClasses": { //$NON-NLS-1$
+					int classCount = in.readUnsignedShort();
+					for(int j = 0; j < classCount; j++) {
+						int innerIndex = in.readUnsignedShort();
+						int outerIndex = in.readUnsignedShort();
+						in.readUnsignedShort(); // inner name
+						int innerAccess = in.readUnsignedShort();
+						if(className.equals(classNameAt(values, innerIndex))) {
+							// Anonymous and local classes have no outer class
+							api = outerIndex != 0 && (innerAccess & ACC_PRIVATE) == 0;
+							abi.add("inner " + innerAccess); //$NON-NLS-1$
+						}
+					}
+					break;
+				}
+				default:
+					in.skipBytes(length);
+					break;
+				}
+			}
+			Collections.sort(abi);
+			Collections.sort(constants);
+
+			Set<String> referencedClasses = new TreeSet<>();
+			for(int i = 1; i < poolSize; i++) {
+				if(tags[i] == CONSTANT_CLASS) {
+					String name = (String)values[(Integer)values[i]];
+					if(name.startsWith("[")) { //$NON-NLS-1$
+						addDescriptorClasses(name, referencedClasses);
+					} else {
+						referencedClasses.add(name.replace('/', '.'));
+					}
+				} else if(tags[i] == CONSTANT_UTF8) {
+					addDescriptorClasses((String)values[i], referencedClasses);
+				}
+			}
+			referencedClasses.remove(className);
+
+			return new ClassFileInfo(className, superClassName, Collections.unmodifiableList(interfaceNames), sourceFile, api,
+				Collections.unmodifiableSet(referencedClasses), abi, constants);
+		}
+	}
+
+	// *******************************************************************************
+	// * Internal utility methods
+	// *******************************************************************************
+
+	private static String classNameAt(Object[] values, int index) {
+		return ((String)values[(Integer)values[index]]).replace('/', '.');
+	}
+
+	/**
+	 * Reads the fields or methods of the class, adding the signatures of non-private,
+	 * non-synthetic members to {@code abi} and the values of any constants to
+	 * {@code constants}.
+	 */
+	private static void readMembers(DataInputStream in, Object[] values, int[] tags, String prefix, List<String> abi, List<String> constants) throws IOException {
+		int count = in.readUnsignedShort();
+		for(int i = 0; i < count; i++) {
+			int access = in.readUnsignedShort();
+			String name = (String)values[in.readUnsignedShort()];
+			String descriptor = (String)values[in.readUnsignedShort()];
+			boolean visible = (access & (ACC_PRIVATE | ACC_SYNTHETIC)) == 0;
+			StringBuilder member = new StringBuilder(prefix).append(access).append(' ').append(name).append(descriptor);
+			int attributeCount = in.readUnsignedShort();
+			for(int j = 0; j < attributeCount; j++) {
+				String attributeName = (String)values[in.readUnsignedShort()];
+				int length = in.readInt();
+				switch(attributeName) {
+				case "Signature": //$NON-NLS-1$
+					member.append(" signature ").append(values[in.readUnsignedShort()]); //$NON-NLS-1$
+					break;
+				case "Exceptions": { //$NON-NLS-1$
+					Set<String> exceptions = new TreeSet<>();
+					int exceptionCount = in.readUnsignedShort();
+					for(int k = 0; k < exceptionCount; k++) {
+						exceptions.add(classNameAt(values, in.readUnsignedShort()));
+					}
+					member.append(" throws ").append(exceptions); //$NON-NLS-1$
+					break;
+				}
+				case "ConstantValue": { //$NON-NLS-1$
+					int index = in.readUnsignedShort();
+					if(visible && constants != null) {
+						Object value = tags[index] == CONSTANT_STRING ? values[(Integer)values[index]] : values[index];
+						constants.add(name + '=' + value);
+					}
+					break;
+				}
+				default:
+					in.skipBytes(length);
+					break;
+				}
+			}
+			if(visible) {
+				abi.add(member.toString());
+			}
+		}
+	}
+
+	private static void addDescriptorClasses(String descriptor, Set<String> classNames) {
+		if(descriptor.indexOf(';') < 0) {
+			return;
+		}
+		Matcher matcher = DESCRIPTOR_CLASS.matcher(descriptor);
+		while(matcher.find()) {
+			classNames.add(matcher.group(1).replace('/', '.'));
+		}
+	}
+}
@@ -0,0 +1,520 @@
+/**
+ * Copyright © 2018-2019 Jesse Gallagher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openntf.nsfodp.compiler.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import org.openntf.nsfodp.commons.odp.XSPCompilationResult;
+
+import com.ibm.commons.util.io.StreamUtil;
+
+/**
+ * A persistent, content-addressed store of compilation products, allowing unchanged
+ * design elements to skip DXL generation and XSP translation and compilation on
+ * subsequent runs.
+ *
+ * <p>Entries are keyed by a {@link Key} digest that callers build from the element's
+ * content and any settings that influence the output. Stale entries are never read,
+ * since any change to their inputs produces a different key.</p>
+ *
+ * <p>Failures to read or write the cache are treated as cache misses and do not
+ * interrupt compilation.</p>
+ *
+ * @author Jesse Gallagher
+ * @since 2.1.0
+ */
+public class CompilationCache {
+	/** Incremented whenever the format of cached entries changes */
+	private static final int FORMAT_VERSION = 1;
+
+	private static final String EXT_DXL = ".dxl"; //$NON-NLS-1$
+	private static final String EXT_XSP = ".xsp.zip"; //$NON-NLS-1$
+	private static final String EXT_JAVA = ".java.zip"; //$NON-NLS-1$
+	private static final String EXT_JAVA_INDEX = ".java-index"; //$NON-NLS-1$
+	private static final String ENTRY_JAVA_SOURCE = "source.java"; //$NON-NLS-1$
+	private static final String ENTRY_JAVA_INFO = "info.properties"; //$NON-NLS-1$
+	private static final String PREFIX_CLASS_ENTRY = "classes/"; //$NON-NLS-1$
+	private static final String PROP_SOURCE_HASH = "sourceHash"; //$NON-NLS-1$
+	private static final String PROP_ABI = "abi"; //$NON-NLS-1$
+	private static final String PROP_CONSTANTS = "constants"; //$NON-NLS-1$
+	private static final String PREFIX_DEPENDENCY = "dep."; //$NON-NLS-1$
+	private static final int MAX_FILE_DIGESTS = 8192;
+
+	/**
+	 * Content digests of files added with {@link Key#updateTree(Path)}, reused while each
+	 * file's size and modification time are unchanged
+	 */
+	private static final Map<Path, FileDigest> FILE_DIGESTS = Collections.synchronizedMap(new LinkedHashMap<Path, FileDigest>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Path, FileDigest> eldest) {
+			return size() > MAX_FILE_DIGESTS;
+		}
+	});
+
+	private final Path directory;
+
+	public CompilationCache(Path directory) {
+		this.directory = Objects.requireNonNull(directory);
+	}
+
+	public Path getDirectory() {
+		return directory;
+	}
+
+	/**
+	 * @return a new {@link Key} pre-seeded with the cache format version
+	 */
+	public static Key key() {
+		return new Key().update(FORMAT_VERSION);
+	}
+
+	/**
+	 * Retrieves previously-generated DXL for the given key.
+	 *
+	 * @param key the digest of the DXL inputs
+	 * @return the cached DXL, or {@code null} if there is no usable entry
+	 */
+	public String getDxl(String key) {
+		Path file = toFile(key, EXT_DXL);
+		if(!Files.isRegularFile(file)) {
+			return null;
+		}
+		try {
+			return new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+		} catch(IOException e) {
+			return null;
+		}
+	}
+
+	public void putDxl(String key, String dxl) {
+		write(toFile(key, EXT_DXL), os -> os.write(dxl.getBytes(StandardCharsets.UTF_8)));
+	}
+
+	/**
+	 * Locates previously-generated DXL for the given key, for elements that are imported
+	 * directly from a file.
+	 *
+	 * @param key the digest of the DXL inputs
+	 * @return the UTF-8 DXL file of the cache entry, or {@code null} if there is no entry
+	 */
+	public Path getDxlFile(String key) {
+		Path file = toFile(key, EXT_DXL);
+		return Files.isRegularFile(file) ? file : null;
+	}
+
+	/**
+	 * Stores a copy of the provided UTF-8 DXL file.
+	 *
+	 * @param key the digest of the DXL inputs
+	 * @param dxlFile the file to copy into the cache
+	 */
+	public void putDxlFile(String key, Path dxlFile) {
+		write(toFile(key, EXT_DXL), os -> Files.copy(dxlFile, os));
+	}
+
+	/**
+	 * Retrieves a previously-translated and compiled XSP element for the given key.
+	 *
+	 * @param key the digest of the XSP inputs
+	 * @return the cached result with its class data populated, or {@code null} if there
+	 *         is no usable entry
+	 */
+	public XSPCompilationResult getXSP(String key) {
+		Path file = toFile(key, EXT_XSP);
+		if(!Files.isRegularFile(file)) {
+			return null;
+		}
+		try(InputStream is = Files.newInputStream(file); ZipInputStream zis = new ZipInputStream(is)) {
+			String javaSource = null;
+			Map<String, byte[]> classData = new LinkedHashMap<>();
+			ZipEntry entry;
+			while((entry = zis.getNextEntry()) != null) {
+				ByteArrayOutputStream baos = new ByteArrayOutputStream();
+				StreamUtil.copyStream(zis, baos);
+				String name = entry.getName();
+				if(ENTRY_JAVA_SOURCE.equals(name)) {
+					javaSource = new String(baos.toByteArray(), StandardCharsets.UTF_8);
+				} else if(name.startsWith(PREFIX_CLASS_ENTRY)) {
+					classData.put(name.substring(PREFIX_CLASS_ENTRY.length()), baos.toByteArray());
+				}
+			}
+			if(javaSource == null || classData.isEmpty()) {
+				return null;
+			}
+			return new XSPCompilationResult(javaSource, null, classData);
+		} catch(IOException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Stores the translated source and compiled classes of an XSP element.
+	 *
+	 * @param key the digest of the XSP inputs
+	 * @param result the compilation result, which must have its class data populated
+	 */
+	public void putXSP(String key, XSPCompilationResult result) {
+		write(toFile(key, EXT_XSP), os -> {
+			try(ZipOutputStream zos = new ZipOutputStream(os)) {
+				zos.putNextEntry(new ZipEntry(ENTRY_JAVA_SOURCE));
+				zos.write(result.getJavaSource().getBytes(StandardCharsets.UTF_8));
+				zos.closeEntry();
+				for(Map.Entry<String, byte[]> classEntry : result.getClassData().entrySet()) {
+					zos.putNextEntry(new ZipEntry(PREFIX_CLASS_ENTRY + classEntry.getKey()));
+					zos.write(classEntry.getValue());
+					zos.closeEntry();
+				}
+			}
+		});
+	}
+
+	/**
+	 * Retrieves the previously-compiled classes of a Java source file for the given key.
+	 *
+	 * @param key the digest of the source file name and the settings it was compiled with
+	 * @return the cached classes, or {@code null} if there is no usable entry
+	 */
+	public CompiledJavaSource getJavaSource(String key) {
+		Path file = toFile(key, EXT_JAVA);
+		if(!Files.isRegularFile(file)) {
+			return null;
+		}
+		try(InputStream is = Files.newInputStream(file); ZipInputStream zis = new ZipInputStream(is)) {
+			Properties info = null;
+			Map<String, byte[]> classData = new LinkedHashMap<>();
+			ZipEntry entry;
+			while((entry = zis.getNextEntry()) != null) {
+				ByteArrayOutputStream baos = new ByteArrayOutputStream();
+				StreamUtil.copyStream(zis, baos);
+				String name = entry.getName();
+				if(ENTRY_JAVA_INFO.equals(name)) {
+					info = new Properties();
+					info.load(new ByteArrayInputStream(baos.toByteArray()));
+				} else if(name.startsWith(PREFIX_CLASS_ENTRY)) {
+					classData.put(name.substring(PREFIX_CLASS_ENTRY.length()), baos.toByteArray());
+				}
+			}
+			if(info == null) {
+				return null;
+			}
+			Map<String, String> dependencies = new LinkedHashMap<>();
+			for(String prop : info.stringPropertyNames()) {
+				if(prop.startsWith(PREFIX_DEPENDENCY)) {
+					dependencies.put(prop.substring(PREFIX_DEPENDENCY.length()), info.getProperty(prop));
+				}
+			}
+			return new CompiledJavaSource(info.getProperty(PROP_SOURCE_HASH), info.getProperty(PROP_ABI),
+				info.getProperty(PROP_CONSTANTS), dependencies, classData);
+		} catch(IOException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Stores the compiled classes of a Java source file.
+	 *
+	 * @param key the digest of the source file name and the settings it was compiled with
+	 * @param source the compiled source
+	 */
+	public void putJavaSource(String key, CompiledJavaSource source) {
+		write(toFile(key, EXT_JAVA), os -> {
+			try(ZipOutputStream zos = new ZipOutputStream(os)) {
+				Properties info = new Properties();
+				info.setProperty(PROP_SOURCE_HASH, source.getSourceHash());
+				info.setProperty(PROP_ABI, source.getAbi());
+				info.setProperty(PROP_CONSTANTS, source.getConstants());
+				for(Map.Entry<String, String> dependency : source.getDependencies().entrySet()) {
+					info.setProperty(PREFIX_DEPENDENCY + dependency.getKey(), dependency.getValue());
+				}
+				zos.putNextEntry(new ZipEntry(ENTRY_JAVA_INFO));
+				info.store(zos, null);
+				zos.closeEntry();
+				for(Map.Entry<String, byte[]> classEntry : source.getClassData().entrySet()) {
+					zos.putNextEntry(new ZipEntry(PREFIX_CLASS_ENTRY + classEntry.getKey()));
+					zos.write(classEntry.getValue());
+					zos.closeEntry();
+				}
+			}
+		});
+	}
+
+	/**
+	 * Retrieves the names of the Java source files present in the last compilation with
+	 * the given settings.
+	 *
+	 * @param key the digest of the compilation settings
+	 * @return the source class names, or {@code null} if there is no usable entry
+	 */
+	public Set<String> getJavaSourceIndex(String key) {
+		Path file = toFile(key, EXT_JAVA_INDEX);
+		if(!Files.isRegularFile(file)) {
+			return null;
+		}
+		try {
+			return new LinkedHashSet<>(Files.readAllLines(file, StandardCharsets.UTF_8));
+		} catch(IOException e) {
+			return null;
+		}
+	}
+
+	public void putJavaSourceIndex(String key, Collection<String> sourceClassNames) {
+		write(toFile(key, EXT_JAVA_INDEX), os -> {
+			for(String name : sourceClassNames) {
+				os.write(name.getBytes(StandardCharsets.UTF_8));
+				os.write('\n');
+			}
+		});
+	}
+
+	// *******************************************************************************
+	// * Internal utility methods
+	// *******************************************************************************
+
+	private Path toFile(String key, String extension) {
+		return directory.resolve(key.substring(0, 2)).resolve(key + extension);
+	}
+
+	@FunctionalInterface
+	private interface IOConsumer<T> {
+		void accept(T t) throws IOException;
+	}
+
+	/**
+	 * Writes to a temporary file beside the destination and moves it into place, so
+	 * that concurrent readers never see a partial entry.
+	 */
+	private void write(Path file, IOConsumer<OutputStream> writer) {
+		try {
+			Files.createDirectories(file.getParent());
+			Path temp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp"); //$NON-NLS-1$
+			try {
+				try(OutputStream os = Files.newOutputStream(temp)) {
+					writer.accept(os);
+				}
+				try {
+					Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+				} catch(AtomicMoveNotSupportedException e) {
+					Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+				}
+			} finally {
+				Files.deleteIfExists(temp);
+			}
+		} catch(IOException e) {
+			// Caching is an optimization only - report and move on
+			e.printStackTrace();
+		}
+	}
+
+	private static MessageDigest newDigest() {
+		try {
+			return MessageDigest.getInstance("SHA-256"); //$NON-NLS-1$
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Computes the SHA-256 digest of the provided file's content, reusing the previous
+	 * digest if the file's size and modification time have not changed.
+	 */
+	private static byte[] getFileDigest(Path file) throws IOException {
+		Path key = file.toAbsolutePath().normalize();
+		BasicFileAttributes attrs = Files.readAttributes(key, BasicFileAttributes.class);
+		long size = attrs.size();
+		long modified = attrs.lastModifiedTime().toMillis();
+		FileDigest cached = FILE_DIGESTS.get(key);
+		if(cached != null && cached.size == size && cached.modified == modified) {
+			return cached.digest;
+		}
+
+		MessageDigest digest = newDigest();
+		byte[] buffer = new byte[8192];
+		try(InputStream is = Files.newInputStream(key)) {
+			int read;
+			while((read = is.read(buffer)) > -1) {
+				digest.update(buffer, 0, read);
+			}
+		}
+		byte[] result = digest.digest();
+		FILE_DIGESTS.put(key, new FileDigest(size, modified, result));
+		return result;
+	}
+
+	private static class FileDigest {
+		private final long size;
+		private final long modified;
+		private final byte[] digest;
+
+		FileDigest(long size, long modified, byte[] digest) {
+			this.size = size;
+			this.modified = modified;
+			this.digest = digest;
+		}
+	}
+
+	/**
+	 * Accumulates a SHA-256 digest of compilation inputs. Each value is written with
+	 * a length or type prefix, so that adjacent values cannot run together.
+	 */
+	public static class Key {
+		private final MessageDigest digest;
+
+		private Key() {
+			this.digest = newDigest();
+		}
+
+		public Key update(int value) {
+			digest.update((byte)'i');
+			for(int i = 24; i >= 0; i -= 8) {
+				digest.update((byte)(value >>> i));
+			}
+			return this;
+		}
+
+		public Key update(long value) {
+			digest.update((byte)'l');
+			for(int i = 56; i >= 0; i -= 8) {
+				digest.update((byte)(value >>> i));
+			}
+			return this;
+		}
+
+		public Key update(String value) {
+			if(value == null) {
+				digest.update((byte)'n');
+				return this;
+			}
+			return update(value.getBytes(StandardCharsets.UTF_8));
+		}
+
+		public Key update(byte[] value) {
+			update(value.length);
+			digest.update((byte)'b');
+			digest.update(value);
+			return this;
+		}
+
+		/**
+		 * Adds the full contents of the given file to the digest, or a marker if it
+		 * does not exist.
+		 */
+		public Key updateContent(Path file) throws IOException {
+			if(!Files.isRegularFile(file)) {
+				digest.update((byte)'n');
+				return this;
+			}
+			update(Files.size(file));
+			digest.update((byte)'f');
+			byte[] buffer = new byte[8192];
+			try(InputStream is = Files.newInputStream(file)) {
+				int read;
+				while((read = is.read(buffer)) > -1) {
+					digest.update(buffer, 0, read);
+				}
+			}
+			return this;
+		}
+
+		/**
+		 * Adds the name and content digest of the given file to the digest or, for a
+		 * directory, the relative path and content digest of each file within it, in path
+		 * order. This is intended for large inputs such as update site bundles, which may
+		 * be either jars or extracted directories: the digest of each file is computed once
+		 * and reused while its size and modification time are unchanged.
+		 */
+		public Key updateTree(Path file) throws IOException {
+			update(file.getFileName().toString());
+			if(Files.isDirectory(file)) {
+				digest.update((byte)'d');
+				List<Path> files;
+				try(Stream<Path> walk = Files.walk(file)) {
+					files = walk.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+				}
+				update(files.size());
+				for(Path child : files) {
+					update(file.relativize(child).toString().replace(File.separatorChar, '/'));
+					digest.update(getFileDigest(child));
+				}
+			} else if(Files.isRegularFile(file)) {
+				digest.update((byte)'f');
+				digest.update(getFileDigest(file));
+			} else {
+				digest.update((byte)'n');
+			}
+			return this;
+		}
+
+		/**
+		 * Adds the tree of the referenced file for "file:" URIs, or the URI itself
+		 * otherwise.
+		 *
+		 * @see #updateTree(Path)
+		 */
+		public Key updateTree(URI uri) throws IOException {
+			if("file".equals(uri.getScheme())) { //$NON-NLS-1$
+				return updateTree(Paths.get(uri));
+			} else {
+				return update(uri.toString());
+			}
+		}
+
+		/**
+		 * Completes the digest. The key should not be used after calling this method.
+		 *
+		 * @return a hexadecimal representation of the digest
+		 */
+		public String build() {
+			byte[] hash = digest.digest();
+			StringBuilder result = new StringBuilder(hash.length * 2);
+			for(byte b : hash) {
+				result.append(Character.forDigit((b >> 4) & 0xF, 16));
+				result.append(Character.forDigit(b & 0xF, 16));
+			}
+			return result.toString();
+		}
+	}
+}
@@ -0,0 +1,70 @@
+/**
+ * Copyright © 2018-2019 Jesse Gallagher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openntf.nsfodp.compiler.util;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * The compiled classes of a single Java source file, along with the information needed
+ * to decide whether they can be reused in a later compilation.
+ *
+ * @author Jesse Gallagher
+ * @since 2.1.0
+ */
+public class CompiledJavaSource {
+	private final String sourceHash;
+	private final String abi;
+	private final String constants;
+	private final Map<String, String> dependencies;
+	private final Map<String, byte[]> classData;
+
+	/**
+	 * @param sourceHash the digest of the source file content
+	 * @param abi the digest of the API of the source's classes
+	 * @param constants the digest of the compile-time constants of the source's classes
+	 * @param dependencies the other source files whose classes these classes use, mapped to
+	 *        the digest of their API when these classes were compiled
+	 * @param classData the bytecode of the source's classes, keyed by class name
+	 */
+	public CompiledJavaSource(String sourceHash, String abi, String constants, Map<String, String> dependencies, Map<String, byte[]> classData) {
+		this.sourceHash = sourceHash;
+		this.abi = abi;
+		this.constants = constants;
+		this.dependencies = Collections.unmodifiableMap(dependencies);
+		this.classData = Collections.unmodifiableMap(classData);
+	}
+
+	public String getSourceHash() {
+		return sourceHash;
+	}
+
+	public String getAbi() {
+		return abi;
+	}
+
+	public String getConstants() {
+		return constants;
+	}
+
+	public Map<String, String> getDependencies() {
+		return dependencies;
+	}
+
+	public Map<String, byte[]> getClassData() {
+		return classData;
+	}
+}
@@ -0,0 +1,225 @@
+/**
+ * Copyright © 2018-2019 Jesse Gallagher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openntf.nsfodp.compiler.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.ibm.commons.util.StringUtil;
+
+import lotus.domino.Database;
+import lotus.domino.DxlImporter;
+import lotus.domino.NotesException;
+
+/**
+ * Combines the DXL of several design elements into a single {@code <database>} document,
+ * so that they are imported with one call to the {@link DxlImporter}.
+ *
+ * <p>If a combined import fails, any notes it created are removed and the batch is split
+ * in half and retried, until the failing element is imported on its own via the
+ * provided {@link ElementImporter}. This way, errors are still reported against the
+ * name of the individual element.</p>
+ *
+ * <p>This class is not thread-safe, and should be used only from the thread that owns
+ * the importer.</p>
+ *
+ * @author Jesse Gallagher
+ * @since 2.1.0
+ */
+public class DxlImportBatch {
+	/**
+	 * Imports a single element, reporting any failure against its name.
+	 */
+	@FunctionalInterface
+	public interface ElementImporter {
+		void importDxl(String dxl, String name) throws Exception;
+	}
+
+	/** The combined size at which a batch is imported regardless of its element count */
+	private static final int MAX_BATCH_CHARS = 8 * 1024 * 1024;
+
+	private static final String DATABASE_START = "<database xmlns=\"http://www.lotus.com/dxl\">"; //$NON-NLS-1$
+	private static final String DATABASE_END = "</database>"; //$NON-NLS-1$
+
+	private static class Entry {
+		private final String body;
+		private final String dxl;
+		private final String name;
+
+		Entry(String body, String dxl, String name) {
+			this.body = body;
+			this.dxl = dxl;
+			this.name = name;
+		}
+	}
+
+	private final DxlImporter importer;
+	private final Database database;
+	private final int batchSize;
+	private final ElementImporter elementImporter;
+	private final List<Entry> pending = new ArrayList<>();
+	private int pendingChars;
+
+	/**
+	 * @param importer the importer to use for combined imports
+	 * @param database the database to import to
+	 * @param batchSize the maximum number of elements to combine in a single import, or 1
+	 *        to import each element individually
+	 * @param elementImporter the importer to use for individual elements
+	 */
+	public DxlImportBatch(DxlImporter importer, Database database, int batchSize, ElementImporter elementImporter) {
+		this.importer = importer;
+		this.database = database;
+		this.batchSize = Math.max(1, batchSize);
+		this.elementImporter = elementImporter;
+	}
+
+	/**
+	 * Queues the provided element for import, importing the current batch if it is full.
+	 *
+	 * @param dxl the DXL of a single design element
+	 * @param name a human-readable name of the element, for logging
+	 * @throws Exception if there is a problem importing the batch
+	 */
+	public void add(String dxl, String name) throws Exception {
+		String body = batchSize > 1 ? toBody(dxl) : null;
+		if(body == null) {
+			// Either batching is disabled or this isn't a lone design note
+			flush();
+			elementImporter.importDxl(dxl, name);
+			return;
+		}
+
+		pending.add(new Entry(body, dxl, name));
+		pendingChars += body.length();
+		if(pending.size() >= batchSize || pendingChars >= MAX_BATCH_CHARS) {
+			flush();
+		}
+	}
+
+	/**
+	 * Imports any queued elements.
+	 *
+	 * @throws Exception if there is a problem importing the batch
+	 */
+	public void flush() throws Exception {
+		if(pending.isEmpty()) {
+			return;
+		}
+		List<Entry> entries = new ArrayList<>(pending);
+		pending.clear();
+		pendingChars = 0;
+		importEntries(entries);
+	}
+
+	// *******************************************************************************
+	// * Internal utility methods
+	// *******************************************************************************
+
+	private void importEntries(List<Entry> entries) throws Exception {
+		if(entries.size() == 1) {
+			Entry entry = entries.get(0);
+			elementImporter.importDxl(entry.dxl, entry.name);
+			return;
+		}
+
+		int length = DATABASE_START.length() + DATABASE_END.length();
+		for(Entry entry : entries) {
+			length += entry.body.length();
+		}
+		StringBuilder dxl = new StringBuilder(length);
+		dxl.append(DATABASE_START);
+		for(Entry entry : entries) {
+			dxl.append(entry.body);
+		}
+		dxl.append(DATABASE_END);
+
+		try {
+			importer.importDxl(dxl.toString(), database);
+		} catch(NotesException e) {
+			// Narrow down the failure to the element responsible
+			removeImportedNotes();
+			int mid = entries.size() / 2;
+			importEntries(entries.subList(0, mid));
+			importEntries(entries.subList(mid, entries.size()));
+		}
+	}
+
+	/**
+	 * Removes any notes created by a failed import, so that retried elements are not
+	 * duplicated.
+	 */
+	private void removeImportedNotes() throws NotesException {
+		List<String> noteIds = new ArrayList<>();
+		String noteId = importer.getFirstImportedNoteID();
+		while(StringUtil.isNotEmpty(noteId)) {
+			noteIds.add(noteId);
+			noteId = importer.getNextImportedNoteID(noteId);
+		}
+		for(String id : noteIds) {
+			lotus.domino.Document doc = database.getDocumentByID(id);
+			if(doc != null) {
+				doc.remove(true);
+				doc.recycle();
+			}
+		}
+	}
+
+	/**
+	 * Strips the XML declaration, DOCTYPE, and any comments from the provided DXL, so that
+	 * its root element can be nested within a {@code <database>} element.
+	 *
+	 * @return the root element of the DXL, or {@code null} if the DXL isn't suitable for
+	 *         combining with other elements
+	 */
+	private static String toBody(String dxl) {
+		int pos = 0;
+		int len = dxl.length();
+		while(pos < len) {
+			char c = dxl.charAt(pos);
+			if(Character.isWhitespace(c) || c == '\uFEFF') {
+				pos++;
+			} else if(dxl.startsWith("<?", pos)) { //$NON-NLS-1$
+				pos = skipPast(dxl, pos, "?>"); //$NON-NLS-1$
+			} else if(dxl.startsWith("<!--", pos)) { //$NON-NLS-1$
+				pos = skipPast(dxl, pos, "-->"); //$NON-NLS-1$
+			} else if(dxl.startsWith("<!DOCTYPE", pos)) { //$NON-NLS-1$
+				int subset = dxl.indexOf('[', pos);
+				int end = dxl.indexOf('>', pos);
+				if(subset > -1 && subset < end) {
+					// Internal subsets may declare entities used by the element
+					return null;
+				}
+				pos = end < 0 ? -1 : end + 1;
+			} else {
+				break;
+			}
+			if(pos < 0) {
+				return null;
+			}
+		}
+		// Database-level DXL, such as properties or ACLs, must be imported on its own
+		if(pos >= len || dxl.startsWith("<database", pos)) { //$NON-NLS-1$
+			return null;
+		}
+		return dxl.substring(pos);
+	}
+
+	private static int skipPast(String dxl, int pos, String terminator) {
+		int end = dxl.indexOf(terminator, pos);
+		return end < 0 ? -1 : end + terminator.length();
+	}
+}
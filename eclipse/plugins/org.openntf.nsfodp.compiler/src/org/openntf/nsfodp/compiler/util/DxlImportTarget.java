@@ -0,0 +1,54 @@
+/**
+ * Copyright © 2018-2019 Jesse Gallagher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openntf.nsfodp.compiler.util;
+
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Imports serialized DXL into the database being compiled.
+ *
+ * <p>DXL may be provided either in memory or as a file. Files are read as they are
+ * imported, which allows large elements to be imported without holding their full
+ * serialized form in memory.</p>
+ *
+ * @author Jesse Gallagher
+ * @since 2.1.0
+ */
+public interface DxlImportTarget {
+	/**
+	 * Imports the provided DXL.
+	 *
+	 * @param dxl the DXL to import
+	 * @return the note IDs of the imported notes
+	 * @throws Exception if there is a problem importing the DXL
+	 */
+	List<String> importDxl(String dxl) throws Exception;
+
+	/**
+	 * Imports the DXL in the provided UTF-8-encoded file.
+	 *
+	 * @param dxlFile the file containing the DXL to import
+	 * @return the note IDs of the imported notes
+	 * @throws Exception if there is a problem importing the DXL
+	 */
+	List<String> importDxl(Path dxlFile) throws Exception;
+
+	/**
+	 * @return the log of the most recent import, for reporting failures
+	 */
+	String getLog() throws Exception;
+}
@@ -0,0 +1,143 @@
+/**
+ * Copyright © 2018-2019 Jesse Gallagher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openntf.nsfodp.compiler.util;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.openntf.nsfodp.commons.NSFODPUtil;
+import org.openntf.nsfodp.commons.odp.AbstractSplitDesignElement;
+
+/**
+ * Decides whether a file resource is imported from a temporary DXL file rather than from
+ * an in-memory string, and prepares such imports.
+ *
+ * <p>The DXL of a streamed element is written to disk as it is generated, so that the
+ * Base64 encoding of its content is never held in the Java heap as a whole.</p>
+ *
+ * @author Jesse Gallagher
+ * @since 2.1.0
+ */
+public class DxlStreamImport {
+	/**
+	 * Imports the DXL in a prepared file. This is run on the importing thread.
+	 */
+	@FunctionalInterface
+	public interface FileImporter {
+		void importDxl(Path dxlFile) throws Exception;
+	}
+
+	/**
+	 * The threshold used in low-memory compilation when none is otherwise configured.
+	 */
+	public static final long LOW_MEMORY_THRESHOLD = 8 * 1024 * 1024;
+
+	private final long threshold;
+
+	/**
+	 * @param threshold the size in bytes of the file content at which to import from a
+	 *        file, or 0 to always import from memory
+	 */
+	public DxlStreamImport(long threshold) {
+		this.threshold = Math.max(0, threshold);
+	}
+
+	/**
+	 * @param threshold the size in bytes of the file content at which to import from a
+	 *        file, or 0 to use the default
+	 * @param lowMemoryCompilation whether the compiler bounds its memory use, in which case
+	 *        the default is {@link #LOW_MEMORY_THRESHOLD} rather than always importing from
+	 *        memory
+	 */
+	public DxlStreamImport(long threshold, boolean lowMemoryCompilation) {
+		this(threshold < 1 && lowMemoryCompilation ? LOW_MEMORY_THRESHOLD : threshold);
+	}
+
+	/**
+	 * @return the size in bytes of the file content at which elements are imported from a
+	 *         file, or 0 if they are always imported from memory
+	 */
+	public long getThreshold() {
+		return threshold;
+	}
+
+	/**
+	 * Determines whether the provided element is large enough to be imported from a
+	 * temporary DXL file.
+	 *
+	 * @param res the element to check
+	 * @return whether the element should be imported from a file
+	 * @throws IOException if there is a problem reading the size of the data file
+	 */
+	public boolean isStreamImport(AbstractSplitDesignElement res) throws IOException {
+		if(threshold < 1) {
+			return false;
+		}
+		byte[] overrideData = res.getOverrideData();
+		long size = overrideData != null ? overrideData.length : Files.size(res.getDataFile());
+		return size >= threshold;
+	}
+
+	/**
+	 * Writes the DXL of the provided element to a temporary file, returning a step that
+	 * imports it from there and then deletes the file.
+	 *
+	 * @param res the element to prepare
+	 * @param cache the cache to store a copy of the DXL in, or {@code null} to not cache it
+	 * @param key the cache key of the element, or {@code null} if {@code cache} is
+	 *        {@code null}
+	 * @param importer the importer to use for the file
+	 * @return a step that imports the element
+	 * @throws Exception if there is a problem generating the DXL
+	 */
+	public ImportPipeline.ImportStep prepare(AbstractSplitDesignElement res, CompilationCache cache, String key, FileImporter importer) throws Exception {
+		Path dxlFile = Files.createTempFile(NSFODPUtil.getTempDirectory(), "nsfodp-import", ".xml"); //$NON-NLS-1$ //$NON-NLS-2$
+		try {
+			// The XML writer emits a character at a time, so buffer it before it reaches the file
+			try(OutputStream os = new BufferedOutputStream(Files.newOutputStream(dxlFile))) {
+				res.writeDxl(os);
+			}
+			if(cache != null && key != null) {
+				cache.putDxlFile(key, dxlFile);
+			}
+		} catch(Throwable t) {
+			Files.deleteIfExists(dxlFile);
+			throw t;
+		}
+		return new ImportPipeline.ImportStep() {
+			@Override
+			public void run() throws Exception {
+				try {
+					importer.importDxl(dxlFile);
+				} finally {
+					Files.deleteIfExists(dxlFile);
+				}
+			}
+
+			@Override
+			public void discard() {
+				try {
+					Files.deleteIfExists(dxlFile);
+				} catch(IOException e) {
+					// Then the file will be left in the temp directory
+				}
+			}
+		};
+	}
+}
@@ -0,0 +1,203 @@
+/**
+ * Copyright © 2018-2019 Jesse Gallagher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openntf.nsfodp.compiler.util;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import lotus.domino.NotesThread;
+
+/**
+ * Overlaps the preparation of design elements for import - reading files, building
+ * items, and serializing DXL - with the import itself.
+ *
+ * <p>Preparations run on a pool of worker threads, while the resulting import steps
+ * are run on the calling thread, which should be the thread that owns the Notes
+ * session and importer. Steps run in the order their preparations were provided, and
+ * at most {@code capacity} prepared elements are held in memory at a time.</p>
+ *
+ * @author Jesse Gallagher
+ * @since 2.1.0
+ */
+public class ImportPipeline implements AutoCloseable {
+	/**
+	 * An action that imports a prepared element. This is run on the importing thread.
+	 */
+	@FunctionalInterface
+	public interface ImportStep {
+		void run() throws Exception;
+
+		/**
+		 * Releases any resources held by the prepared element, such as temporary files,
+		 * when the step will not be run because an earlier element failed.
+		 */
+		default void discard() {
+		}
+	}
+
+	/**
+	 * Prepares an element for import. This is run on a worker thread, and so must not
+	 * use objects from the importing thread's Notes session.
+	 */
+	@FunctionalInterface
+	public interface Preparation {
+		ImportStep prepare() throws Exception;
+	}
+
+	/**
+	 * A check run on the importing thread before each element is imported, which throws
+	 * an exception to stop the import early, such as when concurrent work has failed.
+	 */
+	@FunctionalInterface
+	public interface Checkpoint {
+		void check() throws Exception;
+	}
+
+	private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+
+	private final ExecutorService executor;
+	private final int capacity;
+	private final Checkpoint checkpoint;
+
+	/**
+	 * @param threads the number of worker threads to use, or 0 to prepare each element
+	 *        on the importing thread immediately before importing it
+	 * @param capacity the maximum number of prepared or in-progress elements to hold
+	 */
+	public ImportPipeline(int threads, int capacity) {
+		this(threads, capacity, null);
+	}
+
+	/**
+	 * @param threads the number of worker threads to use, or 0 to prepare each element
+	 *        on the importing thread immediately before importing it
+	 * @param capacity the maximum number of prepared or in-progress elements to hold
+	 * @param checkpoint a check to run before each element is prepared and imported, or
+	 *        {@code null} to always run to completion
+	 */
+	public ImportPipeline(int threads, int capacity, Checkpoint checkpoint) {
+		if(threads > 0) {
+			// Preparations may build DXL with native helpers, which require a Notes thread
+			this.executor = Executors.newFixedThreadPool(threads, runnable -> {
+				Thread thread = new NotesThread(runnable, "NSF ODP Import Preparation " + THREAD_COUNT.incrementAndGet()); //$NON-NLS-1$
+				thread.setDaemon(true);
+				return thread;
+			});
+		} else {
+			this.executor = null;
+		}
+		this.capacity = Math.max(1, capacity);
+		this.checkpoint = checkpoint;
+	}
+
+	/**
+	 * Prepares and imports the provided elements, returning when all have been imported.
+	 * If any preparation, import, or checkpoint fails, outstanding preparations are cancelled
+	 * and the exception is rethrown.
+	 *
+	 * @param preparations the preparations to run, in import order
+	 * @throws Exception if a preparation, import step, or the checkpoint throws an exception
+	 */
+	public void run(List<? extends Preparation> preparations) throws Exception {
+		if(executor == null) {
+			for(Preparation preparation : preparations) {
+				check();
+				preparation.prepare().run();
+			}
+			return;
+		}
+
+		Deque<Future<ImportStep>> window = new ArrayDeque<>(capacity);
+		Iterator<? extends Preparation> iter = preparations.iterator();
+		try {
+			while(window.size() < capacity && iter.hasNext()) {
+				window.add(executor.submit(iter.next()::prepare));
+			}
+			while(!window.isEmpty()) {
+				ImportStep step = await(window.poll());
+				try {
+					check();
+				} catch(Exception e) {
+					step.discard();
+					throw e;
+				}
+				// Keep the workers busy while this element is imported
+				if(iter.hasNext()) {
+					window.add(executor.submit(iter.next()::prepare));
+				}
+				step.run();
+			}
+		} finally {
+			for(Future<ImportStep> future : window) {
+				if(!future.cancel(true)) {
+					discard(future);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Runs the checkpoint, if any, throwing its exception to stop the import.
+	 *
+	 * @throws Exception if the checkpoint indicates that the import should stop
+	 */
+	public void check() throws Exception {
+		if(checkpoint != null) {
+			checkpoint.check();
+		}
+	}
+
+	@Override
+	public void close() {
+		if(executor != null) {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Discards the step of a preparation that completed before it could be cancelled.
+	 */
+	private static void discard(Future<ImportStep> future) {
+		try {
+			future.get().discard();
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch(ExecutionException e) {
+			// Then there is nothing to discard
+		}
+	}
+
+	private static ImportStep await(Future<ImportStep> future) throws Exception {
+		try {
+			return future.get();
+		} catch(ExecutionException e) {
+			Throwable cause = e.getCause();
+			if(cause instanceof Exception) {
+				throw (Exception)cause;
+			} else if(cause instanceof Error) {
+				throw (Error)cause;
+			}
+			throw e;
+		}
+	}
+}
@@ -0,0 +1,387 @@
+/**
+ * Copyright © 2018-2019 Jesse Gallagher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openntf.nsfodp.compiler.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import org.openntf.nsfodp.commons.NSFODPUtil;
+
+import com.ibm.xsp.extlib.javacompiler.JavaCompilerException;
+
+/**
+ * Compiles the Java source files of a project, reusing the cached classes of source files
+ * that have not changed since a previous compilation with the same settings.
+ *
+ * <p>Changed and new source files are compiled against the cached classes of the rest.
+ * Whenever that changes the API of a source file's classes, the source files whose classes
+ * used them are compiled again, until no further API changes are found. Since the Java
+ * compiler copies compile-time constants into the classes that use them, a change to any
+ * constant, or the removal of a source file that declared one, causes a full compilation.</p>
+ *
+ * @author Jesse Gallagher
+ * @since 2.1.0
+ */
+public class IncrementalJavaCompiler {
+	/**
+	 * Creates the class loaders used to compile each round of source files.
+	 */
+	@FunctionalInterface
+	public interface ClassLoaderFactory {
+		/**
+		 * @param classPath the class path for compilation, which includes a jar of the
+		 *        precompiled classes
+		 * @param precompiled the bytecode of classes compiled previously, keyed by class name
+		 * @return a new class loader
+		 */
+		PrecompiledJavaSourceClassLoader create(String[] classPath, Map<String, byte[]> precompiled);
+	}
+
+	private final CompilationCache cache;
+	private final String contextKey;
+	private final ClassLoaderFactory classLoaderFactory;
+	private int compiledCount;
+
+	/**
+	 * @param cache the cache to store compiled classes in
+	 * @param contextKey the digest of the compiler settings and of all inputs other than the
+	 *        Java source files that can affect compilation
+	 * @param classLoaderFactory the factory for class loaders used for compilation
+	 */
+	public IncrementalJavaCompiler(CompilationCache cache, String contextKey, ClassLoaderFactory classLoaderFactory) {
+		this.cache = Objects.requireNonNull(cache);
+		this.contextKey = Objects.requireNonNull(contextKey);
+		this.classLoaderFactory = Objects.requireNonNull(classLoaderFactory);
+	}
+
+	/**
+	 * Compiles the provided source files.
+	 *
+	 * @param sources the source of each file, keyed by the name of its top-level class
+	 * @param classPath the class path for compilation
+	 * @return the bytecode of all classes of the source files, keyed by class name
+	 * @throws JavaCompilerException if compilation fails
+	 */
+	public Map<String, byte[]> compile(Map<String, CharSequence> sources, String[] classPath) throws IOException, JavaCompilerException {
+		compiledCount = 0;
+		Map<String, String> sourceHashes = new HashMap<>();
+		Map<String, CompiledJavaSource> previous = new HashMap<>();
+		for(Map.Entry<String, CharSequence> source : sources.entrySet()) {
+			String name = source.getKey();
+			sourceHashes.put(name, CompilationCache.key().update(source.getValue().toString()).build());
+			CompiledJavaSource cached = cache.getJavaSource(getSourceKey(name));
+			if(cached != null) {
+				previous.put(name, cached);
+			}
+		}
+
+		boolean full = isFullCompilationNeeded(sources.keySet());
+		Map<String, CompiledJavaSource> current = new TreeMap<>();
+		if(!full) {
+			for(Map.Entry<String, CompiledJavaSource> entry : previous.entrySet()) {
+				if(entry.getValue().getSourceHash().equals(sourceHashes.get(entry.getKey()))) {
+					current.put(entry.getKey(), entry.getValue());
+				}
+			}
+		}
+		Set<String> compiled = new HashSet<>();
+		Set<String> pending = new TreeSet<>(sources.keySet());
+		pending.removeAll(current.keySet());
+		boolean cacheable = true;
+		int rounds = 0;
+		while(!pending.isEmpty()) {
+			if(!full && ++rounds > sources.size()) {
+				// Shouldn't happen, since each round settles the API of more classes, but be safe
+				full = true;
+				current.clear();
+				compiled.clear();
+				pending = new TreeSet<>(sources.keySet());
+			}
+			Map<String, CharSequence> roundSources = new LinkedHashMap<>();
+			for(String name : pending) {
+				roundSources.put(name, sources.get(name));
+				current.remove(name);
+			}
+			Map<String, Map<String, byte[]>> classData = new HashMap<>();
+			cacheable &= compileRound(roundSources, current, classPath, classData);
+			Map<String, CompiledJavaSource> fresh = analyze(roundSources.keySet(), sourceHashes, current, classData);
+
+			if(!full) {
+				// Dependent classes may have inlined the old values, which isn't visible in their bytecode
+				boolean constantsChanged = fresh.entrySet().stream()
+					.anyMatch(entry -> previous.containsKey(entry.getKey()) && !previous.get(entry.getKey()).getConstants().equals(entry.getValue().getConstants()));
+				if(constantsChanged) {
+					full = true;
+					current.clear();
+					compiled.clear();
+					pending = new TreeSet<>(sources.keySet());
+					continue;
+				}
+			}
+
+			current.putAll(fresh);
+			compiled.addAll(pending);
+			compiledCount += pending.size();
+
+			// Look for classes compiled against a different API than is now present
+			pending = new TreeSet<>();
+			for(Map.Entry<String, CompiledJavaSource> entry : current.entrySet()) {
+				for(Map.Entry<String, String> dependency : entry.getValue().getDependencies().entrySet()) {
+					CompiledJavaSource dependencySource = current.get(dependency.getKey());
+					if(dependencySource == null || !dependencySource.getAbi().equals(dependency.getValue())) {
+						pending.add(entry.getKey());
+						break;
+					}
+				}
+			}
+		}
+
+		if(cacheable) {
+			for(String name : compiled) {
+				cache.putJavaSource(getSourceKey(name), current.get(name));
+			}
+			cache.putJavaSourceIndex(contextKey, new TreeSet<>(sources.keySet()));
+		}
+
+		Map<String, byte[]> result = new LinkedHashMap<>();
+		for(CompiledJavaSource source : current.values()) {
+			result.putAll(source.getClassData());
+		}
+		return result;
+	}
+
+	/**
+	 * @return the number of source files compiled by the last call to {@link #compile}, which
+	 *         may exceed the number of source files if any were compiled more than once
+	 */
+	public int getCompiledCount() {
+		return compiledCount;
+	}
+
+	/**
+	 * Writes the provided classes to a temporary jar file, so that they can be added to
+	 * the class path for compilation.
+	 *
+	 * @param classData the bytecode of the classes, keyed by class name
+	 * @return the path of the new jar, which the caller is responsible for deleting
+	 */
+	public static Path createJar(Map<String, byte[]> classData) throws IOException {
+		Path jar = Files.createTempFile(NSFODPUtil.getTempDirectory(), "classes", ".jar"); //$NON-NLS-1$ //$NON-NLS-2$
+		try(OutputStream os = Files.newOutputStream(jar); JarOutputStream jos = new JarOutputStream(os)) {
+			for(Map.Entry<String, byte[]> entry : classData.entrySet()) {
+				jos.putNextEntry(new JarEntry(entry.getKey().replace('.', '/') + ".class")); //$NON-NLS-1$
+				jos.write(entry.getValue());
+				jos.closeEntry();
+			}
+		}
+		return jar;
+	}
+
+	// *******************************************************************************
+	// * Internal utility methods
+	// *******************************************************************************
+
+	private String getSourceKey(String sourceClassName) {
+		return CompilationCache.key()
+			.update(contextKey)
+			.update(sourceClassName)
+			.build();
+	}
+
+	/**
+	 * Determines whether cached classes can't be used at all: either there was no previous
+	 * compilation, or a source file that declared constants has since been removed.
+	 */
+	private boolean isFullCompilationNeeded(Collection<String> sourceClassNames) {
+		Set<String> previousNames = cache.getJavaSourceIndex(contextKey);
+		if(previousNames == null) {
+			return true;
+		}
+		String noConstants = CompilationCache.key().build();
+		for(String name : previousNames) {
+			if(!sourceClassNames.contains(name)) {
+				CompiledJavaSource removed = cache.getJavaSource(getSourceKey(name));
+				if(removed == null || !noConstants.equals(removed.getConstants())) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Compiles the provided source files against the classes of the already-compiled ones.
+	 *
+	 * @param classData a map to populate with the bytecode of each source file's classes
+	 * @return whether every compiled class could be attributed to its source file
+	 */
+	private boolean compileRound(Map<String, CharSequence> sources, Map<String, CompiledJavaSource> precompiledSources,
+			String[] classPath, Map<String, Map<String, byte[]>> classData) throws IOException, JavaCompilerException {
+		Map<String, byte[]> precompiled = new HashMap<>();
+		for(CompiledJavaSource source : precompiledSources.values()) {
+			precompiled.putAll(source.getClassData());
+		}
+		Path jar = createJar(precompiled);
+		try {
+			String[] roundClassPath = Arrays.copyOf(classPath, classPath.length + 1);
+			roundClassPath[classPath.length] = "jar:" + jar.toUri(); //$NON-NLS-1$
+			PrecompiledJavaSourceClassLoader classLoader = classLoaderFactory.create(roundClassPath, precompiled);
+			try {
+				classLoader.addClasses(sources);
+				boolean attributed = true;
+				for(String className : classLoader.getCompiledClassNames()) {
+					byte[] byteCode = classLoader.getClassByteCode(className);
+					ClassFileInfo info = ClassFileInfo.read(byteCode);
+					String sourceClassName = findSourceClassName(info, sources.keySet());
+					if(sourceClassName == null) {
+						attributed = false;
+						sourceClassName = sources.keySet().iterator().next();
+					}
+					classData.computeIfAbsent(sourceClassName, key -> new TreeMap<>()).put(info.getClassName(), byteCode);
+				}
+				return attributed;
+			} finally {
+				classLoader.close();
+			}
+		} finally {
+			Files.deleteIfExists(jar);
+		}
+	}
+
+	private static String findSourceClassName(ClassFileInfo info, Set<String> sourceClassNames) {
+		String sourceClassName = info.getSourceClassName();
+		if(sourceClassName != null && sourceClassNames.contains(sourceClassName)) {
+			return sourceClassName;
+		}
+		// Fall back to the class's own name, which matches for the usual one-class-per-file layout
+		String className = info.getClassName();
+		int dollar = className.indexOf('$');
+		String topLevel = dollar < 0 ? className : className.substring(0, dollar);
+		return sourceClassNames.contains(topLevel) ? topLevel : null;
+	}
+
+	/**
+	 * Computes the API and dependencies of newly-compiled source files.
+	 *
+	 * @param sourceClassNames the newly-compiled source files
+	 * @param precompiledSources the source files compiled previously
+	 * @param classData the bytecode of each newly-compiled source file's classes
+	 * @return the newly-compiled source files
+	 */
+	private static Map<String, CompiledJavaSource> analyze(Collection<String> sourceClassNames, Map<String, String> sourceHashes,
+			Map<String, CompiledJavaSource> precompiledSources, Map<String, Map<String, byte[]>> classData) throws IOException {
+		for(String sourceClassName : sourceClassNames) {
+			// e.g. package-info.java, which may produce no classes
+			classData.computeIfAbsent(sourceClassName, key -> new TreeMap<>());
+		}
+
+		// Index all classes by name to attribute references to their source files
+		Map<String, String> classSources = new HashMap<>();
+		Map<String, byte[]> allClasses = new HashMap<>();
+		for(Map.Entry<String, CompiledJavaSource> source : precompiledSources.entrySet()) {
+			for(Map.Entry<String, byte[]> entry : source.getValue().getClassData().entrySet()) {
+				classSources.put(entry.getKey(), source.getKey());
+				allClasses.put(entry.getKey(), entry.getValue());
+			}
+		}
+		for(Map.Entry<String, Map<String, byte[]>> source : classData.entrySet()) {
+			for(Map.Entry<String, byte[]> entry : source.getValue().entrySet()) {
+				classSources.put(entry.getKey(), source.getKey());
+				allClasses.put(entry.getKey(), entry.getValue());
+			}
+		}
+		Map<String, ClassFileInfo> infos = new HashMap<>();
+
+		Map<String, String> abis = new HashMap<>();
+		Map<String, String> constants = new HashMap<>();
+		for(Map.Entry<String, Map<String, byte[]>> source : classData.entrySet()) {
+			CompilationCache.Key abi = CompilationCache.key();
+			CompilationCache.Key constantKey = CompilationCache.key();
+			for(String className : source.getValue().keySet()) {
+				ClassFileInfo info = getInfo(className, allClasses, infos);
+				if(info.isApi()) {
+					info.updateAbi(abi);
+					info.updateConstants(constantKey);
+				}
+			}
+			abis.put(source.getKey(), abi.build());
+			constants.put(source.getKey(), constantKey.build());
+		}
+
+		Map<String, CompiledJavaSource> result = new LinkedHashMap<>();
+		for(Map.Entry<String, Map<String, byte[]>> source : classData.entrySet()) {
+			String sourceClassName = source.getKey();
+			// Supertypes contribute inherited members, so include the hierarchies of these and
+			// of the referenced classes within the project
+			Set<String> referenced = new LinkedHashSet<>();
+			Deque<String> pending = new ArrayDeque<>();
+			for(String className : source.getValue().keySet()) {
+				ClassFileInfo info = getInfo(className, allClasses, infos);
+				pending.add(className);
+				pending.addAll(info.getReferencedClasses());
+			}
+			while(!pending.isEmpty()) {
+				String className = pending.pop();
+				if(!allClasses.containsKey(className) || !referenced.add(className)) {
+					continue;
+				}
+				ClassFileInfo info = getInfo(className, allClasses, infos);
+				if(info.getSuperClassName() != null) {
+					pending.add(info.getSuperClassName());
+				}
+				pending.addAll(info.getInterfaceNames());
+			}
+
+			Map<String, String> dependencies = new TreeMap<>();
+			for(String className : referenced) {
+				String dependency = classSources.get(className);
+				if(dependency != null && !dependency.equals(sourceClassName)) {
+					CompiledJavaSource precompiled = precompiledSources.get(dependency);
+					dependencies.put(dependency, precompiled != null ? precompiled.getAbi() : abis.get(dependency));
+				}
+			}
+			result.put(sourceClassName, new CompiledJavaSource(sourceHashes.get(sourceClassName), abis.get(sourceClassName),
+				constants.get(sourceClassName), dependencies, source.getValue()));
+		}
+		return result;
+	}
+
+	private static ClassFileInfo getInfo(String className, Map<String, byte[]> allClasses, Map<String, ClassFileInfo> infos) throws IOException {
+		ClassFileInfo info = infos.get(className);
+		if(info == null) {
+			info = ClassFileInfo.read(allClasses.get(className));
+			infos.put(className, info);
+		}
+		return info;
+	}
+}
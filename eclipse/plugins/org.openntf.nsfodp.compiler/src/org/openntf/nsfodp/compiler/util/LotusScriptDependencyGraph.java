@@ -0,0 +1,228 @@
+/**
+ * Copyright © 2018-2019 Jesse Gallagher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openntf.nsfodp.compiler.util;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Models the {@code Use} statements between LotusScript libraries, so that each library
+ * can be compiled once, after the libraries it uses.
+ *
+ * <p>Library names are matched case-insensitively, as LotusScript does.</p>
+ *
+ * @param <T> the type used to identify libraries
+ * @author Jesse Gallagher
+ * @since 2.1.0
+ */
+public class LotusScriptDependencyGraph<T> {
+	private static final Pattern USE = Pattern.compile("^\\s*use\\s+\"([^\"]+)\"", Pattern.CASE_INSENSITIVE); //$NON-NLS-1$
+	private static final Pattern REM_BLOCK_START = Pattern.compile("^\\s*%rem\\b", Pattern.CASE_INSENSITIVE); //$NON-NLS-1$
+	private static final Pattern REM_BLOCK_END = Pattern.compile("^\\s*%end\\s+rem\\b", Pattern.CASE_INSENSITIVE); //$NON-NLS-1$
+	private static final Pattern LINE_BREAK = Pattern.compile("\\r\\n?|\\n"); //$NON-NLS-1$
+
+	private final Map<T, List<String>> uses = new LinkedHashMap<>();
+	private final Map<String, T> libraries = new HashMap<>();
+
+	/**
+	 * Finds the names of the libraries referenced by {@code Use} statements in the provided
+	 * LotusScript source, skipping {@code %REM} blocks.
+	 *
+	 * @param source the LotusScript source to scan
+	 * @return the used library names, in declaration order
+	 */
+	public static List<String> parseUses(CharSequence source) {
+		Set<String> result = new LinkedHashSet<>();
+		boolean inRem = false;
+		for(String line : LINE_BREAK.split(source)) {
+			if(inRem) {
+				inRem = !REM_BLOCK_END.matcher(line).find();
+			} else if(REM_BLOCK_START.matcher(line).find()) {
+				inRem = true;
+			} else {
+				Matcher matcher = USE.matcher(line);
+				if(matcher.find()) {
+					result.add(matcher.group(1).trim());
+				}
+			}
+		}
+		return new ArrayList<>(result);
+	}
+
+	/**
+	 * Adds a library to the graph.
+	 *
+	 * @param library the library to add
+	 * @param names the names by which the library may be used, such as its title and aliases
+	 * @param source the LotusScript source of the library
+	 */
+	public void addLibrary(T library, Collection<String> names, CharSequence source) {
+		uses.put(library, parseUses(source));
+		for(String name : names) {
+			libraries.putIfAbsent(normalize(name), library);
+		}
+	}
+
+	/**
+	 * @param library the library to check
+	 * @return the libraries in the graph used directly by {@code library}
+	 */
+	public List<T> getDependencies(T library) {
+		List<String> names = uses.get(library);
+		if(names == null) {
+			return Collections.emptyList();
+		}
+		Set<T> result = new LinkedHashSet<>();
+		for(String name : names) {
+			T dependency = libraries.get(normalize(name));
+			if(dependency != null) {
+				result.add(dependency);
+			}
+		}
+		return new ArrayList<>(result);
+	}
+
+	/**
+	 * @return a map of libraries to the names they use that don't match any library in the
+	 *         graph
+	 */
+	public Map<T, List<String>> getMissingLibraries() {
+		Map<T, List<String>> result = new LinkedHashMap<>();
+		for(Map.Entry<T, List<String>> entry : uses.entrySet()) {
+			for(String name : entry.getValue()) {
+				if(!libraries.containsKey(normalize(name))) {
+					result.computeIfAbsent(entry.getKey(), key -> new ArrayList<>()).add(name);
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Finds groups of libraries that use each other, directly or indirectly, which
+	 * LotusScript does not allow.
+	 *
+	 * @return the libraries in each cycle
+	 */
+	public List<List<T>> getCycles() {
+		// Tarjan's strongly-connected components algorithm
+		Map<T, Integer> index = new HashMap<>();
+		Map<T, Integer> lowLink = new HashMap<>();
+		Deque<T> stack = new ArrayDeque<>();
+		Set<T> onStack = new HashSet<>();
+		List<List<T>> result = new ArrayList<>();
+		for(T library : uses.keySet()) {
+			if(!index.containsKey(library)) {
+				findComponents(library, index, lowLink, stack, onStack, result);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Determines an order in which each library follows the libraries it uses. Libraries
+	 * with no ordering constraints between them retain the order in which they were added.
+	 *
+	 * @return all libraries in the graph, in compilation order
+	 * @throws IllegalStateException if the graph contains a cycle
+	 */
+	public List<T> getCompileOrder() {
+		Map<T, Integer> remainingDependencies = new HashMap<>();
+		Map<T, List<T>> dependents = new HashMap<>();
+		Deque<T> ready = new ArrayDeque<>();
+		for(T library : uses.keySet()) {
+			List<T> dependencies = getDependencies(library);
+			remainingDependencies.put(library, dependencies.size());
+			for(T dependency : dependencies) {
+				dependents.computeIfAbsent(dependency, key -> new ArrayList<>()).add(library);
+			}
+			if(dependencies.isEmpty()) {
+				ready.add(library);
+			}
+		}
+
+		List<T> result = new ArrayList<>(uses.size());
+		while(!ready.isEmpty()) {
+			T library = ready.poll();
+			result.add(library);
+			for(T dependent : dependents.getOrDefault(library, Collections.emptyList())) {
+				int count = remainingDependencies.merge(dependent, -1, Integer::sum);
+				if(count == 0) {
+					ready.add(dependent);
+				}
+			}
+		}
+		if(result.size() != uses.size()) {
+			throw new IllegalStateException("LotusScript library graph contains a cycle: " + getCycles()); //$NON-NLS-1$
+		}
+		return result;
+	}
+
+	// *******************************************************************************
+	// * Internal utility methods
+	// *******************************************************************************
+
+	private void findComponents(T library, Map<T, Integer> index, Map<T, Integer> lowLink, Deque<T> stack, Set<T> onStack, List<List<T>> result) {
+		int libraryIndex = index.size();
+		index.put(library, libraryIndex);
+		lowLink.put(library, libraryIndex);
+		stack.push(library);
+		onStack.add(library);
+
+		boolean selfReference = false;
+		for(T dependency : getDependencies(library)) {
+			if(dependency.equals(library)) {
+				selfReference = true;
+			} else if(!index.containsKey(dependency)) {
+				findComponents(dependency, index, lowLink, stack, onStack, result);
+				lowLink.put(library, Math.min(lowLink.get(library), lowLink.get(dependency)));
+			} else if(onStack.contains(dependency)) {
+				lowLink.put(library, Math.min(lowLink.get(library), index.get(dependency)));
+			}
+		}
+
+		if(lowLink.get(library) == libraryIndex) {
+			List<T> component = new ArrayList<>();
+			T member;
+			do {
+				member = stack.pop();
+				onStack.remove(member);
+				component.add(member);
+			} while(!member.equals(library));
+			if(component.size() > 1 || selfReference) {
+				Collections.reverse(component);
+				result.add(component);
+			}
+		}
+	}
+
+	private static String normalize(String name) {
+		return name.trim().toLowerCase(Locale.ENGLISH);
+	}
+}
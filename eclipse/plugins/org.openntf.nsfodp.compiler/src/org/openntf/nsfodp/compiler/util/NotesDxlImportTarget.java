@@ -0,0 +1,103 @@
+/**
+ * Copyright © 2018-2019 Jesse Gallagher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openntf.nsfodp.compiler.util;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.openntf.nsfodp.compiler.Messages;
+
+import com.ibm.commons.util.StringUtil;
+
+import lotus.domino.Database;
+import lotus.domino.DxlImporter;
+import lotus.domino.NotesException;
+import lotus.domino.Session;
+import lotus.domino.Stream;
+
+/**
+ * A {@link DxlImportTarget} that imports into a database via a {@link DxlImporter}.
+ * DXL files are read through a {@link Stream}, so their content is not loaded into
+ * the Java heap.
+ *
+ * <p>This class is not thread-safe, and should be used only from the thread that owns
+ * the session.</p>
+ *
+ * @author Jesse Gallagher
+ * @since 2.1.0
+ */
+public class NotesDxlImportTarget implements DxlImportTarget {
+	private final Session session;
+	private final DxlImporter importer;
+	private final Database database;
+
+	public NotesDxlImportTarget(Session session, DxlImporter importer, Database database) {
+		this.session = session;
+		this.importer = importer;
+		this.database = database;
+	}
+
+	public DxlImporter getImporter() {
+		return importer;
+	}
+
+	public Database getDatabase() {
+		return database;
+	}
+
+	@Override
+	public List<String> importDxl(String dxl) throws NotesException {
+		importer.importDxl(dxl, database);
+		return getImportedNoteIds();
+	}
+
+	@Override
+	public List<String> importDxl(Path dxlFile) throws NotesException, IOException {
+		Stream stream = session.createStream();
+		try {
+			if(!stream.open(dxlFile.toAbsolutePath().toString(), "UTF-8")) { //$NON-NLS-1$
+				throw new IOException(MessageFormat.format(Messages.NotesDxlImportTarget_unableToOpenFile, dxlFile));
+			}
+			importer.importDxl(stream, database);
+			return getImportedNoteIds();
+		} finally {
+			stream.close();
+			stream.recycle();
+		}
+	}
+
+	@Override
+	public String getLog() throws NotesException {
+		return importer.getLog();
+	}
+
+	// *******************************************************************************
+	// * Internal utility methods
+	// *******************************************************************************
+
+	private List<String> getImportedNoteIds() throws NotesException {
+		List<String> importedIds = new ArrayList<>();
+		String noteId = importer.getFirstImportedNoteID();
+		while(StringUtil.isNotEmpty(noteId)) {
+			importedIds.add(noteId);
+			noteId = importer.getNextImportedNoteID(noteId);
+		}
+		return importedIds;
+	}
+}
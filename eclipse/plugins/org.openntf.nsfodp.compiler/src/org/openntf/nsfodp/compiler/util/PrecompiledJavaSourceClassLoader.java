@@ -0,0 +1,78 @@
+/**
+ * Copyright © 2018-2019 Jesse Gallagher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openntf.nsfodp.compiler.util;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.ibm.xsp.extlib.javacompiler.JavaSourceClassLoader;
+
+/**
+ * A {@link JavaSourceClassLoader} that additionally defines classes from previously-compiled
+ * bytecode, so that they share a namespace with the classes it compiles.
+ *
+ * <p>The precompiled classes are not visible to the Java compiler through this loader, and so
+ * should also be provided on the class path, such as in a jar.</p>
+ *
+ * @author Jesse Gallagher
+ * @since 2.1.0
+ */
+public class PrecompiledJavaSourceClassLoader extends JavaSourceClassLoader {
+	private final Map<String, byte[]> precompiled;
+
+	/**
+	 * @param parent the parent class loader
+	 * @param compilerOptions the options to pass to the Java compiler
+	 * @param classPath the class path for compilation
+	 * @param precompiled the bytecode of the precompiled classes, keyed by class name
+	 */
+	public PrecompiledJavaSourceClassLoader(ClassLoader parent, List<String> compilerOptions, String[] classPath, Map<String, byte[]> precompiled) {
+		super(parent, compilerOptions, classPath);
+		this.precompiled = Collections.unmodifiableMap(precompiled);
+	}
+
+	/**
+	 * @return the names of both the precompiled classes and the classes compiled by this loader
+	 */
+	public Set<String> getClassNames() {
+		Set<String> result = new LinkedHashSet<>(precompiled.keySet());
+		Collection<String> compiled = getCompiledClassNames();
+		result.addAll(compiled);
+		return result;
+	}
+
+	@Override
+	public byte[] getClassByteCode(String qualifiedClassName) {
+		byte[] byteCode = precompiled.get(qualifiedClassName);
+		return byteCode != null ? byteCode : super.getClassByteCode(qualifiedClassName);
+	}
+
+	@Override
+	protected Class<?> findClass(String name) throws ClassNotFoundException {
+		byte[] byteCode = precompiled.get(name);
+		if(byteCode != null) {
+			synchronized(getClassLoadingLock(name)) {
+				Class<?> loaded = findLoadedClass(name);
+				return loaded != null ? loaded : defineClass(name, byteCode, 0, byteCode.length);
+			}
+		}
+		return super.findClass(name);
+	}
+}
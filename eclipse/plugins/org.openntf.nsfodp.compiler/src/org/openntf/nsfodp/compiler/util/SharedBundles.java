@@ -0,0 +1,226 @@
+/**
+ * Copyright © 2018-2019 Jesse Gallagher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openntf.nsfodp.compiler.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+
+import org.openntf.nsfodp.compiler.Messages;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.BundleException;
+import org.osgi.framework.Version;
+
+import com.ibm.commons.util.StringUtil;
+
+/**
+ * Tracks the update site bundles installed for compilations, so that concurrent
+ * compilations using the same bundle share a single installation.
+ *
+ * <p>Bundles are matched by symbolic name and version, since each compilation may
+ * provide its own copy of an update site, and their content is compared so that a
+ * rebuilt bundle with an unchanged version is never given the stale installation. A
+ * bundle is uninstalled only when the last compilation using it releases it. Bundles
+ * that were already installed by other means are used as they are and never
+ * uninstalled.</p>
+ *
+ * @author Jesse Gallagher
+ * @since 2.1.0
+ */
+public class SharedBundles {
+	public static final SharedBundles INSTANCE = new SharedBundles();
+
+	private final Map<Bundle, Integer> references = new HashMap<>();
+	private final Map<String, Bundle> bundlesByIdentity = new HashMap<>();
+	private final Map<Bundle, String> digests = new HashMap<>();
+
+	private SharedBundles() {
+	}
+
+	/**
+	 * Installs the bundle at the provided URI, or adds a reference to an equivalent bundle
+	 * installed for another compilation.
+	 *
+	 * @param bundleContext the context to install the bundle with
+	 * @param uri the platform-accessible URI to the bundle
+	 * @return the installed {@link Bundle} object
+	 * @throws ChangedBundleException if a bundle with the same symbolic name and version
+	 *         but different content is installed for another compilation
+	 * @throws BundleException if the bundle cannot be installed
+	 */
+	public synchronized Bundle acquire(BundleContext bundleContext, URI uri) throws BundleException {
+		String identity = readIdentity(uri);
+		String digest = identity == null ? null : readDigest(uri);
+		Bundle bundle = identity == null ? null : bundlesByIdentity.get(identity);
+		if(bundle != null && !digests.get(bundle).equals(digest)) {
+			throw new ChangedBundleException(MessageFormat.format(Messages.SharedBundles_bundleChanged, identity, uri, bundle.getLocation()));
+		}
+		if(bundle == null) {
+			String location = uri.toString();
+			Bundle existing = bundleContext.getBundle(location);
+			if(existing != null && !references.containsKey(existing)) {
+				return existing;
+			}
+			bundle = bundleContext.installBundle(location);
+			if(identity != null) {
+				bundlesByIdentity.put(identity, bundle);
+				digests.put(bundle, digest);
+			}
+		}
+		references.merge(bundle, 1, Integer::sum);
+		return bundle;
+	}
+
+	/**
+	 * Determines whether a bundle with the same symbolic name and version as the one at the
+	 * provided URI, but different content, is installed for a compilation.
+	 *
+	 * @param uri the platform-accessible URI to the bundle
+	 * @return whether {@link #acquire} would fail for the bundle until the installed copy is
+	 *         released
+	 * @throws BundleException if the content of the bundle cannot be read
+	 */
+	public synchronized boolean isChanged(URI uri) throws BundleException {
+		String identity = readIdentity(uri);
+		Bundle bundle = identity == null ? null : bundlesByIdentity.get(identity);
+		return bundle != null && !digests.get(bundle).equals(readDigest(uri));
+	}
+
+	/**
+	 * Releases a reference to each of the provided bundles, uninstalling those that are no
+	 * longer used by any compilation.
+	 *
+	 * @param bundles the bundles returned by {@link #acquire}
+	 * @throws BundleException if a bundle cannot be uninstalled; the remaining bundles are
+	 *         still released
+	 */
+	public synchronized void release(Collection<Bundle> bundles) throws BundleException {
+		List<BundleException> errors = new ArrayList<>();
+		for(Bundle bundle : bundles) {
+			Integer count = references.get(bundle);
+			if(count == null) {
+				continue;
+			}
+			if(count > 1) {
+				references.put(bundle, count - 1);
+			} else {
+				references.remove(bundle);
+				bundlesByIdentity.values().remove(bundle);
+				digests.remove(bundle);
+				try {
+					bundle.uninstall();
+				} catch(BundleException e) {
+					errors.add(e);
+				}
+			}
+		}
+		if(!errors.isEmpty()) {
+			BundleException e = errors.get(0);
+			errors.stream().skip(1).forEach(e::addSuppressed);
+			throw e;
+		}
+	}
+
+	/**
+	 * @param bundle the bundle to check
+	 * @return whether the bundle was installed for a compilation, as opposed to being part
+	 *         of the platform
+	 */
+	public synchronized boolean isShared(Bundle bundle) {
+		return references.containsKey(bundle);
+	}
+
+	/**
+	 * Indicates that a bundle could not be shared because another compilation uses a
+	 * different build of the same symbolic name and version, which cannot be installed
+	 * alongside it.
+	 */
+	public static class ChangedBundleException extends BundleException {
+		private static final long serialVersionUID = 1L;
+
+		public ChangedBundleException(String msg) {
+			super(msg, BundleException.DUPLICATE_BUNDLE_ERROR);
+		}
+	}
+
+	// *******************************************************************************
+	// * Internal utility methods
+	// *******************************************************************************
+
+	/**
+	 * @return the content digest of the bundle at the URI
+	 */
+	private static String readDigest(URI uri) throws BundleException {
+		try {
+			return CompilationCache.key().updateTree(uri).build();
+		} catch(IOException e) {
+			throw new BundleException(e.toString(), e);
+		}
+	}
+
+	/**
+	 * @return the symbolic name and version of the bundle at the URI, or {@code null} if they
+	 *         cannot be read
+	 */
+	private static String readIdentity(URI uri) {
+		try {
+			File file = new File(uri);
+			Manifest manifest;
+			if(file.isFile()) {
+				try(JarFile jar = new JarFile(file)) {
+					manifest = jar.getManifest();
+				}
+			} else {
+				Path manifestFile = file.toPath().resolve(JarFile.MANIFEST_NAME);
+				if(!Files.isRegularFile(manifestFile)) {
+					return null;
+				}
+				try(InputStream is = Files.newInputStream(manifestFile)) {
+					manifest = new Manifest(is);
+				}
+			}
+			if(manifest == null) {
+				return null;
+			}
+			Attributes attrs = manifest.getMainAttributes();
+			String symbolicName = attrs.getValue("Bundle-SymbolicName"); //$NON-NLS-1$
+			if(StringUtil.isEmpty(symbolicName)) {
+				return null;
+			}
+			int semicolon = symbolicName.indexOf(';');
+			if(semicolon > -1) {
+				symbolicName = symbolicName.substring(0, semicolon);
+			}
+			Version version = Version.parseVersion(attrs.getValue("Bundle-Version")); //$NON-NLS-1$
+			return symbolicName.trim() + '_' + version;
+		} catch(IOException | IllegalArgumentException e) {
+			return null;
+		}
+	}
+}
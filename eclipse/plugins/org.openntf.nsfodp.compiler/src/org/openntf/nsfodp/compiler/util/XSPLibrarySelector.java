@@ -0,0 +1,166 @@
+/**
+ * Copyright © 2018-2019 Jesse Gallagher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openntf.nsfodp.compiler.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.stream.Collectors;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+import com.ibm.xsp.library.XspLibrary;
+
+/**
+ * Selects the XSP libraries needed to compile a project, based on the namespaces its
+ * XPages and Custom Controls use.
+ *
+ * <p>A library is selected when one of its xsp-config files declares a used namespace,
+ * when it is explicitly required by the project, or when a selected library depends on
+ * it. Libraries whose xsp-config files cannot be read or declare no namespace are always
+ * selected, since what they provide cannot be determined without initializing them.</p>
+ *
+ * @author Jesse Gallagher
+ * @since 2.1.0
+ */
+public enum XSPLibrarySelector {
+	;
+
+	/** The namespaces declared by each library, or empty if they could not be determined */
+	private static final Map<XspLibrary, Optional<Set<String>>> NAMESPACES = Collections.synchronizedMap(new WeakHashMap<>());
+	private static final SAXParserFactory PARSER_FACTORY = SAXParserFactory.newInstance();
+	static {
+		PARSER_FACTORY.setNamespaceAware(true);
+		PARSER_FACTORY.setValidating(false);
+	}
+
+	/**
+	 * Filters the provided libraries to those needed by a project.
+	 *
+	 * @param libraries the available libraries
+	 * @param namespaces the namespace URIs used by the project's XSP elements
+	 * @param requiredLibraryIds the IDs of libraries the project requires regardless of use,
+	 *        such as those listed in its xsp.properties file
+	 * @return the needed libraries, in their original order
+	 */
+	public static List<XspLibrary> select(List<XspLibrary> libraries, Collection<String> namespaces, Collection<String> requiredLibraryIds) {
+		Map<String, XspLibrary> librariesById = new HashMap<>();
+		for(XspLibrary lib : libraries) {
+			librariesById.put(lib.getLibraryId(), lib);
+		}
+
+		Deque<String> queue = new ArrayDeque<>(requiredLibraryIds);
+		for(XspLibrary lib : libraries) {
+			Optional<Set<String>> provided = getNamespaces(lib);
+			if(!provided.isPresent() || !Collections.disjoint(provided.get(), namespaces)) {
+				queue.add(lib.getLibraryId());
+			}
+		}
+
+		// Add the declared dependencies of each selected library
+		Set<String> selected = new HashSet<>();
+		while(!queue.isEmpty()) {
+			String libraryId = queue.pop();
+			XspLibrary lib = librariesById.get(libraryId);
+			if(lib != null && selected.add(libraryId)) {
+				String[] dependencies = lib.getDependencies();
+				if(dependencies != null) {
+					queue.addAll(Arrays.asList(dependencies));
+				}
+			}
+		}
+
+		return libraries.stream()
+			.filter(lib -> selected.contains(lib.getLibraryId()))
+			.collect(Collectors.toList());
+	}
+
+	// *******************************************************************************
+	// * Internal utility methods
+	// *******************************************************************************
+
+	/**
+	 * Reads the namespaces declared by the library's xsp-config files, which are loaded
+	 * from the library's own class loader.
+	 */
+	private static Optional<Set<String>> getNamespaces(XspLibrary lib) {
+		return NAMESPACES.computeIfAbsent(lib, key -> {
+			String[] configFiles = lib.getXspConfigFiles();
+			if(configFiles == null) {
+				return Optional.empty();
+			}
+			ClassLoader cl = lib.getClass().getClassLoader();
+			Set<String> result = new HashSet<>();
+			for(String configFile : configFiles) {
+				String path = configFile.startsWith("/") ? configFile.substring(1) : configFile; //$NON-NLS-1$
+				try(InputStream is = cl == null ? null : cl.getResourceAsStream(path)) {
+					if(is == null) {
+						return Optional.empty();
+					}
+					readNamespace(is).ifPresent(result::add);
+				} catch(IOException | ParserConfigurationException | SAXException e) {
+					return Optional.empty();
+				}
+			}
+			return result.isEmpty() ? Optional.empty() : Optional.of(result);
+		});
+	}
+
+	private static Optional<String> readNamespace(InputStream is) throws IOException, ParserConfigurationException, SAXException {
+		String[] namespace = new String[1];
+		PARSER_FACTORY.newSAXParser().parse(is, new DefaultHandler() {
+			private final Deque<String> path = new ArrayDeque<>();
+			private final StringBuilder text = new StringBuilder();
+
+			@Override
+			public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException {
+				path.push(localName);
+				text.setLength(0);
+			}
+
+			@Override
+			public void endElement(String uri, String localName, String qName) throws SAXException {
+				path.pop();
+				if("namespace-uri".equals(localName) && "faces-config-extension".equals(path.peek())) { //$NON-NLS-1$ //$NON-NLS-2$
+					namespace[0] = text.toString().trim();
+				}
+				text.setLength(0);
+			}
+
+			@Override
+			public void characters(char[] ch, int start, int length) throws SAXException {
+				text.append(ch, start, length);
+			}
+		});
+		return Optional.ofNullable(namespace[0]).filter(ns -> !ns.isEmpty());
+	}
+}
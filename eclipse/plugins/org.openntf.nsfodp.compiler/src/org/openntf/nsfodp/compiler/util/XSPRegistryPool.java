@@ -0,0 +1,239 @@
+/**
+ * Copyright © 2018-2019 Jesse Gallagher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openntf.nsfodp.compiler.util;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import org.osgi.framework.Bundle;
+
+import com.ibm.xsp.registry.SharableRegistryImpl;
+
+/**
+ * Keeps the bundles installed from a set of update sites, along with base XSP registries
+ * initialized from their libraries, available for reuse by later compilations with the
+ * same update sites.
+ *
+ * <p>Each environment is shared by all compilations that lease it at the same time, and
+ * its base registries are only read once initialized; compilations add their own
+ * definitions to a registry layered on top. An environment's bundles are uninstalled once
+ * it has gone unused for its lifetime, or sooner if more than
+ * {@value #MAX_IDLE_ENVIRONMENTS} environments are idle.</p>
+ *
+ * @author Jesse Gallagher
+ * @since 2.1.0
+ */
+public class XSPRegistryPool {
+	public static final XSPRegistryPool INSTANCE = new XSPRegistryPool();
+
+	/** The number of unused environments to keep before evicting the least recently used */
+	public static final int MAX_IDLE_ENVIRONMENTS = 2;
+
+	private final Map<String, Environment> environments = new HashMap<>();
+	private final ScheduledExecutorService evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+		Thread thread = new Thread(r, XSPRegistryPool.class.getSimpleName());
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private XSPRegistryPool() {
+	}
+
+	/**
+	 * Leases the environment for the given update site contents, installing its bundles if
+	 * it is not already available.
+	 *
+	 * @param key the digest of the update site contents
+	 * @param lifetime the time in milliseconds to keep the environment after its last lease
+	 *        is closed
+	 * @param installer installs the update site bundles
+	 * @param uninstaller uninstalls the bundles when the environment is evicted
+	 * @return a lease on the environment, which must be closed when the compilation completes
+	 * @throws Exception if the installer throws an exception
+	 */
+	public Lease acquire(String key, long lifetime, Callable<Collection<Bundle>> installer, Consumer<Collection<Bundle>> uninstaller) throws Exception {
+		Environment env;
+		boolean create = false;
+		synchronized(this) {
+			env = environments.get(key);
+			if(env == null) {
+				env = new Environment(key, uninstaller);
+				environments.put(key, env);
+				create = true;
+			}
+			env.leases++;
+			env.lifetime = Math.max(env.lifetime, lifetime);
+		}
+
+		boolean success = false;
+		try {
+			if(create) {
+				try {
+					env.bundles.complete(installer.call());
+				} catch(Throwable t) {
+					env.bundles.completeExceptionally(t);
+					synchronized(this) {
+						environments.remove(key);
+					}
+					throw t;
+				}
+			} else {
+				try {
+					env.bundles.get();
+				} catch(ExecutionException e) {
+					Throwable cause = e.getCause();
+					throw cause instanceof Exception ? (Exception)cause : e;
+				}
+			}
+			success = true;
+		} finally {
+			if(!success) {
+				synchronized(this) {
+					env.leases--;
+				}
+			}
+		}
+		return new Lease(env);
+	}
+
+	/**
+	 * Removes all environments that are not currently leased, uninstalling their bundles.
+	 * This is used when an idle environment holds a bundle that a new compilation needs to
+	 * replace with a rebuilt copy.
+	 */
+	public void evictIdle() {
+		evict(true);
+	}
+
+	/**
+	 * A compilation's use of an environment.
+	 */
+	public class Lease implements AutoCloseable {
+		private final Environment env;
+		private boolean closed;
+
+		private Lease(Environment env) {
+			this.env = env;
+		}
+
+		/**
+		 * @return the bundles installed for the environment
+		 */
+		public Collection<Bundle> getBundles() {
+			return env.bundles.getNow(Collections.emptySet());
+		}
+
+		/**
+		 * Retrieves the base registry for the given set of libraries, creating it if needed.
+		 * The returned registry must not be modified.
+		 *
+		 * @param libraryKey a value identifying the libraries available to the registry
+		 * @param factory creates and initializes the registry
+		 * @return the shared registry
+		 */
+		public SharableRegistryImpl getRegistry(String libraryKey, Supplier<SharableRegistryImpl> factory) {
+			synchronized(env.registries) {
+				return env.registries.computeIfAbsent(libraryKey, key -> factory.get());
+			}
+		}
+
+		@Override
+		public void close() {
+			if(closed) {
+				return;
+			}
+			closed = true;
+			long lifetime;
+			synchronized(XSPRegistryPool.this) {
+				env.leases--;
+				env.lastUsed = System.currentTimeMillis();
+				lifetime = env.lifetime;
+			}
+			evictor.schedule(() -> evict(false), lifetime, TimeUnit.MILLISECONDS);
+			evict(false);
+		}
+	}
+
+	// *******************************************************************************
+	// * Internal utility methods
+	// *******************************************************************************
+
+	/**
+	 * Removes environments that have outlived their lifetime, and then the least recently
+	 * used idle environments beyond {@link #MAX_IDLE_ENVIRONMENTS}.
+	 * 
+	 * @param all whether to remove all idle environments regardless of their lifetime
+	 */
+	private void evict(boolean all) {
+		List<Environment> evicted = new ArrayList<>();
+		synchronized(this) {
+			long now = System.currentTimeMillis();
+			List<Environment> idle = new ArrayList<>();
+			for(Environment env : environments.values()) {
+				if(env.leases == 0 && env.bundles.isDone()) {
+					if(all || now - env.lastUsed >= env.lifetime) {
+						evicted.add(env);
+					} else {
+						idle.add(env);
+					}
+				}
+			}
+			idle.sort(Comparator.comparingLong((Environment env) -> env.lastUsed).reversed());
+			if(idle.size() > MAX_IDLE_ENVIRONMENTS) {
+				evicted.addAll(idle.subList(MAX_IDLE_ENVIRONMENTS, idle.size()));
+			}
+			for(Environment env : evicted) {
+				environments.remove(env.key);
+			}
+		}
+		for(Environment env : evicted) {
+			try {
+				env.uninstaller.accept(env.bundles.get());
+			} catch(Exception e) {
+				// Nothing else can be done with the bundles - report and move on
+				e.printStackTrace();
+			}
+		}
+	}
+
+	private static class Environment {
+		private final String key;
+		private final Consumer<Collection<Bundle>> uninstaller;
+		private final CompletableFuture<Collection<Bundle>> bundles = new CompletableFuture<>();
+		private final Map<String, SharableRegistryImpl> registries = new HashMap<>();
+		private int leases;
+		private long lifetime;
+		private long lastUsed;
+
+		Environment(String key, Consumer<Collection<Bundle>> uninstaller) {
+			this.key = key;
+			this.uninstaller = uninstaller;
+		}
+	}
+}
@@ -0,0 +1,210 @@
+/**
+ * Copyright © 2018-2019 Jesse Gallagher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openntf.nsfodp.commons.dxl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/**
+ * Checks the byte sequences produced by {@link LMBCSCharset} for each of the groups it
+ * emits, and that they decode back to the original text.
+ * 
+ * @author Jesse Gallagher
+ * @since 2.1.0
+ */
+public class LMBCSCharsetTest {
+	
+	@Test
+	public void testAscii() throws Exception {
+		assertRoundTrip("Hello, world!", bytes('H', 'e', 'l', 'l', 'o', ',', ' ', 'w', 'o', 'r', 'l', 'd', '!')); //$NON-NLS-1$
+		// NUL, tab, line breaks, and the system range byte are stored as-is
+		assertRoundTrip("\u0000\t\n\r\u0019", bytes(0x00, 0x09, 0x0A, 0x0D, 0x19)); //$NON-NLS-1$
+	}
+	
+	@Test
+	public void testCodePage850() throws Exception {
+		assertRoundTrip("Ç", bytes(0x80)); //$NON-NLS-1$
+		assertRoundTrip("é", bytes(0x82)); //$NON-NLS-1$
+		assertRoundTrip("ÿ", bytes(0x98)); //$NON-NLS-1$
+		assertRoundTrip("£", bytes(0x9C)); //$NON-NLS-1$
+		assertRoundTrip("ß", bytes(0xE1)); //$NON-NLS-1$
+		assertRoundTrip("\u00A0", bytes(0xFF)); //$NON-NLS-1$
+		assertRoundTrip("¼", bytes(0xAC)); //$NON-NLS-1$
+		assertRoundTrip("µ", bytes(0xE6)); //$NON-NLS-1$
+		assertRoundTrip("naïve café", bytes('n', 'a', 0x8B, 'v', 'e', ' ', 'c', 'a', 'f', 0x82)); //$NON-NLS-1$
+	}
+	
+	@Test
+	public void testCodePage850All() throws Exception {
+		StringBuilder text = new StringBuilder();
+		byte[] expected = new byte[0x80];
+		for(int b = 0x80; b <= 0xFF; b++) {
+			text.append(new String(new byte[] { (byte)b }, "Cp850")); //$NON-NLS-1$
+			expected[b - 0x80] = (byte)b;
+		}
+		assertRoundTrip(text.toString(), expected);
+	}
+	
+	@Test
+	public void testExplicitLatin1Group() throws Exception {
+		// Notes may also prefix code page 850 bytes with their group byte
+		assertEquals("é", decode(bytes(0x01, 0x82))); //$NON-NLS-1$
+	}
+	
+	@Test
+	public void testC0Controls() throws Exception {
+		assertRoundTrip("\u0001", bytes(0x0F, 0x21)); //$NON-NLS-1$
+		assertRoundTrip("\u0008", bytes(0x0F, 0x28)); //$NON-NLS-1$
+		assertRoundTrip("\u001B", bytes(0x0F, 0x3B)); //$NON-NLS-1$
+		assertRoundTrip("\u001F", bytes(0x0F, 0x3F)); //$NON-NLS-1$
+		
+		StringBuilder text = new StringBuilder();
+		for(char c = 0; c < 0x20; c++) {
+			text.append(c);
+		}
+		assertRoundTrip(text.toString());
+	}
+	
+	@Test
+	public void testC1Controls() throws Exception {
+		assertRoundTrip("\u0080", bytes(0x0F, 0x80)); //$NON-NLS-1$
+		assertRoundTrip("\u0085", bytes(0x0F, 0x85)); //$NON-NLS-1$
+		assertRoundTrip("\u009F", bytes(0x0F, 0x9F)); //$NON-NLS-1$
+		
+		StringBuilder text = new StringBuilder();
+		for(char c = 0x80; c < 0xA0; c++) {
+			text.append(c);
+		}
+		assertRoundTrip(text.toString());
+	}
+	
+	@Test
+	public void testUnicodeGroup() throws Exception {
+		assertRoundTrip("€", bytes(0x14, 0x20, 0xAC)); //$NON-NLS-1$
+		assertRoundTrip("Ω", bytes(0x14, 0x03, 0xA9)); //$NON-NLS-1$
+		assertRoundTrip("日本", bytes(0x14, 0x65, 0xE5, 0x14, 0x67, 0x2C)); //$NON-NLS-1$
+		// Supplementary characters are encoded one surrogate at a time
+		assertRoundTrip("\uD83D\uDE00", bytes(0x14, 0xD8, 0x3D, 0x14, 0xF6, 0xDE)); //$NON-NLS-1$
+	}
+	
+	@Test
+	public void testUnicodeZeroLowByte() throws Exception {
+		// A zero low byte is written with the compatibility form, high byte last
+		assertRoundTrip("Ā", bytes(0x14, 0xF6, 0x01)); //$NON-NLS-1$
+		assertRoundTrip("一", bytes(0x14, 0xF6, 0x4E)); //$NON-NLS-1$
+		assertRoundTrip("＀", bytes(0x14, 0xF6, 0xFF)); //$NON-NLS-1$
+	}
+	
+	@Test
+	public void testMixed() throws Exception {
+		assertRoundTrip("<xp:text value=\"#{javascript:'Größe: 5 €'}\"/>\r\n\u0001\u0085Ā"); //$NON-NLS-1$
+	}
+	
+	@Test
+	public void testSmallBuffers() throws Exception {
+		String text = "aé€\u0001Āb"; //$NON-NLS-1$
+		byte[] expected = encode(text);
+		
+		// Encode into a buffer that holds only one multi-byte sequence at a time
+		CharsetEncoder encoder = LMBCSCharset.INSTANCE.newEncoder();
+		CharBuffer in = CharBuffer.wrap(text);
+		ByteBuffer out = ByteBuffer.allocate(expected.length);
+		ByteBuffer window = ByteBuffer.allocate(3);
+		while(true) {
+			CoderResult result = encoder.encode(in, window, true);
+			window.flip();
+			out.put(window);
+			window.clear();
+			if(result.isUnderflow()) {
+				break;
+			}
+			assertTrue(result.isOverflow());
+		}
+		assertArrayEquals(expected, out.array());
+		
+		// Decode with input split inside multi-byte sequences
+		CharsetDecoder decoder = LMBCSCharset.INSTANCE.newDecoder();
+		StringBuilder decoded = new StringBuilder();
+		CharBuffer chars = CharBuffer.allocate(16);
+		ByteBuffer pending = ByteBuffer.allocate(expected.length);
+		for(int i = 0; i < expected.length; i++) {
+			pending.put(expected[i]);
+			pending.flip();
+			CoderResult result = decoder.decode(pending, chars, i == expected.length - 1);
+			assertTrue(result.isUnderflow());
+			pending.compact();
+		}
+		chars.flip();
+		decoded.append(chars);
+		assertEquals(text, decoded.toString());
+	}
+	
+	@Test(expected = CharacterCodingException.class)
+	public void testUnmappableGroup() throws Exception {
+		// Regional groups are not supported by the decoder
+		decode(bytes(0x10, 0x88, 0xA1));
+	}
+	
+	// *******************************************************************************
+	// * Internal utility methods
+	// *******************************************************************************
+	
+	private static void assertRoundTrip(String text, byte[] expected) throws CharacterCodingException {
+		byte[] encoded = encode(text);
+		assertArrayEquals(text, expected, encoded);
+		assertEquals(text, decode(encoded));
+	}
+	
+	private static void assertRoundTrip(String text) throws CharacterCodingException {
+		assertEquals(text, decode(encode(text)));
+	}
+	
+	private static byte[] encode(String text) throws CharacterCodingException {
+		ByteBuffer buffer = LMBCSCharset.INSTANCE.newEncoder()
+			.onMalformedInput(CodingErrorAction.REPORT)
+			.onUnmappableCharacter(CodingErrorAction.REPORT)
+			.encode(CharBuffer.wrap(text));
+		return Arrays.copyOfRange(buffer.array(), buffer.position(), buffer.limit());
+	}
+	
+	private static String decode(byte[] data) throws CharacterCodingException {
+		return LMBCSCharset.INSTANCE.newDecoder()
+			.onMalformedInput(CodingErrorAction.REPORT)
+			.onUnmappableCharacter(CodingErrorAction.REPORT)
+			.decode(ByteBuffer.wrap(data))
+			.toString();
+	}
+	
+	private static byte[] bytes(int... values) {
+		byte[] result = new byte[values.length];
+		for(int i = 0; i < values.length; i++) {
+			result[i] = (byte)values[i];
+		}
+		return result;
+	}
+}
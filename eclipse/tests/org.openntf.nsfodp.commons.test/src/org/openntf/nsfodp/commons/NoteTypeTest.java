@@ -0,0 +1,53 @@
+/**
+ * Copyright © 2018-2019 Jesse Gallagher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openntf.nsfodp.commons;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.nio.file.Paths;
+
+import org.junit.Test;
+
+/**
+ * @author Jesse Gallagher
+ * @since 2.1.0
+ */
+public class NoteTypeTest {
+	@Test
+	public void testGlobs() {
+		assertEquals("AppProperties/$DBIcon", NoteType.DBIcon.getGlob()); //$NON-NLS-1$
+		assertEquals("Forms/*.form", NoteType.Form.getGlob()); //$NON-NLS-1$
+		assertEquals("XPages/**/*.xsp", NoteType.XPage.getGlob()); //$NON-NLS-1$
+		assertEquals("Code/Java/**", NoteType.Java.getGlob()); //$NON-NLS-1$
+		assertNull(NoteType.ACL.getGlob());
+	}
+	
+	@Test
+	public void testClassifyMetadataTypes() {
+		PathClassifier<NoteType> classifier = new PathClassifier<>(true);
+		for(NoteType type : NoteType.values()) {
+			if(type.getOutputFormat() == NoteType.OutputFormat.METADATA) {
+				classifier.add(type.getGlob(), type);
+			}
+		}
+		assertEquals(NoteType.XPage, classifier.classify(Paths.get("XPages", "home.xsp"))); //$NON-NLS-1$ //$NON-NLS-2$
+		assertEquals(NoteType.CustomControlProperties, classifier.classify(Paths.get("CustomControls", "cc.properties"))); //$NON-NLS-1$ //$NON-NLS-2$
+		assertEquals(NoteType.StyleSheet, classifier.classify(Paths.get("Resources", "StyleSheets", "site.CSS"))); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		assertEquals(NoteType.Java, classifier.classify(Paths.get("Code", "Java", "com", "example", "Foo.java"))); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
+		assertNull(classifier.classify(Paths.get("Forms", "Main.form"))); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+}
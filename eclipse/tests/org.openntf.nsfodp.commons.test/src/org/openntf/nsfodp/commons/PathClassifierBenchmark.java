@@ -0,0 +1,104 @@
+/**
+ * Copyright © 2018-2019 Jesse Gallagher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openntf.nsfodp.commons;
+
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Microbenchmark comparing {@link PathClassifier} with testing each glob's {@link PathMatcher}
+ * in turn, as the project index did before. It is not run as part of the test suite; run its
+ * {@link #main(String[])} method directly, optionally passing the synthetic file count.
+ * 
+ * @author Jesse Gallagher
+ * @since 2.1.0
+ */
+public class PathClassifierBenchmark {
+	private static final int WARMUP_ROUNDS = 5;
+	private static final int MEASURED_ROUNDS = 10;
+	
+	public static void main(String[] args) {
+		int fileCount = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+		List<Path> paths = createPaths(fileCount);
+		PathClassifier<String> classifier = PathClassifierTest.createClassifier(PathClassifierTest.GLOBS, false);
+		List<PathMatcher> matchers = PathClassifierTest.createMatchers(PathClassifierTest.GLOBS);
+		
+		long sink = 0;
+		for(int i = 0; i < WARMUP_ROUNDS; i++) {
+			sink += runMatchers(matchers, paths) + runClassifier(classifier, paths);
+		}
+		
+		long matcherNanos = 0;
+		long classifierNanos = 0;
+		for(int i = 0; i < MEASURED_ROUNDS; i++) {
+			long start = System.nanoTime();
+			sink += runMatchers(matchers, paths);
+			matcherNanos += System.nanoTime() - start;
+			
+			start = System.nanoTime();
+			sink += runClassifier(classifier, paths);
+			classifierNanos += System.nanoTime() - start;
+		}
+		
+		System.out.println(MessageFormat.format("{0} paths x {1} globs, {2} rounds (checksum {3})", fileCount, PathClassifierTest.GLOBS.size(), MEASURED_ROUNDS, sink)); //$NON-NLS-1$
+		System.out.println(MessageFormat.format("PathMatcher loop: {0} ns/path", matcherNanos / MEASURED_ROUNDS / fileCount)); //$NON-NLS-1$
+		System.out.println(MessageFormat.format("PathClassifier:   {0} ns/path", classifierNanos / MEASURED_ROUNDS / fileCount)); //$NON-NLS-1$
+	}
+	
+	// *******************************************************************************
+	// * Internal utility methods
+	// *******************************************************************************
+	
+	/**
+	 * Distributes the synthetic files over a typical ODP layout, repeating the sample paths
+	 * under distinct names.
+	 */
+	private static List<Path> createPaths(int count) {
+		List<String> samples = PathClassifierTest.PATHS;
+		List<Path> result = new ArrayList<>(count);
+		for(int i = 0; i < count; i++) {
+			String sample = samples.get(i % samples.size());
+			int slash = sample.lastIndexOf('/');
+			String name = slash < 0 ? i + sample : sample.substring(0, slash + 1) + i + sample.substring(slash + 1);
+			result.add(Paths.get(name));
+		}
+		return result;
+	}
+	
+	private static int runMatchers(List<PathMatcher> matchers, List<Path> paths) {
+		int matched = 0;
+		for(Path path : paths) {
+			for(PathMatcher matcher : matchers) {
+				if(matcher.matches(path)) {
+					matched++;
+				}
+			}
+		}
+		return matched;
+	}
+	
+	private static int runClassifier(PathClassifier<String> classifier, List<Path> paths) {
+		int matched = 0;
+		for(Path path : paths) {
+			matched += classifier.classifyAll(path).size();
+		}
+		return matched;
+	}
+}
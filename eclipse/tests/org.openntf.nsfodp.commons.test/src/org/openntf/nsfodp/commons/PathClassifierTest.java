@@ -0,0 +1,193 @@
+/**
+ * Copyright © 2018-2019 Jesse Gallagher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openntf.nsfodp.commons;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Checks that {@link PathClassifier} agrees with the {@link PathMatcher}-based rules it
+ * replaced.
+ * 
+ * @author Jesse Gallagher
+ * @since 2.1.0
+ */
+public class PathClassifierTest {
+	static final List<String> GLOBS = Collections.unmodifiableList(Arrays.asList(
+		"**/.DS_Store", //$NON-NLS-1$
+		"**/Thumbs.db", //$NON-NLS-1$
+		".classpath", //$NON-NLS-1$
+		".settings/**", //$NON-NLS-1$
+		"AppProperties/xspdesign.properties", //$NON-NLS-1$
+		"Code/Jars/**", //$NON-NLS-1$
+		"Code/Java/**", //$NON-NLS-1$
+		"Code/ScriptLibraries/*.js", //$NON-NLS-1$
+		"Code/ScriptLibraries/*.jss", //$NON-NLS-1$
+		"CompositeApplications/**", //$NON-NLS-1$
+		"META-INF/**", //$NON-NLS-1$
+		"plugin.xml", //$NON-NLS-1$
+		"Resources/Files/*", //$NON-NLS-1$
+		"Resources/Images/*", //$NON-NLS-1$
+		"WebContent/**", //$NON-NLS-1$
+		"XPages/*.properties", //$NON-NLS-1$
+		"AppProperties/$DBIcon", //$NON-NLS-1$
+		"Code/Agents/*.ja", //$NON-NLS-1$
+		"Forms/*", //$NON-NLS-1$
+		"Views/*", //$NON-NLS-1$
+		"XPages/*.xsp", //$NON-NLS-1$
+		"CustomControls/*.xsp", //$NON-NLS-1$
+		"Code/ScriptLibraries/*.lss" //$NON-NLS-1$
+	));
+	
+	static final List<String> PATHS = Collections.unmodifiableList(Arrays.asList(
+		".classpath", //$NON-NLS-1$
+		".settings/org.eclipse.jdt.core.prefs", //$NON-NLS-1$
+		"Forms/.DS_Store", //$NON-NLS-1$
+		"Resources/Images/Thumbs.db", //$NON-NLS-1$
+		"AppProperties/xspdesign.properties", //$NON-NLS-1$
+		"AppProperties/$DBIcon", //$NON-NLS-1$
+		"AppProperties/database.properties", //$NON-NLS-1$
+		"Code/Agents/Foo.ja", //$NON-NLS-1$
+		"Code/Agents/Foo.lsa", //$NON-NLS-1$
+		"Code/Jars/foo.jar", //$NON-NLS-1$
+		"Code/Jars/nested/bar.jar", //$NON-NLS-1$
+		"Code/Java/com/example/Foo.java", //$NON-NLS-1$
+		"Code/Java/com/example/foo.properties", //$NON-NLS-1$
+		"Code/ScriptLibraries/lib.js", //$NON-NLS-1$
+		"Code/ScriptLibraries/lib.jss", //$NON-NLS-1$
+		"Code/ScriptLibraries/lib.lss", //$NON-NLS-1$
+		"CompositeApplications/Applications/app.xml", //$NON-NLS-1$
+		"Forms/Main.form", //$NON-NLS-1$
+		"Forms/Sub/Nested.form", //$NON-NLS-1$
+		"META-INF/MANIFEST.MF", //$NON-NLS-1$
+		"plugin.xml", //$NON-NLS-1$
+		"Resources/Files/readme.txt", //$NON-NLS-1$
+		"Resources/Images/logo.png", //$NON-NLS-1$
+		"Resources/Images/sub/logo.png", //$NON-NLS-1$
+		"Views/All.view", //$NON-NLS-1$
+		"WebContent/WEB-INF/faces-config.xml", //$NON-NLS-1$
+		"WebContent/WEB-INF/lib/foo.jar", //$NON-NLS-1$
+		"WebContent/WEB-INF/lib/a/b/foo.jar", //$NON-NLS-1$
+		"XPages/home.xsp", //$NON-NLS-1$
+		"XPages/home.xsp.metadata", //$NON-NLS-1$
+		"XPages/home.properties", //$NON-NLS-1$
+		"XPages/sub/home.xsp", //$NON-NLS-1$
+		"src/Loose.java" //$NON-NLS-1$
+	));
+
+	@Test
+	public void testMatchesPathMatchers() {
+		PathClassifier<String> classifier = createClassifier(GLOBS, false);
+		List<PathMatcher> matchers = createMatchers(GLOBS);
+		for(String name : PATHS) {
+			Path path = Paths.get(name);
+			List<String> expected = new ArrayList<>();
+			for(int i = 0; i < matchers.size(); i++) {
+				if(matchers.get(i).matches(path)) {
+					expected.add(GLOBS.get(i));
+				}
+			}
+			assertEquals(name, expected, classifier.classifyAll(path));
+			assertEquals(name, expected.isEmpty() ? null : expected.get(0), classifier.classify(path));
+		}
+	}
+	
+	@Test
+	public void testRanking() {
+		PathClassifier<String> classifier = new PathClassifier<String>()
+			.add("**/*.xsp", "any") //$NON-NLS-1$ //$NON-NLS-2$
+			.add("XPages/*.xsp", "xpage"); //$NON-NLS-1$ //$NON-NLS-2$
+		assertEquals("any", classifier.classify(Paths.get("XPages", "home.xsp"))); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		assertEquals(Arrays.asList("any", "xpage"), classifier.classifyAll(Paths.get("XPages", "home.xsp"))); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+	}
+	
+	/**
+	 * Unlike {@link PathMatcher} globs, a "**" followed by further segments also matches zero
+	 * name elements, as the previous recursive searches for jar and Java files did.
+	 */
+	@Test
+	public void testAnyDepthPrefix() {
+		PathClassifier<String> classifier = new PathClassifier<String>().add("**/*.java", "java"); //$NON-NLS-1$ //$NON-NLS-2$
+		assertEquals("java", classifier.classify(Paths.get("Foo.java"))); //$NON-NLS-1$ //$NON-NLS-2$
+		assertEquals("java", classifier.classify(Paths.get("Code", "Java", "Foo.java"))); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+		assertNull(classifier.classify(Paths.get("Foo.jar"))); //$NON-NLS-1$
+		
+		classifier.add("Code/Jars/**/*.jar", "jar"); //$NON-NLS-1$ //$NON-NLS-2$
+		assertEquals("jar", classifier.classify(Paths.get("Code", "Jars", "foo.jar"))); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+		assertEquals("jar", classifier.classify(Paths.get("Code", "Jars", "lib", "foo.jar"))); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
+	}
+	
+	@Test
+	public void testAnyDepthSuffix() {
+		PathClassifier<String> classifier = new PathClassifier<String>().add("WebContent/**", "web"); //$NON-NLS-1$ //$NON-NLS-2$
+		assertNull(classifier.classify(Paths.get("WebContent"))); //$NON-NLS-1$
+		assertEquals("web", classifier.classify(Paths.get("WebContent", "index.html"))); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		assertEquals("web", classifier.classify(Paths.get("WebContent", "WEB-INF", "web.xml"))); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+	}
+	
+	@Test
+	public void testIgnoreCase() {
+		Path path = Paths.get("xpages", "Home.XSP"); //$NON-NLS-1$ //$NON-NLS-2$
+		assertNull(new PathClassifier<String>(false).add("XPages/*.xsp", "xpage").classify(path)); //$NON-NLS-1$ //$NON-NLS-2$
+		assertEquals("xpage", new PathClassifier<String>(true).add("XPages/*.xsp", "xpage").classify(path)); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+	}
+	
+	@Test
+	public void testForFileSystem() {
+		PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:XPages" + (File.separatorChar == '\\' ? "\\\\" : File.separator) + "*.xsp"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		Path path = Paths.get("xpages", "home.XSP"); //$NON-NLS-1$ //$NON-NLS-2$
+		
+		PathClassifier<String> classifier = PathClassifier.forFileSystem(FileSystems.getDefault());
+		classifier.add("XPages/*.xsp", "xpage"); //$NON-NLS-1$ //$NON-NLS-2$
+		assertEquals(matcher.matches(path), classifier.isIgnoreCase());
+		assertEquals(matcher.matches(path), classifier.classify(path) != null);
+		assertFalse(classifier.classifyAll(Paths.get("XPages", "home.xsp")).isEmpty()); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+	
+	// *******************************************************************************
+	// * Internal utility methods
+	// *******************************************************************************
+	
+	static PathClassifier<String> createClassifier(List<String> globs, boolean ignoreCase) {
+		PathClassifier<String> classifier = new PathClassifier<>(ignoreCase);
+		for(String glob : globs) {
+			classifier.add(glob, glob);
+		}
+		return classifier;
+	}
+	
+	static List<PathMatcher> createMatchers(List<String> globs) {
+		String sep = File.separatorChar == '\\' ? "\\\\" : File.separator; //$NON-NLS-1$
+		List<PathMatcher> result = new ArrayList<>(globs.size());
+		for(String glob : globs) {
+			result.add(FileSystems.getDefault().getPathMatcher("glob:" + glob.replace("/", sep))); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+		return result;
+	}
+}
@@ -0,0 +1,187 @@
+/**
+ * Copyright © 2018-2019 Jesse Gallagher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openntf.nsfodp.compiler.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.openntf.nsfodp.commons.odp.FileResource;
+
+/**
+ * Checks the threshold at which {@link DxlStreamImport} imports file resources from a
+ * temporary DXL file, using a stand-in {@link DxlImportTarget} in place of a database.
+ * 
+ * @author Jesse Gallagher
+ * @since 2.1.0
+ */
+public class DxlStreamImportTest {
+	private static final String FLAGS = "g34"; //$NON-NLS-1$
+	
+	/**
+	 * Records the DXL it is asked to import and how it was provided.
+	 */
+	private static class RecordingImportTarget implements DxlImportTarget {
+		private String dxl;
+		private boolean fromFile;
+		
+		@Override
+		public List<String> importDxl(String dxl) throws Exception {
+			this.dxl = dxl;
+			this.fromFile = false;
+			return Collections.singletonList("0001"); //$NON-NLS-1$
+		}
+		
+		@Override
+		public List<String> importDxl(Path dxlFile) throws Exception {
+			this.dxl = new String(Files.readAllBytes(dxlFile), StandardCharsets.UTF_8);
+			this.fromFile = true;
+			return Collections.singletonList("0001"); //$NON-NLS-1$
+		}
+		
+		@Override
+		public String getLog() {
+			return ""; //$NON-NLS-1$
+		}
+	}
+	
+	private Path dir;
+	
+	@Before
+	public void createDirectory() throws IOException {
+		dir = Files.createTempDirectory(getClass().getSimpleName());
+	}
+	
+	@After
+	public void deleteDirectory() throws IOException {
+		try(Stream<Path> files = Files.list(dir)) {
+			for(Path file : (Iterable<Path>)files::iterator) {
+				Files.delete(file);
+			}
+		}
+		Files.delete(dir);
+	}
+	
+	@Test
+	public void testDefaultNeverStreams() throws Exception {
+		DxlStreamImport streamImport = new DxlStreamImport(0);
+		assertEquals(0, streamImport.getThreshold());
+		assertFalse(streamImport.isStreamImport(createResource("empty.txt", 0))); //$NON-NLS-1$
+		assertFalse(streamImport.isStreamImport(createResource("large.txt", 256 * 1024))); //$NON-NLS-1$
+		
+		// Negative thresholds are treated as disabled
+		assertEquals(0, new DxlStreamImport(-1).getThreshold());
+		assertFalse(new DxlStreamImport(-1).isStreamImport(createResource("other.txt", 1024))); //$NON-NLS-1$
+	}
+	
+	@Test
+	public void testThreshold() throws Exception {
+		DxlStreamImport streamImport = new DxlStreamImport(1024);
+		assertFalse(streamImport.isStreamImport(createResource("empty.txt", 0))); //$NON-NLS-1$
+		assertFalse(streamImport.isStreamImport(createResource("below.txt", 1023))); //$NON-NLS-1$
+		assertTrue(streamImport.isStreamImport(createResource("at.txt", 1024))); //$NON-NLS-1$
+		assertTrue(streamImport.isStreamImport(createResource("above.txt", 1025))); //$NON-NLS-1$
+	}
+	
+	@Test
+	public void testOverrideDataSize() throws Exception {
+		DxlStreamImport streamImport = new DxlStreamImport(1024);
+		
+		FileResource small = createResource("small.txt", 16); //$NON-NLS-1$
+		small.setOverrideData(new byte[2048]);
+		assertTrue(streamImport.isStreamImport(small));
+		
+		FileResource large = createResource("large.txt", 2048); //$NON-NLS-1$
+		large.setOverrideData(new byte[16]);
+		assertFalse(streamImport.isStreamImport(large));
+	}
+	
+	@Test
+	public void testImportRouting() throws Exception {
+		DxlStreamImport streamImport = new DxlStreamImport(1024);
+		
+		FileResource below = createResource("below.txt", 1023); //$NON-NLS-1$
+		RecordingImportTarget target = importResource(streamImport, below);
+		assertFalse(target.fromFile);
+		assertEquals(below.getDxlString(), target.dxl);
+		
+		FileResource above = createResource("above.txt", 4096); //$NON-NLS-1$
+		target = importResource(streamImport, above);
+		assertTrue(target.fromFile);
+		assertEquals(above.getDxlString(), target.dxl);
+	}
+	
+	@Test
+	public void testStreamedFileRemoved() throws Exception {
+		DxlStreamImport streamImport = new DxlStreamImport(1);
+		FileResource res = createResource("file.txt", 64); //$NON-NLS-1$
+		
+		Path[] imported = new Path[1];
+		ImportPipeline.ImportStep step = streamImport.prepare(res, null, null, dxlFile -> {
+			assertTrue(Files.isRegularFile(dxlFile));
+			imported[0] = dxlFile;
+		});
+		step.run();
+		assertNotNull(imported[0]);
+		assertFalse(Files.exists(imported[0]));
+		
+		// Discarded steps also remove their file, without importing it
+		imported[0] = null;
+		step = streamImport.prepare(res, null, null, dxlFile -> imported[0] = dxlFile);
+		step.discard();
+		assertNull(imported[0]);
+	}
+	
+	// *******************************************************************************
+	// * Internal utility methods
+	// *******************************************************************************
+	
+	/**
+	 * Imports the provided resource into a new stand-in target, routing it as the compiler
+	 * does for file resources.
+	 */
+	private static RecordingImportTarget importResource(DxlStreamImport streamImport, FileResource res) throws Exception {
+		RecordingImportTarget target = new RecordingImportTarget();
+		if(streamImport.isStreamImport(res)) {
+			streamImport.prepare(res, null, null, target::importDxl).run();
+		} else {
+			target.importDxl(res.getDxlString());
+		}
+		return target;
+	}
+	
+	private FileResource createResource(String name, int size) throws IOException {
+		byte[] data = new byte[size];
+		for(int i = 0; i < size; i++) {
+			data[i] = (byte)('a' + i % 26);
+		}
+		Path file = Files.write(dir.resolve(name), data);
+		return new FileResource(file, FLAGS, null, path -> path.getFileName().toString());
+	}
+}
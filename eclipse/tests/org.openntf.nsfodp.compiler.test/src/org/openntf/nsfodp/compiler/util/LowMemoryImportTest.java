@@ -0,0 +1,162 @@
+/**
+ * Copyright © 2018-2019 Jesse Gallagher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openntf.nsfodp.compiler.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.openntf.nsfodp.commons.odp.FileResource;
+
+/**
+ * Imports the file resources of a synthetic 2 GB project in the way the compiler does in
+ * low-memory mode, checking that it completes within a 512 MB heap.
+ * 
+ * <p>The test fragment's build runs this with {@code -Xmx512m}. Each element is larger
+ * than half the heap, so holding the DXL of any one of them in memory fails. The test is
+ * skipped when run with a larger heap, where it would prove nothing.</p>
+ * 
+ * @author Jesse Gallagher
+ * @since 2.1.0
+ */
+public class LowMemoryImportTest {
+	private static final long MAX_HEAP = 512L * 1024 * 1024;
+	private static final int ELEMENT_COUNT = 8;
+	private static final int ELEMENT_SIZE = 256 * 1024 * 1024;
+	private static final String FLAGS = "g34"; //$NON-NLS-1$
+	private static final byte[] NOTE_END = "</note>".getBytes(StandardCharsets.UTF_8); //$NON-NLS-1$
+	
+	/**
+	 * Reads imported DXL files in chunks, as the Notes importer does, counting what it sees.
+	 */
+	private static class CountingImportTarget implements DxlImportTarget {
+		private int fileImports;
+		private int stringImports;
+		private long dxlBytes;
+		
+		@Override
+		public List<String> importDxl(String dxl) throws Exception {
+			stringImports++;
+			dxlBytes += dxl.length();
+			return Collections.emptyList();
+		}
+		
+		@Override
+		public List<String> importDxl(Path dxlFile) throws Exception {
+			fileImports++;
+			byte[] buffer = new byte[64 * 1024];
+			byte[] tail = new byte[NOTE_END.length];
+			int tailLength = 0;
+			try(InputStream is = Files.newInputStream(dxlFile)) {
+				int read;
+				while((read = is.read(buffer)) > -1) {
+					dxlBytes += read;
+					for(int i = 0; i < read; i++) {
+						if(!Character.isWhitespace(buffer[i])) {
+							if(tailLength == tail.length) {
+								System.arraycopy(tail, 1, tail, 0, tail.length - 1);
+								tailLength--;
+							}
+							tail[tailLength++] = buffer[i];
+						}
+					}
+				}
+			}
+			assertEquals(new String(NOTE_END, StandardCharsets.UTF_8), new String(tail, 0, tailLength, StandardCharsets.UTF_8));
+			return Collections.emptyList();
+		}
+		
+		@Override
+		public String getLog() {
+			return ""; //$NON-NLS-1$
+		}
+	}
+	
+	private Path dir;
+	
+	@Before
+	public void createDirectory() throws IOException {
+		dir = Files.createTempDirectory(getClass().getSimpleName());
+	}
+	
+	@After
+	public void deleteDirectory() throws IOException {
+		for(int i = 0; i < ELEMENT_COUNT; i++) {
+			Files.deleteIfExists(getElementFile(i));
+		}
+		Files.delete(dir);
+	}
+	
+	@Test
+	public void testTwoGigabyteProject() throws Exception {
+		assumeTrue(Runtime.getRuntime().maxMemory() <= MAX_HEAP);
+		
+		List<FileResource> elements = new ArrayList<>(ELEMENT_COUNT);
+		for(int i = 0; i < ELEMENT_COUNT; i++) {
+			Path file = getElementFile(i);
+			// Leave the files sparse where the filesystem allows it, since only the size matters
+			try(RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) { //$NON-NLS-1$
+				raf.setLength(ELEMENT_SIZE);
+			}
+			elements.add(new FileResource(file, FLAGS, null, path -> path.getFileName().toString()));
+		}
+		
+		// Mirror the compiler's file resource import with the default low-memory settings
+		DxlStreamImport streamImport = new DxlStreamImport(0, true);
+		CountingImportTarget target = new CountingImportTarget();
+		List<ImportPipeline.Preparation> preparations = new ArrayList<>(elements.size());
+		for(FileResource res : elements) {
+			preparations.add(() -> {
+				if(streamImport.isStreamImport(res)) {
+					return streamImport.prepare(res, null, null, target::importDxl);
+				} else {
+					String dxl = res.getDxlString();
+					return () -> target.importDxl(dxl);
+				}
+			});
+		}
+		try(ImportPipeline pipeline = new ImportPipeline(0, 0)) {
+			pipeline.run(preparations);
+		}
+		
+		assertEquals(ELEMENT_COUNT, target.fileImports);
+		assertEquals(0, target.stringImports);
+		// Base64 alone expands the content by a third
+		long contentSize = (long)ELEMENT_COUNT * ELEMENT_SIZE;
+		assertTrue(target.dxlBytes > contentSize / 3 * 4);
+	}
+	
+	// *******************************************************************************
+	// * Internal utility methods
+	// *******************************************************************************
+	
+	private Path getElementFile(int index) {
+		return dir.resolve("element" + index + ".bin"); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+}
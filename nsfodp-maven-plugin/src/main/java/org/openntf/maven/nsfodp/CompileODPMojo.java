@@ -56,7 +56,9 @@ import java.security.KeyStoreException;
 import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.stream.Collectors;
 import java.util.stream.StreamSupport;
@@ -158,6 +160,116 @@ public class CompileODPMojo extends AbstractEquinoxMojo {
 	@Parameter(required=false)
 	private File[] classpathJars;
 	
+	/**
+	 * A directory to hold generated DXL and compiled XSP classes between local compilations,
+	 * so that unchanged elements do not need to be regenerated. If unspecified, no cache
+	 * is used.
+	 * 
+	 * @since 2.1.0
+	 */
+	@Parameter(property="nsfodp.compiler.cacheDirectory", required=false)
+	private File cacheDirectory;
+	
+	/**
+	 * Whether to translate all XPages and Custom Controls first and then compile them in a
+	 * single Java compiler invocation, rather than one invocation per element.
+	 * 
+	 * @since 2.1.0
+	 */
+	@Parameter(property="nsfodp.compiler.batchXspCompilation", required=false)
+	private boolean batchXspCompilation = false;
+	
+	/**
+	 * The number of threads to use when translating XPages and Custom Controls to Java during
+	 * local compilation. Values less than 1 use one thread per processor.
+	 * 
+	 * @since 2.1.0
+	 */
+	@Parameter(property="nsfodp.compiler.xspTranslationParallelism", required=false)
+	private int xspTranslationParallelism = 1;
+	
+	/**
+	 * Whether to create the NSF and import classic design elements, file resources, and
+	 * LotusScript libraries while Java and XSP elements are compiled during local compilation.
+	 * 
+	 * @since 2.1.0
+	 */
+	@Parameter(property="nsfodp.compiler.pipelinedImport", required=false)
+	private boolean pipelinedImport = false;
+	
+	/**
+	 * The number of worker threads that read files and generate DXL ahead of the importing
+	 * thread during local compilation. A value of 0 prepares each element on the importing thread.
+	 * 
+	 * @since 2.1.0
+	 */
+	@Parameter(property="nsfodp.compiler.importPreparationThreads", required=false)
+	private int importPreparationThreads = 0;
+	
+	/**
+	 * The maximum number of design elements combined into a single DXL import during local
+	 * compilation. A value of 1 imports each element individually.
+	 * 
+	 * @since 2.1.0
+	 */
+	@Parameter(property="nsfodp.compiler.dxlImportBatchSize", required=false)
+	private int dxlImportBatchSize = 1;
+	
+	/**
+	 * The file size in bytes at which file resources are imported from a temporary DXL file
+	 * rather than from memory during local compilation. A value of 0 imports from memory unless
+	 * {@link #lowMemoryCompilation} is set.
+	 * 
+	 * @since 2.1.0
+	 */
+	@Parameter(property="nsfodp.compiler.dxlStreamImportThreshold", required=false)
+	private long dxlStreamImportThreshold = 0;
+	
+	/**
+	 * Whether local compilation should bound its memory use by translating XSP elements a few at
+	 * a time, releasing intermediate results early, and streaming large file resources.
+	 * 
+	 * @since 2.1.0
+	 */
+	@Parameter(property="nsfodp.compiler.lowMemoryCompilation", required=false)
+	private boolean lowMemoryCompilation = false;
+	
+	/**
+	 * Whether local compilation should install only the update site bundles needed by the
+	 * project, rather than all of them.
+	 * 
+	 * @since 2.1.0
+	 */
+	@Parameter(property="nsfodp.compiler.pruneUpdateSiteBundles", required=false)
+	private boolean pruneUpdateSiteBundles = false;
+	
+	/**
+	 * The time in milliseconds to keep installed update site bundles and their initialized XSP
+	 * registry for reuse by later compilations in the same process. A value of 0 disables reuse.
+	 * 
+	 * @since 2.1.0
+	 */
+	@Parameter(property="nsfodp.compiler.warmRegistryLifetime", required=false)
+	private long warmRegistryLifetime = 0;
+	
+	/**
+	 * Whether local compilation should initialize only the XSP libraries that provide the
+	 * namespaces used by the project, rather than all installed libraries.
+	 * 
+	 * @since 2.1.0
+	 */
+	@Parameter(property="nsfodp.compiler.pruneXspLibraries", required=false)
+	private boolean pruneXspLibraries = false;
+	
+	/**
+	 * The number of empty databases to create ahead of time for later compilations in the same
+	 * process. A value of 0 disables the pool.
+	 * 
+	 * @since 2.1.0
+	 */
+	@Parameter(property="nsfodp.compiler.blankDatabasePoolSize", required=false)
+	private int blankDatabasePoolSize = 0;
+	
 	private Log log;
 
 	public void execute() throws MojoExecutionException {
@@ -259,7 +371,25 @@ public class CompileODPMojo extends AbstractEquinoxMojo {
 		} else {
 			classpathJars = Arrays.stream(this.classpathJars).map(File::toPath).collect(Collectors.toList());
 		}
-		compiler.compileOdp(odpDirectory, updateSite, classpathJars, outputFile, compilerLevel, appendTimestampToTitle, templateName, setProductionXspOptions);
+		compiler.compileOdp(odpDirectory, updateSite, classpathJars, outputFile, compilerLevel, appendTimestampToTitle, templateName, setProductionXspOptions, cacheDirectory == null ? null : cacheDirectory.toPath(), batchXspCompilation, xspTranslationParallelism, createCompilerProperties());
+	}
+	
+	/**
+	 * Collects the local compiler settings that are passed through to the compiler application
+	 * as-is.
+	 */
+	private Map<String, String> createCompilerProperties() {
+		Map<String, String> result = new LinkedHashMap<>();
+		result.put(NSFODPConstants.PROP_PIPELINEDIMPORT, Boolean.toString(pipelinedImport));
+		result.put(NSFODPConstants.PROP_IMPORTPREPARATIONTHREADS, Integer.toString(importPreparationThreads));
+		result.put(NSFODPConstants.PROP_DXLIMPORTBATCHSIZE, Integer.toString(dxlImportBatchSize));
+		result.put(NSFODPConstants.PROP_DXLSTREAMIMPORTTHRESHOLD, Long.toString(dxlStreamImportThreshold));
+		result.put(NSFODPConstants.PROP_LOWMEMORYCOMPILATION, Boolean.toString(lowMemoryCompilation));
+		result.put(NSFODPConstants.PROP_PRUNEUPDATESITEBUNDLES, Boolean.toString(pruneUpdateSiteBundles));
+		result.put(NSFODPConstants.PROP_WARMREGISTRYLIFETIME, Long.toString(warmRegistryLifetime));
+		result.put(NSFODPConstants.PROP_PRUNEXSPLIBRARIES, Boolean.toString(pruneXspLibraries));
+		result.put(NSFODPConstants.PROP_BLANKDATABASEPOOLSIZE, Integer.toString(blankDatabasePoolSize));
+		return result;
 	}
 	
 	// *******************************************************************************
@@ -323,6 +453,7 @@ public class CompileODPMojo extends AbstractEquinoxMojo {
 				post.addHeader(NSFODPConstants.HEADER_TEMPLATE_VERSION, ODPMojoUtil.calculateVersion(project));
 			}
 			post.addHeader(NSFODPConstants.HEADER_SET_PRODUCTION_XSP, String.valueOf(this.setProductionXspOptions));
+			post.addHeader(NSFODPConstants.HEADER_BATCH_XSP_COMPILATION, String.valueOf(this.batchXspCompilation));
 			
 			FileEntity fileEntity = new FileEntity(packageZip.toFile());
 			post.setEntity(fileEntity);
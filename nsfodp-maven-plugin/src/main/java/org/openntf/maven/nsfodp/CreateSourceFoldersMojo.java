@@ -17,13 +17,9 @@ package org.openntf.maven.nsfodp;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Collection;
-import java.util.LinkedHashSet;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.MojoExecutionException;
@@ -33,11 +29,9 @@ import org.apache.maven.plugins.annotations.Component;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
 import org.apache.maven.project.MavenProject;
+import org.openntf.nsfodp.commons.odp.ProjectDescriptor;
 import org.sonatype.plexus.build.incremental.BuildContext;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
 
-import com.ibm.commons.xml.DOMUtil;
 import com.ibm.commons.xml.XMLException;
 
 /**
@@ -93,16 +87,7 @@ public class CreateSourceFoldersMojo extends AbstractMojo {
 			return;
 		}
 		
-		Document classpathXml;
-		try(InputStream is = Files.newInputStream(classpath)) {
-			classpathXml = DOMUtil.createDocument(is);
-		}
-		Collection<String> sourceFolders = Stream.of(DOMUtil.nodes(classpathXml, "/classpath/classpathentry[kind=src]"))
-			.map(Element.class::cast)
-			.map(el -> el.getAttribute("path"))
-			.filter(path -> !"Local".equals(path))
-			.collect(Collectors.toCollection(LinkedHashSet::new));
-		sourceFolders.add("Code/Java");
+		Collection<String> sourceFolders = ProjectDescriptor.get(odpDirectory.toPath()).getSourceFolders();
 		
 		sourceFolders.stream()
 			.map(path -> odpDirectory.toPath().resolve(path.replace('/', File.separatorChar)))
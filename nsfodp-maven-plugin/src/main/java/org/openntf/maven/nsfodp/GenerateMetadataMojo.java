@@ -18,6 +18,8 @@ package org.openntf.maven.nsfodp;
 import java.io.File;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.attribute.FileTime;
@@ -27,7 +29,7 @@ import javax.activation.MimetypesFileTypeMap;
 import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerException;
 import javax.xml.transform.dom.DOMResult;
-import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamSource;
 
 import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.MojoExecutionException;
@@ -38,11 +40,10 @@ import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
 import org.apache.maven.project.MavenProject;
 import org.openntf.nsfodp.commons.NoteType;
-import org.openntf.nsfodp.commons.dxl.DXLUtil;
+import org.openntf.nsfodp.commons.PathClassifier;
+import org.openntf.nsfodp.commons.dxl.DXLNoteWriter;
 import org.openntf.nsfodp.commons.io.SwiperOutputStream;
 import org.sonatype.plexus.build.incremental.BuildContext;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
 
 import com.ibm.commons.util.StringUtil;
 import com.ibm.commons.xml.DOMUtil;
@@ -60,6 +61,8 @@ import static org.openntf.nsfodp.commons.h.StdNames.*;
  */
 @Mojo(name="generate-metadata")
 public class GenerateMetadataMojo extends AbstractMojo {
+	private static final MimetypesFileTypeMap MIME_TYPES = new MimetypesFileTypeMap();
+	
 	@Parameter(defaultValue="${project}", readonly=true, required=false)
 	protected MavenProject project;
 	
@@ -93,21 +96,35 @@ public class GenerateMetadataMojo extends AbstractMojo {
 	
 	private void generateMetadata() throws IOException {
 		Path odpDir = odpDirectory.toPath();
+		if(!Files.isDirectory(odpDir)) {
+			return;
+		}
+		PathClassifier<NoteType> classifier = createClassifier();
 		
+		Files.walk(odpDir, Integer.MAX_VALUE)
+			.filter(Files::isRegularFile)
+			.filter(this::notKnownBad)
+			.filter(p -> !p.getFileName().toString().endsWith(".metadata"))
+			.forEach(p -> {
+				NoteType type = classifier.classify(odpDir.relativize(p));
+				if(type != null && needsMetadata(p)) {
+					createMetadataFile(odpDir.resolve(type.getPath()), p, type);
+				}
+			});
+	}
+	
+	/**
+	 * Compiles the globs of all metadata-bearing note types into a single classifier,
+	 * ranked in {@link NoteType} declaration order.
+	 */
+	private static PathClassifier<NoteType> createClassifier() {
+		PathClassifier<NoteType> classifier = new PathClassifier<>(true);
 		for(NoteType type : NoteType.values()) {
 			if(type.getOutputFormat() == NoteType.OutputFormat.METADATA) {
-				Path noteDir = odpDir.resolve(type.getPath());
-				if(Files.isDirectory(noteDir)) {
-					Files.walk(noteDir, Integer.MAX_VALUE)
-						.filter(Files::isRegularFile)
-						.filter(this::notKnownBad)
-						.filter(p -> !p.getFileName().toString().endsWith(".metadata"))
-						.filter(p -> matchesExtension(p, type))
-						.filter(this::needsMetadata)
-						.forEach(p -> createMetadataFile(noteDir, p, type));
-				}
+				classifier.add(type.getGlob(), type);
 			}
 		}
+		return classifier;
 	}
 	
 	private boolean notKnownBad(Path file) {
@@ -124,185 +141,178 @@ public class GenerateMetadataMojo extends AbstractMojo {
 		Path metaFile = file.getParent().resolve(file.getFileName().toString() + ".metadata");
 		return !Files.exists(metaFile);
 	}
-	private boolean matchesExtension(Path file, NoteType type) {
-		String ext = type.getExtension();
-		if(StringUtil.isEmpty(ext)) {
-			return true;
-		} else {
-			return file.getFileName().toString().toLowerCase().endsWith(ext.toLowerCase());
-		}
-	}
-	
 	private void createMetadataFile(Path odpDir, Path file, NoteType type) {
 		if(log.isInfoEnabled()) {
 			log.info(MessageFormat.format("Creating metadata for {0} {1}", type, odpDir.relativize(file)));
 		}
 
 		try {
-			Document dxl = createBaseDxl();
-			Element note = dxl.getDocumentElement();
-
-			switch(type) {
-			case WiringProperties: {
-				note.setAttribute("class", "form");
-				DXLUtil.writeItemString(dxl, FIELD_TITLE, true, file.getFileName().toString());
-				DXLUtil.writeItemString(dxl, DESIGN_FLAGS, true, "34567C:Q");
-				DXLUtil.writeItemString(dxl, ITEM_NAME_FILE_NAMES, true, file.getFileName().toString());
-				break;
-			}
-			case CompositeApplication: {
-				note.setAttribute("class", "form");
-				DXLUtil.writeItemString(dxl, FIELD_TITLE, true, file.getFileName().toString());
-				DXLUtil.writeItemString(dxl, DESIGN_FLAGS, true, "34567C|Q");
-				DXLUtil.writeItemString(dxl, FILTER_COMMENT_ITEM, true, "");
-				DXLUtil.writeItemString(dxl, DESIGN_FLAGS_EXTENDED, true, "1");
-				DXLUtil.writeItemString(dxl, ITEM_NAME_FILE_NAMES, true, "");
-				break;
-			}
-			case CompositeComponent: {
-				note.setAttribute("class", "form");
-				DXLUtil.writeItemString(dxl, FIELD_TITLE, true, file.getFileName().toString());
-				DXLUtil.writeItemString(dxl, DESIGN_FLAGS, true, "345CgQ_");
-				DXLUtil.writeItemString(dxl, ITEM_NAME_FILE_NAMES, true, file.getFileName().toString());
-				break;
-			}
-			case XPage: {
-				note.setAttribute("class", "form");
-				DXLUtil.writeItemString(dxl, FIELD_TITLE, true, file.getFileName().toString());
-				DXLUtil.writeItemString(dxl, DESIGN_FLAGS, true, "gC~4K");
-				DXLUtil.writeItemString(dxl, ITEM_NAME_FILE_NAMES, true, file.getFileName().toString());
-				break;
-			}
-			case XPageProperties: {
-				note.setAttribute("class", "form");
-				DXLUtil.writeItemString(dxl, FIELD_TITLE, true, file.getFileName().toString());
-				DXLUtil.writeItemString(dxl, DESIGN_FLAGS, true, "gC~4K2");
-				DXLUtil.writeItemString(dxl, ITEM_NAME_FILE_NAMES, true, file.getFileName().toString());
-				break;
-			}
-			case CustomControl: {
-				note.setAttribute("class", "form");
-				DXLUtil.writeItemString(dxl, FIELD_TITLE, true, file.getFileName().toString());
-				DXLUtil.writeItemString(dxl, DESIGN_FLAGS, true, "gC~4;");
-				DXLUtil.writeItemString(dxl, ITEM_NAME_FILE_NAMES, true, file.getFileName().toString());
-				break;
-			}
-			case CustomControlProperties: {
-				note.setAttribute("class", "form");
-				DXLUtil.writeItemString(dxl, FIELD_TITLE, true, file.getFileName().toString());
-				DXLUtil.writeItemString(dxl, DESIGN_FLAGS, true, "gC~4;2");
-				DXLUtil.writeItemString(dxl, ITEM_NAME_FILE_NAMES, true, file.getFileName().toString());
-				break;
-			}
-			case FileResource: {
-				note.setAttribute("class", "form");
-				DXLUtil.writeItemString(dxl, FIELD_TITLE, true, file.getFileName().toString());
-				DXLUtil.writeItemString(dxl, DESIGN_FLAGS, true, "345CgQ");
-				DXLUtil.writeItemString(dxl, DESIGN_FLAGS_EXTENDED, true, "D");
-				DXLUtil.writeItemString(dxl, ITEM_NAME_FILE_NAMES, true, file.getFileName().toString());
-				String mimeType = Files.probeContentType(file);
-				if(StringUtil.isEmpty(mimeType)) {
-					mimeType = new MimetypesFileTypeMap().getContentType(file.toFile());
+			StringWriter w = new StringWriter();
+			try(DXLNoteWriter dxl = new DXLNoteWriter(w)) {
+				switch(type) {
+				case WiringProperties: {
+					dxl.startNote("form");
+					dxl.writeItemString(FIELD_TITLE, file.getFileName().toString());
+					dxl.writeItemString(DESIGN_FLAGS, "34567C:Q");
+					dxl.writeItemString(ITEM_NAME_FILE_NAMES, file.getFileName().toString());
+					break;
+				}
+				case CompositeApplication: {
+					dxl.startNote("form");
+					dxl.writeItemString(FIELD_TITLE, file.getFileName().toString());
+					dxl.writeItemString(DESIGN_FLAGS, "34567C|Q");
+					dxl.writeItemString(FILTER_COMMENT_ITEM, "");
+					dxl.writeItemString(DESIGN_FLAGS_EXTENDED, "1");
+					dxl.writeItemString(ITEM_NAME_FILE_NAMES, "");
+					break;
+				}
+				case CompositeComponent: {
+					dxl.startNote("form");
+					dxl.writeItemString(FIELD_TITLE, file.getFileName().toString());
+					dxl.writeItemString(DESIGN_FLAGS, "345CgQ_");
+					dxl.writeItemString(ITEM_NAME_FILE_NAMES, file.getFileName().toString());
+					break;
+				}
+				case XPage: {
+					dxl.startNote("form");
+					dxl.writeItemString(FIELD_TITLE, file.getFileName().toString());
+					dxl.writeItemString(DESIGN_FLAGS, "gC~4K");
+					dxl.writeItemString(ITEM_NAME_FILE_NAMES, file.getFileName().toString());
+					break;
 				}
-				if(StringUtil.isEmpty(mimeType)) {
-					mimeType = "application/octet-stream";
+				case XPageProperties: {
+					dxl.startNote("form");
+					dxl.writeItemString(FIELD_TITLE, file.getFileName().toString());
+					dxl.writeItemString(DESIGN_FLAGS, "gC~4K2");
+					dxl.writeItemString(ITEM_NAME_FILE_NAMES, file.getFileName().toString());
+					break;
 				}
-				DXLUtil.writeItemString(dxl, ITEM_NAME_FILE_MIMETYPE, true, mimeType);
+				case CustomControl: {
+					dxl.startNote("form");
+					dxl.writeItemString(FIELD_TITLE, file.getFileName().toString());
+					dxl.writeItemString(DESIGN_FLAGS, "gC~4;");
+					dxl.writeItemString(ITEM_NAME_FILE_NAMES, file.getFileName().toString());
+					break;
+				}
+				case CustomControlProperties: {
+					dxl.startNote("form");
+					dxl.writeItemString(FIELD_TITLE, file.getFileName().toString());
+					dxl.writeItemString(DESIGN_FLAGS, "gC~4;2");
+					dxl.writeItemString(ITEM_NAME_FILE_NAMES, file.getFileName().toString());
+					break;
+				}
+				case FileResource: {
+					dxl.startNote("form");
+					dxl.writeItemString(FIELD_TITLE, file.getFileName().toString());
+					dxl.writeItemString(DESIGN_FLAGS, "345CgQ");
+					dxl.writeItemString(DESIGN_FLAGS_EXTENDED, "D");
+					dxl.writeItemString(ITEM_NAME_FILE_NAMES, file.getFileName().toString());
+					String mimeType = Files.probeContentType(file);
+					if(StringUtil.isEmpty(mimeType)) {
+						mimeType = MIME_TYPES.getContentType(file.toFile());
+					}
+					if(StringUtil.isEmpty(mimeType)) {
+						mimeType = "application/octet-stream";
+					}
+					dxl.writeItemString(ITEM_NAME_FILE_MIMETYPE, mimeType);
 				
-				FileTime mod = Files.getLastModifiedTime(file);
-				DXLUtil.writeItemDateTime(dxl, ITEM_NAME_FILE_MODINFO, true, mod.toInstant());
-				break;
-			}
-			case ImageResource: {
-				note.setAttribute("class", "form");
-				DXLUtil.writeItemString(dxl, FIELD_TITLE, true, file.getFileName().toString());
-				DXLUtil.writeItemString(dxl, DESIGN_FLAGS, true, "34CiQ");
-				DXLUtil.writeItemString(dxl, DESIGN_FLAGS_EXTENDED, true, "D");
-				DXLUtil.writeItemString(dxl, ITEM_NAME_FILE_MIMETYPE, true, Files.probeContentType(file));
+					FileTime mod = Files.getLastModifiedTime(file);
+					dxl.writeItemDateTime(ITEM_NAME_FILE_MODINFO, mod.toInstant());
+					break;
+				}
+				case ImageResource: {
+					dxl.startNote("form");
+					dxl.writeItemString(FIELD_TITLE, file.getFileName().toString());
+					dxl.writeItemString(DESIGN_FLAGS, "34CiQ");
+					dxl.writeItemString(DESIGN_FLAGS_EXTENDED, "D");
+					dxl.writeItemString(ITEM_NAME_FILE_MIMETYPE, Files.probeContentType(file));
 				
-				FileTime mod = Files.getLastModifiedTime(file);
-				DXLUtil.writeItemDateTime(dxl, ITEM_NAME_FILE_MODINFO, true, mod.toInstant());
+					FileTime mod = Files.getLastModifiedTime(file);
+					dxl.writeItemDateTime(ITEM_NAME_FILE_MODINFO, mod.toInstant());
 				
-				DXLUtil.writeItemNumber(dxl, ITEM_NAME_IMAGES_WIDE, 1);
-				DXLUtil.writeItemNumber(dxl, ITEM_NAME_IMAGES_HIGH, 1);
-				DXLUtil.writeItemNumber(dxl, ITEM_NAME_IMAGES_COLORIZE, 0);
-				DXLUtil.writeItemString(dxl, ITEM_NAME_IMAGE_NAMES, true, file.getFileName().toString());
+					dxl.writeItemNumber(ITEM_NAME_IMAGES_WIDE, 1);
+					dxl.writeItemNumber(ITEM_NAME_IMAGES_HIGH, 1);
+					dxl.writeItemNumber(ITEM_NAME_IMAGES_COLORIZE, 0);
+					dxl.writeItemString(ITEM_NAME_IMAGE_NAMES, file.getFileName().toString());
 				
-				break;
-			}
-			case Jar: {
-				note.setAttribute("class", "form");
-				DXLUtil.writeItemString(dxl, FIELD_TITLE, true, file.getFileName().toString());
-				DXLUtil.writeItemString(dxl, DESIGN_FLAGS, true, "34567Cg~,");
-				DXLUtil.writeItemString(dxl, ITEM_NAME_FILE_NAMES, true, file.getFileName().toString());
-				break;
-			}
-			case Java: {
-				Path relativePath = odpDir.relativize(file);
+					break;
+				}
+				case Jar: {
+					dxl.startNote("form");
+					dxl.writeItemString(FIELD_TITLE, file.getFileName().toString());
+					dxl.writeItemString(DESIGN_FLAGS, "34567Cg~,");
+					dxl.writeItemString(ITEM_NAME_FILE_NAMES, file.getFileName().toString());
+					break;
+				}
+				case Java: {
+					Path relativePath = odpDir.relativize(file);
 				
-				note.setAttribute("class", "form");
-				DXLUtil.writeItemString(dxl, FIELD_TITLE, true, relativePath.toString().replace(File.separatorChar, '/'));
-				DXLUtil.writeItemString(dxl, DESIGN_FLAGS, true, "34567Cg~[");
-				DXLUtil.writeItemString(dxl, ITEM_NAME_FILE_NAMES, true, relativePath.toString().replace(File.separatorChar, '/'));
-				break;
-			}
-			case JavaScriptLibrary: {
-				note.setAttribute("class", "filter");
-				String name = file.getFileName().toString();
-				if(name.endsWith('.' + type.getExtension())) {
-					name = name.substring(0, name.length()-1-type.getExtension().length());
+					dxl.startNote("form");
+					dxl.writeItemString(FIELD_TITLE, relativePath.toString().replace(File.separatorChar, '/'));
+					dxl.writeItemString(DESIGN_FLAGS, "34567Cg~[");
+					dxl.writeItemString(ITEM_NAME_FILE_NAMES, relativePath.toString().replace(File.separatorChar, '/'));
+					break;
 				}
-				DXLUtil.writeItemString(dxl, FIELD_TITLE, true, name);
-				DXLUtil.writeItemString(dxl, DESIGN_FLAGS, true, "h534Q");
-				break;
-			}
-			case LotusScriptLibrary: {
-				note.setAttribute("class", "filter");
-				String name = file.getFileName().toString();
-				if(name.endsWith('.' + type.getExtension())) {
-					name = name.substring(0, name.length()-1-type.getExtension().length());
+				case JavaScriptLibrary: {
+					dxl.startNote("filter");
+					String name = file.getFileName().toString();
+					if(name.endsWith('.' + type.getExtension())) {
+						name = name.substring(0, name.length()-1-type.getExtension().length());
+					}
+					dxl.writeItemString(FIELD_TITLE, name);
+					dxl.writeItemString(DESIGN_FLAGS, "h534Q");
+					break;
 				}
-				DXLUtil.writeItemString(dxl, FIELD_TITLE, true, name);
-				DXLUtil.writeItemString(dxl, DESIGN_FLAGS, true, "s34Q");
-				break;
-			}
-			case ServerJavaScriptLibrary: {
-				note.setAttribute("class", "filter");
-				String name = file.getFileName().toString();
-				if(name.endsWith('.' + type.getExtension())) {
-					name = name.substring(0, name.length()-1-type.getExtension().length());
+				case LotusScriptLibrary: {
+					dxl.startNote("filter");
+					String name = file.getFileName().toString();
+					if(name.endsWith('.' + type.getExtension())) {
+						name = name.substring(0, name.length()-1-type.getExtension().length());
+					}
+					dxl.writeItemString(FIELD_TITLE, name);
+					dxl.writeItemString(DESIGN_FLAGS, "s34Q");
+					break;
 				}
-				DXLUtil.writeItemString(dxl, FIELD_TITLE, true, name);
-				DXLUtil.writeItemString(dxl, DESIGN_FLAGS, true, ".5834Q");
-				break;
-			}
-			case StyleSheet: {
-				note.setAttribute("class", "form");
-				DXLUtil.writeItemString(dxl, FIELD_TITLE, true, file.getFileName().toString());
-				DXLUtil.writeItemString(dxl, DESIGN_FLAGS, true, "34C=Q");
-				DXLUtil.writeItemString(dxl, ITEM_NAME_FILE_NAMES, true, file.getFileName().toString());
-				DXLUtil.writeItemString(dxl, ITEM_NAME_FILE_MIMETYPE, true, "text/css");
-				DXLUtil.writeItemString(dxl, ITEM_NAME_FILE_MIMECHARSET, true, "UTF-8");
-				break;
-			}
-			case Theme: {
-				note.setAttribute("class", "form");
-				DXLUtil.writeItemString(dxl, FIELD_TITLE, true, file.getFileName().toString());
-				DXLUtil.writeItemString(dxl, DESIGN_FLAGS, true, "34567Cg~`");
-				DXLUtil.writeItemString(dxl, ITEM_NAME_FILE_NAMES, true, file.getFileName().toString());
-				break;
-			}
-			default:
-				if(log.isWarnEnabled()) {
-					log.warn(MessageFormat.format("Encountered unhandled file of type {0}: {1}", type, file));
+				case ServerJavaScriptLibrary: {
+					dxl.startNote("filter");
+					String name = file.getFileName().toString();
+					if(name.endsWith('.' + type.getExtension())) {
+						name = name.substring(0, name.length()-1-type.getExtension().length());
+					}
+					dxl.writeItemString(FIELD_TITLE, name);
+					dxl.writeItemString(DESIGN_FLAGS, ".5834Q");
+					break;
+				}
+				case StyleSheet: {
+					dxl.startNote("form");
+					dxl.writeItemString(FIELD_TITLE, file.getFileName().toString());
+					dxl.writeItemString(DESIGN_FLAGS, "34C=Q");
+					dxl.writeItemString(ITEM_NAME_FILE_NAMES, file.getFileName().toString());
+					dxl.writeItemString(ITEM_NAME_FILE_MIMETYPE, "text/css");
+					dxl.writeItemString(ITEM_NAME_FILE_MIMECHARSET, "UTF-8");
+					break;
+				}
+				case Theme: {
+					dxl.startNote("form");
+					dxl.writeItemString(FIELD_TITLE, file.getFileName().toString());
+					dxl.writeItemString(DESIGN_FLAGS, "34567Cg~`");
+					dxl.writeItemString(ITEM_NAME_FILE_NAMES, file.getFileName().toString());
+					break;
+				}
+				default:
+					if(log.isWarnEnabled()) {
+						log.warn(MessageFormat.format("Encountered unhandled file of type {0}: {1}", type, file));
+					}
+					return;
 				}
-				return;
+				
+				dxl.endNote();
 			}
 			
 			Path metaFile = file.getParent().resolve(file.getFileName().toString() + ".metadata");
 			Transformer transformer = SwiperOutputStream.createTransformer();
 			
-			DOMSource source = new DOMSource(dxl);
+			StreamSource source = new StreamSource(new StringReader(w.toString()));
 			DOMResult result = new DOMResult();
 			transformer.transform(source, result);
 			
@@ -313,13 +323,4 @@ public class GenerateMetadataMojo extends AbstractMojo {
 			throw new RuntimeException(e);
 		}
 	}
-	
-	private Document createBaseDxl() throws XMLException {
-		Document doc = DOMUtil.createDocument();
-		Element note = DOMUtil.createElement(doc, "note");
-		note.setAttribute("xmlns", "http://www.lotus.com/dxl");
-		return doc;
-	}
-	
-	
 }
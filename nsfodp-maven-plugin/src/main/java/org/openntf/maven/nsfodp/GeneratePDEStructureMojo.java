@@ -17,12 +17,12 @@ package org.openntf.maven.nsfodp;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Collection;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Properties;
 import java.util.jar.Attributes;
 import java.util.jar.Manifest;
@@ -37,11 +37,9 @@ import org.apache.maven.plugins.annotations.Component;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
 import org.apache.maven.project.MavenProject;
+import org.openntf.nsfodp.commons.odp.ProjectDescriptor;
 import org.sonatype.plexus.build.incremental.BuildContext;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
 
-import com.ibm.commons.xml.DOMUtil;
 import com.ibm.commons.xml.XMLException;
 
 /**
@@ -86,19 +84,27 @@ public class GeneratePDEStructureMojo extends AbstractMojo {
 			return;
 		}
 		
+		// Both files use the same descriptor, so read ".classpath" and "plugin.xml" only once
+		ProjectDescriptor descriptor;
 		try {
-			generateBuildProperties();
+			descriptor = ProjectDescriptor.get(odpDirectory.toPath());
+		} catch(IOException | XMLException e) {
+			throw new MojoExecutionException("Exception while reading the ODP's .classpath and plugin.xml", e);
+		}
+		
+		try {
+			generateBuildProperties(descriptor);
 		} catch(IOException | XMLException e) {
 			throw new MojoExecutionException("Exception while generating build.properties", e);
 		}
 		try {
-			generateManifestMf();
+			generateManifestMf(descriptor);
 		} catch(IOException | XMLException e) {
 			throw new MojoExecutionException("Exception while generating META-INF/MANIFEST.MF", e);
 		}
 	}
 
-	private void generateBuildProperties() throws IOException, XMLException {
+	private void generateBuildProperties(ProjectDescriptor descriptor) throws IOException, XMLException {
 		Path classpath = odpDirectory.toPath().resolve(".classpath");
 		if(!Files.isReadable(classpath) || !Files.isRegularFile(classpath)) {
 			if(log.isWarnEnabled()) {
@@ -107,16 +113,7 @@ public class GeneratePDEStructureMojo extends AbstractMojo {
 			return;
 		}
 		
-		Document classpathXml;
-		try(InputStream is = Files.newInputStream(classpath)) {
-			classpathXml = DOMUtil.createDocument(is);
-		}
-		Collection<String> sourceFolders = Stream.of(DOMUtil.nodes(classpathXml, "/classpath/classpathentry[kind=src]"))
-			.map(Element.class::cast)
-			.map(el -> el.getAttribute("path"))
-			.filter(path -> !"Local".equals(path))
-			.collect(Collectors.toCollection(LinkedHashSet::new));
-		sourceFolders.add("Code/Java");
+		Collection<String> sourceFolders = new LinkedHashSet<>(descriptor.getSourceFolders());
 		sourceFolders.add("Resources/Files");
 		
 		Properties props = new Properties();
@@ -141,7 +138,7 @@ public class GeneratePDEStructureMojo extends AbstractMojo {
 		}
 	}
 	
-	private void generateManifestMf() throws IOException, XMLException {
+	private void generateManifestMf(ProjectDescriptor descriptor) throws IOException, XMLException {
 		Path metaInf = project.getBasedir().toPath().resolve("META-INF");
 		Files.createDirectories(metaInf);
 		Path manifestMf = metaInf.resolve("MANIFEST.MF");
@@ -161,16 +158,10 @@ public class GeneratePDEStructureMojo extends AbstractMojo {
 		// Look for plugin dependencies
 		Path pluginXmlFile = odpDirectory.toPath().resolve("plugin.xml");
 		if(Files.isReadable(pluginXmlFile) && Files.isRegularFile(pluginXmlFile)) {
-			Document pluginXml;
-			try(InputStream is = Files.newInputStream(pluginXmlFile)) {
-				pluginXml = DOMUtil.createDocument(is);
-			}
-			
-			Object[] nodes = DOMUtil.nodes(pluginXml, "/plugin/requires/import");
-			if(nodes.length > 0) {
-				attrs.putValue("Require-Bundle", Stream.of(nodes)
-					.map(Element.class::cast)
-					.map(e -> e.getAttribute("plugin") + ("true".equals(e.getAttribute("optional")) ? ";resolution:=optional" : ""))
+			List<ProjectDescriptor.RequiredBundle> requiredBundles = descriptor.getRequiredBundles();
+			if(!requiredBundles.isEmpty()) {
+				attrs.putValue("Require-Bundle", requiredBundles.stream()
+					.map(b -> b.getId() + (b.isOptional() ? ";resolution:=optional" : ""))
 					.collect(Collectors.joining(","))
 				);
 			}
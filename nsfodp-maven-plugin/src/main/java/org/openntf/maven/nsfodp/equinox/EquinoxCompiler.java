@@ -40,7 +40,13 @@ public class EquinoxCompiler extends AbstractEquinoxTask {
 		super(pluginDescriptor, mavenSession, project, log, notesProgram, notesPlatform);
 	}
 
-	public void compileOdp(Path odpDirectory, Path updateSite, Collection<Path> classpathJars, Path outputFile, String compilerLevel, boolean appendTimestampToTitle, String templateName, boolean setProductionXspOptions) {
+	/**
+	 * Runs the compiler application with the provided settings.
+	 * 
+	 * @param compilerProperties further compiler settings, keyed by their {@link NSFODPConstants}
+	 *        system property names, such as {@link NSFODPConstants#PROP_PIPELINEDIMPORT}
+	 */
+	public void compileOdp(Path odpDirectory, Path updateSite, Collection<Path> classpathJars, Path outputFile, String compilerLevel, boolean appendTimestampToTitle, String templateName, boolean setProductionXspOptions, Path cacheDirectory, boolean batchXspCompilation, int xspTranslationParallelism, Map<String, String> compilerProperties) {
 		setClasspathJars(classpathJars);
 		
 		Map<String, String> props = new HashMap<>();
@@ -58,6 +64,12 @@ public class EquinoxCompiler extends AbstractEquinoxTask {
 			props.put(NSFODPConstants.PROP_TEMPLATEVERSION, ODPMojoUtil.calculateVersion(getProject()));
 		}
 		props.put(NSFODPConstants.PROP_SETPRODUCTIONXSPOPTIONS, Boolean.toString(setProductionXspOptions));
+		if(cacheDirectory != null) {
+			props.put(NSFODPConstants.PROP_CACHEDIRECTORY, cacheDirectory.toAbsolutePath().toString());
+		}
+		props.put(NSFODPConstants.PROP_BATCHXSPCOMPILATION, Boolean.toString(batchXspCompilation));
+		props.put(NSFODPConstants.PROP_XSPTRANSLATIONPARALLELISM, Integer.toString(xspTranslationParallelism));
+		props.putAll(compilerProperties);
 		setSystemProperties(props);
 		
 		run("org.openntf.nsfodp.compiler.equinox.CompilerApplication");